@@ -36,7 +36,7 @@ public class AlgorithmExecutionConfiguration implements Serializable {
 
 	private final double cutoffTime; 
 
-	private final Logger log = LoggerFactory.getLogger(getClass());
+	private static final Logger log = LoggerFactory.getLogger(AlgorithmExecutionConfiguration.class);
 
 	private final Map<String, String> taeContext;
 	
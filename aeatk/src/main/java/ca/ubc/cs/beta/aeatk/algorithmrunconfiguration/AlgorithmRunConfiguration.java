@@ -29,6 +29,7 @@ public class AlgorithmRunConfiguration implements Serializable{
 	private final boolean cutoffLessThanMax;
 	private final AlgorithmExecutionConfiguration algorithmExecutionConfiguration;
 	private String experiementKey;
+	private double qualityBound = Double.POSITIVE_INFINITY;
 
 	/**
 	 * Creates a RunConfig object with the following attributes
@@ -192,4 +193,27 @@ public class AlgorithmRunConfiguration implements Serializable{
 	public void setExperiementKey(String experiementKey) {
 		this.experiementKey = experiementKey;
 	}
+
+	/**
+	 * Returns the quality above which the result of this run no longer matters to the caller.
+	 * <p>
+	 * Target algorithms that can bound their final quality early may give up once that bound exceeds this value, and report the bound instead.
+	 * Like the experiment key, this is not part of the identity of the run.
+	 * 
+	 * @return the quality bound, or <code>Double.POSITIVE_INFINITY</code> if the run must always complete
+	 */
+	public double getQualityBound() {
+		return qualityBound;
+	}
+
+	public void setQualityBound(double qualityBound) {
+		this.qualityBound = qualityBound;
+	}
+
+	/**
+	 * @return <code>true</code> if the run may be abandoned once it can no longer beat its quality bound
+	 */
+	public boolean hasQualityBound() {
+		return qualityBound < Double.POSITIVE_INFINITY;
+	}
 }
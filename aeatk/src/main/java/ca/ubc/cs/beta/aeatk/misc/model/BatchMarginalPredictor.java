@@ -0,0 +1,188 @@
+package ca.ubc.cs.beta.aeatk.misc.model;
+
+import java.util.List;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.models.fastrf.RandomForest;
+
+/**
+ * Computes marginal predictions of a random forest for batches of configurations, reusing its buffers from one batch to the next.
+ * <p>
+ * Predicting a list of configurations the usual way clones every value array, builds the tree index array, and transposes the
+ * <code>n x 2</code> result into separate mean and variance rows, all of which is garbage after the call. This class copies the
+ * configurations into rows it keeps between calls, builds the tree indexes once, and writes the predictions into mean and variance
+ * arrays it owns. The only allocation left per batch is the result of {@link RandomForest#applyMarginal(RandomForest, int[], double[][])}.
+ * <p>
+ * The arrays returned by {@link #getMeans()} and {@link #getVariances()} have exactly one entry per configuration of the last batch,
+ * so they can be passed directly to an acquisition function. They are only stable while the batch size stays the same: the next batch of
+ * the same size overwrites them, a batch of another size replaces them with new arrays, so fetch them again after every prediction.
+ * Capacity sized arrays with a count would be stable, but {@link RandomForest#applyMarginal(RandomForest, int[], double[][])} and the
+ * acquisition functions work on whole arrays, so each distinct size would still need arrays of its own.
+ * Instances must not be shared between threads, but any number of them can predict with the same forest concurrently.
+ */
+@NotThreadSafe
+public class BatchMarginalPredictor {
+
+	private final RandomForest forest;
+
+	private final RandomForest preparedForest;
+
+	private final double[][] features;
+
+	private final int[] treeIdxsToUse;
+
+	/**
+	 * Rows the configurations are copied into, grows as needed and never shrinks
+	 */
+	private double[][] rowBuffer = new double[0][];
+
+	/**
+	 * The first <code>n</code> rows of the buffer, for a batch of size <code>n</code>, replaced when the batch size changes
+	 */
+	private double[][] rows = new double[0][];
+
+	private double[] means = new double[0];
+
+	private double[] variances = new double[0];
+
+	/**
+	 * Creates a predictor
+	 *
+	 * @param forest 			the forest to predict with
+	 * @param preparedForest	the forest with the marginal preprocessed, if <code>null</code> the marginal is computed over <code>features</code> instead
+	 * @param features			instance features used when there is no prepared forest
+	 */
+	public BatchMarginalPredictor(RandomForest forest, RandomForest preparedForest, double[][] features)
+	{
+		if(preparedForest == null && features == null)
+		{
+			throw new IllegalArgumentException("Either a prepared forest or the instance features are required");
+		}
+
+		this.forest = forest;
+		this.preparedForest = preparedForest;
+		this.features = features;
+
+		this.treeIdxsToUse = new int[forest.numTrees];
+		for(int i=0; i < forest.numTrees; i++)
+		{
+			treeIdxsToUse[i] = i;
+		}
+	}
+
+	/**
+	 * Predicts the marginal performance of the given configurations
+	 *
+	 * @param configs	configurations to predict
+	 */
+	public void predict(List<ParameterConfiguration> configs)
+	{
+		int n = configs.size();
+		resize(n);
+
+		for(int i=0; i < n; i++)
+		{
+			ParameterConfiguration config = configs.get(i);
+			if(rowBuffer[i] == null || rowBuffer[i].length != config.size())
+			{
+				rowBuffer[i] = new double[config.size()];
+				rows[i] = rowBuffer[i];
+			}
+			config.copyValueArray(rowBuffer[i]);
+		}
+
+		apply(rows);
+	}
+
+	/**
+	 * Predicts the marginal performance of a single configuration
+	 *
+	 * @param config	configuration to predict
+	 */
+	public void predict(ParameterConfiguration config)
+	{
+		resize(1);
+		if(rowBuffer[0] == null || rowBuffer[0].length != config.size())
+		{
+			rowBuffer[0] = new double[config.size()];
+			rows[0] = rowBuffer[0];
+		}
+		config.copyValueArray(rowBuffer[0]);
+
+		apply(rows);
+	}
+
+	/**
+	 * Predicts the marginal performance of configurations already in value array form
+	 *
+	 * @param configArrays	value arrays to predict, which are not modified, such as {@link ca.ubc.cs.beta.aeatk.parameterconfigurationspace.NeighbourhoodCursor#getRows()}
+	 */
+	public void predict(double[][] configArrays)
+	{
+		resizeOutputs(configArrays.length);
+		apply(configArrays);
+	}
+
+	/**
+	 * @return predicted means of the last batch, one per configuration, only valid until the next prediction and replaced when the batch size changes
+	 */
+	public double[] getMeans()
+	{
+		return means;
+	}
+
+	/**
+	 * @return predicted variances of the last batch, one per configuration, only valid until the next prediction and replaced when the batch size changes
+	 */
+	public double[] getVariances()
+	{
+		return variances;
+	}
+
+	private void apply(double[][] configArrays)
+	{
+		double[][] meanVars;
+		if(preparedForest != null)
+		{
+			meanVars = RandomForest.applyMarginal(preparedForest, treeIdxsToUse, configArrays);
+		} else
+		{
+			meanVars = RandomForest.applyMarginal(forest, treeIdxsToUse, configArrays, features);
+		}
+
+		for(int i=0; i < meanVars.length; i++)
+		{
+			means[i] = meanVars[i][0];
+			variances[i] = meanVars[i][1];
+		}
+	}
+
+	private void resize(int n)
+	{
+		if(n > rowBuffer.length)
+		{
+			double[][] newBuffer = new double[Math.max(n, 2*rowBuffer.length)][];
+			System.arraycopy(rowBuffer, 0, newBuffer, 0, rowBuffer.length);
+			rowBuffer = newBuffer;
+		}
+
+		if(n != rows.length)
+		{
+			rows = new double[n][];
+			System.arraycopy(rowBuffer, 0, rows, 0, n);
+		}
+
+		resizeOutputs(n);
+	}
+
+	private void resizeOutputs(int n)
+	{
+		if(n != means.length)
+		{
+			means = new double[n];
+			variances = new double[n];
+		}
+	}
+}
@@ -15,7 +15,8 @@ import ca.ubc.cs.beta.models.fastrf.RegtreeBuildParams;
 
 /**
  * Formats the input arguments and begins building the actual model.
- * 
+ * <p>
+ * Censoring indicators are ignored and every response is fit as exact, data with censored responses is built with the {@link AdaptiveCappingModelBuilder}.
  * 
  * @author sjr
  *
@@ -104,6 +105,40 @@ public class BasicModelBuilder implements ModelBuilder{
 		*/
 		
 		StopWatch sw = new StopWatch();
+		sw.start();
+		forest = learnModel(numTrees, configs, features, theta_inst_idxs, responseValues, buildParams, rfConfig, subsamplePercentage);
+			
+		log.debug("Building Random Forest took {} seconds ", sw.stop() / 1000.0);
+
+		
+		if(rfConfig.preprocessMarginal)
+		{
+			log.trace("Preprocessing marginal for Random Forest");
+			preprocessedForest = RandomForest.preprocessForest(forest, features);
+			//RandomForest.save(preprocessedForest);
+
+		} else
+		{
+			preprocessedForest = null;
+		}
+		
+	}
+	
+	/**
+	 * Learns a forest of the given number of trees, sampling the data points for each tree as determined by the options
+	 * 
+	 * @param numTrees					number of trees to learn
+	 * @param configs					configuration matrix
+	 * @param features					instance feature matrix
+	 * @param theta_inst_idxs			(zero based) configuration and instance index of each data point
+	 * @param responseValues			response value of each data point
+	 * @param buildParams				tree build parameters
+	 * @param rfConfig					random forest options
+	 * @param subsamplePercentage		fraction of the data points to use
+	 * @return the forest
+	 */
+	static RandomForest learnModel(int numTrees, double[][] configs, double[][] features, int[][] theta_inst_idxs, double[] responseValues, RegtreeBuildParams buildParams, RandomForestOptions rfConfig, double subsamplePercentage)
+	{
 		if(rfConfig.fullTreeBootstrap)
 		{
 			
@@ -115,13 +150,12 @@ public class BasicModelBuilder implements ModelBuilder{
 		            }
 		        }
 		        
-		        sw.start();
-		      forest = RandomForest.learnModel(numTrees, configs, features, theta_inst_idxs, responseValues, dataIdxs, buildParams);
+		      return RandomForest.learnModel(numTrees, configs, features, theta_inst_idxs, responseValues, dataIdxs, buildParams);
 		      
 		} else if(subsamplePercentage < 1)
 		{
 				int N = (int) (subsamplePercentage * responseValues.length);
-				log.trace("Subsampling {} points out of {} total", N, responseValues.length);
+				LoggerFactory.getLogger(BasicModelBuilder.class).trace("Subsampling {} points out of {} total", N, responseValues.length);
 				int[][] dataIdxs = new int[numTrees][N];
 		        for (int i = 0; i < numTrees; i++) {
 		            for (int j = 0; j < N; j++) {
@@ -129,30 +163,14 @@ public class BasicModelBuilder implements ModelBuilder{
 		            }
 		        }   
 		        
-		        sw.start();
-				forest = RandomForest.learnModel(numTrees, configs, features, theta_inst_idxs, responseValues, dataIdxs, buildParams);
+				return RandomForest.learnModel(numTrees, configs, features, theta_inst_idxs, responseValues, dataIdxs, buildParams);
 			
 		} else
 		{
-			  sw.start();
-			  forest = RandomForest.learnModel(numTrees, configs, features, theta_inst_idxs, responseValues, buildParams);
+			  return RandomForest.learnModel(numTrees, configs, features, theta_inst_idxs, responseValues, buildParams);
 		}
-			
-		log.debug("Building Random Forest took {} seconds ", sw.stop() / 1000.0);
-
-		
-		if(rfConfig.preprocessMarginal)
-		{
-			log.trace("Preprocessing marginal for Random Forest");
-			preprocessedForest = RandomForest.preprocessForest(forest, features);
-			//RandomForest.save(preprocessedForest);
-
-		} else
-		{
-			preprocessedForest = null;
-		}
-		
 	}
+	
 	@Override
 	public RandomForest getRandomForest()
 	{
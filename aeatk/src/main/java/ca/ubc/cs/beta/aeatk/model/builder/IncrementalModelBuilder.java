@@ -0,0 +1,126 @@
+package ca.ubc.cs.beta.aeatk.model.builder;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.ubc.cs.beta.aeatk.misc.model.SMACRandomForestHelper;
+import ca.ubc.cs.beta.aeatk.misc.watch.StopWatch;
+import ca.ubc.cs.beta.aeatk.model.data.SanitizedModelData;
+import ca.ubc.cs.beta.aeatk.options.RandomForestOptions;
+import ca.ubc.cs.beta.models.fastrf.RandomForest;
+import ca.ubc.cs.beta.models.fastrf.RegtreeBuildParams;
+
+/**
+ * Builds a model by refitting only some of the trees of the previous forest on the current data.
+ *
+ * The trees to refit are the <code>treesToRefit</code> trees starting at <code>firstTree</code> (wrapping around), so that
+ * callers rotating <code>firstTree</code> between builds eventually replace every tree. The remaining trees are shared with
+ * the previous forest, which is not modified. The marginal is always preprocessed over the whole new forest.
+ *
+ * Trees split on the PCA projected instance features, so trees from previous builds are only valid predictors while the
+ * projection, the normalisation of the features and the set of instances they are computed from stay the same. Callers must
+ * check {@link #canReuseTrees(SanitizedModelData, SanitizedModelData)} and build the forest from scratch when it fails.
+ */
+public class IncrementalModelBuilder implements ModelBuilder {
+
+	private final RandomForest forest;
+	private final RandomForest preprocessedForest;
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	/**
+	 * Builds the model
+	 *
+	 * @param smd 					sanitized data to fit the new trees on
+	 * @param rfConfig				random forest options
+	 * @param subsamplePercentage	fraction of the data points to use
+	 * @param rand					random used to build the trees
+	 * @param previousForest		previous forest, which must have <code>rfConfig.numTrees</code> trees
+	 * @param firstTree				index of the first tree to refit
+	 * @param treesToRefit			number of trees to refit
+	 */
+	public IncrementalModelBuilder(SanitizedModelData smd, RandomForestOptions rfConfig, double subsamplePercentage, Random rand, RandomForest previousForest, int firstTree, int treesToRefit)
+	{
+		int numTrees = rfConfig.numTrees;
+		if(previousForest.numTrees != numTrees)
+		{
+			throw new IllegalArgumentException("Previous forest has " + previousForest.numTrees + " trees, expected " + numTrees);
+		}
+
+		if(treesToRefit < 1 || treesToRefit > numTrees)
+		{
+			throw new IllegalArgumentException("Number of trees to refit must be between 1 and " + numTrees + ", not: " + treesToRefit);
+		}
+
+		double[][] features = smd.getPCAFeatures();
+		double[][] configs = smd.getConfigs();
+		double[] responseValues = smd.getResponseValues();
+
+		int[][] theta_inst_idxs = smd.getThetaInstIdxs();
+		for(int i=0; i < theta_inst_idxs.length; i++)
+		{
+			theta_inst_idxs[i][0]--;
+			theta_inst_idxs[i][1]--;
+		}
+
+		RegtreeBuildParams buildParams = SMACRandomForestHelper.getRandomForestBuildParams(rfConfig, features[0].length, smd.getCategoricalSize(), smd.getNameConditionsMapParentsArray(), smd.getNameConditionsMapParentsValues(), smd.getNameConditionsMapOp(), rand);
+
+		log.trace("Refitting {} of {} trees with {} data points ", treesToRefit, numTrees, responseValues.length);
+
+		StopWatch sw = new StopWatch();
+		sw.start();
+		RandomForest refitTrees = BasicModelBuilder.learnModel(treesToRefit, configs, features, theta_inst_idxs, responseValues, buildParams, rfConfig, subsamplePercentage);
+
+		forest = new RandomForest(numTrees, buildParams.logModel);
+		for(int i=0; i < numTrees; i++)
+		{
+			forest.Trees[i] = previousForest.Trees[i];
+		}
+
+		for(int i=0; i < treesToRefit; i++)
+		{
+			forest.Trees[(firstTree + i) % numTrees] = refitTrees.Trees[i];
+		}
+
+		log.debug("Refitting {} Random Forest trees took {} seconds ", treesToRefit, sw.stop() / 1000.0);
+
+		if(rfConfig.preprocessMarginal)
+		{
+			log.trace("Preprocessing marginal for Random Forest");
+			preprocessedForest = RandomForest.preprocessForest(forest, features);
+		} else
+		{
+			preprocessedForest = null;
+		}
+	}
+
+	/**
+	 * Checks whether trees fit on <code>previous</code> still predict correctly on the features of <code>current</code>
+	 *
+	 * @param previous	data the previous forest was fit on
+	 * @param current	data of the build about to happen
+	 * @return <code>true</code> if both use the same instance feature projection and normalisation, and give the same projected features
+	 */
+	public static boolean canReuseTrees(SanitizedModelData previous, SanitizedModelData current)
+	{
+		return Arrays.equals(previous.getDataRichIndexes(), current.getDataRichIndexes())
+			&& Arrays.equals(previous.getMeans(), current.getMeans())
+			&& Arrays.equals(previous.getStdDev(), current.getStdDev())
+			&& Arrays.deepEquals(previous.getPCAVectors(), current.getPCAVectors())
+			&& Arrays.deepEquals(previous.getPCAFeatures(), current.getPCAFeatures());
+	}
+
+	@Override
+	public RandomForest getRandomForest()
+	{
+		return forest;
+	}
+
+	@Override
+	public RandomForest getPreparedRandomForest() {
+		return preprocessedForest;
+	}
+}
@@ -23,6 +23,10 @@ public class RandomForestOptions extends AbstractOptions{
 	@Parameter(names={"--rf-subsample-memory-percentage","--freeMemoryPecentageToSubsample"}, description="when free memory percentage drops below this percent we will apply the subsample percentage", validateWith=ZeroOneHalfOpenLeftDouble.class)
 	public double freeMemoryPercentageToSubsample=0.25;
 
+	@UsageTextField(level=OptionLevel.ADVANCED)
+	@Parameter(names={"--rf-full-rebuild-frequency"}, description="when incremental tree updates are enabled (see --rf-incremental-trees), rebuild the whole forest every this many models", validateWith=FixedPositiveInteger.class)
+	public int fullRebuildFrequency = 10;
+	
 	@UsageTextField(level=OptionLevel.ADVANCED)
 	@Parameter(names = {"--rf-full-tree-bootstrap","--fullTreeBootstrap"}, description = "bootstrap all data points into trees")
 	public boolean fullTreeBootstrap = false;
@@ -35,6 +39,10 @@ public class RandomForestOptions extends AbstractOptions{
 	@Parameter(names={"--rf-impute-mean","--imputeMean"}, description="impute the mean value for the all censored data points")
 	public boolean imputeMean;
 	
+	@UsageTextField(level=OptionLevel.ADVANCED)
+	@Parameter(names={"--rf-incremental-trees"}, description="number of trees to refit when a new model is built, the remaining trees are kept from the previous model (0 always rebuilds the whole forest). Only used without adaptive capping", validateWith=NonNegativeInteger.class)
+	public int incrementalTrees = 0;
+	
 	
 	@UsageTextField(defaultValues="true if optimizing runtime, false if optimizing quality", level=OptionLevel.ADVANCED)
 	@Parameter(names = {"--rf-log-model","--log-model","--logModel"}, description = "store response values in log-normal form")
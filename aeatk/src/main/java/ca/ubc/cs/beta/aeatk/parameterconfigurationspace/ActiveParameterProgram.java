@@ -0,0 +1,228 @@
+package ca.ubc.cs.beta.aeatk.parameterconfigurationspace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.Immutable;
+
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace.Conditional;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace.ParameterType;
+
+/**
+ * The conditions of a configuration space compiled into flat arrays, that determine which parameters are active directly from a value array.
+ * <p>
+ * Parameters are visited in the active check order of the space, so the parents of a parameter are always decided before it is.
+ * Each parameter has a range of clauses (any of which must hold), and each clause a range of conditions (all of which must hold).
+ * A condition compares the value of its parent, decoded the same way {@link ParameterConfiguration#get(Object)} followed by
+ * the categorical value map would, against the values from the PCS file. A condition on an inactive parent never holds.
+ */
+@Immutable
+final class ActiveParameterProgram {
+
+	private static final int DECODE_TABLE = 0;
+	private static final int DECODE_ROUNDED_TABLE = 1;
+	private static final int DECODE_ROUNDED = 2;
+	private static final int DECODE_UNNORMALIZED = 3;
+
+	/**
+	 * Parameter index for each step, in active check order
+	 */
+	private final int[] stepParameter;
+
+	/**
+	 * Whether the parameter of each step is active no matter what
+	 */
+	private final boolean[] stepUnconditional;
+
+	/**
+	 * Clauses of step <code>i</code> are <code>[stepClauseStart[i], stepClauseEnd[i])</code>
+	 */
+	private final int[] stepClauseStart;
+
+	private final int[] stepClauseEnd;
+
+	/**
+	 * Conditions of clause <code>i</code> are <code>[clauseConditionStart[i], clauseConditionStart[i+1])</code>
+	 */
+	private final int[] clauseConditionStart;
+
+	private final int[] conditionParent;
+
+	private final ConditionalOperator[] conditionOperator;
+
+	private final double[][] conditionValues;
+
+	/**
+	 * How the value of each parameter is decoded when it is used as a parent
+	 */
+	private final int[] decodeKind;
+
+	private final NormalizedRange[] ranges;
+
+	/**
+	 * For categorical and ordinal parameters, the encoded value the conditions compare against, by (rounded) value array entry
+	 */
+	private final double[][] decodeTable;
+
+	ActiveParameterProgram(List<String> parameterNames, List<String> activeCheckOrder, Map<String, Integer> paramKeyIndexMap, Map<Integer, ArrayList<ArrayList<Conditional>>> conditions, Map<String, ParameterType> paramTypes, NormalizedRange[] rangesByIndex, Map<String, List<String>> valuesMap, Map<String, Map<String, Integer>> categoricalValueMap)
+	{
+		int numberOfParameters = parameterNames.size();
+
+		this.decodeKind = new int[numberOfParameters];
+		this.ranges = rangesByIndex.clone();
+		this.decodeTable = new double[numberOfParameters][];
+		for(int i=0; i < numberOfParameters; i++)
+		{
+			String name = parameterNames.get(i);
+			if(!paramTypes.get(name).isNormalized())
+			{
+				//Value array holds 1 + index into the values list
+				decodeKind[i] = DECODE_TABLE;
+				decodeTable[i] = new double[valuesMap.get(name).size() + 1];
+				decodeTable[i][0] = Double.NaN;
+				for(int j=0; j < valuesMap.get(name).size(); j++)
+				{
+					decodeTable[i][j+1] = categoricalValueMap.get(name).get(valuesMap.get(name).get(j));
+				}
+			} else if(ranges[i].isIntegerOnly() && paramTypes.get(name) == ParameterType.ORDINAL)
+			{
+				//Value array holds the normalized index into the values list
+				decodeKind[i] = DECODE_ROUNDED_TABLE;
+				decodeTable[i] = new double[valuesMap.get(name).size()];
+				for(int j=0; j < valuesMap.get(name).size(); j++)
+				{
+					decodeTable[i][j] = categoricalValueMap.get(name).get(valuesMap.get(name).get(j));
+				}
+			} else if(ranges[i].isIntegerOnly())
+			{
+				decodeKind[i] = DECODE_ROUNDED;
+			} else
+			{
+				decodeKind[i] = DECODE_UNNORMALIZED;
+			}
+		}
+
+		int numberOfSteps = activeCheckOrder.size();
+		this.stepParameter = new int[numberOfSteps];
+		this.stepUnconditional = new boolean[numberOfSteps];
+		this.stepClauseStart = new int[numberOfSteps];
+		this.stepClauseEnd = new int[numberOfSteps];
+
+		List<ArrayList<Conditional>> clauses = new ArrayList<ArrayList<Conditional>>();
+		for(int i=0; i < numberOfSteps; i++)
+		{
+			stepParameter[i] = paramKeyIndexMap.get(activeCheckOrder.get(i));
+			ArrayList<ArrayList<Conditional>> parameterClauses = conditions.get(stepParameter[i]);
+			stepUnconditional[i] = (parameterClauses == null);
+			stepClauseStart[i] = clauses.size();
+			if(parameterClauses != null)
+			{
+				clauses.addAll(parameterClauses);
+			}
+			stepClauseEnd[i] = clauses.size();
+		}
+
+		this.clauseConditionStart = new int[clauses.size() + 1];
+		List<Conditional> flatConditions = new ArrayList<Conditional>();
+		for(int i=0; i < clauses.size(); i++)
+		{
+			clauseConditionStart[i] = flatConditions.size();
+			flatConditions.addAll(clauses.get(i));
+		}
+		clauseConditionStart[clauses.size()] = flatConditions.size();
+
+		this.conditionParent = new int[flatConditions.size()];
+		this.conditionOperator = new ConditionalOperator[flatConditions.size()];
+		this.conditionValues = new double[flatConditions.size()][];
+		for(int i=0; i < flatConditions.size(); i++)
+		{
+			conditionParent[i] = flatConditions.get(i).parent_ID;
+			conditionOperator[i] = flatConditions.get(i).op;
+			conditionValues[i] = flatConditions.get(i).values;
+		}
+	}
+
+	/**
+	 * Determines which parameters are active
+	 *
+	 * @param valueArray	value array of a configuration
+	 * @param active		array that receives whether each parameter is active, every entry is written exactly once
+	 */
+	void computeActive(double[] valueArray, boolean[] active)
+	{
+		for(int step=0; step < stepParameter.length; step++)
+		{
+			active[stepParameter[step]] = isActive(step, valueArray, active);
+		}
+	}
+
+	/**
+	 * @return number of steps, which is the number of parameters
+	 */
+	int numberOfSteps()
+	{
+		return stepParameter.length;
+	}
+
+	/**
+	 * @param step	step in active check order
+	 * @return index of the parameter decided at the given step
+	 */
+	int parameterAt(int step)
+	{
+		return stepParameter[step];
+	}
+
+	/**
+	 * Determines whether the parameter of a single step is active, only looking at the parameters of earlier steps
+	 *
+	 * @param step			step in active check order
+	 * @param valueArray	value array, only the entries of parameters of earlier steps are read
+	 * @param active		whether the parameters of earlier steps are active
+	 * @return <code>true</code> if the parameter of the step is active
+	 */
+	boolean isActive(int step, double[] valueArray, boolean[] active)
+	{
+		if(stepUnconditional[step])
+		{
+			return true;
+		}
+
+		for(int clause = stepClauseStart[step]; clause < stepClauseEnd[step]; clause++)
+		{
+			boolean allSatisfied = true;
+			for(int cond = clauseConditionStart[clause]; cond < clauseConditionStart[clause+1]; cond++)
+			{
+				int parent = conditionParent[cond];
+				if(!active[parent] || !conditionOperator[cond].conditionalClauseMatch(decode(parent, valueArray[parent]), conditionValues[cond]))
+				{
+					allSatisfied = false;
+					break;
+				}
+			}
+			if(allSatisfied)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private double decode(int parameter, double value)
+	{
+		switch(decodeKind[parameter])
+		{
+			case DECODE_TABLE:
+				return decodeTable[parameter][(int) value];
+			case DECODE_ROUNDED_TABLE:
+				return decodeTable[parameter][(int) Math.round(ranges[parameter].unnormalizeValue(value))];
+			case DECODE_ROUNDED:
+				return (double) Math.round(ranges[parameter].unnormalizeValue(value));
+			case DECODE_UNNORMALIZED:
+				return ranges[parameter].unnormalizeValue(value);
+			default:
+				throw new IllegalStateException("Unknown decoding for parameter " + parameter);
+		}
+	}
+}
@@ -0,0 +1,718 @@
+package ca.ubc.cs.beta.aeatk.parameterconfigurationspace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import net.jcip.annotations.Immutable;
+import net.objecthunter.exp4j.function.Function;
+import net.objecthunter.exp4j.operator.Operator;
+import net.objecthunter.exp4j.tokenizer.FunctionToken;
+import net.objecthunter.exp4j.tokenizer.NumberToken;
+import net.objecthunter.exp4j.tokenizer.OperatorToken;
+import net.objecthunter.exp4j.tokenizer.Token;
+import net.objecthunter.exp4j.tokenizer.VariableToken;
+
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace.ParameterType;
+
+/**
+ * The forbidden clauses of a configuration space compiled into a tree of nodes per clause, that decide whether a value array is forbidden.
+ * <p>
+ * Classic clauses become a conjunction of value array comparisons. Advanced clauses are tokenized and put in reverse polish
+ * notation by exp4j, and the result is turned into a tree where variables are bound to value array indexes or constants at compile time.
+ * Parameters are decoded the same way the exp4j variables used to be bound: numeric parameters are unnormalized and
+ * categorical and ordinal parameters are mapped to the constant of their value. The operators in {@link ForbiddenOperators} and the basic
+ * arithmetic get their own nodes, anything else calls the exp4j operator or function. Subtrees without parameters are folded into constants.
+ * <p>
+ * The tree holds no evaluation state, so one instance is shared by all threads.
+ */
+@Immutable
+final class ForbiddenClauseProgram {
+
+	private final Node[] clauses;
+
+	ForbiddenClauseProgram(List<String> parameterNames, Map<String, ParameterType> paramTypes, boolean[] parameterDomainContinuous, Map<String, NormalizedRange> contNormalizedRanges, Map<String, List<String>> valuesMap, List<double[][]> classicClauses, List<Token[]> advancedClauses, List<String> advancedLines, Map<String, Double> forbiddenParameterConstants, Map<String, Double> forbiddenVariableValues)
+	{
+		List<Node> compiled = new ArrayList<Node>(classicClauses.size() + advancedClauses.size());
+
+		for(double[][] clause : classicClauses)
+		{
+			int[] indexes = new int[clause.length];
+			double[] values = new double[clause.length];
+			for(int i=0; i < clause.length; i++)
+			{
+				//Categorical value arrays are indexed by 1, and forbidden parameters are 0 indexed
+				indexes[i] = (int) clause[i][0];
+				values[i] = (parameterDomainContinuous[indexes[i]]) ? clause[i][1] : clause[i][1] + 1;
+			}
+			compiled.add(new ClassicClause(indexes, values));
+		}
+
+		if(advancedClauses.size() > 0)
+		{
+			Map<String, Double> constants = (forbiddenParameterConstants == null) ? Collections.<String, Double>emptyMap() : forbiddenParameterConstants;
+			for(int i=0; i < advancedClauses.size(); i++)
+			{
+				compiled.add(compile(advancedClauses.get(i), advancedLines.get(i), parameterNames, paramTypes, contNormalizedRanges, valuesMap, constants, forbiddenVariableValues));
+			}
+		}
+
+		this.clauses = compiled.toArray(new Node[compiled.size()]);
+	}
+
+	/**
+	 * @param valueArray	value array of a configuration
+	 * @return <code>true</code> if any clause holds (evaluates to something other than zero), <code>false</code> otherwise
+	 */
+	boolean isForbidden(double[] valueArray)
+	{
+		for(Node clause : clauses)
+		{
+			if(clause.evaluate(valueArray) != 0)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return number of compiled clauses, classic clauses first
+	 */
+	int numberOfClauses()
+	{
+		return clauses.length;
+	}
+
+	/**
+	 * @param clause		index of the clause
+	 * @param valueArray	value array, only the entries of the parameters of the clause are read
+	 * @return <code>true</code> if the clause holds, <code>false</code> otherwise
+	 */
+	boolean isForbiddenByClause(int clause, double[] valueArray)
+	{
+		return clauses[clause].evaluate(valueArray) != 0;
+	}
+
+	/**
+	 * @param clause	index of the clause
+	 * @return indexes of the parameters the clause reads, in ascending order
+	 */
+	int[] getParametersOfClause(int clause)
+	{
+		Set<Integer> parameters = new TreeSet<Integer>();
+		clauses[clause].collectParameters(parameters);
+		int[] result = new int[parameters.size()];
+		int i=0;
+		for(Integer parameter : parameters)
+		{
+			result[i++] = parameter;
+		}
+		return result;
+	}
+
+	/**
+	 * @return <code>true</code> if there are no forbidden clauses at all
+	 */
+	boolean isEmpty()
+	{
+		return clauses.length == 0;
+	}
+
+	private static Node compile(Token[] rpn, String line, List<String> parameterNames, Map<String, ParameterType> paramTypes, Map<String, NormalizedRange> contNormalizedRanges, Map<String, List<String>> valuesMap, Map<String, Double> constants, Map<String, Double> forbiddenVariableValues)
+	{
+		List<Node> stack = new ArrayList<Node>();
+		for(Token token : rpn)
+		{
+			switch(token.getType())
+			{
+				case Token.TOKEN_NUMBER:
+					stack.add(new Constant(((NumberToken) token).getValue()));
+					break;
+				case Token.TOKEN_VARIABLE:
+					stack.add(variable(((VariableToken) token).getName(), line, parameterNames, paramTypes, contNormalizedRanges, valuesMap, constants, forbiddenVariableValues));
+					break;
+				case Token.TOKEN_OPERATOR:
+				{
+					Operator op = ((OperatorToken) token).getOperator();
+					stack.add(fold(operator(op, pop(stack, op.getNumOperands(), line))));
+					break;
+				}
+				case Token.TOKEN_FUNCTION:
+				{
+					Function function = ((FunctionToken) token).getFunction();
+					stack.add(fold(new FunctionCall(function, pop(stack, function.getNumArguments(), line))));
+					break;
+				}
+				default:
+					throw new IllegalArgumentException("The following forbidden line seems to be invalid: " + line + ", unexpected token type " + token.getType());
+			}
+		}
+
+		if(stack.size() != 1)
+		{
+			throw new IllegalArgumentException("The following forbidden line seems to be invalid: " + line + ", it does not reduce to a single value");
+		}
+		return stack.get(0);
+	}
+
+	private static Node[] pop(List<Node> stack, int count, String line)
+	{
+		if(stack.size() < count)
+		{
+			throw new IllegalArgumentException("The following forbidden line seems to be invalid: " + line + ", an operator or function is missing operands");
+		}
+		Node[] operands = new Node[count];
+		for(int i=count-1; i >= 0; i--)
+		{
+			operands[i] = stack.remove(stack.size() - 1);
+		}
+		return operands;
+	}
+
+	/**
+	 * Binds a variable the same way it used to be set on the exp4j expression, parameter names take precedence over values, which take precedence over the exp4j constants
+	 */
+	private static Node variable(String name, String line, List<String> parameterNames, Map<String, ParameterType> paramTypes, Map<String, NormalizedRange> contNormalizedRanges, Map<String, List<String>> valuesMap, Map<String, Double> constants, Map<String, Double> forbiddenVariableValues)
+	{
+		int index = parameterNames.indexOf(name);
+		if(index >= 0)
+		{
+			NormalizedRange range = contNormalizedRanges.get(name);
+			ParameterType type = paramTypes.get(name);
+			if(range != null && type != ParameterType.ORDINAL && type != ParameterType.CATEGORICAL)
+			{
+				return new NumericParameter(index, range);
+			}
+
+			List<String> values = valuesMap.get(name);
+			double[] table = new double[values.size()];
+			for(int i=0; i < values.size(); i++)
+			{
+				Double constant = constants.get(values.get(i));
+				table[i] = (constant == null) ? Double.NaN : constant;
+			}
+
+			return (range != null) ? new OrdinalParameter(index, range, table) : new CategoricalParameter(index, table);
+		}
+
+		if(forbiddenVariableValues.containsKey(name))
+		{
+			return new Constant(forbiddenVariableValues.get(name));
+		}
+
+		switch(name)
+		{
+			case "pi":
+			case "\u03c0":
+				return new Constant(Math.PI);
+			case "e":
+				return new Constant(Math.E);
+			case "\u03c6":
+				return new Constant(1.61803398874d);
+			default:
+				throw new IllegalArgumentException("The following forbidden line seems to be invalid: " + line + ", unknown variable " + name);
+		}
+	}
+
+	private static Node operator(Operator op, Node[] operands)
+	{
+		if(operands.length == 1)
+		{
+			switch(op.getSymbol())
+			{
+				case "-":
+					return new Negate(operands[0]);
+				case "+":
+					return operands[0];
+				default:
+					return new OperatorCall(op, operands);
+			}
+		} else if(operands.length == 2)
+		{
+			switch(op.getSymbol())
+			{
+				case "&&":
+					return new And(operands[0], operands[1]);
+				case "||":
+					return new Or(operands[0], operands[1]);
+				case "==":
+					return new Comparison(Comparison.EQ, operands[0], operands[1]);
+				case "!=":
+					return new Comparison(Comparison.NEQ, operands[0], operands[1]);
+				case "<":
+					return new Comparison(Comparison.LT, operands[0], operands[1]);
+				case "<=":
+					return new Comparison(Comparison.LE, operands[0], operands[1]);
+				case ">":
+					return new Comparison(Comparison.GT, operands[0], operands[1]);
+				case ">=":
+					return new Comparison(Comparison.GE, operands[0], operands[1]);
+				case "+":
+					return new Arithmetic(Arithmetic.ADD, operands[0], operands[1]);
+				case "-":
+					return new Arithmetic(Arithmetic.SUBTRACT, operands[0], operands[1]);
+				case "*":
+					return new Arithmetic(Arithmetic.MULTIPLY, operands[0], operands[1]);
+				case "/":
+					return new Arithmetic(Arithmetic.DIVIDE, operands[0], operands[1]);
+				default:
+					return new OperatorCall(op, operands);
+			}
+		} else
+		{
+			return new OperatorCall(op, operands);
+		}
+	}
+
+	/**
+	 * Replaces a node whose operands are all constants with its value, unless evaluating it fails, in which case it fails on evaluation as before
+	 */
+	private static Node fold(Node node)
+	{
+		if(node instanceof Constant)
+		{
+			return node;
+		}
+
+		for(Node operand : node.operands())
+		{
+			if(!(operand instanceof Constant))
+			{
+				return node;
+			}
+		}
+		try
+		{
+			return new Constant(node.evaluate(null));
+		} catch(RuntimeException e)
+		{
+			return node;
+		}
+	}
+
+	private static abstract class Node
+	{
+		abstract double evaluate(double[] valueArray);
+
+		abstract Node[] operands();
+
+		void collectParameters(Set<Integer> parameters)
+		{
+			for(Node operand : operands())
+			{
+				operand.collectParameters(parameters);
+			}
+		}
+	}
+
+	private static final Node[] NO_OPERANDS = new Node[0];
+
+	private static final class Constant extends Node
+	{
+		private final double value;
+
+		Constant(double value)
+		{
+			this.value = value;
+		}
+
+		@Override
+		double evaluate(double[] valueArray)
+		{
+			return value;
+		}
+
+		@Override
+		Node[] operands()
+		{
+			return NO_OPERANDS;
+		}
+	}
+
+	private static final class NumericParameter extends Node
+	{
+		private final int index;
+		private final NormalizedRange range;
+
+		NumericParameter(int index, NormalizedRange range)
+		{
+			this.index = index;
+			this.range = range;
+		}
+
+		@Override
+		double evaluate(double[] valueArray)
+		{
+			return range.unnormalizeValue(valueArray[index]);
+		}
+
+		@Override
+		void collectParameters(Set<Integer> parameters)
+		{
+			parameters.add(index);
+		}
+
+		@Override
+		Node[] operands()
+		{
+			return NO_OPERANDS;
+		}
+	}
+
+	/**
+	 * Ordinal parameter, the value array holds the normalized index into the values list
+	 */
+	private static final class OrdinalParameter extends Node
+	{
+		private final int index;
+		private final NormalizedRange range;
+		private final double[] constants;
+
+		OrdinalParameter(int index, NormalizedRange range, double[] constants)
+		{
+			this.index = index;
+			this.range = range;
+			this.constants = constants;
+		}
+
+		@Override
+		double evaluate(double[] valueArray)
+		{
+			return constants[(int) range.unnormalizeValue(valueArray[index])];
+		}
+
+		@Override
+		void collectParameters(Set<Integer> parameters)
+		{
+			parameters.add(index);
+		}
+
+		@Override
+		Node[] operands()
+		{
+			return NO_OPERANDS;
+		}
+	}
+
+	/**
+	 * Categorical parameter, the value array holds 1 + index into the values list
+	 */
+	private static final class CategoricalParameter extends Node
+	{
+		private final int index;
+		private final double[] constants;
+
+		CategoricalParameter(int index, double[] constants)
+		{
+			this.index = index;
+			this.constants = constants;
+		}
+
+		@Override
+		double evaluate(double[] valueArray)
+		{
+			double value = valueArray[index];
+			if(value == 0 || Double.isNaN(value))
+			{
+				throw new IllegalArgumentException("Categorical parameter at index " + index + " has no value, cannot evaluate forbidden clauses");
+			}
+			return constants[(int) value - 1];
+		}
+
+		@Override
+		void collectParameters(Set<Integer> parameters)
+		{
+			parameters.add(index);
+		}
+
+		@Override
+		Node[] operands()
+		{
+			return NO_OPERANDS;
+		}
+	}
+
+	private static final class ClassicClause extends Node
+	{
+		private final int[] indexes;
+		private final double[] values;
+
+		ClassicClause(int[] indexes, double[] values)
+		{
+			this.indexes = indexes;
+			this.values = values;
+		}
+
+		@Override
+		double evaluate(double[] valueArray)
+		{
+			for(int i=0; i < indexes.length; i++)
+			{
+				if(valueArray[indexes[i]] != values[i])
+				{
+					return 0;
+				}
+			}
+			return 1;
+		}
+
+		@Override
+		void collectParameters(Set<Integer> parameters)
+		{
+			for(int index : indexes)
+			{
+				parameters.add(index);
+			}
+		}
+
+		@Override
+		Node[] operands()
+		{
+			return NO_OPERANDS;
+		}
+	}
+
+	private static final class And extends Node
+	{
+		private final Node left;
+		private final Node right;
+
+		And(Node left, Node right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		double evaluate(double[] valueArray)
+		{
+			return (left.evaluate(valueArray) > 0 && right.evaluate(valueArray) > 0) ? 1 : 0;
+		}
+
+		@Override
+		Node[] operands()
+		{
+			return new Node[] { left, right };
+		}
+	}
+
+	private static final class Or extends Node
+	{
+		private final Node left;
+		private final Node right;
+
+		Or(Node left, Node right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		double evaluate(double[] valueArray)
+		{
+			return (left.evaluate(valueArray) > 0 || right.evaluate(valueArray) > 0) ? 1 : 0;
+		}
+
+		@Override
+		Node[] operands()
+		{
+			return new Node[] { left, right };
+		}
+	}
+
+	private static final class Comparison extends Node
+	{
+		static final int EQ = 0;
+		static final int NEQ = 1;
+		static final int LT = 2;
+		static final int LE = 3;
+		static final int GT = 4;
+		static final int GE = 5;
+
+		private final int kind;
+		private final Node left;
+		private final Node right;
+
+		Comparison(int kind, Node left, Node right)
+		{
+			this.kind = kind;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		double evaluate(double[] valueArray)
+		{
+			double l = left.evaluate(valueArray);
+			double r = right.evaluate(valueArray);
+			boolean result;
+			switch(kind)
+			{
+				case EQ:
+					result = (l == r);
+					break;
+				case NEQ:
+					result = (l != r);
+					break;
+				case LT:
+					result = (l < r);
+					break;
+				case LE:
+					result = (l <= r);
+					break;
+				case GT:
+					result = (l > r);
+					break;
+				case GE:
+					result = (l >= r);
+					break;
+				default:
+					throw new IllegalStateException("Unknown comparison " + kind);
+			}
+			return (result) ? 1 : 0;
+		}
+
+		@Override
+		Node[] operands()
+		{
+			return new Node[] { left, right };
+		}
+	}
+
+	private static final class Arithmetic extends Node
+	{
+		static final int ADD = 0;
+		static final int SUBTRACT = 1;
+		static final int MULTIPLY = 2;
+		static final int DIVIDE = 3;
+
+		private final int kind;
+		private final Node left;
+		private final Node right;
+
+		Arithmetic(int kind, Node left, Node right)
+		{
+			this.kind = kind;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		double evaluate(double[] valueArray)
+		{
+			double l = left.evaluate(valueArray);
+			double r = right.evaluate(valueArray);
+			switch(kind)
+			{
+				case ADD:
+					return l + r;
+				case SUBTRACT:
+					return l - r;
+				case MULTIPLY:
+					return l * r;
+				case DIVIDE:
+					if(r == 0d)
+					{
+						//Same as the exp4j division operator
+						throw new ArithmeticException("Division by zero!");
+					}
+					return l / r;
+				default:
+					throw new IllegalStateException("Unknown arithmetic operation " + kind);
+			}
+		}
+
+		@Override
+		Node[] operands()
+		{
+			return new Node[] { left, right };
+		}
+	}
+
+	private static final class Negate extends Node
+	{
+		private final Node operand;
+
+		Negate(Node operand)
+		{
+			this.operand = operand;
+		}
+
+		@Override
+		double evaluate(double[] valueArray)
+		{
+			return -operand.evaluate(valueArray);
+		}
+
+		@Override
+		Node[] operands()
+		{
+			return new Node[] { operand };
+		}
+	}
+
+	/**
+	 * Any other exp4j operator, the operands array is allocated per evaluation so the node stays thread safe
+	 */
+	private static final class OperatorCall extends Node
+	{
+		private final Operator op;
+		private final Node[] operands;
+
+		OperatorCall(Operator op, Node[] operands)
+		{
+			this.op = op;
+			this.operands = operands;
+		}
+
+		@Override
+		double evaluate(double[] valueArray)
+		{
+			double[] values = new double[operands.length];
+			for(int i=0; i < operands.length; i++)
+			{
+				values[i] = operands[i].evaluate(valueArray);
+			}
+			return op.apply(values);
+		}
+
+		@Override
+		Node[] operands()
+		{
+			return operands;
+		}
+	}
+
+	private static final class FunctionCall extends Node
+	{
+		private final Function function;
+		private final Node[] arguments;
+
+		FunctionCall(Function function, Node[] arguments)
+		{
+			this.function = function;
+			this.arguments = arguments;
+		}
+
+		@Override
+		double evaluate(double[] valueArray)
+		{
+			double[] values = new double[arguments.length];
+			for(int i=0; i < arguments.length; i++)
+			{
+				values[i] = arguments[i].evaluate(valueArray);
+			}
+			return function.apply(values);
+		}
+
+		@Override
+		Node[] operands()
+		{
+			return arguments;
+		}
+	}
+}
@@ -0,0 +1,262 @@
+package ca.ubc.cs.beta.aeatk.parameterconfigurationspace;
+
+import java.util.Random;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * Enumerates the neighbourhood of a configuration into value array rows that are reused from one configuration to the next.
+ * <p>
+ * The neighbours are exactly those of {@link ParameterConfiguration#getNeighbourhood(Random, int)}, in the same order and drawing the same random numbers,
+ * but each one is written as a row of a matrix owned by the cursor instead of becoming a {@link ParameterConfiguration}. Every neighbour differs from the
+ * configuration in a single parameter, which is recorded along with the number of parameters whose activity changes because of it. Forbidden neighbours are
+ * checked directly on the row, and only the neighbours that are actually needed are turned into configurations with {@link #materialize(int)}.
+ * <p>
+ * Rows are overwritten by the next call to {@link #reset(ParameterConfiguration, Random)}, instances must not be shared between threads.
+ * The row values live in a buffer that only grows, but the array of rows returned by {@link #getRows()} has exactly one row per neighbour,
+ * as the forest predicts whole arrays, so it is only stable while the neighbourhood size stays the same and must be fetched again after every reset.
+ */
+@NotThreadSafe
+public class NeighbourhoodCursor {
+
+	private final ParameterConfigurationSpace configSpace;
+
+	private final int numNumericalNeighbours;
+
+	private final boolean[] parameterDomainContinuous;
+
+	private final int[] categoricalSize;
+
+	/**
+	 * Whether some parameter's activity depends on each parameter
+	 */
+	private final boolean[] isConditionParent;
+
+	private final double[] base;
+
+	private final boolean[] baseActive;
+
+	private final boolean[] neighbourActive;
+
+	/**
+	 * Rows neighbours are written into, grows as needed and never shrinks
+	 */
+	private double[][] rowBuffer = new double[0][];
+
+	/**
+	 * The first {@link #size()} rows of the buffer, replaced when the size changes
+	 */
+	private double[][] rows = new double[0][];
+
+	private int[] changedIndex = new int[0];
+
+	private int[] activityDelta = new int[0];
+
+	private int size = 0;
+
+	NeighbourhoodCursor(ParameterConfigurationSpace configSpace, int numNumericalNeighbours, boolean[] parameterDomainContinuous, int[] categoricalSize, boolean[] isConditionParent)
+	{
+		this.configSpace = configSpace;
+		this.numNumericalNeighbours = numNumericalNeighbours;
+		this.parameterDomainContinuous = parameterDomainContinuous;
+		this.categoricalSize = categoricalSize;
+		this.isConditionParent = isConditionParent;
+
+		this.base = new double[categoricalSize.length];
+		this.baseActive = new boolean[categoricalSize.length];
+		this.neighbourActive = new boolean[categoricalSize.length];
+	}
+
+	/**
+	 * Enumerates the neighbourhood of a configuration (forbidden neighbours are excluded)
+	 *
+	 * @param config	configuration whose neighbourhood to enumerate
+	 * @param rand		object that will be used to generate neighbours for numerical parameters
+	 * @return number of neighbours
+	 */
+	public int reset(ParameterConfiguration config, Random rand)
+	{
+		if(!config.getParameterConfigurationSpace().equals(configSpace))
+		{
+			throw new IllegalArgumentException("Configuration is not from the configuration space of this cursor");
+		}
+
+		config.copyValueArray(base);
+		configSpace.computeActiveParameters(base, baseActive);
+
+		int capacity = 0;
+		for(int i=0; i < base.length; i++)
+		{
+			capacity += numberOfNeighboursForParameter(i);
+		}
+		ensureCapacity(capacity);
+
+		int n = 0;
+		for(int i=0; i < base.length; i++)
+		{
+			int failuresForParameter = 0;
+			int neighboursForParameter = numberOfNeighboursForParameter(i);
+			for(int j=1; j <= neighboursForParameter; j++)
+			{
+				double[] row = rowBuffer[n];
+				System.arraycopy(base, 0, row, 0, base.length);
+				row[i] = getNeighbourForParameter(i, j, rand);
+
+				if(configSpace.isForbiddenValueArray(row))
+				{
+					failuresForParameter++;
+					if(failuresForParameter < 100 && parameterDomainContinuous[i])
+					{
+						j--;
+					}
+					continue;
+				}
+
+				changedIndex[n] = i;
+				activityDelta[n] = activityDelta(i, row);
+				n++;
+			}
+		}
+
+		this.size = n;
+		if(rows.length != n)
+		{
+			rows = new double[n][];
+		}
+		System.arraycopy(rowBuffer, 0, rows, 0, n);
+		return n;
+	}
+
+	/**
+	 * @return number of neighbours of the last configuration
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the neighbours as value arrays, exactly {@link #size()} rows that must not be modified, overwritten by the next reset and replaced by a new array when the size changes
+	 */
+	public double[][] getRows()
+	{
+		return rows;
+	}
+
+	/**
+	 * @param neighbour	index of the neighbour
+	 * @return index into the value array of the single parameter the neighbour changes
+	 */
+	public int getChangedIndex(int neighbour)
+	{
+		checkIndex(neighbour);
+		return changedIndex[neighbour];
+	}
+
+	/**
+	 * @param neighbour	index of the neighbour
+	 * @return number of parameters that become active or inactive because of the change, zero if the changed parameter is not a parent in any conditional
+	 */
+	public int getActivityDelta(int neighbour)
+	{
+		checkIndex(neighbour);
+		return activityDelta[neighbour];
+	}
+
+	/**
+	 * Creates a configuration for a neighbour, the configuration does not share its value array with the cursor
+	 *
+	 * @param neighbour	index of the neighbour
+	 * @return configuration of the neighbour
+	 */
+	public ParameterConfiguration materialize(int neighbour)
+	{
+		checkIndex(neighbour);
+		return configSpace.getConfigurationFromValueArray(rows[neighbour]);
+	}
+
+	private void checkIndex(int neighbour)
+	{
+		if(neighbour < 0 || neighbour >= size)
+		{
+			throw new IndexOutOfBoundsException("Neighbour " + neighbour + " requested but there are only " + size);
+		}
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if(capacity > rowBuffer.length)
+		{
+			double[][] newBuffer = new double[Math.max(capacity, 2*rowBuffer.length)][];
+			System.arraycopy(rowBuffer, 0, newBuffer, 0, rowBuffer.length);
+			for(int i=rowBuffer.length; i < newBuffer.length; i++)
+			{
+				newBuffer[i] = new double[base.length];
+			}
+			rowBuffer = newBuffer;
+			changedIndex = new int[newBuffer.length];
+			activityDelta = new int[newBuffer.length];
+		}
+	}
+
+	private int activityDelta(int changed, double[] row)
+	{
+		if(!isConditionParent[changed])
+		{
+			return 0;
+		}
+
+		configSpace.computeActiveParameters(row, neighbourActive);
+		int delta = 0;
+		for(int k=0; k < neighbourActive.length; k++)
+		{
+			if(neighbourActive[k] != baseActive[k])
+			{
+				delta++;
+			}
+		}
+		return delta;
+	}
+
+	/**
+	 * @return 0 if inactive or fixed by the search subspace, number of neighbours otherwise
+	 */
+	private int numberOfNeighboursForParameter(int valueArrayIndex)
+	{
+		if(!baseActive[valueArrayIndex]) return 0;
+
+		if(configSpace.searchSubspaceActive[valueArrayIndex]) return 0;
+
+		if(parameterDomainContinuous[valueArrayIndex])
+		{
+			return numNumericalNeighbours;
+		} else
+		{
+			return categoricalSize[valueArrayIndex] - 1;
+		}
+	}
+
+	/**
+	 * Continuous parameters sample from a normal distribution around the current value with standard deviation 0.2 (a magic constant), 
+	 * categorical parameters return the neighbour number up to the current value and one more than that after
+	 */
+	private double getNeighbourForParameter(int valueArrayIndex, int neighbourNumber, Random rand)
+	{
+		if(parameterDomainContinuous[valueArrayIndex])
+		{
+			double mean = base[valueArrayIndex];
+			while(true)
+			{
+				double randValue = 0.2*rand.nextGaussian() + mean;
+				if(randValue >= 0 && randValue <= 1)
+				{
+					NormalizedRange nr = configSpace.normalizedRangesByIndex[valueArrayIndex];
+					return nr.normalizeValue(nr.unnormalizeValue(randValue));
+				}
+			}
+		} else
+		{
+			return (neighbourNumber < base[valueArrayIndex]) ? neighbourNumber : neighbourNumber + 1;
+		}
+	}
+}
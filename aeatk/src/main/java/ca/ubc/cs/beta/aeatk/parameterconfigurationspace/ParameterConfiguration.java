@@ -1,5 +1,7 @@
 package ca.ubc.cs.beta.aeatk.parameterconfigurationspace;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.io.StringWriter;
@@ -21,13 +23,11 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
 import ca.ubc.cs.beta.aeatk.exceptions.ParameterConfigurationLockedException;
 import ca.ubc.cs.beta.aeatk.json.serializers.ParameterConfigurationSpaceJson;
-import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace.Conditional;
 import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace.ParameterType;
 
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
@@ -35,10 +35,6 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 import de.congrace.exp4j.Calculable;
 import net.jcip.annotations.NotThreadSafe;
-import net.objecthunter.exp4j.Expression;
-import net.objecthunter.exp4j.ExpressionBuilder;
-import net.objecthunter.exp4j.ValidationResult;
-import net.objecthunter.exp4j.operator.Operator;
 
 
 /**
@@ -179,6 +175,10 @@ public class ParameterConfiguration implements Map<String, String>, Serializable
 		//this.activeParametersSet = oConfig.activeParametersSet;
 		this.valueArrayForComparsion = oConfig.valueArrayForComparsion.clone();
 		this.lastHash = oConfig.lastHash;
+		this.hashSet = oConfig.hashSet;
+		this.fingerprint = oConfig.fingerprint;
+		this.internedID = oConfig.internedID;
+		this.internedIn = oConfig.internedIn;
 		
 		//DO NOT CHANGE THIS TO BE TRUE, as new configurations should be mutable.
 		this.locked = false;
@@ -510,7 +510,16 @@ public class ParameterConfiguration implements Map<String, String>, Serializable
 	{
 		return valueArray.clone();
 	}
-	
+
+	/**
+	 * Copies the value array into the given array, for callers that want to avoid allocating a new one
+	 * @param dest array to copy into, must have at least {@link #size()} entries
+	 */
+	public void copyValueArray(double[] dest)
+	{
+		System.arraycopy(valueArray, 0, dest, 0, valueArray.length);
+	}
+
 	
 	public double[] toComparisonValueArray() {
 		if(isDirty) cleanUp();
@@ -530,7 +539,10 @@ public class ParameterConfiguration implements Map<String, String>, Serializable
 	}
 	
 	/**
-	 * Two instances are equal if they come from the same configuration space and their active parameters have the same values
+	 * Two instances are equal if they come from the same configuration space, their active parameters have the same values
+	 * and they have the same {@link #getFingerprint() fingerprint} (which only tells apart values that are within the tolerance when they round to different floats).
+	 * <p>
+	 * When both configurations have been interned in the same configuration space this just compares their IDs.
 	 * 
 	 * <b>Note:</b> Integer value parameters will fail this test.
 	 * 
@@ -548,28 +560,64 @@ public class ParameterConfiguration implements Map<String, String>, Serializable
 			if(isDirty) cleanUp();
 			if(opc.isDirty) opc.cleanUp();
 			
-			if(!configSpace.equals(opc.configSpace)) return false;
-			
-			
-			for(int i=0; i < valueArrayForComparsion.length; i++)
+			ParameterConfigurationTable table = internedIn;
+			if(table != null && table == opc.internedIn)
 			{
-
-				if(Math.abs(valueArrayForComparsion[i] - opc.valueArrayForComparsion[i]) > EPSILON)
-				{
-					return false;
-				}
+				return internedID == opc.internedID;
 			}
 			
-			return true;
+			if(configSpace != opc.configSpace && !configSpace.equals(opc.configSpace)) return false;
+			
+			if(fingerprint != opc.fingerprint) return false;
+			
+			return equalValues(opc);
 		} else
 		{
 			return false;
 		}
 	}
 	
+	/**
+	 * Compares the active parameter values of two clean configurations
+	 */
+	boolean equalValues(ParameterConfiguration opc)
+	{
+		for(int i=0; i < valueArrayForComparsion.length; i++)
+		{
+
+			if(Math.abs(valueArrayForComparsion[i] - opc.valueArrayForComparsion[i]) > EPSILON)
+			{
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
 	volatile boolean hashSet = false;
 	int lastHash = 0;
 	
+	/**
+	 * 64-bit hash of the active parameter values, computed with the hash code.
+	 * <p>
+	 * Not serialized, so that configurations saved before it existed compare equal to new ones, see {@link #readObject(ObjectInputStream)}
+	 */
+	private transient volatile long fingerprint;
+	
+	/**
+	 * ID in the configuration table of our space, only valid while {@link #internedIn} is set
+	 */
+	private volatile int internedID = -1;
+	
+	/**
+	 * Table the ID is from, <code>null</code> if not interned since the last change (or since being deserialized, as IDs are not valid in another JVM)
+	 */
+	private transient volatile ParameterConfigurationTable internedIn = null;
+	
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	
+	private static final long FNV_PRIME = 0x100000001b3L;
+	
 	@Override
 	public int hashCode()	
 	{ 
@@ -577,19 +625,7 @@ public class ParameterConfiguration implements Map<String, String>, Serializable
 		{
 			if(isDirty) cleanUp();
 			
-			
-			float[] values = new float[valueArrayForComparsion.length];
-			
-			
-			for(int i=0; i < values.length; i++)
-			{
-				values[i] = (float) valueArrayForComparsion[i];
-				
-			}
-			
-			lastHash = Arrays.hashCode(values);
-			
-			hashSet = true;
+			computeHashes();
 		}
 		
 		
@@ -599,6 +635,96 @@ public class ParameterConfiguration implements Map<String, String>, Serializable
 		
 	}
 	
+	/**
+	 * Computes the hash code, which is the same as {@link Arrays#hashCode(float[])} of the comparison values, and the fingerprint in one pass without allocating
+	 */
+	private void computeHashes()
+	{
+		int hash = 1;
+		long fp = FNV_OFFSET_BASIS;
+		for(int i=0; i < valueArrayForComparsion.length; i++)
+		{
+			int bits = Float.floatToIntBits((float) valueArrayForComparsion[i]);
+			hash = 31 * hash + bits;
+			fp = (fp ^ (bits & 0xffffffffL)) * FNV_PRIME;
+		}
+		
+		//Final avalanche so the fingerprint spreads over all 64 bits
+		fp ^= (fp >>> 33);
+		fp *= 0xff51afd7ed558ccdL;
+		fp ^= (fp >>> 33);
+		
+		lastHash = hash;
+		fingerprint = fp;
+		hashSet = true;
+	}
+	
+	/**
+	 * Recomputes the fingerprint, which is not serialized
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		if(!isDirty)
+		{
+			computeHashes();
+		}
+	}
+	
+	/**
+	 * Returns a 64-bit fingerprint of the active parameter values, equal configurations always have the same fingerprint
+	 * @return fingerprint of this configuration
+	 */
+	public long getFingerprint()
+	{
+		if(isDirty || !hashSet)
+		{
+			hashCode();
+		}
+		return fingerprint;
+	}
+	
+	/**
+	 * Returns the ID of this configuration in the {@link ParameterConfigurationSpace#getConfigurationTable() configuration table} of its space, interning it if needed.
+	 * <p>
+	 * The ID is stable for the lifetime of the configuration space and shared by all equal configurations, so it can be used as a primitive key.
+	 * Once two configurations of the same space are interned, comparing them for equality only compares their IDs.
+	 * 
+	 * @return ID of this configuration
+	 */
+	public int getInternedID()
+	{
+		if(isDirty) cleanUp();
+		
+		ParameterConfigurationTable table = configSpace.getConfigurationTable();
+		if(internedIn == table)
+		{
+			return internedID;
+		}
+		
+		int id = table.intern(this, getFingerprint());
+		setInternedID(table, id);
+		return id;
+	}
+	
+	/**
+	 * @return the ID cached for the given table, or <code>-1</code> if this configuration was not interned in it since the last change
+	 */
+	int getCachedInternedID(ParameterConfigurationTable table)
+	{
+		if(isDirty || internedIn != table)
+		{
+			return -1;
+		}
+		return internedID;
+	}
+
+	void setInternedID(ParameterConfigurationTable table, int id)
+	{
+		internedID = id;
+		internedIn = table;
+	}
+	
 	
 	/**
 	 * Builds a formatted string consisting of the active parameters 
@@ -834,49 +960,15 @@ public class ParameterConfiguration implements Map<String, String>, Serializable
 	 */
 	public List<ParameterConfiguration> getNeighbourhood(Random rand, int numNumericalNeighbours)
 	{
-		Set<String> activeParams = getActiveParameters();
-		List<ParameterConfiguration> neighbours = new ArrayList<ParameterConfiguration>(numberOfNeighboursExcludingForbidden(numNumericalNeighbours, activeParams));
-		
-		/*
-		 * i is the number of parameters
-		 * j is the number of neighbours
-		 */
-		for(int i=0; i < configSpace.getParameterNamesInAuthorativeOrder().size(); i++)
-		{
-			double[] newValueArray = valueArray.clone();
-			
-			int failuresForParameter = 0;
-			for(int j=1; j <= numberOfNeighboursForParameter(i,activeParams.contains(configSpace.getParameterNamesInAuthorativeOrder().get(i)),numNumericalNeighbours); j++)
-			{
-				newValueArray[i] = getNeighbourForParameter(i,j,rand);
-			
-				
-				ParameterConfiguration config = new ParameterConfiguration(configSpace, newValueArray.clone(), categoricalSize, parameterDomainContinuous, paramKeyToValueArrayIndexMap);
-				
-				if(config.isForbiddenParameterConfiguration()) 
-				{	
-					
-					failuresForParameter++;
-					if(failuresForParameter < 100 && this.parameterDomainContinuous[i])
-					{
-						j--;
-					} 
-					continue;
-				
-				}
-				
-				neighbours.add(config);
-			}
-		}
+		NeighbourhoodCursor cursor = configSpace.getNeighbourhoodCursor(numNumericalNeighbours);
+		int size = cursor.reset(this, rand);
 		
-		
-		if(neighbours.size() > numberOfNeighboursExcludingForbidden(numNumericalNeighbours, activeParams))
+		List<ParameterConfiguration> neighbours = new ArrayList<ParameterConfiguration>(size);
+		for(int i=0; i < size; i++)
 		{
-			throw new IllegalStateException("Expected " + numberOfNeighboursExcludingForbidden(numNumericalNeighbours, activeParams) + " neighbours (should be greater than or equal to) but got " + neighbours.size());
+			neighbours.add(cursor.materialize(i));
 		}
 		return neighbours;
-		
-		
 	}
 	
 	/**
@@ -914,98 +1006,6 @@ public class ParameterConfiguration implements Map<String, String>, Serializable
 	}
 	
 	
-	/**
-	 * Returns the number of neighbours for this configuration
-	 * @return number of neighbours that this configuration has
-	 */
-	private int numberOfNeighboursExcludingForbidden(int numNumericalNeighbours,Set<String> activeParams)
-	{
-		int neighbours = 0;
-		
-		 
-		
-		for(int i=0; i < configSpace.getParameterNamesInAuthorativeOrder().size(); i++)
-		{
-			
-			neighbours += numberOfNeighboursForParameter(i, activeParams.contains(configSpace.getParameterNamesInAuthorativeOrder().get(i)), numNumericalNeighbours);
-		}
-		return neighbours;
-		
-	}
-	
-	/**
-	 * Returns the number of Neighbours for the specific index into the param Array
-	 * @param valueArrayIndex	index into the valueArray for this parameter
-	 * @param isParameterActive boolean for if this parameter is active
-	 * @return 0 if inactive, number of neighbours if active
-	 */
-	private int numberOfNeighboursForParameter(int valueArrayIndex, boolean isParameterActive, int neighboursForNumericalParameters)
-	{
-		if(isParameterActive == false) return 0;
-		
-		if(configSpace.searchSubspaceActive[valueArrayIndex]) return 0;
-		
-		if(parameterDomainContinuous[valueArrayIndex])
-		{
-		  return neighboursForNumericalParameters;
-		} else
-		{
-		  return categoricalSize[valueArrayIndex] - 1;
-		}
-	}
-	
-	/**
-	 * Returns a neighbour for this configuration in array format
-	 * 
-	 * @param valueArrayIndex   index of the parameter which we are generating a neighbour for
-	 * @param neighbourNumber   number of the neighbour to generate
-	 * @return
-	 */
-	private double getNeighbourForParameter(int valueArrayIndex, int neighbourNumber, Random rand)
-	{
-		if(parameterDomainContinuous[valueArrayIndex])
-		{ 
-			//Continuous arrays sample from a
-			//normal distrbution with mean valueArray[i] and stdDeviation 0.2
-			//0.2 is simply a magic constant
-			double mean = valueArray[valueArrayIndex];
-			
-			
-			
-			while(true)
-			{
-				double randValue = 0.2*rand.nextGaussian() + mean;
-				
-				if(randValue >= 0 && randValue <= 1)
-				{
-					
-					NormalizedRange nr = configSpace.normalizedRangesByIndex[valueArrayIndex]; 
-					randValue = nr.normalizeValue(nr.unnormalizeValue(randValue));
-					
-					return randValue;
-				}
-			}
-		}  else
-		{ 
-			//For categorical parameters we return the number of the neighbour 
-			//up to our value in the parameter, and then 1 more than this after
-			
-			//e.g. if our value was 2 we would return
-			//  0 => 0
-			//  1 => 1 
-	        //  2 => 3
-			//  3 => 4
-			//  ...
-			if(neighbourNumber < valueArray[valueArrayIndex])
-			{
-				return neighbourNumber;
-			} else
-			{
-				return neighbourNumber+1;
-			}
-		}
-	}
-	
 	//private volatile Set<String> activeParametersSet;
 	
 	/**
@@ -1014,41 +1014,16 @@ public class ParameterConfiguration implements Map<String, String>, Serializable
 	 */
 	private void cleanUp()
 	{	
+		configSpace.computeActiveParameters(valueArray, activeParams);
 		
-		Set<String> activeParams = _getActiveParameters();
-		
-		for(Entry<String, Integer> keyVal : this.paramKeyToValueArrayIndexMap.entrySet())
+		for(int i=0; i < valueArray.length; i++)
 		{
-			
-			
-			this.activeParams[keyVal.getValue()] = activeParams.contains(keyVal.getKey()); 
-			
-			
-			if(this.activeParams[keyVal.getValue()])
-			{
-				if(this.parameterDomainContinuous[keyVal.getValue()])
-				{
-					this.valueArrayForComparsion[keyVal.getValue()] = valueArray[keyVal.getValue()];
-				} else
-				{
-					this.valueArrayForComparsion[keyVal.getValue()] = valueArray[keyVal.getValue()];
-				}
-				
-
-			} else
-			{
-				this.valueArrayForComparsion[keyVal.getValue()] = Double.NaN;
-			}
+			this.valueArrayForComparsion[i] = (this.activeParams[i]) ? valueArray[i] : Double.NaN;
 		}
+		computeHashes();
+		internedIn = null;
 		myID = idPool.incrementAndGet();
-		//activeParametersSet = Collections.unmodifiableSet(activeParams);
 		isDirty = false;
-		
-		
-		if(!activeParams.equals(getActiveParameters()))
-		{
-			throw new IllegalStateException("Expected our internal set representation to match the array set implementation" + activeParams + " vs " + getActiveParameters());
-		}
 	}
 	
 	
@@ -1068,89 +1043,6 @@ public class ParameterConfiguration implements Map<String, String>, Serializable
 		
 	}
 	
-	/**
-	 * Since the ConfigSpace already now an order of parameters to check active status, 
-	 * we simply iterate over it and check the conditions
-	 * @return
-	 */
-	private Set<String> _getActiveParameters()
-	{
-		Set<String> activeParams= new TreeSet<String>();
-		Map<Integer, ArrayList<ArrayList<Conditional>>> conds = configSpace.getNameConditionsMap();
-		List<String> param_names = configSpace.getParameterNamesInAuthorativeOrder();
-		for(String param : configSpace.getActiveCheckOrderString()){
-			
-			Integer param_id = configSpace.getParamKeyIndexMap().get(param);
-			
-			//if no conditions on this parameter, it is always active
-			if (!conds.containsKey(param_id)) {
-				activeParams.add(param);
-				continue;
-			}
-			
-			ArrayList<ArrayList<Conditional>> clauses = conds.get(param_id);
-			
-			//only one of the clauses has to be true
-			for (ArrayList<Conditional> clause : clauses){
-				boolean all_satisfied = true;
-				// all conditions in a clause have to be satisfied
-				for (Conditional cond: clause){
-					Integer parent_id = cond.parent_ID;
-					String parent_name = param_names.get(parent_id);
-					String parent_value_string = get(parent_name);
-					double encodedParentPresentValue;
-
-					// check whether parent is active; if not, child is also not active
-					if (! activeParams.contains(parent_name)){
-						all_satisfied = false;
-						break;
-					}
-					
-					//translate value
-					
-					String tmpParentValueString = parent_value_string;
-					switch(configSpace.getParameterTypes().get(parent_name))
-					{
-					
-					case ORDINAL:
-						tmpParentValueString =  String.valueOf(configSpace.getCategoricalValueMap().get(parent_name).get(parent_value_string));
-						
-					case INTEGER:
-					case REAL:
-						encodedParentPresentValue = Double.parseDouble(tmpParentValueString);
-						
-						break;
-					case CATEGORICAL:
-						
-						encodedParentPresentValue = (double) configSpace.getCategoricalValueMap().get(parent_name).get(parent_value_string);
-					
-						break;
-					default:
-						throw new IllegalStateException("Unknown Type");
-					}
-					
-
-					// check condition
-					
-					
-					boolean satisfied = cond.op.conditionalClauseMatch(encodedParentPresentValue, cond.values);
-					
-					all_satisfied = all_satisfied & satisfied;
-				
-					if (!all_satisfied){ //if one condition is not satisfied, the complete clause is falsified; no further check necessary
-						break;
-					}
-				}
-				if (all_satisfied) {
-					activeParams.add(param);
-					break;
-				}
-			}
-		}
-		
-		return activeParams;
-	}
-	
 	
 	
 	private static final AtomicInteger idPool = new AtomicInteger(0);
@@ -1190,133 +1082,13 @@ public class ParameterConfiguration implements Map<String, String>, Serializable
 	 */
 	public boolean isForbiddenParameterConfiguration()
 	{
-		
-		if(configSpace.isForbiddenParameterConfigurationByClassicClauses(valueArray))
+		try 
 		{
-			return true;
-		}
-		
-		if(!configSpace.hasNewForbidden())
-		{
-			return false;
-		} else
+			return configSpace.isForbiddenValueArray(valueArray);
+		} catch(RuntimeException e)
 		{
-			/*for(ExpressionBuilder eb : configSpace.bl)
-			{
-				Expression calc = eb.build();
-				*/
-			
-			
-			
-			List<Expression> expressions = configSpace.tlExpressions.get();
-			if(expressions == null)
-			{
-				expressions = new ArrayList<Expression>();
-				
-				
-				for(ExpressionBuilder builder : configSpace.bl)
-				{
-					Expression exp = null;
-					
-					
-					
-					 
-					StringBuilder errorMessage = new StringBuilder(" Besides the operator and functions listed on http://www.objecthunter.net/exp4j/, the following are supported: ");
-					
-					List<String> operators = new ArrayList<>();
-					for(Operator o : ForbiddenOperators.operators)
-					{
-						operators.add(o.getSymbol());
-					}
-					errorMessage.append(operators);
-					try
-					{
-						  exp = builder.build();
-					} catch(IllegalArgumentException e)
-					{
-						
-						throw new IllegalArgumentException("The following forbidden line seems to be invalid: " + configSpace.expressions.get(builder) + "." + errorMessage, e);
-					}
-					
-					for(Entry<String, Double> ent : configSpace.forbiddenOrdinalAndCategoricalVariableValues.entrySet())
-					{
-						exp.setVariable(ent.getKey(), Double.valueOf(ent.getValue()));
-					}
-					ValidationResult res = exp.validate(false);
-					if(!res.isValid())
-					{
-						throw new IllegalArgumentException("The following forbidden line seems to be invalid: " + configSpace.expressions.get(builder) + " exp4j says:" + res.getErrors() + "." + ( configSpace.expressions.get(builder).indexOf(',') >= 0 ? " Guess: Is the , suppose to be an &&?":"")  + errorMessage );
-					}
-					
-					expressions.add(exp);
-				}
-				
-				configSpace.tlExpressions.set(expressions);
-			}
-			
-			
-		
-			//List<Expression> expressions = configSpace.cl;
-			
-			for(Expression calc : expressions)
-			{
-				
-				
-				int i=0; 
-				
-				//synchronized(calc)
-				{
-				
-					for(String name : configSpace.getParameterNamesInAuthorativeOrder())
-					{
-						if(configSpace.getNormalizedRangeMap().get(name) != null )
-						{
-							//variables.put(name, configSpace.getNormalizedRangeMap().get(name).unnormalizeValue(this.valueArray[i]));
-							
-							double d = configSpace.getNormalizedRangeMap().get(name).unnormalizeValue(this.valueArray[i]);
-							if(configSpace.getParameterTypes().get(name) == ParameterType.ORDINAL || configSpace.getParameterTypes().get(name) == ParameterType.CATEGORICAL)
-							{
-								String value = configSpace.getValuesMap().get(name).get((int) d);
-								
-								calc.setVariable(name, Double.valueOf(configSpace.forbiddenParameterConstants.get(value)));
-							} else
-							{
-								calc.setVariable(name, d);
-							}
-							
-						} else
-						{
-							//variables.put(name, Double.valueOf(this.get(name)));
-							
-						
-								
-								
-							calc.setVariable(name,Double.valueOf(configSpace.forbiddenParameterConstants.get(this.get(name))));
-						}
-						i++;
-					}
-					
-					try 
-					{
-						if (calc.evaluate() == 0)
-						{
-							continue;
-						} else
-						{
-							return true;
-						}
-					} catch(RuntimeException e)
-					{
-						throw new IllegalArgumentException("Error occured evaluating configuration for forbiddenness",e);
-					}
-				} 
-				
-			}
-			
-			return false;
+			throw new IllegalArgumentException("Error occured evaluating configuration for forbiddenness",e);
 		}
-		
-
 	}
 
 
@@ -15,7 +15,6 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -37,7 +36,11 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import net.jcip.annotations.Immutable;
 import net.objecthunter.exp4j.Expression;
 import net.objecthunter.exp4j.ExpressionBuilder;
+import net.objecthunter.exp4j.ValidationResult;
+import net.objecthunter.exp4j.function.Function;
 import net.objecthunter.exp4j.operator.Operator;
+import net.objecthunter.exp4j.shuntingyard.ShuntingYard;
+import net.objecthunter.exp4j.tokenizer.Token;
 import ca.ubc.cs.beta.aeatk.json.JSONConverter;
 import ca.ubc.cs.beta.aeatk.json.serializers.ParameterConfigurationSpaceJson;
 import ca.ubc.cs.beta.aeatk.misc.java.io.FileReaderNoException.FileReaderNoExceptionThrown;
@@ -239,6 +242,11 @@ public class ParameterConfigurationSpace implements Serializable {
 	 * Array representation of the ranges by index 
 	 */
 	final NormalizedRange[] normalizedRangesByIndex;
+	
+	/**
+	 * Conditions compiled so active parameters can be determined from the value array alone
+	 */
+	private final ActiveParameterProgram activeParameterProgram;
 
 	/**
 	 *	operators in conditionals; EQ ==, NEQ !=, LE <, GR >, IN "in {...}" 
@@ -307,6 +315,16 @@ public class ParameterConfigurationSpace implements Serializable {
 		return Collections.unmodifiableList(activeCheckOrderString);
 	}
 	
+	/**
+	 * Determines which parameters of a configuration are active
+	 * @param valueArray 	value array of the configuration
+	 * @param active 		array that receives whether each parameter is active, indexed like the value array
+	 */
+	void computeActiveParameters(double[] valueArray, boolean[] active)
+	{
+		activeParameterProgram.computeActive(valueArray, active);
+	}
+	
 	protected Map<Integer, ArrayList<ArrayList<Conditional>>> getNameConditionsMap(){
 		return Collections.unmodifiableMap(nameConditionsMap);
 	}
@@ -324,11 +342,27 @@ public class ParameterConfigurationSpace implements Serializable {
 	
 	//final List<Expression> cl = new ArrayList<Expression>();
 	
-	final List<ExpressionBuilder> bl = new ArrayList<>();
+	/**
+	 * Advanced forbidden lines in reverse polish notation, and the lines they came from
+	 */
+	private final List<Token[]> advancedForbiddenClauses = new ArrayList<>();
+	
+	private final List<String> advancedForbiddenLines = new ArrayList<>();
 	
-	final Map<ExpressionBuilder, String> expressions = new IdentityHashMap<>();
+	/**
+	 * Classic and advanced forbidden clauses compiled to be evaluated directly on the value array
+	 */
+	private final ForbiddenClauseProgram forbiddenClauseProgram;
 	
-	final ThreadLocal<List<Expression>> tlExpressions = new ThreadLocal<>();
+	/**
+	 * Draws random configurations, see there for the distribution
+	 */
+	private final RandomConfigurationSampler randomConfigurationSampler;
+	
+	/**
+	 * Interned configurations of this space
+	 */
+	private final ParameterConfigurationTable configurationTable = new ParameterConfigurationTable();
 	
 
 	/**
@@ -481,8 +515,12 @@ public class ParameterConfigurationSpace implements Serializable {
 			i++;
 		}
 		
+		this.activeParameterProgram = new ActiveParameterProgram(authorativeParameterNameOrder, activeCheckOrderString, paramKeyIndexMap, nameConditionsMap, paramTypes, normalizedRangesByIndex, getValuesMap(), categoricalValueMap);
+		
 		
 		this.newForbiddenLinesPresent = parseForbiddenLines(forbiddenLines);
+		
+		this.forbiddenClauseProgram = new ForbiddenClauseProgram(authorativeParameterNameOrder, paramTypes, parameterDomainContinuous, contNormalizedRanges, getValuesMap(), forbiddenParameterValuesList, advancedForbiddenClauses, advancedForbiddenLines, forbiddenParameterConstants, forbiddenOrdinalAndCategoricalVariableValues);
 	
 	
 		this.defaultConfigurationValueArray = _getDefaultConfiguration().toValueArray();
@@ -532,6 +570,7 @@ public class ParameterConfigurationSpace implements Serializable {
 
 		this.searchSubspace = Collections.unmodifiableMap(searchSubspaceMap);
 
+		this.randomConfigurationSampler = new RandomConfigurationSampler(activeParameterProgram, forbiddenClauseProgram, searchSubspaceActive, searchSubspaceValues, parameterDomainContinuous, categoricalSize, normalizedRangesByIndex, defaultConfigurationValueArray);
 	}
 
 	/**
@@ -1288,9 +1327,34 @@ public class ParameterConfigurationSpace implements Serializable {
 				
 				eb.operator(ForbiddenOperators.operators);
 				
-				bl.add(eb);
+				StringBuilder errorMessage = new StringBuilder(" Besides the operator and functions listed on http://www.objecthunter.net/exp4j/, the following are supported: ");
+				
+				Map<String, Operator> operators = new HashMap<>();
+				for(Operator o : ForbiddenOperators.operators)
+				{
+					operators.put(o.getSymbol(), o);
+				}
+				errorMessage.append(operators.keySet());
+				
+				Expression exp;
+				try
+				{
+					exp = eb.build();
+				} catch(IllegalArgumentException e)
+				{
+					throw new IllegalArgumentException("The following forbidden line seems to be invalid: " + line + "." + errorMessage, e);
+				}
+				
+				ValidationResult res = exp.validate(false);
+				if(!res.isValid())
+				{
+					throw new IllegalArgumentException("The following forbidden line seems to be invalid: " + line + " exp4j says:" + res.getErrors() + "." + ( line.indexOf(',') >= 0 ? " Guess: Is the , suppose to be an &&?":"")  + errorMessage );
+				}
 				
-				expressions.put(eb, line);
+				//Same variables ExpressionBuilder.build() declares, so the tokens are what exp4j would evaluate
+				exp4jVariables.addAll(Arrays.asList("pi", "\u03c0", "e", "\u03c6"));
+				advancedForbiddenClauses.add(ShuntingYard.convertToRPN(line, Collections.<String, Function>emptyMap(), operators, exp4jVariables, true));
+				advancedForbiddenLines.add(line);
 				
 			
 			} else
@@ -1749,7 +1813,7 @@ public class ParameterConfigurationSpace implements Serializable {
 	/**
 	 * Generates a random configuration given the supplied random object 
 	 * @param random object we will use to generate the configuration 
- 	 * @return a random member of the configuration space (each parameter (ignoring the subspace) is sampled uniformly at random, and rejected if it's forbidden).
+ 	 * @return a random member of the configuration space (each active parameter (ignoring the subspace) is sampled uniformly at random, inactive ones hold their default, and rejected if it's forbidden).
 	 */
 	public ParameterConfiguration getRandomParameterConfiguration(Random random)
 	{
@@ -1761,7 +1825,7 @@ public class ParameterConfigurationSpace implements Serializable {
 	 * Returns a random instance for the configuration space
 	 * @param random 	a random object we will use to generate the configurations
 	 * @param allowForbiddenParameters  <code>true</code> if we can return parameters that are forbidden, <code>false</code> otherwise.
-	 * @return	a random member of the configuration space (each parameter (ignoring the subspace) is sampled uniformly at random, and rejected if it's forbidden
+	 * @return	a random member of the configuration space (each active parameter (ignoring the subspace) is sampled uniformly at random, inactive ones hold their default, and rejected if it's forbidden
 	 */
 	public ParameterConfiguration getRandomParameterConfiguration(Random random, boolean allowForbiddenParameters)
 	{
@@ -1771,7 +1835,7 @@ public class ParameterConfigurationSpace implements Serializable {
 	/**
 	 * Generates a random configuration given the supplied random object 
 	 * @param random a fast random object we will use to generate the configuration 
- 	 * @return a random member of the configuration space (each parameter (ignoring the subspace) is sampled uniformly at random, and rejected if it's forbidden).
+ 	 * @return a random member of the configuration space (each active parameter (ignoring the subspace) is sampled uniformly at random, inactive ones hold their default, and rejected if it's forbidden).
 	 */
 	public ParameterConfiguration getRandomParameterConfiguration(MersenneTwisterFast random)
 	{
@@ -1783,7 +1847,7 @@ public class ParameterConfigurationSpace implements Serializable {
 	 * Returns a random instance for the configuration space
 	 * @param random 	a fast random object we will use to generate the configurations
 	 * @param allowForbiddenParameters  <code>true</code> if we can return parameters that are forbidden, <code>false</code> otherwise.
-	 * @return	a random member of the configuration space (each parameter (ignoring the subspace) is sampled uniformly at random, and rejected if it's forbidden
+	 * @return	a random member of the configuration space (each active parameter (ignoring the subspace) is sampled uniformly at random, inactive ones hold their default, and rejected if it's forbidden
 	 */
 	public ParameterConfiguration getRandomParameterConfiguration(MersenneTwisterFast random, boolean allowForbiddenParameters)
 	{
@@ -1795,43 +1859,84 @@ public class ParameterConfigurationSpace implements Serializable {
 	 * Returns a random instance for the configuration space
 	 * @param random 	a random object we will use to generate the configurations
 	 * @param allowForbiddenParameters  <code>true</code> if we can return parameters that are forbidden, <code>false</code> otherwise.
-	 * @return	a random member of the configuration space (each parameter (ignoring the subspace) is sampled uniformly at random, and rejected if it's forbidden
+	 * @return	a random member of the configuration space (each active parameter (ignoring the subspace) is sampled uniformly at random, inactive ones hold their default, and rejected if it's forbidden
 	 */
 	private ParameterConfiguration getRandomParameterConfiguration(RandomAdapter random, boolean allowForbiddenParameters)
 	{
 		
 		if(random == null) throw new IllegalArgumentException("Cannot supply null random object ");
 		
-		//fastRand.setSeed(random.nextLong());
 		double[] valueArray = new double[numberOfParameters];
-		
-		for(int j=0; j < 1_000_000; j++)
+		randomConfigurationSampler.sample(valueArray, new boolean[numberOfParameters], random, allowForbiddenParameters);
+		return new ParameterConfiguration(this, valueArray, categoricalSize, parameterDomainContinuous, paramKeyIndexMap);
+	}
+	
+	/**
+	 * Returns the table that gives every distinct configuration of this space a stable int ID
+	 * @return configuration table of this space
+	 */
+	public ParameterConfigurationTable getConfigurationTable()
+	{
+		return configurationTable;
+	}
+	
+	/**
+	 * Creates a cursor that enumerates neighbourhoods into reusable value array rows, see {@link ParameterConfiguration#getNeighbourhood(Random, int)} for the neighbourhood
+	 * 
+	 * @param numNumericalNeighbours 	the number of neighbours numerical parameters should have
+	 * @return a new cursor, which may only be used by one thread
+	 */
+	public NeighbourhoodCursor getNeighbourhoodCursor(int numNumericalNeighbours)
+	{
+		boolean[] isConditionParent = new boolean[numberOfParameters];
+		for(ArrayList<ArrayList<Conditional>> clauses : nameConditionsMap.values())
 		{
-			
-			for(int i=0; i < numberOfParameters; i++)
+			for(ArrayList<Conditional> clause : clauses)
 			{
-				if(searchSubspaceActive[i])
-				{		
-					valueArray[i] = searchSubspaceValues[i];
-				}	else if (parameterDomainContinuous[i])
+				for(Conditional cond : clause)
 				{
-					NormalizedRange nr = this.normalizedRangesByIndex[i]; 
-					valueArray[i] = nr.normalizeValue(nr.unnormalizeValue(random.nextDouble()));
-				
-				} else
-				{
-					valueArray[i] = random.nextInt(categoricalSize[i]) + 1;
+					isConditionParent[cond.parent_ID] = true;
 				}
 			}
-			
-			ParameterConfiguration p = new ParameterConfiguration(this, valueArray, categoricalSize, parameterDomainContinuous, paramKeyIndexMap);
-			if(allowForbiddenParameters || !p.isForbiddenParameterConfiguration())
-			{
-				return p;
-			} 
 		}
+		return new NeighbourhoodCursor(this, numNumericalNeighbours, parameterDomainContinuous, categoricalSize, isConditionParent);
+	}
+	
+	/**
+	 * Fills primitive buffers with the value arrays of random configurations that are not forbidden, without creating any configuration objects.
+	 * <p>
+	 * Active parameters are drawn uniformly and independently in the order of the conditionals, inactive parameters hold their default value and parameters in the
+	 * search subspace their subspace value; a draw is abandoned as soon as a forbidden clause holds on the parameters decided so far.
+	 * 
+	 * @param out		rows that receive the value arrays (indexed like {@link ParameterConfiguration#toValueArray()}), rows that are <code>null</code> or of the wrong length are allocated
+	 * @param n			number of rows to fill
+	 * @param random	a random object we will use to generate the configurations
+	 */
+	public void sampleInto(double[][] out, int n, Random random)
+	{
+		if(random == null) throw new IllegalArgumentException("Cannot supply null random object ");
+		
+		randomConfigurationSampler.sampleInto(out, n, new RandomAdapter(random), false);
+	}
+	
+	/**
+	 * Returns random configurations that are not forbidden, drawn the same way as {@link #sampleInto(double[][], int, Random)}
+	 * 
+	 * @param n			number of configurations
+	 * @param random	a random object we will use to generate the configurations
+	 * @return	list of <code>n</code> random members of the configuration space
+	 */
+	public List<ParameterConfiguration> getRandomParameterConfigurations(int n, Random random)
+	{
+		double[][] valueArrays = new double[n][];
+		sampleInto(valueArrays, n, random);
 		
-		throw new IllegalArgumentException("After 1,000,000 attempts at generating a random configurations we have failed to generate even one that isn't forbidden. It is likely that your forbidden parameter settings are too restrictive. Try excluding smaller regions of the space.");
+		List<ParameterConfiguration> configs = new ArrayList<ParameterConfiguration>(n);
+		for(double[] valueArray : valueArrays)
+		{
+			configs.add(new ParameterConfiguration(this, valueArray, categoricalSize, parameterDomainContinuous, paramKeyIndexMap));
+		}
+		return configs;
 	}
 	
 	/**
@@ -1910,7 +2015,7 @@ public class ParameterConfigurationSpace implements Serializable {
 		//Default cannot be forbidden so there is at least 1 configuration
 		//We don't need to worry about the edge case
 		double configSpaceSize = 1;
-		if(this.forbiddenParameterValuesList.size() > 0 || this.bl.size() > 0)
+		if(!this.forbiddenClauseProgram.isEmpty())
 		{
 			return 1;
 		}
@@ -1957,7 +2062,7 @@ public class ParameterConfigurationSpace implements Serializable {
 	 * @param valueArray value array representation of configuration
 	 * @return ParamConfiguration object that represents the valueArray
 	 */
-	private ParameterConfiguration getConfigurationFromValueArray(double[] valueArray)
+	public ParameterConfiguration getConfigurationFromValueArray(double[] valueArray)
 	{
 		if(valueArray.length != categoricalSize.length)
 		{
@@ -2199,6 +2304,16 @@ public class ParameterConfigurationSpace implements Serializable {
 	}
 
 
+	/**
+	 * Checks the array representation of a configuration to see if it is forbidden by any classic or advanced clause
+	 * @param valueArray 	value array of the configuration
+	 * @return <code>true</code> if the valueArray is forbidden, <code>false</code> otherwise.
+	 */
+	boolean isForbiddenValueArray(double[] valueArray)
+	{
+		return forbiddenClauseProgram.isForbidden(valueArray);
+	}
+	
 	/**
 	 * Checks the array representation of a configuration to see if it is forbidden by classical parameters
 	 * @param valueArray
@@ -2332,7 +2447,7 @@ public class ParameterConfigurationSpace implements Serializable {
 	}
 	
 	
-	private static class RandomAdapter
+	static class RandomAdapter
 	{
 		
 		private MersenneTwisterFast fastRand;
@@ -0,0 +1,154 @@
+package ca.ubc.cs.beta.aeatk.parameterconfigurationspace;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Interns the configurations of a configuration space, giving every distinct configuration a stable int ID.
+ * <p>
+ * Two configurations get the same ID exactly when they are {@link ParameterConfiguration#equals(Object) equal}. IDs are assigned from zero in the order
+ * configurations are first seen and are never reused or forgotten, so they can index arrays or key primitive maps in run histories and caches for as long as
+ * the configuration space is alive. Configurations are found by their 64-bit fingerprint, and only configurations with the same fingerprint are compared value by value.
+ * <p>
+ * Each configuration caches its ID until it is modified, see {@link ParameterConfiguration#getInternedID()}.
+ */
+@ThreadSafe
+public class ParameterConfigurationTable {
+
+	/**
+	 * IDs of the configurations with a given fingerprint, almost always exactly one
+	 */
+	private final Map<Long, int[]> idsByFingerprint = new HashMap<Long, int[]>();
+
+	/**
+	 * Locked copy of the first configuration interned with each ID
+	 */
+	private final List<ParameterConfiguration> configurations = new ArrayList<ParameterConfiguration>();
+
+	ParameterConfigurationTable()
+	{
+
+	}
+
+	/**
+	 * Returns the ID of the configuration, assigning a new one if no equal configuration has been interned before
+	 *
+	 * @param config	configuration to intern
+	 * @param fingerprint	fingerprint of the configuration
+	 * @return ID of the configuration
+	 */
+	synchronized int intern(ParameterConfiguration config, long fingerprint)
+	{
+		int[] ids = idsByFingerprint.get(fingerprint);
+		if(ids != null)
+		{
+			for(int id : ids)
+			{
+				if(configurations.get(id).equalValues(config))
+				{
+					return id;
+				}
+			}
+		}
+
+		int id = configurations.size();
+		ParameterConfiguration copy = new ParameterConfiguration(config);
+		copy.lock();
+		copy.setInternedID(this, id);
+		configurations.add(copy);
+
+		if(ids == null)
+		{
+			idsByFingerprint.put(fingerprint, new int[] { id });
+		} else
+		{
+			int[] newIds = new int[ids.length + 1];
+			System.arraycopy(ids, 0, newIds, 0, ids.length);
+			newIds[ids.length] = id;
+			idsByFingerprint.put(fingerprint, newIds);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the ID of the configuration in this table, interning it if needed.
+	 * <p>
+	 * Unlike {@link ParameterConfiguration#getInternedID()} this also accepts configurations of another (equal) configuration space, whose IDs are not cached.
+	 *
+	 * @param config	configuration to intern
+	 * @return ID of the configuration
+	 */
+	public int getID(ParameterConfiguration config)
+	{
+		int id = config.getCachedInternedID(this);
+		if(id >= 0)
+		{
+			return id;
+		}
+
+		if(config.getParameterConfigurationSpace().getConfigurationTable() == this)
+		{
+			return config.getInternedID();
+		}
+		return intern(config, config.getFingerprint());
+	}
+
+	/**
+	 * Returns the ID of an equal configuration interned before, without interning the configuration
+	 *
+	 * @param config	configuration to look up
+	 * @return ID of the configuration, or <code>-1</code> if no equal configuration has been interned
+	 */
+	public int findID(ParameterConfiguration config)
+	{
+		int id = config.getCachedInternedID(this);
+		if(id >= 0)
+		{
+			return id;
+		}
+
+		long fingerprint = config.getFingerprint();
+		synchronized(this)
+		{
+			int[] ids = idsByFingerprint.get(fingerprint);
+			if(ids != null)
+			{
+				for(int candidate : ids)
+				{
+					if(configurations.get(candidate).equalValues(config))
+					{
+						return candidate;
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the configuration interned with the given ID
+	 *
+	 * @param id	ID of the configuration
+	 * @return a locked configuration equal to every configuration with this ID
+	 */
+	public synchronized ParameterConfiguration getConfiguration(int id)
+	{
+		if(id < 0 || id >= configurations.size())
+		{
+			throw new IllegalArgumentException("No configuration has been interned with ID " + id);
+		}
+		return configurations.get(id);
+	}
+
+	/**
+	 * @return number of distinct configurations interned so far, which is also the next ID to be assigned
+	 */
+	public synchronized int size()
+	{
+		return configurations.size();
+	}
+}
@@ -0,0 +1,202 @@
+package ca.ubc.cs.beta.aeatk.parameterconfigurationspace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jcip.annotations.Immutable;
+
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace.RandomAdapter;
+
+/**
+ * Draws random value arrays from a configuration space, deciding parameters in active check order and rejecting a draw as soon as a forbidden clause holds.
+ * <p>
+ * <b>Distribution:</b> every active parameter that is not fixed by the search subspace is drawn independently and uniformly: continuous
+ * parameters uniformly on the normalized range (then rounded to a value the range allows, for integer and log ranges), categorical parameters
+ * uniformly over their values. Inactive parameters are not drawn and hold their default value, parameters in the search subspace hold their
+ * subspace value. Accepted value arrays follow this distribution conditioned on no forbidden clause holding.
+ * <p>
+ * A forbidden clause is checked right after the last parameter it reads has been decided, and if it holds the draw starts over from the first parameter.
+ * Since whether a draw is rejected only depends on the values drawn so far, stopping early does not change the distribution of accepted draws.
+ * Note that forbidden clauses on inactive parameters see the default value of those parameters.
+ * <p>
+ * The sampler holds no state between draws, so one instance is shared by all threads.
+ */
+@Immutable
+final class RandomConfigurationSampler {
+
+	static final int MAXIMUM_ATTEMPTS = 1_000_000;
+
+	private final ActiveParameterProgram activeParameterProgram;
+
+	private final ForbiddenClauseProgram forbiddenClauseProgram;
+
+	/**
+	 * Forbidden clauses that can be checked once step <code>i</code> has been decided
+	 */
+	private final int[][] stepClauses;
+
+	/**
+	 * Forbidden clauses that do not read any parameter
+	 */
+	private final int[] constantClauses;
+
+	private final boolean[] searchSubspaceActive;
+
+	private final double[] searchSubspaceValues;
+
+	private final boolean[] parameterDomainContinuous;
+
+	private final int[] categoricalSize;
+
+	private final NormalizedRange[] ranges;
+
+	private final double[] defaultValueArray;
+
+	RandomConfigurationSampler(ActiveParameterProgram activeParameterProgram, ForbiddenClauseProgram forbiddenClauseProgram, boolean[] searchSubspaceActive, double[] searchSubspaceValues, boolean[] parameterDomainContinuous, int[] categoricalSize, NormalizedRange[] ranges, double[] defaultValueArray)
+	{
+		this.activeParameterProgram = activeParameterProgram;
+		this.forbiddenClauseProgram = forbiddenClauseProgram;
+		this.searchSubspaceActive = searchSubspaceActive.clone();
+		this.searchSubspaceValues = searchSubspaceValues.clone();
+		this.parameterDomainContinuous = parameterDomainContinuous.clone();
+		this.categoricalSize = categoricalSize.clone();
+		this.ranges = ranges.clone();
+		this.defaultValueArray = defaultValueArray.clone();
+
+		int numberOfSteps = activeParameterProgram.numberOfSteps();
+		int[] stepOfParameter = new int[numberOfSteps];
+		for(int step=0; step < numberOfSteps; step++)
+		{
+			stepOfParameter[activeParameterProgram.parameterAt(step)] = step;
+		}
+
+		List<List<Integer>> clausesByStep = new ArrayList<List<Integer>>(numberOfSteps);
+		for(int step=0; step < numberOfSteps; step++)
+		{
+			clausesByStep.add(new ArrayList<Integer>());
+		}
+		List<Integer> constants = new ArrayList<Integer>();
+		for(int clause=0; clause < forbiddenClauseProgram.numberOfClauses(); clause++)
+		{
+			int lastStep = -1;
+			for(int parameter : forbiddenClauseProgram.getParametersOfClause(clause))
+			{
+				lastStep = Math.max(lastStep, stepOfParameter[parameter]);
+			}
+
+			if(lastStep < 0)
+			{
+				constants.add(clause);
+			} else
+			{
+				clausesByStep.get(lastStep).add(clause);
+			}
+		}
+
+		this.stepClauses = new int[numberOfSteps][];
+		for(int step=0; step < numberOfSteps; step++)
+		{
+			stepClauses[step] = toArray(clausesByStep.get(step));
+		}
+		this.constantClauses = toArray(constants);
+	}
+
+	private static int[] toArray(List<Integer> list)
+	{
+		int[] array = new int[list.size()];
+		for(int i=0; i < array.length; i++)
+		{
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * Fills the first <code>n</code> rows of <code>out</code> with random value arrays
+	 *
+	 * @param out						rows that receive the value arrays, rows that are <code>null</code> or of the wrong length are allocated
+	 * @param n							number of rows to fill
+	 * @param random					source of randomness
+	 * @param allowForbiddenParameters	<code>true</code> if forbidden value arrays may be returned
+	 */
+	void sampleInto(double[][] out, int n, RandomAdapter random, boolean allowForbiddenParameters)
+	{
+		if(n > out.length)
+		{
+			throw new IllegalArgumentException("Cannot sample " + n + " configurations into " + out.length + " rows");
+		}
+
+		boolean[] active = new boolean[defaultValueArray.length];
+		for(int i=0; i < n; i++)
+		{
+			if(out[i] == null || out[i].length != defaultValueArray.length)
+			{
+				out[i] = new double[defaultValueArray.length];
+			}
+			sample(out[i], active, random, allowForbiddenParameters);
+		}
+	}
+
+	/**
+	 * Draws a single value array
+	 *
+	 * @param valueArray				array that receives the value array, every entry is written
+	 * @param active					scratch array of the same length
+	 * @param random					source of randomness
+	 * @param allowForbiddenParameters	<code>true</code> if a forbidden value array may be returned
+	 */
+	void sample(double[] valueArray, boolean[] active, RandomAdapter random, boolean allowForbiddenParameters)
+	{
+		if(!allowForbiddenParameters)
+		{
+			for(int clause : constantClauses)
+			{
+				if(forbiddenClauseProgram.isForbiddenByClause(clause, valueArray))
+				{
+					throw new IllegalArgumentException("A forbidden clause that does not depend on any parameter forbids every configuration. It is likely that your forbidden parameter settings are too restrictive. Try excluding smaller regions of the space.");
+				}
+			}
+		}
+
+		int numberOfSteps = activeParameterProgram.numberOfSteps();
+
+		attempts:
+		for(int j=0; j < MAXIMUM_ATTEMPTS; j++)
+		{
+			for(int step=0; step < numberOfSteps; step++)
+			{
+				int i = activeParameterProgram.parameterAt(step);
+				active[i] = activeParameterProgram.isActive(step, valueArray, active);
+
+				if(searchSubspaceActive[i])
+				{
+					valueArray[i] = searchSubspaceValues[i];
+				} else if(!active[i])
+				{
+					valueArray[i] = defaultValueArray[i];
+				} else if(parameterDomainContinuous[i])
+				{
+					NormalizedRange nr = ranges[i];
+					valueArray[i] = nr.normalizeValue(nr.unnormalizeValue(random.nextDouble()));
+				} else
+				{
+					valueArray[i] = random.nextInt(categoricalSize[i]) + 1;
+				}
+
+				if(!allowForbiddenParameters)
+				{
+					for(int clause : stepClauses[step])
+					{
+						if(forbiddenClauseProgram.isForbiddenByClause(clause, valueArray))
+						{
+							continue attempts;
+						}
+					}
+				}
+			}
+			return;
+		}
+
+		throw new IllegalArgumentException("After 1,000,000 attempts at generating a random configurations we have failed to generate even one that isn't forbidden. It is likely that your forbidden parameter settings are too restrictive. Try excluding smaller regions of the space.");
+	}
+}
@@ -156,6 +156,20 @@ public class SeedableRandomPool implements Serializable {
 		return random;
 	}
 
+	
+	/**
+	 * Creates a new random object of the same type as the ones in the pool, which is not tracked by the pool.
+	 * <p>
+	 * This is useful to hand out independent streams to work that runs in parallel, by drawing their seeds in a fixed order from a named random object.
+	 * 
+	 * @param seed 	The seed for the new object
+	 * @return	Random object seeded with the given seed
+	 */
+	public Random createRandom(long seed)
+	{
+		return fact.getRandom(seed);
+	}
+
 
 	public synchronized int getSeed(Enum<?> enumeration)
 	{
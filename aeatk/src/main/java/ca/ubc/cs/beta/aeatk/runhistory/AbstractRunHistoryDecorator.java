@@ -111,6 +111,16 @@ public abstract class AbstractRunHistoryDecorator implements RunHistory {
 		return rh.getParameterConfigurationInstancesRanByIndexExcludingRedundant();
 	}
 
+	@Override
+	public double[] getRunResponseValuesExcludingRedundant() {
+		return rh.getRunResponseValuesExcludingRedundant();
+	}
+
+	@Override
+	public boolean[] getCensoredEarlyFlagsExcludingRedundant() {
+		return rh.getCensoredEarlyFlagsExcludingRedundant();
+	}
+
 	@Override
 	public List<ParameterConfiguration> getAllParameterConfigurationsRan() {
 		return rh.getAllParameterConfigurationsRan();
@@ -0,0 +1,991 @@
+package ca.ubc.cs.beta.aeatk.runhistory;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.ExistingAlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunStatus;
+import ca.ubc.cs.beta.aeatk.exceptions.DuplicateRunException;
+import ca.ubc.cs.beta.aeatk.objectives.OverallObjective;
+import ca.ubc.cs.beta.aeatk.objectives.RunObjective;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+
+/**
+ * RunHistory that stores runs in primitive columns instead of overlapping maps of objects.
+ * <p>
+ * Every appended run becomes a row holding the configuration's theta index, an instance index, the seeds, the response value, the cutoff time, the
+ * runtime, run length, quality and wallclock time, the run status, the censored flag and the iteration. The run itself is not kept; the runs
+ * handed out are rebuilt from the row and the configuration with that theta index as {@link ExistingAlgorithmRunResult}s. Theta indexes are
+ * found through the configurations' interned IDs, see {@link ThetaIndexes}. Runs excluding redundant ones are a column of row numbers, one slot per
+ * (configuration, instance, seed) key found through an open addressing table over the rows, so no key objects are created. Each configuration
+ * keeps the rows and slots of its runs as int lists and an {@link EmpiricalCostAggregate}. The maps and sets returned by the {@link RunHistory}
+ * methods are built from the columns when asked for, and the lists of runs are views over them.
+ * <p>
+ * Model building can take the theta / instance index matrix, the response values and the censored flags directly from the columns, see
+ * {@link #getRunResponseValuesExcludingRedundant()} and {@link #getCensoredEarlyFlagsExcludingRedundant()}.
+ * <p>
+ * Behaves like {@link NewRunHistory}, except that the runs excluding redundant ones always agree with the response values: when an early
+ * censored run is superseded by a run that is not censored, the new run replaces it in every list (under the runtime objective NewRunHistory
+ * keeps the censored run in {@link #getAlgorithmRunsExcludingRedundant()}), and a rejected duplicate run leaves no trace in
+ * {@link #getSeedsUsedByInstance(ProblemInstance)}. Like NewRunHistory, a quality run that was raced against the incumbent is a lower bound
+ * that the completed run supersedes.
+ */
+@NotThreadSafe
+public class ColumnarRunHistory implements RunHistory {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final OverallObjective perInstanceObjectiveFunction;
+
+	private final OverallObjective aggregateInstanceObjectiveFunction;
+
+	private final RunObjective runObj;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private int iteration = 0;
+
+	private double totalRuntimeSum = 0;
+
+	private volatile AlgorithmExecutionConfiguration firstExecConfig;
+
+	/**
+	 * Theta indexes of configurations, starting at 1
+	 */
+	private final ThetaIndexes paramConfigurationList = new ThetaIndexes();
+
+	/**
+	 * Configurations in the order they were first run
+	 */
+	private final Set<ParameterConfiguration> configurationsRan = new LinkedHashSet<ParameterConfiguration>();
+
+	/**
+	 * Runs of each configuration, indexed by theta index
+	 */
+	private ConfigurationRuns[] configurationRuns = new ConfigurationRuns[INITIAL_CAPACITY];
+
+	private final Map<ProblemInstance, Integer> instanceIndex = new HashMap<ProblemInstance, Integer>();
+
+	private final Set<ProblemInstance> instancesRan = new LinkedHashSet<ProblemInstance>();
+
+	private final List<ProblemInstance> instances = new ArrayList<ProblemInstance>();
+
+	/**
+	 * Seeds of every run on each instance, indexed by instance index
+	 */
+	private final List<LongList> seedsUsedByInstance = new ArrayList<LongList>();
+
+	/*
+	 * Columns of every run, including redundant ones
+	 */
+	private int rows = 0;
+
+	private int[] rowThetaIdx = new int[INITIAL_CAPACITY];
+
+	private int[] rowInstance = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Result seed of the run, which is the seed of its key
+	 */
+	private long[] rowSeed = new long[INITIAL_CAPACITY];
+
+	/**
+	 * Seed of the problem instance seed pair the run was started with
+	 */
+	private long[] rowRunSeed = new long[INITIAL_CAPACITY];
+
+	private double[] rowCutoff = new double[INITIAL_CAPACITY];
+
+	private double[] rowResponse = new double[INITIAL_CAPACITY];
+
+	private double[] rowRuntime = new double[INITIAL_CAPACITY];
+
+	private double[] rowRunLength = new double[INITIAL_CAPACITY];
+
+	private double[] rowQuality = new double[INITIAL_CAPACITY];
+
+	private double[] rowWallclock = new double[INITIAL_CAPACITY];
+
+	private byte[] rowStatus = new byte[INITIAL_CAPACITY];
+
+	private boolean[] rowCensored = new boolean[INITIAL_CAPACITY];
+
+	private int[] rowIteration = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Additional run data, <code>null</code> where it is empty (which it almost always is)
+	 */
+	private String[] rowAdditionalRunData = new String[INITIAL_CAPACITY];
+
+	/*
+	 * Columns of the runs excluding redundant ones, one slot per configuration, instance and seed in the order they were first run
+	 */
+	private int slots = 0;
+
+	/**
+	 * Row of the run that currently represents the slot
+	 */
+	private int[] slotRow = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Response value of the slot, the largest one if early censored runs were superseded
+	 */
+	private double[] slotResponse = new double[INITIAL_CAPACITY];
+
+	/**
+	 * Whether the last run appended for the slot was censored early
+	 */
+	private boolean[] slotCensored = new boolean[INITIAL_CAPACITY];
+
+	/**
+	 * Open addressing table of slot + 1 (0 is empty), keyed by the theta index, instance index and seed of the slot's row
+	 */
+	private int[] slotTable = new int[2*INITIAL_CAPACITY];
+
+	private static final RunStatus[] statuses = RunStatus.values();
+
+	public ColumnarRunHistory()
+	{
+		this(OverallObjective.MEAN, OverallObjective.MEAN10, RunObjective.RUNTIME);
+	}
+
+	/**
+	 * Creates ColumnarRunHistory object
+	 * @param intraInstanceObjective	intraInstanceObjective to use when calculating costs
+	 * @param interInstanceObjective	interInstanceObjective to use when calculating costs
+	 * @param runObj					run objective to use
+	 */
+	public ColumnarRunHistory(OverallObjective intraInstanceObjective, OverallObjective interInstanceObjective, RunObjective runObj)
+	{
+		if(intraInstanceObjective == null)
+		{
+			throw new IllegalArgumentException("You must supply an intra instance objective");
+		}
+
+		if(interInstanceObjective == null)
+		{
+			throw new IllegalArgumentException("You must supply an interInstanceObjective");
+		}
+
+		if(runObj == null)
+		{
+			throw new IllegalArgumentException("You must supply a run objective");
+		}
+		this.perInstanceObjectiveFunction = intraInstanceObjective;
+		this.aggregateInstanceObjectiveFunction = interInstanceObjective;
+		this.runObj = runObj;
+	}
+
+	@Override
+	public void append(AlgorithmRunResult run) throws DuplicateRunException
+	{
+		if(firstExecConfig == null)
+		{
+			this.firstExecConfig = run.getAlgorithmRunConfiguration().getAlgorithmExecutionConfiguration();
+		} else
+		{
+			if(!this.firstExecConfig.equals(run.getAlgorithmRunConfiguration().getAlgorithmExecutionConfiguration()))
+			{
+				throw new IllegalArgumentException("RunHistory object cannot store runs for different exec configs first was: " + firstExecConfig + " current run was : " + run.getAlgorithmRunConfiguration().getAlgorithmExecutionConfiguration());
+			}
+		}
+
+		if(run.getRunStatus().equals(RunStatus.RUNNING))
+		{
+			throw new IllegalArgumentException("Runs with Run Result RUNNING cannot be saved to a RunHistory object");
+		}
+
+		ParameterConfiguration config = run.getAlgorithmRunConfiguration().getParameterConfiguration();
+		ProblemInstance pi = run.getAlgorithmRunConfiguration().getProblemInstanceSeedPair().getProblemInstance();
+		long seed = run.getResultSeed();
+		double runResult = runObj.getObjective(run);
+		boolean censoredEarly = run.isCensoredEarly();
+
+		int existingThetaIdx = paramConfigurationList.getKey(config);
+		Integer existingInstanceIdx = instanceIndex.get(pi);
+
+		int slot = -1;
+		if(existingThetaIdx > 0 && existingInstanceIdx != null)
+		{
+			slot = findSlot(existingThetaIdx, existingInstanceIdx, seed);
+		}
+
+		if(slot >= 0)
+		{
+			//We already have a run for this configuration, instance and seed, which is only allowed if that run was censored early
+			if(!slotCensored[slot])
+			{
+				throw new DuplicateRunException("Duplicate Run Detected", run);
+			}
+		}
+
+		int thetaIdx = paramConfigurationList.getOrCreateKey(config);
+		int instanceIdx = getOrCreateInstanceIndex(pi);
+		ConfigurationRuns configRuns = getOrCreateConfigurationRuns(thetaIdx);
+		configurationsRan.add(config);
+		instancesRan.add(pi);
+
+		int row = appendRow(thetaIdx, instanceIdx, seed, runResult, run, censoredEarly);
+		configRuns.rows.add(row);
+		seedsUsedByInstance.get(instanceIdx).add(seed);
+		totalRuntimeSum += Math.max(0.1, run.getRuntime());
+
+		if(slot < 0)
+		{
+			slot = appendSlot(row, runResult, censoredEarly);
+			configRuns.slots.add(slot);
+			configRuns.costAggregate.add(pi, runResult);
+		} else
+		{
+			double oldValue = slotResponse[slot];
+			double newValue = (censoredEarly) ? Math.max(oldValue, runResult) : runResult;
+
+			if(!censoredEarly || oldValue < runResult)
+			{
+				slotRow[slot] = row;
+			}
+			slotResponse[slot] = newValue;
+			slotCensored[slot] = censoredEarly;
+
+			if(newValue != oldValue)
+			{
+				configRuns.costAggregate.replace(pi, oldValue, newValue);
+			}
+		}
+	}
+
+	/**
+	 * Returns the response value of every run excluding redundant ones, in the order of {@link #getAlgorithmRunsExcludingRedundant()}
+	 *
+	 * @return response value of each run under the run objective
+	 */
+	@Override
+	public double[] getRunResponseValuesExcludingRedundant()
+	{
+		double[] responseValues = new double[slots];
+		for(int i=0; i < slots; i++)
+		{
+			responseValues[i] = rowResponse[slotRow[i]];
+		}
+		return responseValues;
+	}
+
+	/**
+	 * Returns whether every run excluding redundant ones was censored early, in the order of {@link #getAlgorithmRunsExcludingRedundant()}
+	 *
+	 * @return censored early flag of each run
+	 */
+	@Override
+	public boolean[] getCensoredEarlyFlagsExcludingRedundant()
+	{
+		boolean[] censored = new boolean[slots];
+		for(int i=0; i < slots; i++)
+		{
+			censored[i] = rowCensored[slotRow[i]];
+		}
+		return censored;
+	}
+
+	@Override
+	public int[][] getParameterConfigurationInstancesRanByIndexExcludingRedundant()
+	{
+		int[][] result = new int[slots][2];
+		for(int i=0; i < slots; i++)
+		{
+			int row = slotRow[i];
+			result[i][0] = rowThetaIdx[row];
+			result[i][1] = instances.get(rowInstance[row]).getInstanceID();
+		}
+		return result;
+	}
+
+	@Override
+	public RunObjective getRunObjective() {
+		return runObj;
+	}
+
+	@Override
+	public OverallObjective getOverallObjective() {
+		return perInstanceObjectiveFunction;
+	}
+
+	@Override
+	public void incrementIteration() {
+		iteration++;
+	}
+
+	@Override
+	public int getIteration() {
+		return iteration;
+	}
+
+	@Override
+	public Set<ProblemInstance> getProblemInstancesRan(ParameterConfiguration config)
+	{
+		Set<ProblemInstance> pis = new HashSet<ProblemInstance>();
+		ConfigurationRuns configRuns = getConfigurationRuns(config);
+		if(configRuns != null)
+		{
+			for(int i=0; i < configRuns.slots.size(); i++)
+			{
+				pis.add(instances.get(rowInstance[slotRow[configRuns.slots.get(i)]]));
+			}
+		}
+		return pis;
+	}
+
+	@Override
+	public Set<ProblemInstanceSeedPair> getProblemInstanceSeedPairsRan(ParameterConfiguration config)
+	{
+		Set<ProblemInstanceSeedPair> pispSet = new HashSet<ProblemInstanceSeedPair>();
+		ConfigurationRuns configRuns = getConfigurationRuns(config);
+		if(configRuns != null)
+		{
+			for(int i=0; i < configRuns.slots.size(); i++)
+			{
+				int row = slotRow[configRuns.slots.get(i)];
+				pispSet.add(new ProblemInstanceSeedPair(instances.get(rowInstance[row]), rowSeed[row]));
+			}
+		}
+		return pispSet;
+	}
+
+	@Override
+	public Set<ProblemInstanceSeedPair> getEarlyCensoredProblemInstanceSeedPairs(ParameterConfiguration config)
+	{
+		ConfigurationRuns configRuns = getConfigurationRuns(config);
+		if(configRuns == null)
+		{
+			return Collections.emptySet();
+		}
+
+		Set<ProblemInstanceSeedPair> pispSet = new LinkedHashSet<ProblemInstanceSeedPair>();
+		for(int i=0; i < configRuns.slots.size(); i++)
+		{
+			int slot = configRuns.slots.get(i);
+			if(slotCensored[slot])
+			{
+				int row = slotRow[slot];
+				pispSet.add(new ProblemInstanceSeedPair(instances.get(rowInstance[row]), rowRunSeed[row]));
+			}
+		}
+		return Collections.unmodifiableSet(pispSet);
+	}
+
+	@Override
+	public double getEmpiricalCost(ParameterConfiguration config, Set<ProblemInstance> instanceSet, double cutoffTime)
+	{
+		Map<ProblemInstance, Map<Long, Double>> foo = Collections.emptyMap();
+		return getEmpiricalCost(config, instanceSet, cutoffTime, foo);
+	}
+
+	@Override
+	public double getEmpiricalCost(ParameterConfiguration config, Set<ProblemInstance> instanceSet, double cutoffTime, double minimumResponseValue)
+	{
+		Map<ProblemInstance, Map<Long, Double>> foo = Collections.emptyMap();
+		return getEmpiricalCost(config, instanceSet, cutoffTime, foo, minimumResponseValue);
+	}
+
+	@Override
+	public double getEmpiricalCost(ParameterConfiguration config, Set<ProblemInstance> instanceSet, double cutoffTime, Map<ProblemInstance, Map<Long, Double>> hallucinatedValues)
+	{
+		return getEmpiricalCost(config, instanceSet, cutoffTime, hallucinatedValues, Double.NEGATIVE_INFINITY);
+	}
+
+	@Override
+	public double getEmpiricalCost(ParameterConfiguration config, Set<ProblemInstance> instanceSet, double cutoffTime, Map<ProblemInstance, Map<Long, Double>> hallucinatedValues, double minimumResponseValue)
+	{
+		ConfigurationRuns configRuns = getConfigurationRuns(config);
+		if(hallucinatedValues.isEmpty())
+		{
+			if(configRuns == null)
+			{
+				return Double.MAX_VALUE;
+			}
+			return configRuns.costAggregate.getEmpiricalCost(instanceSet, cutoffTime, minimumResponseValue, perInstanceObjectiveFunction, aggregateInstanceObjectiveFunction);
+		}
+
+		return EmpiricalCostAggregate.getEmpiricalCost(getPerformanceForConfig(config), instanceSet, cutoffTime, hallucinatedValues, minimumResponseValue, perInstanceObjectiveFunction, aggregateInstanceObjectiveFunction);
+	}
+
+	@Override
+	public double getEmpiricalCostLowerBound(ParameterConfiguration config, Set<ProblemInstance> instanceSet, double cutoffTime)
+	{
+		return getEmpiricalCostBound(config, instanceSet, cutoffTime, 0.0, false);
+	}
+
+	@Override
+	public double getEmpiricalCostUpperBound(ParameterConfiguration config, Set<ProblemInstance> instanceSet, double cutoffTime)
+	{
+		return getEmpiricalCostBound(config, instanceSet, cutoffTime, cutoffTime, true);
+	}
+
+	private double getEmpiricalCostBound(ParameterConfiguration config, Set<ProblemInstance> instanceSet, double cutoffTime, double boundValue, boolean upper)
+	{
+		Map<ProblemInstance, Map<Long, Double>> hallucinatedValues = EmpiricalCostAggregate.getBoundValues(getPerformanceForConfig(config), instanceSet, this, getEarlyCensoredProblemInstanceSeedPairs(config), boundValue, upper);
+		return getEmpiricalCost(config, instanceSet, cutoffTime, hallucinatedValues, 0);
+	}
+
+	@Override
+	public double getTotalRunCost() {
+		return totalRuntimeSum;
+	}
+
+	@Override
+	public Set<ProblemInstance> getUniqueInstancesRan() {
+		return Collections.unmodifiableSet(instancesRan);
+	}
+
+	@Override
+	public Set<ParameterConfiguration> getUniqueParamConfigurations() {
+		return Collections.unmodifiableSet(configurationsRan);
+	}
+
+	@Override
+	public List<ParameterConfiguration> getAllParameterConfigurationsRan()
+	{
+		List<ParameterConfiguration> configs = new ArrayList<ParameterConfiguration>(paramConfigurationList.size());
+		for(int i=1; i <= paramConfigurationList.size(); i++)
+		{
+			configs.add(paramConfigurationList.getValue(i));
+		}
+		return configs;
+	}
+
+	@Override
+	public double[][] getAllConfigurationsRanInValueArrayForm()
+	{
+		double[][] configs = new double[paramConfigurationList.size()][];
+		for(int i=1; i <= paramConfigurationList.size(); i++)
+		{
+			configs[i-1] = paramConfigurationList.getValue(i).toValueArray();
+		}
+		return configs;
+	}
+
+	@Override
+	public List<RunData> getAlgorithmRunDataExcludingRedundant()
+	{
+		final int size = slots;
+		return new AbstractList<RunData>()
+		{
+			@Override
+			public RunData get(int index)
+			{
+				checkIndex(index, size);
+				return getRunData(slotRow[index]);
+			}
+
+			@Override
+			public int size()
+			{
+				return size;
+			}
+		};
+	}
+
+	@Override
+	public List<RunData> getAlgorithmRunDataIncludingRedundant()
+	{
+		final int size = rows;
+		return new AbstractList<RunData>()
+		{
+			@Override
+			public RunData get(int index)
+			{
+				checkIndex(index, size);
+				return getRunData(index);
+			}
+
+			@Override
+			public int size()
+			{
+				return size;
+			}
+		};
+	}
+
+	@Override
+	public List<AlgorithmRunResult> getAlgorithmRunsExcludingRedundant()
+	{
+		List<AlgorithmRunResult> runs = new ArrayList<AlgorithmRunResult>(slots);
+		for(int i=0; i < slots; i++)
+		{
+			runs.add(getRun(slotRow[i]));
+		}
+		return runs;
+	}
+
+	@Override
+	public List<AlgorithmRunResult> getAlgorithmRunsIncludingRedundant()
+	{
+		List<AlgorithmRunResult> runs = new ArrayList<AlgorithmRunResult>(rows);
+		for(int i=0; i < rows; i++)
+		{
+			runs.add(getRun(i));
+		}
+		return runs;
+	}
+
+	@Override
+	public int getTotalNumRunsOfConfigExcludingRedundant(ParameterConfiguration config)
+	{
+		ConfigurationRuns configRuns = getConfigurationRuns(config);
+		return (configRuns == null) ? 0 : configRuns.slots.size();
+	}
+
+	@Override
+	public int getTotalNumRunsOfConfigIncludingRedundant(ParameterConfiguration config)
+	{
+		ConfigurationRuns configRuns = getConfigurationRuns(config);
+		return (configRuns == null) ? 0 : configRuns.rows.size();
+	}
+
+	@Override
+	public List<AlgorithmRunResult> getAlgorithmRunsExcludingRedundant(ParameterConfiguration config)
+	{
+		ConfigurationRuns configRuns = getConfigurationRuns(config);
+		if(configRuns == null)
+		{
+			return Collections.emptyList();
+		}
+
+		List<AlgorithmRunResult> runs = new ArrayList<AlgorithmRunResult>(configRuns.slots.size());
+		for(int i=0; i < configRuns.slots.size(); i++)
+		{
+			runs.add(getRun(slotRow[configRuns.slots.get(i)]));
+		}
+		return Collections.unmodifiableList(runs);
+	}
+
+	@Override
+	public List<AlgorithmRunResult> getAlgorithmRunsIncludingRedundant(ParameterConfiguration config)
+	{
+		ConfigurationRuns configRuns = getConfigurationRuns(config);
+		if(configRuns == null)
+		{
+			return Collections.emptyList();
+		}
+
+		List<AlgorithmRunResult> runs = new ArrayList<AlgorithmRunResult>(configRuns.rows.size());
+		for(int i=0; i < configRuns.rows.size(); i++)
+		{
+			runs.add(getRun(configRuns.rows.get(i)));
+		}
+		return Collections.unmodifiableList(runs);
+	}
+
+	@Override
+	public int getThetaIdx(ParameterConfiguration config)
+	{
+		return paramConfigurationList.getKey(config);
+	}
+
+	@Override
+	public int getOrCreateThetaIdx(ParameterConfiguration config) {
+		return paramConfigurationList.getOrCreateKey(config);
+	}
+
+	@Override
+	public int getNumberOfUniqueProblemInstanceSeedPairsForConfiguration(ParameterConfiguration config)
+	{
+		return getTotalNumRunsOfConfigExcludingRedundant(config);
+	}
+
+	@Override
+	public Map<ProblemInstance, LinkedHashMap<Long, Double>> getPerformanceForConfig(ParameterConfiguration config)
+	{
+		ConfigurationRuns configRuns = getConfigurationRuns(config);
+		if(configRuns == null)
+		{
+			return Collections.emptyMap();
+		}
+
+		Map<ProblemInstance, LinkedHashMap<Long, Double>> map = new HashMap<ProblemInstance, LinkedHashMap<Long, Double>>();
+		for(int i=0; i < configRuns.slots.size(); i++)
+		{
+			int slot = configRuns.slots.get(i);
+			int row = slotRow[slot];
+			ProblemInstance pi = instances.get(rowInstance[row]);
+
+			LinkedHashMap<Long, Double> seedToPerformanceMap = map.get(pi);
+			if(seedToPerformanceMap == null)
+			{
+				seedToPerformanceMap = new LinkedHashMap<Long, Double>();
+				map.put(pi, seedToPerformanceMap);
+			}
+			seedToPerformanceMap.put(rowSeed[row], slotResponse[slot]);
+		}
+		return Collections.unmodifiableMap(map);
+	}
+
+	@Override
+	public List<Long> getSeedsUsedByInstance(ProblemInstance pi)
+	{
+		Integer instanceIdx = instanceIndex.get(pi);
+		if(instanceIdx == null)
+		{
+			return Collections.emptyList();
+		}
+
+		final LongList seeds = seedsUsedByInstance.get(instanceIdx);
+		final int size = seeds.size();
+		return new AbstractList<Long>()
+		{
+			@Override
+			public Long get(int index)
+			{
+				checkIndex(index, size);
+				return seeds.get(index);
+			}
+
+			@Override
+			public int size()
+			{
+				return size;
+			}
+		};
+	}
+
+	@Override
+	public AlgorithmRunResult getAlgorithmRunResultForAlgorithmRunConfiguration(AlgorithmRunConfiguration runConfig)
+	{
+		ConfigurationRuns configRuns = getConfigurationRuns(runConfig.getParameterConfiguration());
+		if(configRuns == null)
+		{
+			return null;
+		}
+
+		//Later runs win, as they would in a map keyed by run configuration
+		ProblemInstanceSeedPair pisp = runConfig.getProblemInstanceSeedPair();
+		Integer instanceIdx = instanceIndex.get(pisp.getProblemInstance());
+		if(instanceIdx == null)
+		{
+			return null;
+		}
+
+		for(int i=configRuns.rows.size() - 1; i >= 0; i--)
+		{
+			int row = configRuns.rows.get(i);
+			if(rowInstance[row] == instanceIdx && rowRunSeed[row] == pisp.getSeed() && rowCutoff[row] == runConfig.getCutoffTime())
+			{
+				AlgorithmRunResult run = getRun(row);
+				if(run.getAlgorithmRunConfiguration().equals(runConfig))
+				{
+					return run;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param row	index of the run in {@link #getAlgorithmRunsIncludingRedundant()}
+	 * @return status of the run
+	 */
+	public RunStatus getRunStatus(int row)
+	{
+		checkIndex(row, rows);
+		return statuses[rowStatus[row]];
+	}
+
+	/**
+	 * @param row	index of the run in {@link #getAlgorithmRunsIncludingRedundant()}
+	 * @return runtime of the run
+	 */
+	public double getRuntime(int row)
+	{
+		checkIndex(row, rows);
+		return rowRuntime[row];
+	}
+
+	private RunData getRunData(int row)
+	{
+		return new RunData(rowIteration[row], rowThetaIdx[row], instances.get(rowInstance[row]).getInstanceID(), getRun(row), rowResponse[row], rowCensored[row]);
+	}
+
+	/**
+	 * Rebuilds the run of a row
+	 */
+	private AlgorithmRunResult getRun(int row)
+	{
+		ProblemInstanceSeedPair pisp = new ProblemInstanceSeedPair(instances.get(rowInstance[row]), rowRunSeed[row]);
+		AlgorithmRunConfiguration rc = new AlgorithmRunConfiguration(pisp, rowCutoff[row], paramConfigurationList.getValue(rowThetaIdx[row]), firstExecConfig);
+		String additionalRunData = (rowAdditionalRunData[row] == null) ? "" : rowAdditionalRunData[row];
+		return new ExistingAlgorithmRunResult(rc, statuses[rowStatus[row]], rowRuntime[row], rowRunLength[row], rowQuality[row], rowSeed[row], additionalRunData, rowWallclock[row]);
+	}
+
+	private static void checkIndex(int index, int size)
+	{
+		if(index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+
+	private ConfigurationRuns getConfigurationRuns(ParameterConfiguration config)
+	{
+		int thetaIdx = paramConfigurationList.getKey(config);
+		if(thetaIdx < 0 || thetaIdx >= configurationRuns.length)
+		{
+			return null;
+		}
+		return configurationRuns[thetaIdx];
+	}
+
+	private ConfigurationRuns getOrCreateConfigurationRuns(int thetaIdx)
+	{
+		if(thetaIdx >= configurationRuns.length)
+		{
+			ConfigurationRuns[] newRuns = new ConfigurationRuns[Math.max(thetaIdx + 1, 2*configurationRuns.length)];
+			System.arraycopy(configurationRuns, 0, newRuns, 0, configurationRuns.length);
+			configurationRuns = newRuns;
+		}
+
+		if(configurationRuns[thetaIdx] == null)
+		{
+			configurationRuns[thetaIdx] = new ConfigurationRuns();
+		}
+		return configurationRuns[thetaIdx];
+	}
+
+	private int getOrCreateInstanceIndex(ProblemInstance pi)
+	{
+		Integer idx = instanceIndex.get(pi);
+		if(idx != null)
+		{
+			return idx;
+		}
+
+		int newIdx = instances.size();
+		instances.add(pi);
+		seedsUsedByInstance.add(new LongList());
+		instanceIndex.put(pi, newIdx);
+		return newIdx;
+	}
+
+	private int appendRow(int thetaIdx, int instanceIdx, long seed, double response, AlgorithmRunResult run, boolean censoredEarly)
+	{
+		if(rows == rowThetaIdx.length)
+		{
+			int capacity = 2*rows;
+			rowThetaIdx = grow(rowThetaIdx, capacity);
+			rowInstance = grow(rowInstance, capacity);
+			rowIteration = grow(rowIteration, capacity);
+
+			rowSeed = grow(rowSeed, capacity);
+			rowRunSeed = grow(rowRunSeed, capacity);
+			rowCutoff = grow(rowCutoff, capacity);
+
+			rowResponse = grow(rowResponse, capacity);
+			rowRuntime = grow(rowRuntime, capacity);
+			rowRunLength = grow(rowRunLength, capacity);
+			rowQuality = grow(rowQuality, capacity);
+			rowWallclock = grow(rowWallclock, capacity);
+
+			byte[] newStatus = new byte[capacity];
+			System.arraycopy(rowStatus, 0, newStatus, 0, rows);
+			rowStatus = newStatus;
+
+			rowCensored = grow(rowCensored, capacity);
+
+			String[] newAdditionalRunData = new String[capacity];
+			System.arraycopy(rowAdditionalRunData, 0, newAdditionalRunData, 0, rows);
+			rowAdditionalRunData = newAdditionalRunData;
+		}
+
+		int row = rows++;
+		rowThetaIdx[row] = thetaIdx;
+		rowInstance[row] = instanceIdx;
+		rowSeed[row] = seed;
+		rowRunSeed[row] = run.getAlgorithmRunConfiguration().getProblemInstanceSeedPair().getSeed();
+		rowCutoff[row] = run.getAlgorithmRunConfiguration().getCutoffTime();
+		rowResponse[row] = response;
+		rowRuntime[row] = run.getRuntime();
+		rowRunLength[row] = run.getRunLength();
+		rowQuality[row] = run.getQuality();
+		rowWallclock[row] = run.getWallclockExecutionTime();
+		String additionalRunData = run.getAdditionalRunData();
+		rowAdditionalRunData[row] = (additionalRunData == null || additionalRunData.isEmpty()) ? null : additionalRunData;
+		rowStatus[row] = (byte) run.getRunStatus().ordinal();
+		rowCensored[row] = censoredEarly;
+		rowIteration[row] = iteration;
+		return row;
+	}
+
+	private int appendSlot(int row, double response, boolean censoredEarly)
+	{
+		if(slots == slotRow.length)
+		{
+			int capacity = 2*slots;
+			slotRow = grow(slotRow, capacity);
+			slotResponse = grow(slotResponse, capacity);
+			slotCensored = grow(slotCensored, capacity);
+		}
+
+		int slot = slots++;
+		slotRow[slot] = row;
+		slotResponse[slot] = response;
+		slotCensored[slot] = censoredEarly;
+
+		if(2*slots > slotTable.length)
+		{
+			slotTable = new int[2*slotTable.length];
+			for(int i=0; i < slot; i++)
+			{
+				int r = slotRow[i];
+				slotTable[emptyPosition(rowThetaIdx[r], rowInstance[r], rowSeed[r])] = i + 1;
+			}
+		}
+		slotTable[emptyPosition(rowThetaIdx[row], rowInstance[row], rowSeed[row])] = slot + 1;
+		return slot;
+	}
+
+	/**
+	 * @return slot of the configuration, instance and seed, or -1 if none was run
+	 */
+	private int findSlot(int thetaIdx, int instanceIdx, long seed)
+	{
+		int mask = slotTable.length - 1;
+		for(int pos = hash(thetaIdx, instanceIdx, seed) & mask; slotTable[pos] != 0; pos = (pos + 1) & mask)
+		{
+			int slot = slotTable[pos] - 1;
+			int row = slotRow[slot];
+			if(rowThetaIdx[row] == thetaIdx && rowInstance[row] == instanceIdx && rowSeed[row] == seed)
+			{
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	private int emptyPosition(int thetaIdx, int instanceIdx, long seed)
+	{
+		int mask = slotTable.length - 1;
+		int pos = hash(thetaIdx, instanceIdx, seed) & mask;
+		while(slotTable[pos] != 0)
+		{
+			pos = (pos + 1) & mask;
+		}
+		return pos;
+	}
+
+	private static int hash(int thetaIdx, int instanceIdx, long seed)
+	{
+		long h = (((long) thetaIdx) << 32 | (instanceIdx & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L ^ seed * 0xC2B2AE3D27D4EB4FL;
+		h ^= (h >>> 29);
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private static int[] grow(int[] a, int capacity)
+	{
+		int[] b = new int[capacity];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+	private static long[] grow(long[] a, int capacity)
+	{
+		long[] b = new long[capacity];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+	private static double[] grow(double[] a, int capacity)
+	{
+		double[] b = new double[capacity];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+	private static boolean[] grow(boolean[] a, int capacity)
+	{
+		boolean[] b = new boolean[capacity];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+	/**
+	 * Rows and slots of the runs of a single configuration
+	 */
+	private static final class ConfigurationRuns
+	{
+		private final IntList rows = new IntList();
+
+		private final IntList slots = new IntList();
+
+		private final EmpiricalCostAggregate costAggregate = new EmpiricalCostAggregate();
+	}
+
+	private static final class IntList
+	{
+		private int[] values = new int[4];
+
+		private int size = 0;
+
+		void add(int value)
+		{
+			if(size == values.length)
+			{
+				values = grow(values, 2*size);
+			}
+			values[size++] = value;
+		}
+
+		int get(int index)
+		{
+			return values[index];
+		}
+
+		int size()
+		{
+			return size;
+		}
+	}
+
+	private static final class LongList
+	{
+		private long[] values = new long[4];
+
+		private int size = 0;
+
+		void add(long value)
+		{
+			if(size == values.length)
+			{
+				long[] newValues = new long[2*size];
+				System.arraycopy(values, 0, newValues, 0, size);
+				values = newValues;
+			}
+			values[size++] = value;
+		}
+
+		long get(int index)
+		{
+			return values[index];
+		}
+
+		int size()
+		{
+			return size;
+		}
+	}
+}
@@ -0,0 +1,355 @@
+package ca.ubc.cs.beta.aeatk.runhistory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.jcip.annotations.ThreadSafe;
+
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.exceptions.DuplicateRunException;
+import ca.ubc.cs.beta.aeatk.objectives.OverallObjective;
+import ca.ubc.cs.beta.aeatk.objectives.RunObjective;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+
+/**
+ * Thread safe RunHistory whose reads never block.
+ * <p>
+ * Appends are serialized and applied to a private {@link ColumnarRunHistory}, after which they publish immutable state: a new state for every
+ * configuration that got a run, the seeds of its instance, and the lists of all runs, configurations and instances. Reads only look at published
+ * state, so challengers intensified in parallel compute costs and look up runs while other threads append. Each read is consistent on its own,
+ * compound reads that must agree with each other should use {@link #snapshot()}, which freezes the current state without stopping appends.
+ * <p>
+ * The cost of an append is linear in the number of runs of its configuration, the lists of all runs are only copied when an early censored run
+ * is superseded.
+ * <p>
+ * {@link #readLock()} is still supported for code written against {@link ThreadSafeRunHistory}, it keeps appends out until released.
+ */
+@ThreadSafe
+public class ConcurrentRunHistory extends PublishedRunHistory implements ThreadSafeRunHistory {
+
+	private final ReentrantLock writeLock = new ReentrantLock();
+
+	/**
+	 * Authoritative copy of the runs, only accessed with the write lock held
+	 */
+	private final ColumnarRunHistory store;
+
+	private final ConcurrentHashMap<ParameterConfiguration, ConfigurationState> configurationStates = new ConcurrentHashMap<ParameterConfiguration, ConfigurationState>();
+
+	private final ConcurrentHashMap<ProblemInstance, SeedList> seedLists = new ConcurrentHashMap<ProblemInstance, SeedList>();
+
+	private final ConcurrentHashMap<ParameterConfiguration, Integer> thetaIdxs = new ConcurrentHashMap<ParameterConfiguration, Integer>();
+
+	private volatile GlobalState globalState;
+
+	/*
+	 * Arrays backing the published global state, only written with the write lock held and only past the published counts
+	 */
+	private RunData[] runDataIncludingRedundant = new RunData[64];
+
+	private RunData[] runDataExcludingRedundant = new RunData[64];
+
+	private int excludingRedundantCount = 0;
+
+	private int thetaCount = 0;
+
+	private int configurationsRanCount = 0;
+
+	private int instancesRanCount = 0;
+
+	private ParameterConfiguration[] configurationsRan = new ParameterConfiguration[64];
+
+	private ParameterConfiguration[] configurationsByThetaIdx = new ParameterConfiguration[64];
+
+	private ProblemInstance[] instancesRan = new ProblemInstance[64];
+
+	public ConcurrentRunHistory()
+	{
+		this(OverallObjective.MEAN, OverallObjective.MEAN10, RunObjective.RUNTIME);
+	}
+
+	/**
+	 * Creates ConcurrentRunHistory object
+	 * @param intraInstanceObjective	intraInstanceObjective to use when calculating costs
+	 * @param interInstanceObjective	interInstanceObjective to use when calculating costs
+	 * @param runObj					run objective to use
+	 */
+	public ConcurrentRunHistory(OverallObjective intraInstanceObjective, OverallObjective interInstanceObjective, RunObjective runObj)
+	{
+		super(intraInstanceObjective, interInstanceObjective, runObj);
+		this.store = new ColumnarRunHistory(intraInstanceObjective, interInstanceObjective, runObj);
+		this.globalState = new GlobalState(0, 0, runDataIncludingRedundant, 0, runDataExcludingRedundant, 0, configurationsRan, 0, configurationsByThetaIdx, 0, instancesRan, 0);
+	}
+
+	@Override
+	public void append(AlgorithmRunResult run) throws DuplicateRunException
+	{
+		append(Collections.singletonList(run));
+	}
+
+	@Override
+	public void append(Collection<AlgorithmRunResult> runs) throws DuplicateRunException
+	{
+		writeLock.lock();
+		try {
+			Set<ParameterConfiguration> changedConfigurations = new LinkedHashSet<ParameterConfiguration>();
+			try {
+				for(AlgorithmRunResult run : runs)
+				{
+					store.append(run);
+					changedConfigurations.add(run.getAlgorithmRunConfiguration().getParameterConfiguration());
+					appendToArrays(run);
+				}
+			} finally
+			{
+				//Runs applied before a duplicate are published as well
+				for(ParameterConfiguration config : changedConfigurations)
+				{
+					configurationStates.put(config, new ConfigurationState(store.getAlgorithmRunsIncludingRedundant(config), store.getAlgorithmRunsExcludingRedundant(config), store.getPerformanceForConfig(config), store.getEarlyCensoredProblemInstanceSeedPairs(config)));
+				}
+				publishGlobalState();
+			}
+		} finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public void incrementIteration()
+	{
+		writeLock.lock();
+		try {
+			store.incrementIteration();
+			publishGlobalState();
+		} finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public int getOrCreateThetaIdx(ParameterConfiguration config)
+	{
+		Integer thetaIdx = thetaIdxs.get(config);
+		if(thetaIdx != null)
+		{
+			return thetaIdx;
+		}
+
+		writeLock.lock();
+		try {
+			int newThetaIdx = store.getOrCreateThetaIdx(config);
+			publishThetaIdx(config, newThetaIdx);
+			publishGlobalState();
+			return newThetaIdx;
+		} finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns a read only view of the run history as it is now.
+	 * <p>
+	 * The view does not change as runs are appended afterwards. Taking it holds appends back only while the per configuration and per instance
+	 * states are collected, readers are never held back.
+	 *
+	 * @return run history that cannot be appended to
+	 */
+	public RunHistory snapshot()
+	{
+		writeLock.lock();
+		try {
+			return new Snapshot(perInstanceObjectiveFunction, aggregateInstanceObjectiveFunction, runObj, globalState, new HashMap<ParameterConfiguration, ConfigurationState>(configurationStates), new HashMap<ProblemInstance, SeedList>(seedLists), new HashMap<ParameterConfiguration, Integer>(thetaIdxs));
+		} finally
+		{
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public void readLock() {
+		writeLock.lock();
+	}
+
+	@Override
+	public void releaseReadLock() {
+		writeLock.unlock();
+	}
+
+	@Override
+	GlobalState getGlobalState() {
+		return globalState;
+	}
+
+	@Override
+	ConfigurationState getConfigurationState(ParameterConfiguration config) {
+		return configurationStates.get(config);
+	}
+
+	@Override
+	SeedList getSeedList(ProblemInstance pi) {
+		return seedLists.get(pi);
+	}
+
+	@Override
+	Integer getPublishedThetaIdx(ParameterConfiguration config) {
+		return thetaIdxs.get(config);
+	}
+
+	private void appendToArrays(AlgorithmRunResult run)
+	{
+		ParameterConfiguration config = run.getAlgorithmRunConfiguration().getParameterConfiguration();
+		ProblemInstance pi = run.getAlgorithmRunConfiguration().getProblemInstanceSeedPair().getProblemInstance();
+
+		List<RunData> including = store.getAlgorithmRunDataIncludingRedundant();
+		runDataIncludingRedundant = ensureCapacity(runDataIncludingRedundant, including.size());
+		runDataIncludingRedundant[including.size() - 1] = including.get(including.size() - 1);
+
+		List<RunData> excluding = store.getAlgorithmRunDataExcludingRedundant();
+		if(excluding.size() > excludingRedundantCount)
+		{
+			runDataExcludingRedundant = ensureCapacity(runDataExcludingRedundant, excluding.size());
+			runDataExcludingRedundant[excluding.size() - 1] = excluding.get(excluding.size() - 1);
+		} else
+		{
+			//An early censored run was superseded, published states still point to the old array so it is replaced rather than written to
+			runDataExcludingRedundant = excluding.toArray(new RunData[runDataExcludingRedundant.length]);
+		}
+		excludingRedundantCount = excluding.size();
+
+		//The store only grows these sets with the configuration and instance of the run being appended
+		if(store.getUniqueParamConfigurations().size() > configurationsRanCount)
+		{
+			configurationsRan = ensureCapacity(configurationsRan, configurationsRanCount + 1);
+			configurationsRan[configurationsRanCount++] = config;
+		}
+
+		if(store.getUniqueInstancesRan().size() > instancesRanCount)
+		{
+			instancesRan = ensureCapacity(instancesRan, instancesRanCount + 1);
+			instancesRan[instancesRanCount++] = pi;
+		}
+
+		SeedList seeds = seedLists.get(pi);
+		long[] seedArray = (seeds == null) ? new long[4] : seeds.seeds;
+		int seedCount = (seeds == null) ? 0 : seeds.count;
+		if(seedCount == seedArray.length)
+		{
+			long[] newSeedArray = new long[2*seedCount];
+			System.arraycopy(seedArray, 0, newSeedArray, 0, seedCount);
+			seedArray = newSeedArray;
+		}
+		seedArray[seedCount] = run.getResultSeed();
+		seedLists.put(pi, new SeedList(seedArray, seedCount + 1));
+
+		publishThetaIdx(config, store.getThetaIdx(config));
+	}
+
+	/**
+	 * Theta indexes are handed out consecutively, so a configuration is new exactly when its index is past the ones published
+	 */
+	private void publishThetaIdx(ParameterConfiguration config, int thetaIdx)
+	{
+		if(thetaIdx > thetaCount)
+		{
+			configurationsByThetaIdx = ensureCapacity(configurationsByThetaIdx, thetaIdx);
+			configurationsByThetaIdx[thetaIdx - 1] = config;
+			thetaCount = thetaIdx;
+			thetaIdxs.put(config, thetaIdx);
+		}
+	}
+
+	private void publishGlobalState()
+	{
+		globalState = new GlobalState(store.getIteration(), store.getTotalRunCost(),
+				runDataIncludingRedundant, store.getAlgorithmRunDataIncludingRedundant().size(),
+				runDataExcludingRedundant, excludingRedundantCount,
+				configurationsRan, configurationsRanCount,
+				configurationsByThetaIdx, thetaCount,
+				instancesRan, instancesRanCount);
+	}
+
+	private static <E> E[] ensureCapacity(E[] array, int capacity)
+	{
+		if(capacity <= array.length)
+		{
+			return array;
+		}
+		return Arrays.copyOf(array, Math.max(capacity, 2*array.length));
+	}
+
+	/**
+	 * Frozen view returned by {@link ConcurrentRunHistory#snapshot()}
+	 */
+	private static final class Snapshot extends PublishedRunHistory
+	{
+		private final GlobalState globalState;
+
+		private final Map<ParameterConfiguration, ConfigurationState> configurationStates;
+
+		private final Map<ProblemInstance, SeedList> seedLists;
+
+		private final Map<ParameterConfiguration, Integer> thetaIdxs;
+
+		Snapshot(OverallObjective intraInstanceObjective, OverallObjective interInstanceObjective, RunObjective runObj, GlobalState globalState, Map<ParameterConfiguration, ConfigurationState> configurationStates, Map<ProblemInstance, SeedList> seedLists, Map<ParameterConfiguration, Integer> thetaIdxs)
+		{
+			super(intraInstanceObjective, interInstanceObjective, runObj);
+			this.globalState = globalState;
+			this.configurationStates = configurationStates;
+			this.seedLists = seedLists;
+			this.thetaIdxs = thetaIdxs;
+		}
+
+		@Override
+		public void append(AlgorithmRunResult run) throws DuplicateRunException {
+			throw new UnsupportedOperationException("Cannot append run to a snapshot of a " + RunHistory.class.getSimpleName());
+		}
+
+		@Override
+		public void incrementIteration() {
+			throw new UnsupportedOperationException("Cannot increment the iteration of a snapshot of a " + RunHistory.class.getSimpleName());
+		}
+
+		@Override
+		public int getOrCreateThetaIdx(ParameterConfiguration config)
+		{
+			Integer thetaIdx = thetaIdxs.get(config);
+			if(thetaIdx == null)
+			{
+				throw new UnsupportedOperationException("Cannot create a theta index in a snapshot of a " + RunHistory.class.getSimpleName());
+			}
+			return thetaIdx;
+		}
+
+		@Override
+		GlobalState getGlobalState() {
+			return globalState;
+		}
+
+		@Override
+		ConfigurationState getConfigurationState(ParameterConfiguration config) {
+			return configurationStates.get(config);
+		}
+
+		@Override
+		SeedList getSeedList(ProblemInstance pi) {
+			return seedLists.get(pi);
+		}
+
+		@Override
+		Integer getPublishedThetaIdx(ParameterConfiguration config) {
+			return thetaIdxs.get(config);
+		}
+	}
+}
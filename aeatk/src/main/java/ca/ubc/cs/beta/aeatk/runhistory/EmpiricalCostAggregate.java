@@ -0,0 +1,341 @@
+package ca.ubc.cs.beta.aeatk.runhistory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import ca.ubc.cs.beta.aeatk.objectives.OverallObjective;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+
+/**
+ * Running aggregates of the response values of a single configuration, one slot per instance it has been run on.
+ * <p>
+ * For every instance the number of seeds, the sum of their response values and the smallest and largest response value are kept up to date as runs are
+ * added, together with the response values themselves. The cost of an instance is then <code>sum / count</code> (times the penalty factor) whenever
+ * no response value is raised to the minimum response value and either none or all of them are penalized, which is the usual case, and otherwise the
+ * stored response values are walked. Either way the empirical cost is computed without allocating, in time linear in the number of instances the
+ * configuration has been run on.
+ * <p>
+ * Means are computed like {@link org.apache.commons.math.stat.StatUtils#mean(double[])}, but the order in which values are summed differs from
+ * {@link OverallObjective#aggregate(java.util.Collection, double)} so results may differ from it in the last bits.
+ * <p>
+ * Computing a cost does not modify the aggregate, so an aggregate that is no longer added to can be read by many threads.
+ */
+@NotThreadSafe
+final class EmpiricalCostAggregate {
+
+	private final Map<ProblemInstance, Integer> slotOfInstance = new HashMap<ProblemInstance, Integer>();
+
+	private ProblemInstance[] instances = new ProblemInstance[4];
+
+	private int[] counts = new int[4];
+
+	private double[] sums = new double[4];
+
+	private double[] mins = new double[4];
+
+	private double[] maxs = new double[4];
+
+	/**
+	 * Response values of each instance, only the first <code>counts[slot]</code> entries are used
+	 */
+	private double[][] values = new double[4][];
+
+	private int size = 0;
+
+	/**
+	 * Records the response value of a new seed on an instance
+	 * @param pi		instance
+	 * @param value		response value
+	 */
+	void add(ProblemInstance pi, double value)
+	{
+		Integer slot = slotOfInstance.get(pi);
+		int i;
+		if(slot == null)
+		{
+			i = newSlot(pi);
+		} else
+		{
+			i = slot;
+		}
+
+		int n = counts[i];
+		if(n == values[i].length)
+		{
+			double[] newValues = new double[2*n];
+			System.arraycopy(values[i], 0, newValues, 0, n);
+			values[i] = newValues;
+		}
+		values[i][n] = value;
+		counts[i] = n + 1;
+		sums[i] += value;
+		mins[i] = Math.min(mins[i], value);
+		maxs[i] = Math.max(maxs[i], value);
+	}
+
+	/**
+	 * Replaces the response value of a seed on an instance, used when an early censored run is superseded
+	 * @param pi			instance
+	 * @param oldValue		response value previously recorded for the seed
+	 * @param newValue		response value that replaces it
+	 */
+	void replace(ProblemInstance pi, double oldValue, double newValue)
+	{
+		Integer slot = slotOfInstance.get(pi);
+		if(slot == null)
+		{
+			throw new IllegalStateException("No response value was recorded for instance " + pi);
+		}
+		int i = slot;
+
+		//Values are a multiset, so replacing any entry equal to the old value gives the same aggregate
+		for(int j=0; j < counts[i]; j++)
+		{
+			if(Double.compare(values[i][j], oldValue) == 0)
+			{
+				values[i][j] = newValue;
+				recompute(i);
+				return;
+			}
+		}
+		throw new IllegalStateException("Response value " + oldValue + " was never recorded for instance " + pi);
+	}
+
+	/**
+	 * Computes the empirical cost over the instances of <code>instanceSet</code> this configuration has been run on
+	 *
+	 * @param instanceSet				instances to consider
+	 * @param cutoffTime				cutoff time for penalizing response values
+	 * @param minimumResponseValue		response values are raised to at least this value
+	 * @param intraInstanceObjective	objective aggregating the seeds of an instance
+	 * @param interInstanceObjective	objective aggregating the instances
+	 * @return the empirical cost, <code>NaN</code> if the configuration was not run on any of the instances
+	 */
+	double getEmpiricalCost(Set<ProblemInstance> instanceSet, double cutoffTime, double minimumResponseValue, OverallObjective intraInstanceObjective, OverallObjective interInstanceObjective)
+	{
+		double intraPenalty = intraInstanceObjective.getPenaltyFactor();
+		double interPenalty = interInstanceObjective.getPenaltyFactor();
+
+		//Instance costs are cheap to recompute, so the second pass of the mean computes them again instead of storing them
+		int n = 0;
+		double sum = 0;
+		for(int i=0; i < size; i++)
+		{
+			if(instanceSet.contains(instances[i]))
+			{
+				sum += getPenalizedInstanceCost(i, cutoffTime, minimumResponseValue, intraPenalty, interPenalty);
+				n++;
+			}
+		}
+
+		if(n == 0)
+		{
+			return Double.NaN;
+		}
+		double mean = sum / n;
+
+		double correction = 0;
+		for(int i=0; i < size; i++)
+		{
+			if(instanceSet.contains(instances[i]))
+			{
+				correction += getPenalizedInstanceCost(i, cutoffTime, minimumResponseValue, intraPenalty, interPenalty) - mean;
+			}
+		}
+		return mean + correction / n;
+	}
+
+	/**
+	 * Computes the empirical cost from a map of response values with hallucinated values layered on top, the way {@link NewRunHistory} does
+	 *
+	 * @param performance				response value of every seed of every instance the configuration was run on
+	 * @param instanceSet				instances to consider
+	 * @param cutoffTime				cutoff time for penalizing response values
+	 * @param hallucinatedValues		values that replace or add to the response values
+	 * @param minimumResponseValue		response values are raised to at least this value
+	 * @param intraInstanceObjective	objective aggregating the seeds of an instance
+	 * @param interInstanceObjective	objective aggregating the instances
+	 * @return the empirical cost
+	 */
+	static double getEmpiricalCost(Map<ProblemInstance, ? extends Map<Long, Double>> performance, Set<ProblemInstance> instanceSet, double cutoffTime, Map<ProblemInstance, Map<Long, Double>> hallucinatedValues, double minimumResponseValue, OverallObjective intraInstanceObjective, OverallObjective interInstanceObjective)
+	{
+		Set<ProblemInstance> instancesToUse = new HashSet<ProblemInstance>(instanceSet);
+		Set<ProblemInstance> instancesToKeep = new HashSet<ProblemInstance>(performance.keySet());
+		instancesToKeep.addAll(hallucinatedValues.keySet());
+		instancesToUse.retainAll(instancesToKeep);
+
+		List<Double> instanceCosts = new ArrayList<Double>(instancesToUse.size());
+		for(ProblemInstance pi : instancesToUse)
+		{
+			Map<Long, Double> seedToPerformanceMap = new HashMap<Long, Double>();
+			if(performance.get(pi) != null) seedToPerformanceMap.putAll(performance.get(pi));
+			if(hallucinatedValues.get(pi) != null) seedToPerformanceMap.putAll(hallucinatedValues.get(pi));
+
+			List<Double> localCosts = new ArrayList<Double>(seedToPerformanceMap.size());
+			for(Double d : seedToPerformanceMap.values())
+			{
+				localCosts.add(Math.max(minimumResponseValue, d));
+			}
+			instanceCosts.add(intraInstanceObjective.aggregate(localCosts, cutoffTime));
+		}
+		return interInstanceObjective.aggregate(instanceCosts, cutoffTime);
+	}
+
+	/**
+	 * Builds the hallucinated values for an empirical cost bound: every seed used on an instance that the configuration has not been run with gets
+	 * the bound value, and for an upper bound so does every early censored run.
+	 *
+	 * @param performance			response value of every seed of every instance the configuration was run on
+	 * @param instanceSet			instances to consider
+	 * @param runHistory			run history supplying the seeds used on each instance
+	 * @param earlyCensoredPISPs	early censored runs of the configuration
+	 * @param boundValue			value to hallucinate
+	 * @param upper					<code>true</code> if early censored runs should also get the bound value
+	 * @return hallucinated values for {@link #getEmpiricalCost(Map, Set, double, Map, double, OverallObjective, OverallObjective)}
+	 */
+	static Map<ProblemInstance, Map<Long, Double>> getBoundValues(Map<ProblemInstance, ? extends Map<Long, Double>> performance, Set<ProblemInstance> instanceSet, RunHistory runHistory, Set<ProblemInstanceSeedPair> earlyCensoredPISPs, double boundValue, boolean upper)
+	{
+		Map<ProblemInstance, Map<Long, Double>> hallucinatedValues = new HashMap<ProblemInstance, Map<Long, Double>>();
+		for(ProblemInstance pi : instanceSet)
+		{
+			Map<Long, Double> instPerformance = new HashMap<Long, Double>();
+			hallucinatedValues.put(pi, instPerformance);
+
+			List<Long> seeds = runHistory.getSeedsUsedByInstance(pi);
+			for(Long l : seeds)
+			{
+				instPerformance.put(l, boundValue);
+			}
+
+			if(performance.get(pi) != null)
+			{
+				instPerformance.putAll(performance.get(pi));
+			}
+
+			if(upper)
+			{
+				for(Long l : seeds)
+				{
+					if(earlyCensoredPISPs.contains(new ProblemInstanceSeedPair(pi, l)))
+					{
+						instPerformance.put(l, boundValue);
+					}
+				}
+			}
+
+			if(instPerformance.size() == 0)
+			{
+				//== We insert a bound value if we have nothing, because of the way getEmpiricalCost is implemented.
+				instPerformance.put(Long.MIN_VALUE, boundValue);
+			}
+		}
+		return hallucinatedValues;
+	}
+
+	private double getPenalizedInstanceCost(int i, double cutoffTime, double minimumResponseValue, double intraPenalty, double interPenalty)
+	{
+		double cost = getInstanceCost(i, cutoffTime, minimumResponseValue, intraPenalty);
+		return (cost >= cutoffTime) ? cost * interPenalty : cost;
+	}
+
+	private double getInstanceCost(int i, double cutoffTime, double minimumResponseValue, double penaltyFactor)
+	{
+		if(minimumResponseValue <= mins[i])
+		{
+			if(penaltyFactor == 1 || maxs[i] < cutoffTime)
+			{
+				return sums[i] / counts[i];
+			} else if(mins[i] >= cutoffTime)
+			{
+				return sums[i] * penaltyFactor / counts[i];
+			}
+		}
+
+		int n = counts[i];
+		double[] v = values[i];
+
+		double sum = 0;
+		for(int j=0; j < n; j++)
+		{
+			sum += penalize(v[j], cutoffTime, minimumResponseValue, penaltyFactor);
+		}
+		double mean = sum / n;
+
+		double correction = 0;
+		for(int j=0; j < n; j++)
+		{
+			correction += penalize(v[j], cutoffTime, minimumResponseValue, penaltyFactor) - mean;
+		}
+		return mean + correction / n;
+	}
+
+	private static double penalize(double value, double cutoffTime, double minimumResponseValue, double penaltyFactor)
+	{
+		double d = Math.max(minimumResponseValue, value);
+		return (d >= cutoffTime) ? d * penaltyFactor : d;
+	}
+
+	private void recompute(int i)
+	{
+		double sum = 0;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for(int j=0; j < counts[i]; j++)
+		{
+			double value = values[i][j];
+			sum += value;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+		sums[i] = sum;
+		mins[i] = min;
+		maxs[i] = max;
+	}
+
+	private int newSlot(ProblemInstance pi)
+	{
+		if(size == instances.length)
+		{
+			int capacity = 2*size;
+			ProblemInstance[] newInstances = new ProblemInstance[capacity];
+			System.arraycopy(instances, 0, newInstances, 0, size);
+			instances = newInstances;
+
+			int[] newCounts = new int[capacity];
+			System.arraycopy(counts, 0, newCounts, 0, size);
+			counts = newCounts;
+
+			sums = grow(sums, capacity);
+			mins = grow(mins, capacity);
+			maxs = grow(maxs, capacity);
+
+			double[][] newValues = new double[capacity][];
+			System.arraycopy(values, 0, newValues, 0, size);
+			values = newValues;
+		}
+
+		int i = size++;
+		instances[i] = pi;
+		counts[i] = 0;
+		sums[i] = 0;
+		mins[i] = Double.POSITIVE_INFINITY;
+		maxs[i] = Double.NEGATIVE_INFINITY;
+		values[i] = new double[2];
+		slotOfInstance.put(pi, i);
+		return i;
+	}
+
+	private static double[] grow(double[] a, int capacity)
+	{
+		double[] b = new double[capacity];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+}
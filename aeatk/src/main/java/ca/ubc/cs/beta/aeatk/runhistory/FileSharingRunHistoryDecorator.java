@@ -37,15 +37,18 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.deser.std.StdValueInstantiator;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
 import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
 import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
 import ca.ubc.cs.beta.aeatk.exceptions.DuplicateRunException;
 import ca.ubc.cs.beta.aeatk.objectives.OverallObjective;
 import ca.ubc.cs.beta.aeatk.objectives.RunObjective;
 import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
 import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
 import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
 import ca.ubc.cs.beta.aeatk.smac.SMACOptions.SharedModelModeDefaultHandling;
+import ca.ubc.cs.beta.aeatk.smac.SMACOptions.SharedModelModeTransport;
 
 public class FileSharingRunHistoryDecorator implements ThreadSafeRunHistory {
 
@@ -81,13 +84,53 @@ public class FileSharingRunHistoryDecorator implements ThreadSafeRunHistory {
 	 */
 	private final boolean readData;
 	
+	private final SharedModelModeTransport transport;
+	
+	/**
+	 * Whether we write the JSON file, always in JSON mode, only on request for debugging in MAPPED mode
+	 */
+	private final boolean writeJson;
+	
+	private final String mappedFileName;
+	
+	private final int runsPerSegment;
+	
+	/**
+	 * Reads of a {@link ConcurrentRunHistory} never block, so single reads skip our lock and only appends and {@link #readLock()} take it
+	 */
+	private final boolean lockFreeReads;
+	
+	/**
+	 * Created with the first local run, as that is when we learn the configuration space
+	 */
+	private MappedRunDataWriter mappedWriter;
+	
+	private final Map<File, MappedRunDataReader> mappedReaders = new LinkedHashMap<File, MappedRunDataReader>();
+	
+	/**
+	 * Taken from the first local run, used to rebuild the runs read from memory mapped files
+	 */
+	private ParameterConfigurationSpace configSpace;
+	private AlgorithmExecutionConfiguration execConfig;
 	
 	public FileSharingRunHistoryDecorator(RunHistory runHistory, File directory, final int outputID, List<ProblemInstance> pis, int MSecondsBetweenUpdates, final boolean readData)
 	{
 		
 		this(runHistory, directory, outputID, pis, MSecondsBetweenUpdates, readData, false, SharedModelModeDefaultHandling.USE_ALL, true);
 	}
+	
 	public FileSharingRunHistoryDecorator(RunHistory runHistory, File directory, final int outputID, List<ProblemInstance> pis, int MSecondsBetweenUpdates, final boolean readData, boolean sharedModeModeAssymetricMode, SharedModelModeDefaultHandling defaultHandler, boolean writeRunData)
+	{
+		this(runHistory, directory, outputID, pis, MSecondsBetweenUpdates, readData, sharedModeModeAssymetricMode, defaultHandler, writeRunData, SharedModelModeTransport.JSON, false, 8192);
+	}
+	
+	/**
+	 * 
+	 * @param transport			how run data is exchanged with the other runs in the directory
+	 * @param jsonExport		if <code>true</code> and the transport is MAPPED the JSON file is written anyway, for debugging
+	 * @param runsPerSegment	number of runs in each memory mapped file of the MAPPED transport
+	 */
+	public FileSharingRunHistoryDecorator(RunHistory runHistory, File directory, final int outputID, List<ProblemInstance> pis, int MSecondsBetweenUpdates, final boolean readData, boolean sharedModeModeAssymetricMode, SharedModelModeDefaultHandling defaultHandler, boolean writeRunData, SharedModelModeTransport transport, boolean jsonExport, int runsPerSegment)
 	{
 		this.runHistory = runHistory;
 		this.outputDir = directory;
@@ -95,19 +138,29 @@ public class FileSharingRunHistoryDecorator implements ThreadSafeRunHistory {
 		this.srdh = defaultHandler;
 		this.writeData = writeRunData;
 		this.assymetricMode = sharedModeModeAssymetricMode;
+		this.transport = transport;
+		this.writeJson = writeRunData && (transport == SharedModelModeTransport.JSON || jsonExport);
+		this.runsPerSegment = runsPerSegment;
+		this.lockFreeReads = runHistory instanceof ConcurrentRunHistory;
 		
 		if(MSecondsBetweenUpdates < 0)
 		{
 			throw new IllegalArgumentException("Seconds between updates must be positive, not:" + MSecondsBetweenUpdates);
 		}
 		
+		if(runsPerSegment <= 0)
+		{
+			throw new IllegalArgumentException("Runs per segment must be positive, not:" + runsPerSegment);
+		}
+		
 		this.MSBetweenUpdates = MSecondsBetweenUpdates;
 		
 		sharedFileName = new File(directory + File.separator + JSON_FILE_PREFIX+outputID + JSON_FILE_SUFFIX).getAbsolutePath();
+		mappedFileName = new File(directory + File.separator + MappedRunDataFormat.FILE_PREFIX + outputID + MappedRunDataFormat.FILE_SUFFIX).getAbsolutePath();
 		
 		String filename = sharedFileName;
 		
-		if(!writeData)
+		if(!writeJson)
 		{
 			try {
 				//This is really a hacky way to deal with not writing a file (creating a temp file)
@@ -135,7 +188,7 @@ public class FileSharingRunHistoryDecorator implements ThreadSafeRunHistory {
 			map.registerModule(sModule);
 			
 			List<ProblemInstance> myPis = new ArrayList<>(pis);
-			if(writeData)
+			if(writeJson)
 			{
 				g.writeObject(myPis);
 				g.flush();
@@ -217,13 +270,24 @@ public class FileSharingRunHistoryDecorator implements ThreadSafeRunHistory {
 				}
 
 				
+				if(configSpace == null)
+				{
+					configSpace = run.getParameterConfiguration().getParameterConfigurationSpace();
+					execConfig = run.getAlgorithmRunConfiguration().getAlgorithmExecutionConfiguration();
+				}
+				
 				try {
-					if(writeData)
+					if(writeJson)
 					{
 						g.writeObject(run);
 						g.flush();
 					}
 					
+					if(writeData && transport == SharedModelModeTransport.MAPPED)
+					{
+						writeMapped(run);
+					}
+					
 					
 					
 					locallyAddedRuns.incrementAndGet();
@@ -231,7 +295,7 @@ public class FileSharingRunHistoryDecorator implements ThreadSafeRunHistory {
 					//map.writeValue(fout, run);
 					//fout.flush();
 				} catch (IOException e) {
-					throw new IllegalStateException("Couldn't save data as JSON", e);
+					throw new IllegalStateException("Couldn't save run data", e);
 				}
 				
 				if(this.readData)
@@ -251,6 +315,19 @@ public class FileSharingRunHistoryDecorator implements ThreadSafeRunHistory {
 	
 
 	
+	private void writeMapped(AlgorithmRunResult run) throws IOException
+	{
+		if(mappedWriter == null)
+		{
+			mappedWriter = new MappedRunDataWriter(new File(mappedFileName), runsPerSegment, pis, configSpace);
+		}
+		
+		if(!mappedWriter.write(run))
+		{
+			log.trace("Run {} is not on one of the shared instances, not writing it", run);
+		}
+	}
+	
 	private long lastUpdateTime = 0;
 	/**
 	 * Rereads matching files in the directory every so often.
@@ -268,13 +345,18 @@ public class FileSharingRunHistoryDecorator implements ThreadSafeRunHistory {
 			try 
 			{
 				
+				final boolean mapped = (transport == SharedModelModeTransport.MAPPED);
+				final String prefix = mapped ? MappedRunDataFormat.FILE_PREFIX : JSON_FILE_PREFIX;
+				final String suffix = mapped ? MappedRunDataFormat.FILE_SUFFIX : JSON_FILE_SUFFIX;
+				final String myFileName = mapped ? mappedFileName : sharedFileName;
+				
 				File[] matchingFiles = this.outputDir.listFiles(new FileFilter()
 				{
 					@Override
 					public boolean accept(File pathname) {
-						if(pathname.getName().startsWith(JSON_FILE_PREFIX) && pathname.getName().endsWith(JSON_FILE_SUFFIX))
+						if(pathname.getName().startsWith(prefix) && pathname.getName().endsWith(suffix))
 						{
-							if (pathname.getAbsolutePath().equals(sharedFileName))
+							if (pathname.getAbsolutePath().equals(myFileName))
 							{
 								return false;
 							} else
@@ -297,7 +379,7 @@ public class FileSharingRunHistoryDecorator implements ThreadSafeRunHistory {
 					Set<File> allFiles = new TreeSet<File>();
 					allFiles.addAll(Arrays.asList(matchingFiles));
 					
-					File me = new File(sharedFileName);
+					File me = new File(myFileName);
 					allFiles.add(me);
 					
 					List<File> filesInOrder = new ArrayList<File>(allFiles);
@@ -334,9 +416,9 @@ public class FileSharingRunHistoryDecorator implements ThreadSafeRunHistory {
 				
 				for(File match : matchingFiles)
 				{
-					log.trace("Matching files: {} my file: {} ", match.getAbsolutePath(), sharedFileName);
+					log.trace("Matching files: {} my file: {} ", match.getAbsolutePath(), myFileName);
 					
-					boolean newFileRead = readRunsFromFile(match);
+					boolean newFileRead = mapped ? readRunsFromMappedFile(match) : readRunsFromFile(match);
 					
 					if(newFileRead)
 					{
@@ -433,37 +515,8 @@ public class FileSharingRunHistoryDecorator implements ThreadSafeRunHistory {
 						readNewFile = true;
 					}
 					
-					try {
-						newValue++; //Always count this, if it's a duplicate it counts as a success.
-						if(run.getParameterConfiguration().equals(run.getParameterConfiguration().getParameterConfigurationSpace().getDefaultConfiguration()))
-						{
-							switch(this.srdh)
-							{
-								case IGNORE_ALL:
-									//System.err.println("Ignoring Run");
-									break;
-								case SKIP_FIRST_TWO:
-									if(newValue <= 2)
-									{
-										//System.err.println("Ignoring Run: #" + newValue);
-										break;
-									}
-								case USE_ALL:
-									runHistory.append(run);
-									break;
-								default:
-									throw new IllegalStateException("Not sure how to deal with this");
-							}
-							
-							
-						} else
-						{
-							runHistory.append(run);
-						}
-					} catch (DuplicateRunException e) {
-						//Doesn't matter here
-					}
-					 
+					newValue++; //Always count this, if it's a duplicate it counts as a success.
+					importRun(run, newValue);
 				}
 				
 			} finally
@@ -496,6 +549,96 @@ public class FileSharingRunHistoryDecorator implements ThreadSafeRunHistory {
 		return readNewFile;
 		
 	}
+	
+	/**
+	 * Reads the runs appended to a memory mapped file since the last time we looked at it
+	 * 
+	 * @param match	segment 0 of the other run
+	 * @return true if we successfully read a new file (which means we imported run 0), false otherwise
+	 */
+	private boolean readRunsFromMappedFile(File match)
+	{
+		MappedRunDataReader reader = mappedReaders.get(match);
+		if(reader == null)
+		{
+			reader = new MappedRunDataReader(match, pis, configSpace, execConfig);
+			mappedReaders.put(match, reader);
+		}
+		
+		int previousRuns = reader.getRunsRead();
+		
+		try {
+			List<AlgorithmRunResult> runResult = reader.readNewRuns();
+			
+			int newValue = previousRuns;
+			for(AlgorithmRunResult run : runResult)
+			{
+				newValue++;
+				importRun(run, newValue);
+			}
+			
+			if(previousRuns != newValue)
+			{
+				log.debug("Successfully read {} new runs (out of {} total) from file {} ", newValue - previousRuns , newValue, match);
+			}
+			importedRuns.put(match, newValue);
+			
+			if(this.filesWithErrors.remove(match))
+			{
+				log.info("Successfully read file: {} after previously logged error", match.getAbsolutePath());
+			}
+			
+			return previousRuns == 0 && newValue > 0;
+		} catch (RuntimeException | IOException e) {
+			
+			//We will just retry later
+			
+			if(this.filesWithErrors.add(match))
+			{
+				log.warn("Error occurred reading file in shared run history " + match.getAbsolutePath() + ". We will keep trying to read this file, but will only log another error after it succeeds once. We may not be able to get it's run data but we should be able to continue", e);
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * Adds a run read from another file to the run history
+	 * 
+	 * @param run		the run
+	 * @param runNumber	position of the run in the file it was read from, starting at 1
+	 */
+	private void importRun(AlgorithmRunResult run, int runNumber)
+	{
+		try {
+			if(run.getParameterConfiguration().equals(run.getParameterConfiguration().getParameterConfigurationSpace().getDefaultConfiguration()))
+			{
+				switch(this.srdh)
+				{
+					case IGNORE_ALL:
+						//System.err.println("Ignoring Run");
+						break;
+					case SKIP_FIRST_TWO:
+						if(runNumber <= 2)
+						{
+							//System.err.println("Ignoring Run: #" + runNumber);
+							break;
+						}
+					case USE_ALL:
+						runHistory.append(run);
+						break;
+					default:
+						throw new IllegalStateException("Not sure how to deal with this");
+				}
+				
+				
+			} else
+			{
+				runHistory.append(run);
+			}
+		} catch (DuplicateRunException e) {
+			//Doesn't matter here
+		}
+	}
 
 	@Override
 	public void append(AlgorithmRunResult run) throws DuplicateRunException {
@@ -659,6 +802,28 @@ public class FileSharingRunHistoryDecorator implements ThreadSafeRunHistory {
 		}
 	}
 
+	@Override
+	public double[] getRunResponseValuesExcludingRedundant() {
+		lockRead();
+		try {
+			return runHistory.getRunResponseValuesExcludingRedundant();
+		} finally
+		{
+			unlockRead();
+		}
+	}
+
+	@Override
+	public boolean[] getCensoredEarlyFlagsExcludingRedundant() {
+		lockRead();
+		try {
+			return runHistory.getCensoredEarlyFlagsExcludingRedundant();
+		} finally
+		{
+			unlockRead();
+		}
+	}
+
 
 	
 	@Override
@@ -771,13 +936,13 @@ public class FileSharingRunHistoryDecorator implements ThreadSafeRunHistory {
 
 	@Override
 	public void readLock() {
-		lockRead();
+		this.rwltt.lockRead();
 	}
 
 
 	@Override
 	public void releaseReadLock() {
-		unlockRead();
+		this.rwltt.unlockRead();
 		
 	}
 
@@ -879,13 +1044,18 @@ public class FileSharingRunHistoryDecorator implements ThreadSafeRunHistory {
 	
 	public void lockRead()
 	{
-		this.rwltt.lockRead();
-	
+		if(!lockFreeReads)
+		{
+			this.rwltt.lockRead();
+		}
 	}
 	
 	private void unlockRead()
 	{
-		this.rwltt.unlockRead();
+		if(!lockFreeReads)
+		{
+			this.rwltt.unlockRead();
+		}
 	}
 	
 	private void lockWrite()
@@ -0,0 +1,131 @@
+package ca.ubc.cs.beta.aeatk.runhistory;
+
+import java.io.File;
+import java.util.List;
+
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+
+/**
+ * Layout of the memory mapped run data files shared by the writer and readers of the MAPPED shared model mode
+ * <p>
+ * The run data of one configurator is a sequence of segment files, each a header followed by <code>capacity</code> fixed size run records.
+ * Segment 0 is named <code>live-rundata-&lt;id&gt;.runs</code>, segment n <code>live-rundata-&lt;id&gt;.runs.n</code>.
+ * <p>
+ * Header (all values big endian):
+ * <ul>
+ * 	<li><code>0</code> int magic number</li>
+ * 	<li><code>4</code> int version</li>
+ * 	<li><code>8</code> long number of records published, readers never look past it</li>
+ * 	<li><code>16</code> int record size in bytes</li>
+ * 	<li><code>20</code> int capacity in records</li>
+ * 	<li><code>24</code> int number of parameters</li>
+ * 	<li><code>28</code> int number of instances</li>
+ * 	<li><code>32</code> long fingerprint of the instances and parameter names, runs are only exchanged between identical scenarios</li>
+ * 	<li><code>40</code> int 1 once the segment is full and the next one exists</li>
+ * </ul>
+ * Record:
+ * <ul>
+ * 	<li><code>0</code> int sequence number (position in the segment + 1), written last</li>
+ * 	<li><code>4</code> int index of the instance in the instance list</li>
+ * 	<li><code>8</code> long seed</li>
+ * 	<li><code>16</code> double cutoff time</li>
+ * 	<li><code>24</code> int run status result code</li>
+ * 	<li><code>32</code> double runtime</li>
+ * 	<li><code>40</code> double run length</li>
+ * 	<li><code>48</code> double quality</li>
+ * 	<li><code>56</code> long result seed</li>
+ * 	<li><code>64</code> double wallclock time</li>
+ * 	<li><code>72</code> double[number of parameters] value array of the configuration</li>
+ * </ul>
+ * Additional run data is not shared, it is variable length and the model does not use it.
+ */
+final class MappedRunDataFormat {
+
+	static final String FILE_PREFIX = "live-rundata-";
+	static final String FILE_SUFFIX = ".runs";
+
+	static final int MAGIC = 0x53524431;
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 64;
+
+	static final int PUBLISHED_OFFSET = 8;
+	static final int RECORD_SIZE_OFFSET = 16;
+	static final int CAPACITY_OFFSET = 20;
+	static final int PARAMETERS_OFFSET = 24;
+	static final int INSTANCES_OFFSET = 28;
+	static final int FINGERPRINT_OFFSET = 32;
+	static final int SEALED_OFFSET = 40;
+
+	static final int SEQUENCE = 0;
+	static final int INSTANCE = 4;
+	static final int SEED = 8;
+	static final int CUTOFF = 16;
+	static final int STATUS = 24;
+	static final int RUNTIME = 32;
+	static final int RUN_LENGTH = 40;
+	static final int QUALITY = 48;
+	static final int RESULT_SEED = 56;
+	static final int WALLCLOCK = 64;
+	static final int VALUES = 72;
+
+	private MappedRunDataFormat()
+	{
+		//Not instantiable
+	}
+
+	/**
+	 * @param numberOfParameters	number of parameters of the configuration space
+	 * @return size of a run record in bytes
+	 */
+	static int getRecordSize(int numberOfParameters)
+	{
+		return VALUES + 8 * numberOfParameters;
+	}
+
+	/**
+	 * Generates the filename of a segment
+	 * @param segmentZero	file of segment 0
+	 * @param segment		segment number
+	 * @return the segment file
+	 */
+	static File getSegmentFile(File segmentZero, int segment)
+	{
+		if(segment == 0)
+		{
+			return segmentZero;
+		}
+		return new File(segmentZero.getPath() + "." + segment);
+	}
+
+	/**
+	 * Computes the fingerprint of a scenario
+	 * @param pis			instances in the order records refer to them
+	 * @param configSpace	configuration space
+	 * @return fingerprint
+	 */
+	static long getFingerprint(List<ProblemInstance> pis, ParameterConfigurationSpace configSpace)
+	{
+		long h = 1125899906842597L;
+		for(ProblemInstance pi : pis)
+		{
+			h = hash(h, pi.getInstanceName());
+		}
+
+		for(String name : configSpace.getParameterNamesInAuthorativeOrder())
+		{
+			h = hash(h, name);
+		}
+		return h;
+	}
+
+	private static long hash(long h, String s)
+	{
+		for(int i=0; i < s.length(); i++)
+		{
+			h = 31*h + s.charAt(i);
+		}
+		return 31*h + '\n';
+	}
+}
@@ -0,0 +1,184 @@
+package ca.ubc.cs.beta.aeatk.runhistory;
+
+import static ca.ubc.cs.beta.aeatk.runhistory.MappedRunDataFormat.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.ExistingAlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunStatus;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+
+/**
+ * Reads the runs another configurator appended to its memory mapped segment files, see {@link MappedRunDataFormat} for the layout
+ * <p>
+ * Every call only looks at the records published since the previous call, nothing is parsed.
+ */
+@NotThreadSafe
+final class MappedRunDataReader {
+
+	private static final Logger log = LoggerFactory.getLogger(MappedRunDataReader.class);
+
+	private final File segmentZero;
+	private final List<ProblemInstance> pis;
+	private final ParameterConfigurationSpace configSpace;
+	private final AlgorithmExecutionConfiguration execConfig;
+	private final long fingerprint;
+	private final int numberOfParameters;
+
+	private int segment = 0;
+	private MappedByteBuffer buffer;
+	private int recordSize;
+	private int capacity;
+	private int read = 0;
+
+	private int totalRead = 0;
+
+	private boolean mismatchLogged = false;
+
+	/**
+	 * Never written, only read to order the load of the published count before the loads of the records
+	 */
+	private volatile int fence;
+
+	/**
+	 * @param segmentZero	file of segment 0 of the other configurator
+	 * @param pis			our instances, runs are only read if the other configurator has the same ones
+	 * @param configSpace	our configuration space
+	 * @param execConfig	execution configuration to give the runs
+	 */
+	MappedRunDataReader(File segmentZero, List<ProblemInstance> pis, ParameterConfigurationSpace configSpace, AlgorithmExecutionConfiguration execConfig)
+	{
+		this.segmentZero = segmentZero;
+		this.pis = pis;
+		this.configSpace = configSpace;
+		this.execConfig = execConfig;
+		this.fingerprint = getFingerprint(pis, configSpace);
+		this.numberOfParameters = configSpace.getParameterNamesInAuthorativeOrder().size();
+	}
+
+	/**
+	 * @return number of runs read so far
+	 */
+	int getRunsRead()
+	{
+		return totalRead;
+	}
+
+	/**
+	 * Reads the runs published since the last call
+	 * @return new runs, in the order they were written
+	 */
+	List<AlgorithmRunResult> readNewRuns() throws IOException
+	{
+		List<AlgorithmRunResult> runs = new ArrayList<AlgorithmRunResult>();
+
+		while(true)
+		{
+			if(buffer == null && !openSegment())
+			{
+				return runs;
+			}
+
+			int published = (int) Math.min(buffer.getLong(PUBLISHED_OFFSET), capacity);
+			loadFence();
+
+			for(; read < published; read++)
+			{
+				int offset = HEADER_SIZE + read * recordSize;
+				if(buffer.getInt(offset + SEQUENCE) != read + 1)
+				{
+					//Not visible yet, try again next time
+					return runs;
+				}
+				runs.add(readRun(offset));
+				totalRead++;
+			}
+
+			if(read == capacity && buffer.getInt(SEALED_OFFSET) == 1)
+			{
+				segment++;
+				buffer = null;
+				read = 0;
+			} else
+			{
+				return runs;
+			}
+		}
+	}
+
+	private int loadFence()
+	{
+		return fence;
+	}
+
+	private boolean openSegment() throws IOException
+	{
+		File f = getSegmentFile(segmentZero, segment);
+		if(!f.exists() || f.length() < HEADER_SIZE)
+		{
+			return false;
+		}
+
+		try(RandomAccessFile raf = new RandomAccessFile(f, "r"))
+		{
+			MappedByteBuffer header = raf.getChannel().map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if(header.getInt(0) != MAGIC)
+			{
+				//Still being created
+				return false;
+			}
+
+			if(header.getInt(4) != VERSION || header.getInt(PARAMETERS_OFFSET) != numberOfParameters || header.getInt(INSTANCES_OFFSET) != pis.size() || header.getLong(FINGERPRINT_OFFSET) != fingerprint)
+			{
+				if(!mismatchLogged)
+				{
+					log.warn("Instances or parameters in file {} do not match ours, ignoring file.", f);
+					mismatchLogged = true;
+				}
+				return false;
+			}
+
+			recordSize = header.getInt(RECORD_SIZE_OFFSET);
+			capacity = header.getInt(CAPACITY_OFFSET);
+
+			long size = HEADER_SIZE + (long) capacity * recordSize;
+			if(raf.length() < size)
+			{
+				return false;
+			}
+
+			buffer = raf.getChannel().map(MapMode.READ_ONLY, 0, size);
+			return true;
+		}
+	}
+
+	private AlgorithmRunResult readRun(int offset)
+	{
+		double[] values = new double[numberOfParameters];
+		for(int i=0; i < numberOfParameters; i++)
+		{
+			values[i] = buffer.getDouble(offset + VALUES + 8 * i);
+		}
+
+		ProblemInstanceSeedPair pisp = new ProblemInstanceSeedPair(pis.get(buffer.getInt(offset + INSTANCE)), buffer.getLong(offset + SEED));
+		AlgorithmRunConfiguration rc = new AlgorithmRunConfiguration(pisp, buffer.getDouble(offset + CUTOFF), configSpace.getConfigurationFromValueArray(values), execConfig);
+
+		return new ExistingAlgorithmRunResult(rc, RunStatus.getAutomaticConfiguratorResultForCode(buffer.getInt(offset + STATUS)), buffer.getDouble(offset + RUNTIME), buffer.getDouble(offset + RUN_LENGTH), buffer.getDouble(offset + QUALITY), buffer.getLong(offset + RESULT_SEED), "", buffer.getDouble(offset + WALLCLOCK));
+	}
+}
@@ -0,0 +1,172 @@
+package ca.ubc.cs.beta.aeatk.runhistory;
+
+import static ca.ubc.cs.beta.aeatk.runhistory.MappedRunDataFormat.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+
+/**
+ * Appends runs to the memory mapped segment files of one configurator, see {@link MappedRunDataFormat} for the layout
+ * <p>
+ * A record is written completely, then its sequence number, and only then is the published count in the header increased,
+ * so readers in other processes never see a partial record.
+ */
+@NotThreadSafe
+final class MappedRunDataWriter {
+
+	private static final Logger log = LoggerFactory.getLogger(MappedRunDataWriter.class);
+
+	private final File segmentZero;
+	private final int capacity;
+	private final int numberOfParameters;
+	private final int recordSize;
+	private final long fingerprint;
+	private final int numberOfInstances;
+
+	private final Map<ProblemInstance, Integer> instanceIndex = new HashMap<ProblemInstance, Integer>();
+
+	private final double[] values;
+
+	private int segment = 0;
+	private MappedByteBuffer buffer;
+	private int published = 0;
+
+	/**
+	 * Only written to order the stores of a record before the store that publishes it
+	 */
+	@SuppressWarnings("unused")
+	private volatile int fence;
+
+	/**
+	 * Creates segment 0, replacing any previous run data of this configurator
+	 *
+	 * @param segmentZero	file of segment 0
+	 * @param capacity		number of records per segment
+	 * @param pis			instances, records refer to them by index
+	 * @param configSpace	configuration space of the runs
+	 */
+	MappedRunDataWriter(File segmentZero, int capacity, List<ProblemInstance> pis, ParameterConfigurationSpace configSpace) throws IOException
+	{
+		this.segmentZero = segmentZero;
+		this.capacity = capacity;
+		this.numberOfParameters = configSpace.getParameterNamesInAuthorativeOrder().size();
+		this.recordSize = getRecordSize(numberOfParameters);
+		this.fingerprint = getFingerprint(pis, configSpace);
+		this.numberOfInstances = pis.size();
+		this.values = new double[numberOfParameters];
+
+		for(int i=0; i < pis.size(); i++)
+		{
+			instanceIndex.put(pis.get(i), i);
+		}
+
+		//Stale segments of a previous run with the same id would otherwise be followed by readers
+		for(int i=1; getSegmentFile(segmentZero, i).exists(); i++)
+		{
+			if(!getSegmentFile(segmentZero, i).delete())
+			{
+				log.warn("Could not delete stale run data segment {}", getSegmentFile(segmentZero, i));
+			}
+		}
+
+		this.buffer = createSegment(0);
+	}
+
+	private MappedByteBuffer createSegment(int segment) throws IOException
+	{
+		File f = getSegmentFile(segmentZero, segment);
+		long size = HEADER_SIZE + (long) capacity * recordSize;
+
+		//A new file rather than truncating, readers may still have the old one mapped
+		if(f.exists() && !f.delete())
+		{
+			throw new IOException("Could not replace run data file " + f);
+		}
+
+		try(RandomAccessFile raf = new RandomAccessFile(f, "rw"))
+		{
+			//Mapping grows the file, untouched pages stay sparse
+			MappedByteBuffer b = raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+
+			b.putLong(PUBLISHED_OFFSET, 0);
+			b.putInt(RECORD_SIZE_OFFSET, recordSize);
+			b.putInt(CAPACITY_OFFSET, capacity);
+			b.putInt(PARAMETERS_OFFSET, numberOfParameters);
+			b.putInt(INSTANCES_OFFSET, numberOfInstances);
+			b.putLong(FINGERPRINT_OFFSET, fingerprint);
+			b.putInt(SEALED_OFFSET, 0);
+			b.putInt(4, VERSION);
+			fence = 0;
+			//Written last, readers ignore files without it
+			b.putInt(0, MAGIC);
+			return b;
+		}
+	}
+
+	/**
+	 * Appends a run
+	 * @param run	run to append
+	 * @return <code>true</code> if the run was written, <code>false</code> if it is on an instance that is not shared
+	 */
+	boolean write(AlgorithmRunResult run) throws IOException
+	{
+		Integer instance = instanceIndex.get(run.getProblemInstanceSeedPair().getProblemInstance());
+		if(instance == null)
+		{
+			return false;
+		}
+
+		if(published == capacity)
+		{
+			MappedByteBuffer next = createSegment(segment + 1);
+			//Readers move on once the segment is sealed, so the next one must exist first
+			buffer.putInt(SEALED_OFFSET, 1);
+			buffer = next;
+			segment++;
+			published = 0;
+			log.debug("Run data moved on to segment {}", getSegmentFile(segmentZero, segment));
+		}
+
+		int offset = HEADER_SIZE + published * recordSize;
+
+		buffer.putInt(offset + INSTANCE, instance);
+		buffer.putLong(offset + SEED, run.getProblemInstanceSeedPair().getSeed());
+		buffer.putDouble(offset + CUTOFF, run.getAlgorithmRunConfiguration().getCutoffTime());
+		buffer.putInt(offset + STATUS, run.getRunStatus().getResultCode());
+		buffer.putDouble(offset + RUNTIME, run.getRuntime());
+		buffer.putDouble(offset + RUN_LENGTH, run.getRunLength());
+		buffer.putDouble(offset + QUALITY, run.getQuality());
+		buffer.putLong(offset + RESULT_SEED, run.getResultSeed());
+		buffer.putDouble(offset + WALLCLOCK, run.getWallclockExecutionTime());
+
+		run.getParameterConfiguration().copyValueArray(values);
+		for(int i=0; i < numberOfParameters; i++)
+		{
+			buffer.putDouble(offset + VALUES + 8 * i, values[i]);
+		}
+
+		//Volatile writes keep the stores in order
+		fence = published;
+		buffer.putInt(offset + SEQUENCE, published + 1);
+
+		published++;
+		fence = published;
+		buffer.putLong(PUBLISHED_OFFSET, published);
+		return true;
+	}
+}
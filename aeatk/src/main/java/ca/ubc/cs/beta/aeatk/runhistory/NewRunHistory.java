@@ -67,7 +67,7 @@ public class NewRunHistory implements RunHistory {
 	/**
 	 * Stores a list of Parameter Configurations along with there associted thetaIdx
 	 */
-	private final KeyObjectManager<ParameterConfiguration> paramConfigurationList = new KeyObjectManager<ParameterConfiguration>();
+	private final ThetaIndexes paramConfigurationList = new ThetaIndexes();
 	
 	/**
 	 * Stores a list of RunData
@@ -96,6 +96,11 @@ public class NewRunHistory implements RunHistory {
 	private final Map<ParameterConfiguration, Map<ProblemInstance, LinkedHashMap<Long, Double>>> configToPerformanceMap =
 			new HashMap<ParameterConfiguration, Map<ProblemInstance, LinkedHashMap<Long, Double>>>();
 	
+	/**
+	 * Stores for each configuration running aggregates of the values in {@link #configToPerformanceMap}, used when there are no hallucinated values
+	 */
+	private final Map<ParameterConfiguration, EmpiricalCostAggregate> configToCostAggregateMap = new HashMap<ParameterConfiguration, EmpiricalCostAggregate>();
+	
 	/**
 	 * Stores for each instance the list of seeds used 
 	 */
@@ -205,6 +210,11 @@ public class NewRunHistory implements RunHistory {
 			throw new IllegalArgumentException("Runs with Run Result RUNNING cannot be saved to a RunHistory object");
 		}
 		ParameterConfiguration config = run.getAlgorithmRunConfiguration().getParameterConfiguration();
+		
+		//Theta indexes are found through interned IDs, and interned configurations compare by ID, which keeps the many maps keyed by configuration below cheap.
+		//A configuration that is new to us cannot have a duplicate run, so the index is never created for a run that is rejected
+		int thetaIdx = paramConfigurationList.getOrCreateKey(config);
+		
 		ProblemInstanceSeedPair pisp = run.getAlgorithmRunConfiguration().getProblemInstanceSeedPair();
 		ProblemInstance pi = pisp.getProblemInstance();
 		long seed = run.getResultSeed();
@@ -259,14 +269,6 @@ public class NewRunHistory implements RunHistory {
 
 			if((censoredEarlyRunsForConfig != null) && censoredEarlyRunsForConfig.contains(pisp))
 			{
-				
-				if(this.runObj != RunObjective.RUNTIME)
-				{
-					//Duplicate check before we tamper with the data structure
-					log.error("Not sure how to rectify early censored runs under different run objectives, current run seems to conflict with a previous one: {} " , run);
-					throw new IllegalStateException("Unable to handle capped runs for the RunObjective: " + runObj);
-				}
-				
 				//We remove it now and will re-add it if this current run was capped
 				censoredEarlyRunsForConfig.remove(pisp); 
 			} else
@@ -290,39 +292,20 @@ public class NewRunHistory implements RunHistory {
 			}
 			
 			
-			if(this.runObj != RunObjective.RUNTIME)
-			{
-				log.error("Not sure how to rectify early censored runs under different run objectives, current run seems to conflict with a previous one: {} " , run);
-				throw new IllegalStateException("Unable to handle capped runs for the RunObjective: " + runObj);
-			} else
-			{
-				//We know that both the previous and current result must be censored early, so we take the maximimum
-				if(censoredEarly)
-				{	
-					
-					seedToPerformanceMap.put(seed, Math.max(dOldValue, runResult));
-					
-					if(dOldValue < runResult)
-					{
-						//this.configToRunIgnoreRedundantMap.get(config).put(pisp, run);
-						
-						
-						AlgorithmRunResult run2 = this.configToRunIgnoreRedundantMap.get(config).get(pisp);
-						this.configToRunIgnoreRedundantMap.get(config).put(pisp, run);
-						
-						ParamConfigurationProblemInstanceSeedPair pcpisp = new ParamConfigurationProblemInstanceSeedPair(pisp,config);
-						
-						if(this.runIndex.get(pcpisp) == null)
-						{
-							throw new IllegalStateException("This run should exist somewhere else in our list");
-						} 
-						
-						int index = this.runIndex.get(pcpisp);
-						
-						this.runsInAuthorativeOrderExcludingRedundant.set(index, run);
-						
-					}
+			//We know that both the previous and current result must be censored early, so we take the maximimum
+			if(censoredEarly)
+			{	
+				
+				seedToPerformanceMap.put(seed, Math.max(dOldValue, runResult));
+				
+				if(dOldValue < runResult)
+				{
+					replaceRunExcludingRedundant(config, pisp, run);
 				}
+			} else if(this.runObj != RunObjective.RUNTIME)
+			{
+				//A quality run that was raced against the incumbent only gave us a lower bound, the completed run supersedes it
+				replaceRunExcludingRedundant(config, pisp, run);
 			}
 
 		} else
@@ -359,7 +342,6 @@ public class NewRunHistory implements RunHistory {
 		/*
 		 * Add data to the run List
 		 */
-		int thetaIdx = paramConfigurationList.getOrCreateKey(config);
 		
 	
 		
@@ -374,7 +356,7 @@ public class NewRunHistory implements RunHistory {
 
 		if(dOldValue != null)
 		{
-			if(dOldValue < runResult)
+			if(dOldValue < runResult || (!censoredEarly && this.runObj != RunObjective.RUNTIME))
 			{
 				//Previous value
 				
@@ -430,10 +412,47 @@ public class NewRunHistory implements RunHistory {
 		
 		this.algorithmRunConfigurationResultMap.put(run.getAlgorithmRunConfiguration(), run);	
 		
+		/*
+		 * Keep the cost aggregates in line with the performance map
+		 */
+		EmpiricalCostAggregate costAggregate = configToCostAggregateMap.get(config);
+		if(costAggregate == null)
+		{
+			costAggregate = new EmpiricalCostAggregate();
+			configToCostAggregateMap.put(config, costAggregate);
+		}
+		
+		if(dOldValue == null)
+		{
+			costAggregate.add(pi, runResult);
+		} else
+		{
+			double newValue = seedToPerformanceMap.get(seed);
+			if(newValue != dOldValue)
+			{
+				costAggregate.replace(pi, dOldValue, newValue);
+			}
+		}
 	}
 
 	
 	
+	private void replaceRunExcludingRedundant(ParameterConfiguration config, ProblemInstanceSeedPair pisp, AlgorithmRunResult run)
+	{
+		this.configToRunIgnoreRedundantMap.get(config).put(pisp, run);
+		
+		ParamConfigurationProblemInstanceSeedPair pcpisp = new ParamConfigurationProblemInstanceSeedPair(pisp,config);
+		
+		if(this.runIndex.get(pcpisp) == null)
+		{
+			throw new IllegalStateException("This run should exist somewhere else in our list");
+		} 
+		
+		int index = this.runIndex.get(pcpisp);
+		
+		this.runsInAuthorativeOrderExcludingRedundant.set(index, run);
+	}
+	
 	@Override
 	public double getEmpiricalCost(ParameterConfiguration config,
 			Set<ProblemInstance> instanceSet, double cutoffTime)
@@ -543,6 +562,12 @@ public class NewRunHistory implements RunHistory {
 		if (!configToPerformanceMap.containsKey(config) && hallucinatedValues.isEmpty()){
 			return Double.MAX_VALUE;
 		}
+		
+		if(hallucinatedValues.isEmpty())
+		{
+			return configToCostAggregateMap.get(config).getEmpiricalCost(instanceSet, cutoffTime, minimumResponseValue, perInstanceObjectiveFunction, aggregateInstanceObjectiveFunction);
+		}
+		
 		ArrayList<Double> instanceCosts = new ArrayList<Double>();
 		
 		Map<ProblemInstance, LinkedHashMap<Long, Double>> instanceSeedToPerformanceMap = configToPerformanceMap.get(config);
@@ -677,6 +702,32 @@ public class NewRunHistory implements RunHistory {
 		return result;
 	}
 
+	@Override
+	public double[] getRunResponseValuesExcludingRedundant() {
+		double[] responseValues = new double[runHistoryListExcludingRedundant.size()];
+		
+		int i=0;
+		for(RunData runData : runHistoryListExcludingRedundant)
+		{
+			responseValues[i++] = runData.getResponseValue();
+		}
+		
+		return responseValues;
+	}
+
+	@Override
+	public boolean[] getCensoredEarlyFlagsExcludingRedundant() {
+		boolean[] censored = new boolean[runHistoryListExcludingRedundant.size()];
+		
+		int i=0;
+		for(RunData runData : runHistoryListExcludingRedundant)
+		{
+			censored[i++] = runData.isCappedRun();
+		}
+		
+		return censored;
+	}
+
 	@Override
 	public List<ParameterConfiguration> getAllParameterConfigurationsRan() {
 		List<ParameterConfiguration> runs = new ArrayList<ParameterConfiguration>(paramConfigurationList.size());
@@ -715,15 +766,8 @@ public class NewRunHistory implements RunHistory {
 
 	@Override
 	public int getThetaIdx(ParameterConfiguration config) {
-		Integer thetaIdx = paramConfigurationList.getKey(config);
-		if(thetaIdx == null)
-		{
-			return -1;
-		} else
-		{
-			return thetaIdx;
-		}
-		
+		return paramConfigurationList.getKey(config);
+
 	}
 	
 	@Override
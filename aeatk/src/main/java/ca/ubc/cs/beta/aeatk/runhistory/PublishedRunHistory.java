@@ -0,0 +1,566 @@
+package ca.ubc.cs.beta.aeatk.runhistory;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.jcip.annotations.Immutable;
+
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.objectives.OverallObjective;
+import ca.ubc.cs.beta.aeatk.objectives.RunObjective;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+
+/**
+ * Answers every read of a {@link RunHistory} from immutable published state, without locking.
+ * <p>
+ * The state is split so that an append only publishes what it changed: a {@link GlobalState} with the lists of all runs, configurations and
+ * instances, one {@link ConfigurationState} per configuration and one {@link SeedList} per instance. Subclasses decide where the current
+ * state comes from, see {@link ConcurrentRunHistory}.
+ */
+abstract class PublishedRunHistory implements RunHistory {
+
+	final OverallObjective perInstanceObjectiveFunction;
+
+	final OverallObjective aggregateInstanceObjectiveFunction;
+
+	final RunObjective runObj;
+
+	PublishedRunHistory(OverallObjective intraInstanceObjective, OverallObjective interInstanceObjective, RunObjective runObj)
+	{
+		this.perInstanceObjectiveFunction = intraInstanceObjective;
+		this.aggregateInstanceObjectiveFunction = interInstanceObjective;
+		this.runObj = runObj;
+	}
+
+	/**
+	 * @return the global state reads should use
+	 */
+	abstract GlobalState getGlobalState();
+
+	/**
+	 * @return state of the configuration, or <code>null</code> if it has not been run
+	 */
+	abstract ConfigurationState getConfigurationState(ParameterConfiguration config);
+
+	/**
+	 * @return seeds used on the instance, or <code>null</code> if it has not been run
+	 */
+	abstract SeedList getSeedList(ProblemInstance pi);
+
+	/**
+	 * @return theta index of the configuration, or <code>null</code> if it has none
+	 */
+	abstract Integer getPublishedThetaIdx(ParameterConfiguration config);
+
+	@Override
+	public RunObjective getRunObjective() {
+		return runObj;
+	}
+
+	@Override
+	public OverallObjective getOverallObjective() {
+		return perInstanceObjectiveFunction;
+	}
+
+	@Override
+	public int getIteration() {
+		return getGlobalState().iteration;
+	}
+
+	@Override
+	public Set<ProblemInstance> getProblemInstancesRan(ParameterConfiguration config)
+	{
+		ConfigurationState state = getConfigurationState(config);
+		if(state == null)
+		{
+			return new HashSet<ProblemInstance>();
+		}
+		return new HashSet<ProblemInstance>(state.performance.keySet());
+	}
+
+	@Override
+	public Set<ProblemInstanceSeedPair> getProblemInstanceSeedPairsRan(ParameterConfiguration config)
+	{
+		ConfigurationState state = getConfigurationState(config);
+		if(state == null)
+		{
+			return new HashSet<ProblemInstanceSeedPair>();
+		}
+		return new HashSet<ProblemInstanceSeedPair>(state.problemInstanceSeedPairs);
+	}
+
+	@Override
+	public Set<ProblemInstanceSeedPair> getEarlyCensoredProblemInstanceSeedPairs(ParameterConfiguration config)
+	{
+		ConfigurationState state = getConfigurationState(config);
+		if(state == null)
+		{
+			return Collections.emptySet();
+		}
+		return state.earlyCensored;
+	}
+
+	@Override
+	public double getEmpiricalCost(ParameterConfiguration config, Set<ProblemInstance> instanceSet, double cutoffTime)
+	{
+		Map<ProblemInstance, Map<Long, Double>> foo = Collections.emptyMap();
+		return getEmpiricalCost(config, instanceSet, cutoffTime, foo);
+	}
+
+	@Override
+	public double getEmpiricalCost(ParameterConfiguration config, Set<ProblemInstance> instanceSet, double cutoffTime, double minimumResponseValue)
+	{
+		Map<ProblemInstance, Map<Long, Double>> foo = Collections.emptyMap();
+		return getEmpiricalCost(config, instanceSet, cutoffTime, foo, minimumResponseValue);
+	}
+
+	@Override
+	public double getEmpiricalCost(ParameterConfiguration config, Set<ProblemInstance> instanceSet, double cutoffTime, Map<ProblemInstance, Map<Long, Double>> hallucinatedValues)
+	{
+		return getEmpiricalCost(config, instanceSet, cutoffTime, hallucinatedValues, Double.NEGATIVE_INFINITY);
+	}
+
+	@Override
+	public double getEmpiricalCost(ParameterConfiguration config, Set<ProblemInstance> instanceSet, double cutoffTime, Map<ProblemInstance, Map<Long, Double>> hallucinatedValues, double minimumResponseValue)
+	{
+		ConfigurationState state = getConfigurationState(config);
+		if(hallucinatedValues.isEmpty())
+		{
+			if(state == null)
+			{
+				return Double.MAX_VALUE;
+			}
+			return state.costAggregate.getEmpiricalCost(instanceSet, cutoffTime, minimumResponseValue, perInstanceObjectiveFunction, aggregateInstanceObjectiveFunction);
+		}
+
+		Map<ProblemInstance, LinkedHashMap<Long, Double>> performance = (state == null) ? Collections.<ProblemInstance, LinkedHashMap<Long, Double>>emptyMap() : state.performance;
+		return EmpiricalCostAggregate.getEmpiricalCost(performance, instanceSet, cutoffTime, hallucinatedValues, minimumResponseValue, perInstanceObjectiveFunction, aggregateInstanceObjectiveFunction);
+	}
+
+	@Override
+	public double getEmpiricalCostLowerBound(ParameterConfiguration config, Set<ProblemInstance> instanceSet, double cutoffTime)
+	{
+		return getEmpiricalCostBound(config, instanceSet, cutoffTime, 0.0, false);
+	}
+
+	@Override
+	public double getEmpiricalCostUpperBound(ParameterConfiguration config, Set<ProblemInstance> instanceSet, double cutoffTime)
+	{
+		return getEmpiricalCostBound(config, instanceSet, cutoffTime, cutoffTime, true);
+	}
+
+	private double getEmpiricalCostBound(ParameterConfiguration config, Set<ProblemInstance> instanceSet, double cutoffTime, double boundValue, boolean upper)
+	{
+		ConfigurationState state = getConfigurationState(config);
+		Map<ProblemInstance, LinkedHashMap<Long, Double>> performance = (state == null) ? Collections.<ProblemInstance, LinkedHashMap<Long, Double>>emptyMap() : state.performance;
+		Set<ProblemInstanceSeedPair> earlyCensored = (state == null) ? Collections.<ProblemInstanceSeedPair>emptySet() : state.earlyCensored;
+
+		Map<ProblemInstance, Map<Long, Double>> hallucinatedValues = EmpiricalCostAggregate.getBoundValues(performance, instanceSet, this, earlyCensored, boundValue, upper);
+		return EmpiricalCostAggregate.getEmpiricalCost(performance, instanceSet, cutoffTime, hallucinatedValues, 0, perInstanceObjectiveFunction, aggregateInstanceObjectiveFunction);
+	}
+
+	@Override
+	public double getTotalRunCost() {
+		return getGlobalState().totalRunCost;
+	}
+
+	@Override
+	public Set<ProblemInstance> getUniqueInstancesRan()
+	{
+		GlobalState g = getGlobalState();
+		Set<ProblemInstance> instances = new LinkedHashSet<ProblemInstance>();
+		for(int i=0; i < g.instancesRanCount; i++)
+		{
+			instances.add(g.instancesRan[i]);
+		}
+		return Collections.unmodifiableSet(instances);
+	}
+
+	@Override
+	public Set<ParameterConfiguration> getUniqueParamConfigurations()
+	{
+		GlobalState g = getGlobalState();
+		Set<ParameterConfiguration> configs = new LinkedHashSet<ParameterConfiguration>();
+		for(int i=0; i < g.configurationsRanCount; i++)
+		{
+			configs.add(g.configurationsRan[i]);
+		}
+		return Collections.unmodifiableSet(configs);
+	}
+
+	@Override
+	public int[][] getParameterConfigurationInstancesRanByIndexExcludingRedundant()
+	{
+		GlobalState g = getGlobalState();
+		int[][] result = new int[g.excludingRedundantCount][2];
+		for(int i=0; i < g.excludingRedundantCount; i++)
+		{
+			result[i][0] = g.runDataExcludingRedundant[i].getThetaIdx();
+			result[i][1] = g.runDataExcludingRedundant[i].getInstanceidx();
+		}
+		return result;
+	}
+
+	@Override
+	public double[] getRunResponseValuesExcludingRedundant()
+	{
+		GlobalState g = getGlobalState();
+		double[] responseValues = new double[g.excludingRedundantCount];
+		for(int i=0; i < g.excludingRedundantCount; i++)
+		{
+			responseValues[i] = g.runDataExcludingRedundant[i].getResponseValue();
+		}
+		return responseValues;
+	}
+
+	@Override
+	public boolean[] getCensoredEarlyFlagsExcludingRedundant()
+	{
+		GlobalState g = getGlobalState();
+		boolean[] censored = new boolean[g.excludingRedundantCount];
+		for(int i=0; i < g.excludingRedundantCount; i++)
+		{
+			censored[i] = g.runDataExcludingRedundant[i].isCappedRun();
+		}
+		return censored;
+	}
+
+	@Override
+	public List<ParameterConfiguration> getAllParameterConfigurationsRan()
+	{
+		GlobalState g = getGlobalState();
+		List<ParameterConfiguration> configs = new ArrayList<ParameterConfiguration>(g.thetaCount);
+		for(int i=0; i < g.thetaCount; i++)
+		{
+			configs.add(g.configurationsByThetaIdx[i]);
+		}
+		return configs;
+	}
+
+	@Override
+	public double[][] getAllConfigurationsRanInValueArrayForm()
+	{
+		GlobalState g = getGlobalState();
+		double[][] configs = new double[g.thetaCount][];
+		for(int i=0; i < g.thetaCount; i++)
+		{
+			configs[i] = g.configurationsByThetaIdx[i].toValueArray();
+		}
+		return configs;
+	}
+
+	@Override
+	public List<RunData> getAlgorithmRunDataExcludingRedundant()
+	{
+		GlobalState g = getGlobalState();
+		return new PrefixList<RunData>(g.runDataExcludingRedundant, g.excludingRedundantCount);
+	}
+
+	@Override
+	public List<RunData> getAlgorithmRunDataIncludingRedundant()
+	{
+		GlobalState g = getGlobalState();
+		return new PrefixList<RunData>(g.runDataIncludingRedundant, g.includingRedundantCount);
+	}
+
+	@Override
+	public List<AlgorithmRunResult> getAlgorithmRunsExcludingRedundant()
+	{
+		GlobalState g = getGlobalState();
+		List<AlgorithmRunResult> runs = new ArrayList<AlgorithmRunResult>(g.excludingRedundantCount);
+		for(int i=0; i < g.excludingRedundantCount; i++)
+		{
+			runs.add(g.runDataExcludingRedundant[i].getRun());
+		}
+		return runs;
+	}
+
+	@Override
+	public List<AlgorithmRunResult> getAlgorithmRunsIncludingRedundant()
+	{
+		GlobalState g = getGlobalState();
+		List<AlgorithmRunResult> runs = new ArrayList<AlgorithmRunResult>(g.includingRedundantCount);
+		for(int i=0; i < g.includingRedundantCount; i++)
+		{
+			runs.add(g.runDataIncludingRedundant[i].getRun());
+		}
+		return runs;
+	}
+
+	@Override
+	public int getTotalNumRunsOfConfigExcludingRedundant(ParameterConfiguration config)
+	{
+		ConfigurationState state = getConfigurationState(config);
+		return (state == null) ? 0 : state.runsExcludingRedundant.size();
+	}
+
+	@Override
+	public int getTotalNumRunsOfConfigIncludingRedundant(ParameterConfiguration config)
+	{
+		ConfigurationState state = getConfigurationState(config);
+		return (state == null) ? 0 : state.runsIncludingRedundant.size();
+	}
+
+	@Override
+	public List<AlgorithmRunResult> getAlgorithmRunsExcludingRedundant(ParameterConfiguration config)
+	{
+		ConfigurationState state = getConfigurationState(config);
+		if(state == null)
+		{
+			return Collections.emptyList();
+		}
+		return state.runsExcludingRedundant;
+	}
+
+	@Override
+	public List<AlgorithmRunResult> getAlgorithmRunsIncludingRedundant(ParameterConfiguration config)
+	{
+		ConfigurationState state = getConfigurationState(config);
+		if(state == null)
+		{
+			return Collections.emptyList();
+		}
+		return state.runsIncludingRedundant;
+	}
+
+	@Override
+	public int getThetaIdx(ParameterConfiguration config)
+	{
+		Integer thetaIdx = getPublishedThetaIdx(config);
+		if(thetaIdx == null)
+		{
+			return -1;
+		} else
+		{
+			return thetaIdx;
+		}
+	}
+
+	@Override
+	public int getNumberOfUniqueProblemInstanceSeedPairsForConfiguration(ParameterConfiguration config)
+	{
+		return getTotalNumRunsOfConfigExcludingRedundant(config);
+	}
+
+	@Override
+	public Map<ProblemInstance, LinkedHashMap<Long, Double>> getPerformanceForConfig(ParameterConfiguration config)
+	{
+		ConfigurationState state = getConfigurationState(config);
+		if(state == null)
+		{
+			return Collections.emptyMap();
+		}
+		return state.performance;
+	}
+
+	@Override
+	public List<Long> getSeedsUsedByInstance(ProblemInstance pi)
+	{
+		final SeedList seeds = getSeedList(pi);
+		if(seeds == null)
+		{
+			return Collections.emptyList();
+		}
+
+		return new AbstractList<Long>()
+		{
+			@Override
+			public Long get(int index)
+			{
+				if(index < 0 || index >= seeds.count)
+				{
+					throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + seeds.count);
+				}
+				return seeds.seeds[index];
+			}
+
+			@Override
+			public int size()
+			{
+				return seeds.count;
+			}
+		};
+	}
+
+	@Override
+	public AlgorithmRunResult getAlgorithmRunResultForAlgorithmRunConfiguration(AlgorithmRunConfiguration runConfig)
+	{
+		ConfigurationState state = getConfigurationState(runConfig.getParameterConfiguration());
+		if(state == null)
+		{
+			return null;
+		}
+
+		//Later runs win, as they would in a map keyed by run configuration
+		for(int i=state.runsIncludingRedundant.size() - 1; i >= 0; i--)
+		{
+			AlgorithmRunResult run = state.runsIncludingRedundant.get(i);
+			if(run.getAlgorithmRunConfiguration().equals(runConfig))
+			{
+				return run;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Lists of every run, configuration and instance.
+	 * <p>
+	 * Arrays are shared between successive states: entries below the counts are never modified once published, later states only write past them
+	 * or use new arrays.
+	 */
+	@Immutable
+	static final class GlobalState
+	{
+		final int iteration;
+
+		final double totalRunCost;
+
+		final RunData[] runDataIncludingRedundant;
+
+		final int includingRedundantCount;
+
+		final RunData[] runDataExcludingRedundant;
+
+		final int excludingRedundantCount;
+
+		/**
+		 * Configurations in the order they were first run
+		 */
+		final ParameterConfiguration[] configurationsRan;
+
+		final int configurationsRanCount;
+
+		/**
+		 * Configurations with a theta index, entry <code>i</code> has theta index <code>i+1</code>
+		 */
+		final ParameterConfiguration[] configurationsByThetaIdx;
+
+		final int thetaCount;
+
+		final ProblemInstance[] instancesRan;
+
+		final int instancesRanCount;
+
+		GlobalState(int iteration, double totalRunCost, RunData[] runDataIncludingRedundant, int includingRedundantCount, RunData[] runDataExcludingRedundant, int excludingRedundantCount,
+				ParameterConfiguration[] configurationsRan, int configurationsRanCount, ParameterConfiguration[] configurationsByThetaIdx, int thetaCount, ProblemInstance[] instancesRan, int instancesRanCount)
+		{
+			this.iteration = iteration;
+			this.totalRunCost = totalRunCost;
+			this.runDataIncludingRedundant = runDataIncludingRedundant;
+			this.includingRedundantCount = includingRedundantCount;
+			this.runDataExcludingRedundant = runDataExcludingRedundant;
+			this.excludingRedundantCount = excludingRedundantCount;
+			this.configurationsRan = configurationsRan;
+			this.configurationsRanCount = configurationsRanCount;
+			this.configurationsByThetaIdx = configurationsByThetaIdx;
+			this.thetaCount = thetaCount;
+			this.instancesRan = instancesRan;
+			this.instancesRanCount = instancesRanCount;
+		}
+	}
+
+	/**
+	 * Everything known about the runs of one configuration, replaced as a whole whenever the configuration gets a new run
+	 */
+	@Immutable
+	static final class ConfigurationState
+	{
+		final List<AlgorithmRunResult> runsIncludingRedundant;
+
+		final List<AlgorithmRunResult> runsExcludingRedundant;
+
+		final Map<ProblemInstance, LinkedHashMap<Long, Double>> performance;
+
+		final Set<ProblemInstanceSeedPair> problemInstanceSeedPairs;
+
+		final Set<ProblemInstanceSeedPair> earlyCensored;
+
+		/**
+		 * Never added to after construction
+		 */
+		final EmpiricalCostAggregate costAggregate;
+
+		ConfigurationState(List<AlgorithmRunResult> runsIncludingRedundant, List<AlgorithmRunResult> runsExcludingRedundant, Map<ProblemInstance, LinkedHashMap<Long, Double>> performance, Set<ProblemInstanceSeedPair> earlyCensored)
+		{
+			this.runsIncludingRedundant = Collections.unmodifiableList(new ArrayList<AlgorithmRunResult>(runsIncludingRedundant));
+			this.runsExcludingRedundant = Collections.unmodifiableList(new ArrayList<AlgorithmRunResult>(runsExcludingRedundant));
+			this.earlyCensored = Collections.unmodifiableSet(new LinkedHashSet<ProblemInstanceSeedPair>(earlyCensored));
+
+			Map<ProblemInstance, LinkedHashMap<Long, Double>> performanceCopy = new LinkedHashMap<ProblemInstance, LinkedHashMap<Long, Double>>();
+			Set<ProblemInstanceSeedPair> pisps = new HashSet<ProblemInstanceSeedPair>();
+			EmpiricalCostAggregate aggregate = new EmpiricalCostAggregate();
+			for(Map.Entry<ProblemInstance, LinkedHashMap<Long, Double>> ent : performance.entrySet())
+			{
+				performanceCopy.put(ent.getKey(), new LinkedHashMap<Long, Double>(ent.getValue()));
+				for(Map.Entry<Long, Double> seedEnt : ent.getValue().entrySet())
+				{
+					pisps.add(new ProblemInstanceSeedPair(ent.getKey(), seedEnt.getKey()));
+					aggregate.add(ent.getKey(), seedEnt.getValue());
+				}
+			}
+			this.performance = Collections.unmodifiableMap(performanceCopy);
+			this.problemInstanceSeedPairs = Collections.unmodifiableSet(pisps);
+			this.costAggregate = aggregate;
+		}
+	}
+
+	/**
+	 * Seeds of every run on one instance, the array is shared in the same way as those of {@link GlobalState}
+	 */
+	@Immutable
+	static final class SeedList
+	{
+		final long[] seeds;
+
+		final int count;
+
+		SeedList(long[] seeds, int count)
+		{
+			this.seeds = seeds;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * Read only list over the published prefix of an array
+	 */
+	private static final class PrefixList<E> extends AbstractList<E>
+	{
+		private final E[] array;
+
+		private final int size;
+
+		PrefixList(E[] array, int size)
+		{
+			this.array = array;
+			this.size = size;
+		}
+
+		@Override
+		public E get(int index)
+		{
+			if(index < 0 || index >= size)
+			{
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			}
+			return array[index];
+		}
+
+		@Override
+		public int size()
+		{
+			return size;
+		}
+	}
+}
@@ -163,6 +163,18 @@ public interface RunHistory {
 	 */
 	public int[][] getParameterConfigurationInstancesRanByIndexExcludingRedundant();
 	
+	/**
+	 * Returns the response value of every run excluding redundant ones, in the order of {@link #getParameterConfigurationInstancesRanByIndexExcludingRedundant()}
+	 * @return response value of each run under the run objective
+	 */
+	public double[] getRunResponseValuesExcludingRedundant();
+	
+	/**
+	 * Returns whether every run excluding redundant ones was censored early, in the order of {@link #getParameterConfigurationInstancesRanByIndexExcludingRedundant()}
+	 * @return censored early flag of each run
+	 */
+	public boolean[] getCensoredEarlyFlagsExcludingRedundant();
+	
 	
 
 
@@ -0,0 +1,104 @@
+package ca.ubc.cs.beta.aeatk.runhistory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationTable;
+
+/**
+ * Theta indexes of the configurations of a run history, starting at 1, looked up through the configurations' interned IDs.
+ * <p>
+ * Replaces a {@link KeyObjectManager} of configurations: an interned configuration finds its theta index with an array lookup instead of hashing and
+ * comparing its values. All configurations are interned in the {@link ParameterConfigurationTable} of the first configuration's space.
+ * <p>
+ * Lookups do not modify this object, so they may run concurrently as long as no index is being created.
+ */
+@NotThreadSafe
+class ThetaIndexes {
+
+	private ParameterConfigurationTable table;
+
+	/**
+	 * Theta index of each interned ID, 0 if the configuration has none
+	 */
+	private int[] thetaIdxByID = new int[64];
+
+	/**
+	 * Configurations by theta index - 1
+	 */
+	private final List<ParameterConfiguration> configurations = new ArrayList<ParameterConfiguration>();
+
+	/**
+	 * Returns the theta index of the configuration, creating the next one if it has none
+	 *
+	 * @param config	configuration to index
+	 * @return theta index of the configuration
+	 */
+	public int getOrCreateKey(ParameterConfiguration config)
+	{
+		if(config == null)
+		{
+			throw new IllegalStateException("Can't write a null key");
+		}
+
+		if(table == null)
+		{
+			table = config.getParameterConfigurationSpace().getConfigurationTable();
+		}
+
+		int id = table.getID(config);
+		if(id >= thetaIdxByID.length)
+		{
+			thetaIdxByID = Arrays.copyOf(thetaIdxByID, Math.max(2 * thetaIdxByID.length, id + 1));
+		}
+
+		if(thetaIdxByID[id] == 0)
+		{
+			configurations.add(config);
+			thetaIdxByID[id] = configurations.size();
+		}
+		return thetaIdxByID[id];
+	}
+
+	/**
+	 * Returns the theta index of the configuration, without interning it
+	 *
+	 * @param config	configuration to look up
+	 * @return theta index of the configuration, or <code>-1</code> if it has none
+	 */
+	public int getKey(ParameterConfiguration config)
+	{
+		if(table == null)
+		{
+			return -1;
+		}
+
+		int id = table.findID(config);
+		if(id < 0 || id >= thetaIdxByID.length || thetaIdxByID[id] == 0)
+		{
+			return -1;
+		}
+		return thetaIdxByID[id];
+	}
+
+	/**
+	 * @param thetaIdx	theta index
+	 * @return the configuration first indexed with the theta index
+	 */
+	public ParameterConfiguration getValue(int thetaIdx)
+	{
+		return configurations.get(thetaIdx - 1);
+	}
+
+	/**
+	 * @return number of configurations with a theta index
+	 */
+	public int size()
+	{
+		return configurations.size();
+	}
+}
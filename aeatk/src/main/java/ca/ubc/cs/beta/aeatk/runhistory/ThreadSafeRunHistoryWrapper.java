@@ -223,6 +223,28 @@ public class ThreadSafeRunHistoryWrapper implements ThreadSafeRunHistory {
 		}
 	}
 
+	@Override
+	public double[] getRunResponseValuesExcludingRedundant() {
+		lockRead();
+		try {
+			return runHistory.getRunResponseValuesExcludingRedundant();
+		} finally
+		{
+			unlockRead();
+		}
+	}
+
+	@Override
+	public boolean[] getCensoredEarlyFlagsExcludingRedundant() {
+		lockRead();
+		try {
+			return runHistory.getCensoredEarlyFlagsExcludingRedundant();
+		} finally
+		{
+			unlockRead();
+		}
+	}
+
 
 	
 	@Override
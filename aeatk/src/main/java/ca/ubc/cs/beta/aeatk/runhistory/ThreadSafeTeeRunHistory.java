@@ -177,6 +177,16 @@ public class ThreadSafeTeeRunHistory implements ThreadSafeRunHistory {
 		return rh.getParameterConfigurationInstancesRanByIndexExcludingRedundant();
 	}
 
+	@Override
+	public double[] getRunResponseValuesExcludingRedundant() {
+		return rh.getRunResponseValuesExcludingRedundant();
+	}
+
+	@Override
+	public boolean[] getCensoredEarlyFlagsExcludingRedundant() {
+		return rh.getCensoredEarlyFlagsExcludingRedundant();
+	}
+
 	@Override
 	public List<ParameterConfiguration> getAllParameterConfigurationsRan() {
 		return rh.getAllParameterConfigurationsRan();
@@ -108,6 +108,28 @@ public class SMACOptions extends AbstractOptions {
 	@UsageTextField(level=OptionLevel.INTERMEDIATE)
 	@Parameter(names={"--initial-challenger-runs","--initialN","--initialChallenge"}, description="initial amount of runs to request when intensifying on a challenger", validateWith=FixedPositiveInteger.class)
 	public int initialChallengeRuns = 1;
+	
+	@UsageTextField(level=OptionLevel.ADVANCED)
+	@Parameter(names={"--quality-racing"}, description="When optimizing quality without adaptive capping, pass the incumbent's cost as a quality bound to a challenger's first run, so that the target algorithm can give up as soon as it can no longer win; such runs are reported as censored")
+	public boolean qualityRacing = false;
+	
+	@UsageTextField(level=OptionLevel.ADVANCED)
+	@Parameter(names={"--async-smbo"}, description="If true, the model is refit in the background while challengers are being run, instead of alternating between model building and intensification")
+	public boolean asyncSMBO = false;
+	
+	public enum RunHistoryStore{
+		MAP,
+		COLUMNAR,
+		CONCURRENT
+	}
+	
+	@UsageTextField(level=OptionLevel.DEVELOPER)
+	@Parameter(names={"--run-history-store"}, description="How the run history stores runs. MAP keeps them in maps of objects, COLUMNAR keeps them in primitive columns that the model is built from directly, CONCURRENT keeps columns too, reads never wait for appends, and the model is built from a snapshot while runs keep being appended (useful with --async-smbo)")
+	public RunHistoryStore runHistoryStore = RunHistoryStore.MAP;
+	
+	@UsageTextField(defaultValues="Defaults to the number of validation cores", level=OptionLevel.ADVANCED)
+	@Parameter(names={"--async-refit-challenges"}, description="In asynchronous mode, number of challenges that must finish before the model is refit", validateWith=FixedPositiveInteger.class)
+	public Integer asyncRefitChallenges = null;
 
 	@UsageTextField(level=OptionLevel.INTERMEDIATE)
 	@Parameter(names={"--initial-incumbent","--initialIncumbent"}, description="Initial Incumbent to use for configuration (you can use RANDOM, or DEFAULT as a special string to get a RANDOM or the DEFAULT configuration as needed). Other configurations are specified as: -name 'value' -name 'value' ... For instance: --quick-sort 'on' ")
@@ -163,6 +185,10 @@ public class SMACOptions extends AbstractOptions {
 	@Parameter(names={"--num-ls-random","--num-local-search-random"}, description="Number of random configurations that will be used as potential starting points for local search", validateWith=NonNegativeInteger.class)
 	public int numberOfRandomConfigsUsedForLocalSearch = 0;
 	
+	@UsageTextField(defaultValues="Number of available processors", level=OptionLevel.ADVANCED)
+	@Parameter(names={"--num-ls-threads","--num-local-search-threads"}, description="Number of threads the local searches for challengers run on. Every search gets its own random stream, so the challengers selected do not depend on this value", validateWith=FixedPositiveInteger.class)
+	public Integer localSearchThreads = null;
+	
 	@UsageTextField(level=OptionLevel.ADVANCED)
 	@Parameter(names={"--num-pca","--numPCA"}, description="number of principal components features to use when building the model", validateWith=FixedPositiveInteger.class)
 	public int numPCA = 7;
@@ -256,6 +282,23 @@ public class SMACOptions extends AbstractOptions {
 	
 	
 	
+	public enum SharedModelModeTransport{
+		JSON,
+		MAPPED
+	}
+	
+	@UsageTextField(level=OptionLevel.ADVANCED)
+	@Parameter(names={"--shared-model-mode-transport"}, description="How run data is exchanged in shared model mode. JSON writes and re-parses JSON files, MAPPED appends fixed size binary records to memory mapped files so that other runs only read the new records and never parse anything. All runs sharing a directory should use the same transport")
+	public SharedModelModeTransport sharedModelModeTransport = SharedModelModeTransport.JSON;
+	
+	@UsageTextField(level=OptionLevel.ADVANCED)
+	@Parameter(names={"--shared-model-mode-json-export"}, description="If true and the transport is MAPPED, we will also write run data to a JSON file (for debugging), other runs will not read it")
+	public boolean sharedModelModeJsonExport = false;
+	
+	@UsageTextField(level=OptionLevel.DEVELOPER)
+	@Parameter(names={"--shared-model-mode-segment-runs"}, description="Number of runs in each memory mapped file of the MAPPED transport, once full another file is started", validateWith=FixedPositiveInteger.class)
+	public int sharedModelModeSegmentRuns = 8192;
+	
 	@UsageTextField(level=OptionLevel.DEVELOPER)
 	@Parameter(names={"--shared-model-mode-default-handling"}, description="If set to USE_ALL then all runs of the default configuration will be used, If set to SKIP_FIRST_TWO then then first two runs (presumably the default) will not be read, If set to IGNORE_ALL then we will always ignore runs with the default configuration")
 	public SharedModelModeDefaultHandling defaultHandler = SharedModelModeDefaultHandling.USE_ALL;
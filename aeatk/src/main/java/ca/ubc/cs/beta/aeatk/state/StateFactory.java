@@ -66,6 +66,13 @@ public interface StateFactory {
 	 */
 	public void copyFileToStateDir(String name, File f);
 	
+	/**
+	 * Releases any files held open between saves, called once no more saves are expected
+	 * 
+	 * <b>Implementation Note:</b> A save after this method is called should still succeed, reacquiring whatever it needs
+	 */
+	public void shutdown();
+	
 	
 
 
@@ -2,6 +2,7 @@ package ca.ubc.cs.beta.aeatk.state;
 
 import java.io.File;
 
+import ca.ubc.cs.beta.aeatk.state.journal.JournalStateFactory;
 import ca.ubc.cs.beta.aeatk.state.legacy.LegacyStateFactory;
 import ca.ubc.cs.beta.aeatk.state.nullFactory.NullStateFactory;
 
@@ -12,6 +13,12 @@ import ca.ubc.cs.beta.aeatk.state.nullFactory.NullStateFactory;
  */
 public final class StateFactoryHelper {
 
+	/**
+	 * Defaults for the journal state factory, see <code>StateFactoryOptions</code> 
+	 */
+	static final int JOURNAL_SNAPSHOT_MINIMUM_RUNS = 1000;
+	static final int JOURNAL_FSYNC_SAVES = 1;
+
 	/**
 	 * Retrieves a State Serializer with the required configuration
 	 * <br>
@@ -37,6 +44,8 @@ public final class StateFactoryHelper {
 				return new NullStateFactory();
 			case LEGACY:
 				return new LegacyStateFactory(stateLocation.getAbsolutePath(), null);
+			case JOURNAL:
+				return new JournalStateFactory(stateLocation.getAbsolutePath(), null, JOURNAL_SNAPSHOT_MINIMUM_RUNS, JOURNAL_FSYNC_SAVES);
 		}
 		
 		throw new IllegalArgumentException("State Serializer specified is not supported");
@@ -11,6 +11,8 @@ import java.util.ListIterator;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 
+import ca.ubc.cs.beta.aeatk.misc.jcommander.validator.FixedPositiveInteger;
+import ca.ubc.cs.beta.aeatk.misc.jcommander.validator.NonNegativeInteger;
 import ca.ubc.cs.beta.aeatk.misc.options.CommandLineOnly;
 import ca.ubc.cs.beta.aeatk.misc.options.OptionLevel;
 import ca.ubc.cs.beta.aeatk.misc.options.UsageTextField;
@@ -18,6 +20,7 @@ import ca.ubc.cs.beta.aeatk.options.AbstractOptions;
 import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
 import ca.ubc.cs.beta.aeatk.probleminstance.InstanceListWithSeeds;
 import ca.ubc.cs.beta.aeatk.state.converter.AutoAsMaxConverter;
+import ca.ubc.cs.beta.aeatk.state.journal.JournalStateFactory;
 import ca.ubc.cs.beta.aeatk.state.legacy.LegacyStateFactory;
 import ca.ubc.cs.beta.aeatk.state.nullFactory.NullStateFactory;
 
@@ -62,6 +65,14 @@ public class StateFactoryOptions extends AbstractOptions{
 	@Parameter(names={"--save-context","--saveContext","--saveContextWithState" }, description="saves some context with the state folder so that the data is mostly self-describing (Scenario, Instance File, Feature File, Param File are saved)")
 	public boolean saveContextWithState = true;
 	
+	@UsageTextField(level=OptionLevel.DEVELOPER)
+	@Parameter(names={"--state-journal-snapshot-runs"}, description="minimum number of runs appended to the state journal before it is compacted into a snapshot (only used with the JOURNAL state serializer)", validateWith=FixedPositiveInteger.class)
+	public int journalSnapshotMinimumRuns = StateFactoryHelper.JOURNAL_SNAPSHOT_MINIMUM_RUNS;
+	
+	@UsageTextField(level=OptionLevel.DEVELOPER)
+	@Parameter(names={"--state-journal-fsync-saves"}, description="number of saves between forcing the state journal to disk, 0 leaves it to the operating system (only used with the JOURNAL state serializer)", validateWith=NonNegativeInteger.class)
+	public int journalFsyncSaves = StateFactoryHelper.JOURNAL_FSYNC_SAVES;
+	
 	
 	public StateFactory getRestoreStateFactory(String outputDirectory, int numRun)
 	{
@@ -77,6 +88,9 @@ public class StateFactoryOptions extends AbstractOptions{
 			case LEGACY:
 				restoreSF = new LegacyStateFactory(outputDirectory +  File.separator + "state-run" + numRun + File.separator, restoreStateFrom);
 				break;
+			case JOURNAL:
+				restoreSF = new JournalStateFactory(outputDirectory +  File.separator + "state-run" + numRun + File.separator, restoreStateFrom, journalSnapshotMinimumRuns, journalFsyncSaves);
+				break;
 			default:
 				throw new IllegalArgumentException("State Serializer specified is not supported");
 		}
@@ -97,6 +111,9 @@ public class StateFactoryOptions extends AbstractOptions{
 				String savePath = outputDir + File.separator + "state-run" + numRun + File.separator;
 				sf = new LegacyStateFactory(savePath, restoreStateFrom);
 				break;
+			case JOURNAL:
+				sf = new JournalStateFactory(outputDir + File.separator + "state-run" + numRun + File.separator, restoreStateFrom, journalSnapshotMinimumRuns, journalFsyncSaves);
+				break;
 			default:
 				throw new IllegalArgumentException("State Serializer specified is not supported");
 		}
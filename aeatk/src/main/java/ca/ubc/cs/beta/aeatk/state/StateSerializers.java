@@ -18,5 +18,10 @@ public enum StateSerializers {
 	/**
 	 * State Serializers used for MATLAB format to disk 
 	 */
-	LEGACY
+	LEGACY,
+	
+	/**
+	 * State Serializers that append new runs to a journal on disk, with periodic snapshots
+	 */
+	JOURNAL
 }
@@ -0,0 +1,225 @@
+package ca.ubc.cs.beta.aeatk.state.journal;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Record layout and file names shared by the journal serializer and deserializer
+ * <p>
+ * Every line of a journal or snapshot file is one record of the form <code>crc,type,field,...</code>, where <code>crc</code> is the CRC-32 (8 hex digits) of everything after the first comma.
+ * Free text fields (parameter strings, additional run data, incumbents) are always last and are escaped so that a record never spans lines.
+ * <p>
+ * Record types:
+ * <ul>
+ * 	<li><code>C,thetaIdx,paramString</code> a configuration seen for the first time</li>
+ * 	<li><code>R,thetaIdx,instanceID,seed,cutoffTime,runStatus,runtime,runLength,quality,resultSeed,iteration,wallclockTime,additionalRunData</code> a run</li>
+ * 	<li><code>S,id,iteration,runCount,objectDumpFile,incumbent</code> a save, everything before it is part of the saved state</li>
+ * </ul>
+ *
+ * The state is split into numbered segments. Segment <code>n</code> consists of an optional snapshot file, holding every configuration and run up to some save followed by that save, and a journal file holding the saves made after it.
+ * Segment 0 never has a snapshot.
+ */
+final class JournalFormat {
+
+	static final Charset CHARSET = Charset.forName("UTF-8");
+
+	static final char CONFIGURATION_RECORD = 'C';
+	static final char RUN_RECORD = 'R';
+	static final char SAVE_RECORD = 'S';
+
+	static final int RUN_RECORD_FIELDS = 13;
+
+	static final String JOURNAL_FILENAME = "state-journal";
+	static final String SNAPSHOT_FILENAME = "state-snapshot";
+	static final String OBJECT_DUMP_FILENAME = "journal_obj_dump";
+
+	private static final Pattern segmentPattern = Pattern.compile("\\A(" + JOURNAL_FILENAME + "|" + SNAPSHOT_FILENAME + ")-(\\d+)\\.csv\\z");
+
+	private JournalFormat()
+	{
+		//Not instantiable
+	}
+
+	/**
+	 * Generates the filename of the journal of a segment
+	 * @param path		directory of the state
+	 * @param segment	segment number
+	 * @return the journal file
+	 */
+	static File getJournalFile(String path, int segment)
+	{
+		return new File(path + File.separator + JOURNAL_FILENAME + "-" + String.format("%05d", segment) + ".csv");
+	}
+
+	/**
+	 * Generates the filename of the snapshot of a segment
+	 * @param path		directory of the state
+	 * @param segment	segment number
+	 * @return the snapshot file
+	 */
+	static File getSnapshotFile(String path, int segment)
+	{
+		return new File(path + File.separator + SNAPSHOT_FILENAME + "-" + String.format("%05d", segment) + ".csv");
+	}
+
+	/**
+	 * Generates the filename of the java object dump of a save
+	 * @param path 			directory of the state
+	 * @param id 			id of the save (generally "it" or "CRASH")
+	 * @param iteration		iteration of the save
+	 * @return the object dump file
+	 */
+	static File getObjectDumpFile(String path, String id, int iteration)
+	{
+		return new File(path + File.separator + OBJECT_DUMP_FILENAME + "-" + id + iteration + ".obj");
+	}
+
+	/**
+	 * Returns the segment number of a journal or snapshot file name
+	 * @param filename 	name of the file (without directory)
+	 * @param snapshot	<code>true</code> to match snapshot files, <code>false</code> to match journal files
+	 * @return segment number, or <code>-1</code> if the name does not belong to such a file
+	 */
+	static int getSegment(String filename, boolean snapshot)
+	{
+		Matcher m = segmentPattern.matcher(filename);
+		if(!m.find())
+		{
+			return -1;
+		}
+
+		if(m.group(1).equals(SNAPSHOT_FILENAME) != snapshot)
+		{
+			return -1;
+		}
+
+		try {
+			return Integer.valueOf(m.group(2));
+		} catch(NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * Prefixes a record with its checksum
+	 * @param record	record without a checksum
+	 * @return line to write (without line terminator)
+	 */
+	static String seal(String record)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(record.getBytes(CHARSET));
+		String hex = Long.toHexString(crc.getValue());
+		StringBuilder sb = new StringBuilder(record.length() + 9);
+		for(int i=hex.length(); i < 8; i++)
+		{
+			sb.append('0');
+		}
+		return sb.append(hex).append(',').append(record).toString();
+	}
+
+	/**
+	 * Verifies the checksum of a line
+	 * @param line 	line read from a journal or snapshot
+	 * @return	the record without its checksum, or <code>null</code> if the line is torn or corrupt
+	 */
+	static String unseal(String line)
+	{
+		if(line.length() < 11 || line.charAt(8) != ',')
+		{
+			return null;
+		}
+
+		String record = line.substring(9);
+		CRC32 crc = new CRC32();
+		crc.update(record.getBytes(CHARSET));
+
+		try {
+			if(Long.parseLong(line.substring(0,8), 16) != crc.getValue())
+			{
+				return null;
+			}
+		} catch(NumberFormatException e)
+		{
+			return null;
+		}
+
+		return record;
+	}
+
+	/**
+	 * Escapes free text so that it can not span lines
+	 * @param s string to escape, may be <code>null</code>
+	 * @return escaped string
+	 */
+	static String escape(String s)
+	{
+		if(s == null)
+		{
+			return "";
+		}
+
+		StringBuilder sb = new StringBuilder(s.length());
+		for(int i=0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			switch(c)
+			{
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				default:
+					sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Reverses {@link #escape(String)}
+	 * @param s escaped string
+	 * @return original string
+	 */
+	static String unescape(String s)
+	{
+		if(s.indexOf('\\') == -1)
+		{
+			return s;
+		}
+
+		StringBuilder sb = new StringBuilder(s.length());
+		for(int i=0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if(c == '\\' && i + 1 < s.length())
+			{
+				i++;
+				switch(s.charAt(i))
+				{
+					case 'n':
+						sb.append('\n');
+						break;
+					case 'r':
+						sb.append('\r');
+						break;
+					default:
+						sb.append(s.charAt(i));
+				}
+			} else
+			{
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
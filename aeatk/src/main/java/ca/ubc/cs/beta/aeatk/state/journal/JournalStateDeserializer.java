@@ -0,0 +1,395 @@
+package ca.ubc.cs.beta.aeatk.state.journal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.ExistingAlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunStatus;
+import ca.ubc.cs.beta.aeatk.exceptions.DuplicateRunException;
+import ca.ubc.cs.beta.aeatk.exceptions.StateSerializationException;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration.ParameterStringFormat;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+import ca.ubc.cs.beta.aeatk.runhistory.RunHistory;
+import ca.ubc.cs.beta.aeatk.state.StateDeserializer;
+
+/**
+ * Restores state written by the {@link JournalStateFactory}
+ * <p>
+ * The newest segment whose snapshot was taken at or before the requested iteration is chosen, its snapshot is replayed, and then its journal is replayed up to
+ * the last save at or before the requested iteration. Records after that save, and everything from the first torn or corrupt record on, are ignored.
+ * <p>
+ * Unlike the {@link ca.ubc.cs.beta.aeatk.state.legacy.LegacyStateDeserializer} saves are not matched by id, the most recent save with any id is restored.
+ */
+public class JournalStateDeserializer implements StateDeserializer {
+
+	static final String OBJECT_MAP_KEY = "OBJECT_MAP_KEY";
+	static final String ITERATION_KEY = "ITERATION_KEY";
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	private final RunHistory runHistory;
+
+	private final ParameterConfigurationSpace configSpace;
+	private final AlgorithmExecutionConfiguration execConfig;
+	private final Map<Integer, ProblemInstance> instanceMap = new HashMap<Integer, ProblemInstance>();
+	private final Map<Integer, ParameterConfiguration> configMap = new HashMap<Integer, ParameterConfiguration>();
+
+	/**
+	 * Fields of the last save replayed
+	 */
+	private String[] save;
+
+	private int runsRestored = 0;
+	private int duplicateRunsDropped = 0;
+
+	private final int iteration;
+	private final ParameterConfiguration incumbent;
+	private final Map<String, Serializable> objectStateMap;
+
+	/**
+	 * Generates objects necessary to restore SMAC to the state in the journal
+	 *
+	 * @param restoreFromPath 				Directory to restore from
+	 * @param id							The id to restore (only used for logging)
+	 * @param restoreIteration				The iteration to restore, <code>Integer.MAX_VALUE</code> for the most recent save
+	 * @param configSpace					The configuration space the state files are from
+	 * @param instances						The instances used in the run
+	 * @param execConfig					The execution configuration used in the run
+	 * @param emptyRunHistory				A RunHistory object that has no runs in it
+	 * @throws StateSerializationException  If we cannot restore the state
+	 */
+	@SuppressWarnings("unchecked")
+	JournalStateDeserializer(String restoreFromPath, String id, int restoreIteration, ParameterConfigurationSpace configSpace, List<ProblemInstance> instances, AlgorithmExecutionConfiguration execConfig, RunHistory emptyRunHistory)
+	{
+		if(configSpace == null) throw new IllegalArgumentException("Config Space cannot be null");
+		if(emptyRunHistory == null) throw new IllegalArgumentException("Run History cannot be null");
+		if(instances == null) throw new IllegalArgumentException("Instances cannot be null");
+		if(execConfig == null) throw new IllegalArgumentException("execConfig cannot be null");
+
+		if(emptyRunHistory.getAlgorithmRunDataExcludingRedundant().size() > 0)
+		{
+			log.warn("RunHistory object already contains runs this may cause problems restoring runs");
+		}
+
+		this.runHistory = emptyRunHistory;
+		this.configSpace = configSpace;
+		this.execConfig = execConfig;
+
+		for(ProblemInstance instance : instances)
+		{
+			instanceMap.put(instance.getInstanceID(), instance);
+		}
+
+		File restoreDirectory = new File(restoreFromPath);
+		if(!restoreDirectory.isDirectory()) throw new IllegalArgumentException("Restore Directory specified: " + restoreFromPath + " does not exist");
+
+		log.debug("Trying to restore iteration: {} id: {} from path: {}", restoreIteration, id, restoreFromPath);
+
+		try {
+			int segment = findSegment(restoreDirectory, restoreIteration);
+
+			File snapshot = JournalFormat.getSnapshotFile(restoreDirectory.getAbsolutePath(), segment);
+			if(snapshot.exists())
+			{
+				replaySnapshot(snapshot);
+			}
+
+			File journal = JournalFormat.getJournalFile(restoreDirectory.getAbsolutePath(), segment);
+			if(journal.exists())
+			{
+				replayJournal(journal, restoreIteration);
+			}
+
+			if(save == null)
+			{
+				throw new StateSerializationException("Could not find a save at or before iteration " + restoreIteration + " in path " + restoreFromPath);
+			}
+
+			this.iteration = Integer.valueOf(save[2]);
+			if(restoreIteration != Integer.MAX_VALUE && this.iteration != restoreIteration)
+			{
+				log.warn("No save found for iteration {}, restoring the closest earlier save at iteration {}", restoreIteration, this.iteration);
+			}
+
+			int runCount = Integer.valueOf(save[3]);
+			if(runCount != runsRestored + duplicateRunsDropped)
+			{
+				log.warn("Save for iteration {} recorded {} runs but {} were restored, the state may be corrupt", this.iteration, runCount, runsRestored + duplicateRunsDropped);
+			}
+
+			this.incumbent = (save[5].length() > 0) ? configSpace.getParameterConfigurationFromString(JournalFormat.unescape(save[5]), ParameterStringFormat.STATEFILE_SYNTAX) : null;
+
+			File objectDump = new File(restoreDirectory, save[4]);
+			Map<String, Serializable> objectMap = null;
+			if(objectDump.exists())
+			{
+				ObjectInputStream oReader = new ObjectInputStream(new FileInputStream(objectDump));
+				try {
+					Map<String, Serializable> dump = (Map<String, Serializable>) oReader.readObject();
+
+					if(!Integer.valueOf(this.iteration).equals(dump.get(ITERATION_KEY)))
+					{
+						throw new StateSerializationException("File Found claimed to be for iteration " + this.iteration + " but contained iteration " + dump.get(ITERATION_KEY) + " in file: " + objectDump.getAbsolutePath());
+					}
+					objectMap = (Map<String, Serializable>) dump.get(OBJECT_MAP_KEY);
+				} finally
+				{
+					oReader.close();
+				}
+			} else
+			{
+				log.warn("Could not find object dump file {} for iteration {}, restoring runs only", objectDump.getAbsolutePath(), this.iteration);
+			}
+			this.objectStateMap = (objectMap != null) ? objectMap : Collections.<String, Serializable>emptyMap();
+
+		} catch(IOException e)
+		{
+			throw new StateSerializationException("Could not restore state", e);
+		} catch (ClassNotFoundException e) {
+			throw new StateSerializationException("Java Serialization Failed", e);
+		}
+
+		log.debug("Restored {} runs, {} duplicates were dropped", runsRestored, duplicateRunsDropped);
+		log.debug("Successfully restored iteration: {} id: {} from path: {}", iteration, id, restoreFromPath);
+	}
+
+	/**
+	 * Finds the newest segment whose snapshot is at or before the requested iteration
+	 */
+	private int findSegment(File restoreDirectory, int restoreIteration) throws IOException
+	{
+		int maxSegment = -1;
+		String[] filenames = restoreDirectory.list();
+		for(String filename : filenames)
+		{
+			maxSegment = Math.max(maxSegment, Math.max(JournalFormat.getSegment(filename, true), JournalFormat.getSegment(filename, false)));
+		}
+
+		if(maxSegment < 0)
+		{
+			throw new StateSerializationException("Could not find a state journal in path " + restoreDirectory.getAbsolutePath());
+		}
+
+		for(int segment = maxSegment; segment > 0; segment--)
+		{
+			File snapshot = JournalFormat.getSnapshotFile(restoreDirectory.getAbsolutePath(), segment);
+			if(!snapshot.exists())
+			{
+				continue;
+			}
+
+			BufferedReader reader = openReader(snapshot);
+			try {
+				String line = reader.readLine();
+				String record = (line != null) ? JournalFormat.unseal(line) : null;
+				if(record == null || record.charAt(0) != JournalFormat.SAVE_RECORD)
+				{
+					throw new StateSerializationException("Snapshot " + snapshot.getAbsolutePath() + " does not start with a valid save record");
+				}
+
+				if(Integer.valueOf(record.split(",", 6)[2]) <= restoreIteration)
+				{
+					return segment;
+				}
+			} finally
+			{
+				reader.close();
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Replays a snapshot, which must be intact
+	 */
+	private void replaySnapshot(File snapshot) throws IOException
+	{
+		log.debug("Replaying snapshot {}", snapshot.getAbsolutePath());
+		BufferedReader reader = openReader(snapshot);
+		try {
+			String line;
+			int lineNumber = 0;
+			while((line = reader.readLine()) != null)
+			{
+				lineNumber++;
+				String record = JournalFormat.unseal(line);
+				if(record == null)
+				{
+					throw new StateSerializationException("Snapshot " + snapshot.getAbsolutePath() + " is corrupt on line " + lineNumber);
+				}
+
+				if(record.charAt(0) == JournalFormat.SAVE_RECORD)
+				{
+					save = record.split(",", 6);
+				} else
+				{
+					apply(record);
+				}
+			}
+		} finally
+		{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Replays a journal up to the last intact save at or before the requested iteration
+	 */
+	private void replayJournal(File journal, int restoreIteration) throws IOException
+	{
+		log.debug("Replaying journal {}", journal.getAbsolutePath());
+		List<String> pending = new ArrayList<String>();
+
+		BufferedReader reader = openReader(journal);
+		try {
+			String line;
+			int lineNumber = 0;
+			while((line = reader.readLine()) != null)
+			{
+				lineNumber++;
+				String record = JournalFormat.unseal(line);
+				if(record == null)
+				{
+					log.warn("Journal {} is torn or corrupt on line {}, ignoring the rest of it", journal.getAbsolutePath(), lineNumber);
+					break;
+				}
+
+				if(record.charAt(0) == JournalFormat.SAVE_RECORD)
+				{
+					String[] thisSave = record.split(",", 6);
+					if(Integer.valueOf(thisSave[2]) > restoreIteration)
+					{
+						break;
+					}
+
+					for(String pendingRecord : pending)
+					{
+						apply(pendingRecord);
+					}
+					pending.clear();
+					save = thisSave;
+				} else
+				{
+					pending.add(record);
+				}
+			}
+		} finally
+		{
+			reader.close();
+		}
+
+		if(pending.size() > 0)
+		{
+			log.debug("Ignoring {} journal records after the restored save", pending.size());
+		}
+	}
+
+	/**
+	 * Applies a configuration or run record
+	 */
+	private void apply(String record)
+	{
+		try {
+			switch(record.charAt(0))
+			{
+				case JournalFormat.CONFIGURATION_RECORD:
+					String[] config = record.split(",", 3);
+					configMap.put(Integer.valueOf(config[1]), configSpace.getParameterConfigurationFromString(JournalFormat.unescape(config[2]), ParameterStringFormat.STATEFILE_SYNTAX));
+					break;
+				case JournalFormat.RUN_RECORD:
+					applyRun(record.split(",", JournalFormat.RUN_RECORD_FIELDS));
+					break;
+				default:
+					throw new StateSerializationException("Unknown record type in state journal: " + record);
+			}
+		} catch(StateSerializationException e)
+		{
+			throw e;
+		} catch(RuntimeException e)
+		{
+			throw new StateSerializationException("Error occured while restoring the following record of the state journal: " + record, e);
+		}
+	}
+
+	private void applyRun(String[] fields)
+	{
+		if(fields.length != JournalFormat.RUN_RECORD_FIELDS)
+		{
+			throw new StateSerializationException("Run record has " + fields.length + " fields, expected " + JournalFormat.RUN_RECORD_FIELDS);
+		}
+
+		ParameterConfiguration config = configMap.get(Integer.valueOf(fields[1]));
+		if(config == null)
+		{
+			throw new StateSerializationException("Run record referenced a configuration that was not restored: " + fields[1]);
+		}
+
+		ProblemInstance pi = instanceMap.get(Integer.valueOf(fields[2]));
+		if(pi == null)
+		{
+			throw new StateSerializationException("Run record referenced a Instance ID that does not exist: " + fields[2] + " we know about " + instanceMap.size() + " instances");
+		}
+
+		int runIteration = Integer.valueOf(fields[10]);
+		while(runIteration > runHistory.getIteration())
+		{
+			runHistory.incrementIteration();
+		}
+
+		AlgorithmRunConfiguration runConfig = new AlgorithmRunConfiguration(new ProblemInstanceSeedPair(pi, Long.valueOf(fields[3])), Double.valueOf(fields[4]), config, execConfig);
+		AlgorithmRunResult run = new ExistingAlgorithmRunResult(runConfig, RunStatus.getAutomaticConfiguratorResultForKey(fields[5]), Double.valueOf(fields[6]), Double.valueOf(fields[7]), Double.valueOf(fields[8]), Long.valueOf(fields[9]), JournalFormat.unescape(fields[12]), Double.valueOf(fields[11]));
+
+		try {
+			runHistory.append(run);
+			runsRestored++;
+		} catch(DuplicateRunException e)
+		{
+			duplicateRunsDropped++;
+			log.trace("Duplicate Run Detected dropped {}", run);
+		}
+	}
+
+	private static BufferedReader openReader(File f) throws IOException
+	{
+		return new BufferedReader(new InputStreamReader(new FileInputStream(f), JournalFormat.CHARSET));
+	}
+
+	@Override
+	public RunHistory getRunHistory() {
+		return runHistory;
+	}
+
+	@Override
+	public int getIteration() {
+		return iteration;
+	}
+
+	@Override
+	public ParameterConfiguration getIncumbent() {
+		return incumbent;
+	}
+
+	@Override
+	public Map<String, Serializable> getObjectStateMap() {
+		return objectStateMap;
+	}
+}
@@ -0,0 +1,523 @@
+package ca.ubc.cs.beta.aeatk.state.journal;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.exceptions.StateSerializationException;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration.ParameterStringFormat;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.runhistory.RunData;
+import ca.ubc.cs.beta.aeatk.runhistory.RunHistory;
+import ca.ubc.cs.beta.aeatk.state.StateDeserializer;
+import ca.ubc.cs.beta.aeatk.state.StateFactory;
+import ca.ubc.cs.beta.aeatk.state.StateSerializer;
+
+/**
+ * Saves state as an append-only journal, so that each save only writes the configurations and runs added since the previous one
+ * <p>
+ * The {@link ca.ubc.cs.beta.aeatk.state.legacy.LegacyStateSerializer} rewrites every run on every full save, which makes the total amount of state written quadratic in the number of runs.
+ * This factory instead keeps a journal open across saves and appends checksummed records for the new configurations and runs, followed by a record for the save itself (see {@link JournalFormat}).
+ * Once the journal has grown by as many runs as the previous snapshot holds (and at least <code>snapshotMinimumRuns</code>), the whole state is written into a compacted snapshot and a new journal is started,
+ * which keeps the total amount written linear in the number of runs and bounds the journal that needs to be replayed when restoring.
+ * <p>
+ * Saves that are not given a RunHistory (quick saves) still journal the new runs of the last RunHistory this factory was given.
+ * <p>
+ * Journal writes are flushed on every save but only forced to disk every <code>fsyncSaves</code> saves. A crash can lose at most the saves since the last force,
+ * and a torn record at the end of the journal is detected by its checksum and dropped when restoring.
+ *
+ * @see JournalStateDeserializer
+ */
+@ThreadSafe
+public class JournalStateFactory implements StateFactory {
+
+	private final String saveStatePath;
+	private final String restoreFromPath;
+
+	/**
+	 * Minimum number of runs in the journal before a snapshot is taken
+	 */
+	private final int snapshotMinimumRuns;
+
+	/**
+	 * Number of saves between forcing the journal to disk, <code>0</code> to leave it to the operating system
+	 */
+	private final int fsyncSaves;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * Current segment, and the open journal for it
+	 */
+	private int segment = 0;
+	private FileOutputStream journalStream;
+	private Writer journal;
+
+	/**
+	 * RunHistory whose runs have been journaled, and how many of them
+	 */
+	private RunHistory journaledRunHistory;
+	private int runsJournaled = 0;
+
+	/**
+	 * Configuration indexes written since the start of the current segment
+	 */
+	private BitSet configurationsJournaled = new BitSet();
+
+	private int runsInJournal = 0;
+	private int runsInSnapshot = 0;
+	private int savesSinceSync = 0;
+
+	/**
+	 * Object dumps written, with the segment of the last save that points to them. Every save of the current segment can still be restored, so its dumps must be kept
+	 */
+	private final Map<File, Integer> objectDumpSegments = new HashMap<File, Integer>();
+
+	/**
+	 * Constructs the JournalStateFactory
+	 * @param saveStatePath 		Where we should save files to
+	 * @param restoreFromPath		Where we should restore from
+	 * @param snapshotMinimumRuns	Minimum number of journaled runs before a compacted snapshot is written
+	 * @param fsyncSaves			Number of saves between forcing the journal to disk, <code>0</code> never forces it
+	 */
+	public JournalStateFactory(String saveStatePath, String restoreFromPath, int snapshotMinimumRuns, int fsyncSaves)
+	{
+		if(snapshotMinimumRuns < 1)
+		{
+			throw new IllegalArgumentException("Minimum number of runs before a snapshot must be positive: " + snapshotMinimumRuns);
+		}
+
+		if(fsyncSaves < 0)
+		{
+			throw new IllegalArgumentException("Number of saves between syncs must be non-negative: " + fsyncSaves);
+		}
+
+		this.saveStatePath = (saveStatePath != null) ? new File(saveStatePath).getAbsolutePath() : null;
+		this.restoreFromPath = restoreFromPath;
+		this.snapshotMinimumRuns = snapshotMinimumRuns;
+		this.fsyncSaves = fsyncSaves;
+
+		if(saveStatePath != null)
+		{
+			File f = new File(this.saveStatePath);
+
+			if(!f.exists())
+			{
+				if(!f.mkdirs())
+				{
+					log.error("Could not create directory to save states: {} ", f.getAbsolutePath());
+					throw new IllegalArgumentException("Could not create directory" + f.getAbsolutePath());
+				} else
+				{
+					log.trace("Directory created for states: {}",  f.getAbsolutePath());
+				}
+
+			} else
+			{
+				if(f.isDirectory() && f.listFiles().length > 0)
+				{
+					File newFileName = new File(f.getParent() + File.separator + "old-state-" + f.getName()+  "-" + System.currentTimeMillis());
+					f.renameTo(newFileName);
+					log.info("Found previous run data in state output folder: {} , renamed to: {}", newFileName.getParent() ,newFileName.getName());
+					f = new File(this.saveStatePath);
+					f.mkdir();
+				}
+			}
+
+			if(!f.isDirectory())
+			{
+				throw new IllegalArgumentException("Not a directory: " + f.getAbsolutePath());
+			}
+
+			if(!f.canWrite())
+			{
+				throw new IllegalArgumentException("Can't write to state saving directory: " + f.getAbsolutePath());
+			}
+		}
+	}
+
+	@Override
+	public StateDeserializer getStateDeserializer(String id, int restoreIteration, ParameterConfigurationSpace configSpace, List<ProblemInstance> instances, AlgorithmExecutionConfiguration execConfig, RunHistory rh) throws StateSerializationException
+	{
+		if(restoreFromPath == null)
+		{
+			throw new IllegalArgumentException("This Serializer does not support restoring state");
+		}
+		return new JournalStateDeserializer(restoreFromPath, id, restoreIteration, configSpace, instances, execConfig, rh);
+	}
+
+	@Override
+	public StateSerializer getStateSerializer(String id, int iteration) throws StateSerializationException
+	{
+		if(saveStatePath == null)
+		{
+			throw new IllegalArgumentException("This Serializer does not support saving State");
+		}
+		return new JournalStateSerializer(id, iteration, this);
+	}
+
+	/**
+	 * Writes a save to the journal, or to a new snapshot if the journal has grown large enough
+	 *
+	 * @param id			id of the save (generally "it" or "CRASH")
+	 * @param iteration		iteration being saved
+	 * @param runHistory	run history to save, or <code>null</code> to use the last one given
+	 * @param incumbent		incumbent at this save, may be <code>null</code>
+	 * @param objectState	objects to save, may be <code>null</code>
+	 * @throws IOException	if the state could not be written
+	 */
+	synchronized void save(String id, int iteration, RunHistory runHistory, ParameterConfiguration incumbent, Map<String, Serializable> objectState) throws IOException
+	{
+		File objectDump = writeObjectDump(id, iteration, objectState);
+
+		if(runHistory == null)
+		{
+			runHistory = journaledRunHistory;
+		}
+
+		List<RunData> runs = (runHistory != null) ? runHistory.getAlgorithmRunDataIncludingRedundant() : new ArrayList<RunData>(0);
+
+		String saveRecord = JournalFormat.SAVE_RECORD + "," + id + "," + iteration + "," + runs.size() + "," + objectDump.getName() + "," + ((incumbent != null) ? JournalFormat.escape(incumbent.getFormattedParameterString(ParameterStringFormat.STATEFILE_SYNTAX)) : "");
+
+		if(runHistory != journaledRunHistory && runsJournaled > 0)
+		{
+			log.debug("Saving a different run history than the previous save, writing a new snapshot");
+			writeSnapshot(saveRecord, runHistory, runs);
+		} else if(runs.size() < runsJournaled)
+		{
+			log.warn("Run history has fewer runs than have already been saved ({} vs. {}), writing a new snapshot", runs.size(), runsJournaled);
+			writeSnapshot(saveRecord, runHistory, runs);
+		} else if(runsInJournal + runs.size() - runsJournaled >= Math.max(snapshotMinimumRuns, runsInSnapshot))
+		{
+			writeSnapshot(saveRecord, runHistory, runs);
+		} else
+		{
+			appendToJournal(saveRecord, runHistory, runs);
+		}
+
+		objectDumpSegments.put(objectDump, segment);
+	}
+
+	/**
+	 * Appends the new runs and the save record to the current journal
+	 */
+	private void appendToJournal(String saveRecord, RunHistory runHistory, List<RunData> runs) throws IOException
+	{
+		if(journal == null)
+		{
+			openJournal();
+		}
+
+		int newRuns = runs.size() - runsJournaled;
+		for(int i=runsJournaled; i < runs.size(); i++)
+		{
+			writeRun(journal, configurationsJournaled, runs.get(i));
+		}
+		writeLine(journal, saveRecord);
+		journal.flush();
+
+		journaledRunHistory = runHistory;
+		runsJournaled = runs.size();
+		runsInJournal += newRuns;
+
+		if(fsyncSaves > 0 && ++savesSinceSync >= fsyncSaves)
+		{
+			journalStream.getFD().sync();
+			savesSinceSync = 0;
+		}
+
+		log.trace("Journaled {} new runs in segment {}", newRuns, segment);
+	}
+
+	/**
+	 * Writes every run and the save record into the snapshot of a new segment, then starts an empty journal for it
+	 */
+	private void writeSnapshot(String saveRecord, RunHistory runHistory, List<RunData> runs) throws IOException
+	{
+		int newSegment = segment + 1;
+		File snapshot = JournalFormat.getSnapshotFile(saveStatePath, newSegment);
+		File tmpSnapshot = new File(snapshot.getAbsolutePath() + ".tmp");
+
+		FileOutputStream snapshotStream = new FileOutputStream(tmpSnapshot);
+		try {
+			Writer out = new BufferedWriter(new OutputStreamWriter(snapshotStream, JournalFormat.CHARSET));
+			writeLine(out, saveRecord);
+
+			BitSet configurationsWritten = new BitSet();
+			for(RunData runData : runs)
+			{
+				writeRun(out, configurationsWritten, runData);
+			}
+			out.flush();
+			snapshotStream.getFD().sync();
+		} finally
+		{
+			snapshotStream.close();
+		}
+
+		if(!tmpSnapshot.renameTo(snapshot))
+		{
+			throw new IOException("Could not rename file " + tmpSnapshot.getAbsolutePath() + " to " + snapshot.getAbsolutePath());
+		}
+
+		closeJournal();
+
+		segment = newSegment;
+		configurationsJournaled = new BitSet();
+		journaledRunHistory = runHistory;
+		runsJournaled = runs.size();
+		runsInSnapshot = runs.size();
+		runsInJournal = 0;
+
+		log.debug("Snapshot of {} runs written to {}", runs.size(), snapshot.getAbsolutePath());
+	}
+
+	private void openJournal() throws IOException
+	{
+		File f = JournalFormat.getJournalFile(saveStatePath, segment);
+		journalStream = new FileOutputStream(f, true);
+		journal = new BufferedWriter(new OutputStreamWriter(journalStream, JournalFormat.CHARSET));
+		savesSinceSync = 0;
+		log.trace("Journal opened {}", f.getAbsolutePath());
+	}
+
+	private void closeJournal() throws IOException
+	{
+		if(journal != null)
+		{
+			try {
+				journal.flush();
+				if(fsyncSaves > 0)
+				{
+					journalStream.getFD().sync();
+				}
+			} finally
+			{
+				journal.close();
+				journal = null;
+				journalStream = null;
+			}
+		}
+	}
+
+	/**
+	 * Writes a run, preceded by its configuration if that has not been written since the start of the segment
+	 */
+	private static void writeRun(Writer out, BitSet configurationsWritten, RunData runData) throws IOException
+	{
+		AlgorithmRunResult run = runData.getRun();
+		AlgorithmRunConfiguration runConfig = run.getAlgorithmRunConfiguration();
+		int thetaIdx = runData.getThetaIdx();
+
+		if(!configurationsWritten.get(thetaIdx))
+		{
+			writeLine(out, JournalFormat.CONFIGURATION_RECORD + "," + thetaIdx + "," + JournalFormat.escape(runConfig.getParameterConfiguration().getFormattedParameterString(ParameterStringFormat.STATEFILE_SYNTAX)));
+			configurationsWritten.set(thetaIdx);
+		}
+
+		StringBuilder sb = new StringBuilder(128);
+		sb.append(JournalFormat.RUN_RECORD).append(',');
+		sb.append(thetaIdx).append(',');
+		sb.append(runConfig.getProblemInstanceSeedPair().getProblemInstance().getInstanceID()).append(',');
+		sb.append(runConfig.getProblemInstanceSeedPair().getSeed()).append(',');
+		sb.append(runConfig.getCutoffTime()).append(',');
+		sb.append(run.getRunStatus().name()).append(',');
+		sb.append(run.getRuntime()).append(',');
+		sb.append(run.getRunLength()).append(',');
+		sb.append(run.getQuality()).append(',');
+		sb.append(run.getResultSeed()).append(',');
+		sb.append(runData.getIteration()).append(',');
+		sb.append(run.getWallclockExecutionTime()).append(',');
+		sb.append(JournalFormat.escape(run.getAdditionalRunData()));
+		writeLine(out, sb.toString());
+	}
+
+	private static void writeLine(Writer out, String record) throws IOException
+	{
+		out.write(JournalFormat.seal(record));
+		out.write('\n');
+	}
+
+	/**
+	 * Saves the java objects of a save, replacing the file atomically
+	 */
+	private File writeObjectDump(String id, int iteration, Map<String, Serializable> objectState) throws IOException
+	{
+		File f = JournalFormat.getObjectDumpFile(saveStatePath, id, iteration);
+		File tmp = new File(f.getAbsolutePath() + ".tmp");
+
+		Map<String, Object> mapToWrite = new HashMap<String, Object>();
+		mapToWrite.put(JournalStateDeserializer.OBJECT_MAP_KEY, objectState);
+		mapToWrite.put(JournalStateDeserializer.ITERATION_KEY, iteration);
+
+		FileOutputStream out = new FileOutputStream(tmp);
+		try {
+			ObjectOutputStream oWriter = new ObjectOutputStream(out);
+			oWriter.writeObject(mapToWrite);
+			oWriter.flush();
+			if(fsyncSaves > 0)
+			{
+				out.getFD().sync();
+			}
+		} finally
+		{
+			out.close();
+		}
+
+		if(f.exists() && !f.delete())
+		{
+			throw new IOException("Could not replace file " + f.getAbsolutePath());
+		}
+
+		if(!tmp.renameTo(f))
+		{
+			throw new IOException("Could not rename file " + tmp.getAbsolutePath() + " to " + f.getAbsolutePath());
+		}
+
+		log.trace("Java Object Dump Saved in {}", f.getAbsolutePath());
+		return f;
+	}
+
+	/**
+	 * Deletes the segments before the current one, and the object dumps that only saves in those segments point to
+	 */
+	@Override
+	public synchronized void purgePreviousStates()
+	{
+		if(saveStatePath == null)
+		{
+			return;
+		}
+
+		File[] files = new File(saveStatePath).listFiles();
+		if(files != null)
+		{
+			for(File f : files)
+			{
+				int fileSegment = Math.max(JournalFormat.getSegment(f.getName(), true), JournalFormat.getSegment(f.getName(), false));
+				if(fileSegment >= 0 && fileSegment < segment)
+				{
+					delete(f);
+				}
+			}
+		}
+
+		Iterator<Map.Entry<File, Integer>> it = objectDumpSegments.entrySet().iterator();
+		while(it.hasNext())
+		{
+			Map.Entry<File, Integer> entry = it.next();
+			if(entry.getValue() < segment)
+			{
+				delete(entry.getKey());
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Flushes and closes the open journal, a later save opens it again
+	 */
+	@Override
+	public synchronized void shutdown()
+	{
+		try {
+			closeJournal();
+		} catch(IOException e)
+		{
+			log.error("Could not close journal of segment " + segment, e);
+		}
+	}
+
+	private void delete(File f)
+	{
+		log.trace("Deleting file {}", f.getAbsolutePath());
+		if(!f.delete())
+		{
+			log.warn("Could not delete file {} ", f.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Copies the file to the State Dir
+	 * @param name name of the file to write
+	 * @param f source file
+	 */
+	@Override
+	public void copyFileToStateDir(String name, File f)
+	{
+		if(!f.isFile())
+		{
+			throw new IllegalArgumentException("Input file f is not a file :" + f.getAbsolutePath());
+		}
+
+		try {
+			copyFileToStateDir(name, new FileInputStream(f));
+		} catch (FileNotFoundException e) {
+			throw new IllegalStateException("IOException occured :",e);
+		}
+	}
+
+	/**
+	 * Copies the stream to a file in the State Dir
+	 * @param name name of the file to write
+	 * @param in source stream, closed when done
+	 */
+	public void copyFileToStateDir(String name, InputStream in)
+	{
+		if(saveStatePath == null)
+		{
+			throw new IllegalArgumentException("This Serializer does not support saving State");
+		}
+
+		File outputFile = new File(saveStatePath + File.separator + name);
+
+		try {
+			try {
+				OutputStream out = new FileOutputStream(outputFile);
+				try {
+					byte[] buf = new byte[8192];
+					int len;
+					while((len = in.read(buf)) > 0)
+					{
+						out.write(buf, 0, len);
+					}
+				} finally
+				{
+					out.close();
+				}
+			} finally
+			{
+				in.close();
+			}
+			log.trace("File copied to {} ", outputFile.getAbsolutePath());
+		} catch(IOException e)
+		{
+			throw new IllegalStateException("IOException occured :",e);
+		}
+	}
+}
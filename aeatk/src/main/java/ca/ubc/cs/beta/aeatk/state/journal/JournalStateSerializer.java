@@ -0,0 +1,77 @@
+package ca.ubc.cs.beta.aeatk.state.journal;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.ubc.cs.beta.aeatk.exceptions.StateSerializationException;
+import ca.ubc.cs.beta.aeatk.misc.watch.AutoStartStopWatch;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.aeatk.runhistory.RunHistory;
+import ca.ubc.cs.beta.aeatk.state.StateSerializer;
+
+/**
+ * Saves one iteration of state into the journal of the {@link JournalStateFactory} that created it
+ * <p>
+ * Only the configurations and runs added since the previous save are written, see {@link JournalStateFactory} for the details.
+ */
+public class JournalStateSerializer implements StateSerializer {
+
+	private RunHistory runHistory = null;
+	private ParameterConfiguration incumbent;
+	private Map<String, Serializable> objectState;
+
+	private final String id;
+	private final int iteration;
+	private final JournalStateFactory journalStateFactory;
+
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	/**
+	 * Constructs the Journal State Serializer
+	 * @param id					the id of the save (generally "it" or "CRASH")
+	 * @param iteration				the iteration we are saving
+	 * @param journalStateFactory	factory that owns the journal
+	 */
+	JournalStateSerializer(String id, int iteration, JournalStateFactory journalStateFactory)
+	{
+		this.id = id;
+		this.iteration = iteration;
+		this.journalStateFactory = journalStateFactory;
+	}
+
+	@Override
+	public void setRunHistory(RunHistory runHistory) {
+		this.runHistory = runHistory;
+	}
+
+	@Override
+	public void setObjectStateMap(Map<String, Serializable> objectState) {
+		this.objectState = objectState;
+	}
+
+	@Override
+	public void setIncumbent(ParameterConfiguration config) {
+		this.incumbent = config;
+	}
+
+	@Override
+	public void save()
+	{
+		log.trace("State Serialization for iteration {} commencing", iteration);
+		AutoStartStopWatch auto = new AutoStartStopWatch();
+
+		try {
+			journalStateFactory.save(id, iteration, runHistory, incumbent, objectState);
+		} catch(IOException e)
+		{
+			throw new StateSerializationException(e);
+		}
+
+		log.debug("State saved for iteration {}", iteration);
+		log.debug("Saving state took {} ms", auto.stop());
+	}
+}
@@ -440,6 +440,11 @@ public class LegacyStateFactory implements StateFactory{
 			 Set<String> iterationFiles = this.savedFilesPerIteration.get(iteration);
 			iterationFiles.addAll(savedFiles);
 	}
+
+	@Override
+	public void shutdown() {
+		//Every save closes its own files
+	}
 	
 
 	
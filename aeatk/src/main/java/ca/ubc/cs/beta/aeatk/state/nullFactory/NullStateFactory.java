@@ -37,4 +37,8 @@ public class NullStateFactory implements StateFactory {
 	public void copyFileToStateDir(String name, File f) {
 	}
 
+	@Override
+	public void shutdown() {
+	}
+
 }
@@ -20,6 +20,7 @@ import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
 import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceHelper;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.functionality.transform.TransformTargetAlgorithmEvaluatorDecoratorOptions;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.prepostcommand.PrePostCommandOptions;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.caching.SizeBoundedRunRetentionPolicy;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.forking.ForkingTargetAlgorithmEvaluatorDecoratorOptions;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.init.TargetAlgorithmEvaluatorBuilder;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.init.TargetAlgorithmEvaluatorLoader;
@@ -56,6 +57,26 @@ public class TargetAlgorithmEvaluatorOptions extends AbstractOptions {
 	@UsageTextField(level=OptionLevel.DEVELOPER)
 	@Parameter(names={"--cache-runs-debug"}, description="If true we will print the state of the cache every so often for debug purposes.")
 	public boolean cacheDebug = false;
+	
+	@UsageTextField(level=OptionLevel.DEVELOPER)
+	@Parameter(names={"--cache-runs-max-retained"}, description="Maximum total weight of finished runs the run cache keeps (a number of runs, or of bytes with --cache-runs-weigh-by-size), 0 keeps every run")
+	public long cacheMaxRetained = 0;
+	
+	@UsageTextField(level=OptionLevel.DEVELOPER)
+	@Parameter(names={"--cache-runs-eviction-order"}, description="Order in which the run cache evicts finished runs once --cache-runs-max-retained is exceeded")
+	public SizeBoundedRunRetentionPolicy.EvictionOrder cacheEvictionOrder = SizeBoundedRunRetentionPolicy.EvictionOrder.LRU;
+	
+	@UsageTextField(level=OptionLevel.DEVELOPER)
+	@Parameter(names={"--cache-runs-weigh-by-size"}, description="If true the run cache weighs runs by their approximate size in bytes rather than counting them")
+	public boolean cacheWeighBySize = false;
+	
+	@UsageTextField(level=OptionLevel.DEVELOPER, defaultValues="N/A (Evicted runs are forgotten)")
+	@Parameter(names={"--cache-runs-spill-directory"}, description="Directory the run cache spills evicted runs to, so that they can be returned later without being rerun")
+	public String cacheSpillDirectory = null;
+	
+	@UsageTextField(level=OptionLevel.DEVELOPER)
+	@Parameter(names={"--cache-runs-spill-max-runs"}, description="Maximum number of runs kept in the spill directory, the oldest are dropped first, 0 keeps every run", validateWith=NonNegativeInteger.class)
+	public int cacheSpillMaxRuns = 0;
 
 	@UsageTextField(level=OptionLevel.DEVELOPER)
 	@Parameter(names={"--use-dynamic-cutoffs"}, description="If true then we change all cutoffs to the maximum cutoff time and dynamically kill runs that exceed there cutoff time. This is useful because cache hits require the cutoff time to match")
@@ -133,6 +154,26 @@ public class TargetAlgorithmEvaluatorOptions extends AbstractOptions {
 	@Parameter(names="--track-scheduled-runs-resolution", description="We will bucket changes into this size", validateWith=ZeroInfinityOpenInterval.class)
 	public double trackRunsScheduledResolution = 1; 
 	
+	@UsageTextField(level=OptionLevel.ADVANCED)
+	@Parameter(names="--tae-metrics", description="If true latency histograms (queueing, execution and callback), throughput and crash/timeout/kill counters of all runs are exported as a JMX MBean, with periodic snapshot notifications")
+	public boolean taeMetrics = false;
+	
+	@UsageTextField(defaultValues="run-<numRun>", level=OptionLevel.ADVANCED)
+	@Parameter(names="--tae-metrics-name", description="Name of the JMX MBean, used to tell experiments apart")
+	public String taeMetricsName = null;
+	
+	@UsageTextField(level=OptionLevel.ADVANCED)
+	@Parameter(names="--tae-metrics-snapshot-interval", description="How often (in seconds) to send a snapshot of the metrics to the listeners of the MBean, 0 to never send one", validateWith=NonNegativeInteger.class)
+	public int taeMetricsSnapshotInterval = 60;
+	
+	@UsageTextField(level=OptionLevel.DEVELOPER)
+	@Parameter(names="--tae-metrics-breakdown-parameter", description="Runs are also counted by the value of this parameter of their configuration, runs whose configuration does not have it are only counted in the totals")
+	public String taeMetricsBreakdownParameter = "targetclass";
+	
+	@UsageTextField(level=OptionLevel.ADVANCED)
+	@Parameter(names="--tae-fused-pipeline", description="If true the timing, outstanding evaluation, duplicate, captime killing, no response warning, crashed quality and observer decorators are replaced by a single decorator that does the same work in one pass over the runs")
+	public boolean taeFusedPipeline = false;
+	
 	@UsageTextField(level=OptionLevel.DEVELOPER)
 	@Parameter(names="--check-for-unclean-shutdown", description="If true, we will try and detect an unclean shutdown of the Target Algorithm Evaluator")
 	public boolean uncleanShutdownCheck = true;
@@ -5,7 +5,6 @@ import java.io.File;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
@@ -837,34 +836,19 @@ public class CommandLineAlgorithmRun implements Callable<AlgorithmRunResult>{
 
 	private String runProcess() throws IOException
 	{
-		String[] execCmdArray = getTargetAlgorithmExecutionCommand(runConfig);
-
-		String[] paramsArray = Arrays.copyOfRange(execCmdArray, 4, execCmdArray.length);
-
-		String runnerClassString = execCmdArray[3];
-
 		try {
-			Class runnerClass = Class.forName(runnerClassString);
+			CrossValidateResult result = invokeWrapper(getWrapperInvocation(runConfig, options.paramArgumentsContainQuotes));
 
-			Method method = runnerClass.getMethod("run", String[].class);
-
-			Object runnerObject = runnerClass.newInstance();
-
-			Object methodParams = paramsArray;
-
-			Object runResult = method.invoke(runnerObject, methodParams);
-
-			if(runResult == null){
+			if(result == null){
 				return "";
 			}
-			CrossValidateResult result = (CrossValidateResult) runResult;
 
 			ValidationResultStore store = ValidationResultStore.getInstance();
 			RunResultHistory runResultHistory = store.getRunResultHistory(runConfig.getExperiementKey());
 			runResultHistory.addData(result);
 
 			return result.getResultString();
-		} catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InvocationTargetException | InstantiationException e) {
+		} catch (ReflectiveOperationException e) {
 			//e.printStackTrace();
 			//throw new IOException("Unable to run execute item", e);
 			log.error("Unable to finish processing", e);
@@ -874,6 +858,53 @@ public class CommandLineAlgorithmRun implements Callable<AlgorithmRunResult>{
 		return "";
 	}
 
+	/**
+	 * Gets the wrapper class and the arguments it is invoked with in-process for a run
+	 * 
+	 * @param runConfig						run to invoke the wrapper for
+	 * @param paramArgumentsContainQuotes	whether parameter values are quoted
+	 * @return the wrapper class name followed by its arguments
+	 */
+	public static String[] getWrapperInvocation(AlgorithmRunConfiguration runConfig, boolean paramArgumentsContainQuotes)
+	{
+		String[] execCmdArray = getTargetAlgorithmExecutionCommand(runConfig, paramArgumentsContainQuotes);
+
+		String[] paramsArray = Arrays.copyOfRange(execCmdArray, 4, execCmdArray.length);
+		if(runConfig.hasQualityBound())
+		{
+			//Tell the wrapper when it can stop early, ahead of the usual instance / cutoff arguments
+			String[] boundedParamsArray = new String[paramsArray.length + 2];
+			boundedParamsArray[0] = "-qualitybound";
+			boundedParamsArray[1] = String.valueOf(runConfig.getQualityBound());
+			System.arraycopy(paramsArray, 0, boundedParamsArray, 2, paramsArray.length);
+			paramsArray = boundedParamsArray;
+		}
+
+		String[] invocation = new String[paramsArray.length + 1];
+		invocation[0] = execCmdArray[3];
+		System.arraycopy(paramsArray, 0, invocation, 1, paramsArray.length);
+		return invocation;
+	}
+
+	/**
+	 * Invokes a wrapper in this JVM by calling its <code>run(String[])</code> method
+	 * 
+	 * @param invocation	wrapper class name followed by its arguments, see {@link #getWrapperInvocation(AlgorithmRunConfiguration, boolean)}
+	 * @return the result the wrapper returned, or <code>null</code> if it returned nothing
+	 */
+	public static CrossValidateResult invokeWrapper(String[] invocation) throws ReflectiveOperationException
+	{
+		Class<?> runnerClass = Class.forName(invocation[0]);
+
+		Method method = runnerClass.getMethod("run", String[].class);
+
+		Object runnerObject = runnerClass.newInstance();
+
+		Object methodParams = Arrays.copyOfRange(invocation, 1, invocation.length);
+
+		return (CrossValidateResult) method.invoke(runnerObject, methodParams);
+	}
+
 	/**
 	 * Processes all the output of the target algorithm
 	 *
@@ -1028,6 +1059,17 @@ public class CommandLineAlgorithmRun implements Callable<AlgorithmRunResult>{
 	 */
 
 	private String[] getTargetAlgorithmExecutionCommand( AlgorithmRunConfiguration runConfig)
+	{
+		return getTargetAlgorithmExecutionCommand(runConfig, options.paramArgumentsContainQuotes);
+	}
+	
+	/**
+	 * Gets the execution command as an array
+	 * @param runConfig						run to get the command for
+	 * @param paramArgumentsContainQuotes	whether parameter values are quoted
+	 * @return array containing the command
+	 */
+	private static String[] getTargetAlgorithmExecutionCommand( AlgorithmRunConfiguration runConfig, boolean paramArgumentsContainQuotes)
 	{
 
 		AlgorithmExecutionConfiguration execConfig = runConfig.getAlgorithmExecutionConfiguration();
@@ -1047,7 +1089,7 @@ public class CommandLineAlgorithmRun implements Callable<AlgorithmRunResult>{
 		
 		ParameterStringFormat f = ParameterStringFormat.NODB_SYNTAX;
 		
-		final String valueDelimiter = (options.paramArgumentsContainQuotes) ?  f.getValueDelimeter() : "";
+		final String valueDelimiter = (paramArgumentsContainQuotes) ?  f.getValueDelimeter() : "";
 		
 		for(String key : runConfig.getParameterConfiguration().getActiveParameters() )
 		{
@@ -1200,6 +1242,12 @@ public class CommandLineAlgorithmRun implements Callable<AlgorithmRunResult>{
 //					log.info("Algorithm Reported: {}" , line);
 //				}
 				
+				if(acResult.equals(RunStatus.TIMEOUT) && runConfig.hasQualityBound() && runtimeD < runConfig.getCutoffTime())
+				{
+					//The wrapper gave up because the run could no longer beat its quality bound, which makes the reported quality a lower bound
+					acResult = RunStatus.KILLED;
+				}
+				
 				completedAlgorithmRun = new ExistingAlgorithmRunResult(runConfig, acResult, runtimeD, runLengthD, qualityD, resultSeedD,  additionalRunData, this.getCurrentWallClockTime() / 1000.0);
 				return true;
 			} catch(NumberFormatException e)
@@ -0,0 +1,26 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.farm;
+
+/**
+ * Ships datasets that only exist in the memory of the coordinator to the workers of a farm
+ * <p>
+ * Implementations are named with <code>--farm-dataset-handler</code> and need a public no argument constructor, the coordinator and every worker create their own instance.
+ * A dataset is exported once per experiment key and installed once per worker, before the first run that needs it.
+ */
+public interface FarmDatasetHandler {
+
+	/**
+	 * Called on the coordinator
+	 *
+	 * @param key	experiment key of the runs that need the dataset
+	 * @return the dataset in a form that {@link #installDataset(String, byte[])} understands, or <code>null</code> if there is nothing to ship for this key
+	 */
+	public byte[] exportDataset(String key);
+
+	/**
+	 * Called on a worker before it evaluates any run with this experiment key, again if the worker reconnects to a coordinator
+	 *
+	 * @param key		experiment key of the runs that need the dataset
+	 * @param dataset	value returned by {@link #exportDataset(String)}
+	 */
+	public void installDataset(String key, byte[] dataset);
+}
@@ -0,0 +1,113 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.farm;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Mutual challenge response over the shared password of a farm, done on the raw socket before either side creates an object stream
+ * <p>
+ * Each side sends a random challenge and answers the challenge of the other with an HMAC of it keyed by the password, so the password never
+ * crosses the network and neither side deserializes anything sent by a peer that does not know it.
+ */
+final class FarmHandshake {
+
+	private static final int MAGIC = 0x4641524D;
+
+	/**
+	 * Milliseconds to wait for the peer, so that a connection that never answers does not hold on to a thread
+	 */
+	private static final int TIMEOUT = 30000;
+
+	private static final int CHALLENGE_LENGTH = 32;
+
+	/**
+	 * Length of an HMAC-SHA256
+	 */
+	private static final int RESPONSE_LENGTH = 32;
+
+	static final byte COORDINATOR = 0;
+
+	static final byte WORKER = 1;
+
+	private static final SecureRandom random = new SecureRandom();
+
+	private FarmHandshake()
+	{
+		//Static methods only
+	}
+
+	/**
+	 * Proves to the peer that we know the password and checks that it does too
+	 *
+	 * @param socket	connection to the peer, nothing may have been read from it yet
+	 * @param password	shared password of the farm, <code>null</code> is the same as the empty password
+	 * @param role		{@link #COORDINATOR} or {@link #WORKER}, the peer must have the other one
+	 * @throws IOException	if the connection failed, or the peer is not a farm peer or does not know the password
+	 */
+	static void authenticate(Socket socket, String password, byte role) throws IOException
+	{
+		byte[] challenge = new byte[CHALLENGE_LENGTH];
+		synchronized(random)
+		{
+			random.nextBytes(challenge);
+		}
+
+		int soTimeout = socket.getSoTimeout();
+		socket.setSoTimeout(TIMEOUT);
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64));
+		//Not buffered, the object stream must start right after the handshake
+		DataInputStream in = new DataInputStream(socket.getInputStream());
+
+		out.writeInt(MAGIC);
+		out.write(challenge);
+		out.flush();
+
+		if(in.readInt() != MAGIC)
+		{
+			throw new IOException("Peer does not speak the farm protocol");
+		}
+		byte[] peerChallenge = new byte[CHALLENGE_LENGTH];
+		in.readFully(peerChallenge);
+
+		byte peerRole = (role == COORDINATOR) ? WORKER : COORDINATOR;
+		out.write(mac(password, role, peerChallenge));
+		out.flush();
+
+		byte[] response = new byte[RESPONSE_LENGTH];
+		in.readFully(response);
+		if(!MessageDigest.isEqual(mac(password, peerRole, challenge), response))
+		{
+			throw new IOException("Peer does not know the farm password");
+		}
+
+		socket.setSoTimeout(soTimeout);
+	}
+
+	/**
+	 * HMAC of the role and challenge, keyed by a digest of the password as an empty key is not allowed
+	 */
+	private static byte[] mac(String password, byte role, byte[] challenge) throws IOException
+	{
+		try {
+			byte[] key = MessageDigest.getInstance("SHA-256").digest(((password != null) ? password : "").getBytes(Charset.forName("UTF-8")));
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(key, "HmacSHA256"));
+			mac.update(role);
+			return mac.doFinal(challenge);
+		} catch(GeneralSecurityException e)
+		{
+			throw new IllegalStateException("HMAC-SHA256 is not available", e);
+		}
+	}
+}
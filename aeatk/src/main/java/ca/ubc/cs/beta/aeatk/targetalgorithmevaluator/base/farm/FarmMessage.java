@@ -0,0 +1,76 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.farm;
+
+import java.io.Serializable;
+import java.util.List;
+
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.datastore.CrossValidateResult;
+
+/**
+ * Message exchanged between the {@link FarmTargetAlgorithmEvaluator} and a {@link FarmWorker}
+ * <p>
+ * Messages are written with Java serialization, only the fields relevant to the type are set.
+ */
+final class FarmMessage implements Serializable {
+
+	enum Type
+	{
+		/**
+		 * Worker to coordinator, first message on a connection
+		 */
+		REGISTER,
+		/**
+		 * Worker to coordinator, the worker can take <code>count</code> more runs
+		 */
+		PULL,
+		/**
+		 * Worker to coordinator, the worker began evaluating run <code>id</code>
+		 */
+		STARTED,
+		/**
+		 * Worker to coordinator, run <code>id</code> is done
+		 */
+		RESULT,
+		/**
+		 * Worker to coordinator, the worker is alive
+		 */
+		HEARTBEAT,
+		/**
+		 * Coordinator to worker, sent once per dataset before the first run that needs it
+		 */
+		DATASET,
+		/**
+		 * Coordinator to worker, runs to evaluate
+		 */
+		RUNS,
+		/**
+		 * Coordinator to worker, runs that were stolen by another worker and should be dropped if they have not started
+		 */
+		REVOKE
+	}
+
+	final Type type;
+
+	String workerName;
+	int count;
+
+	long id;
+	long[] ids;
+	List<AlgorithmRunConfiguration> runConfigs;
+	boolean paramArgumentsContainQuotes;
+
+	String resultString;
+	CrossValidateResult summary;
+	double wallclockTime;
+
+	String datasetKey;
+	String datasetHandler;
+	byte[] dataset;
+
+	FarmMessage(Type type)
+	{
+		this.type = type;
+	}
+
+	private static final long serialVersionUID = -4382950937711524091L;
+}
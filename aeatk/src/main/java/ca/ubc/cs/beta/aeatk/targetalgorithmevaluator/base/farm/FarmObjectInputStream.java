@@ -0,0 +1,97 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.farm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+import ca.ubc.cs.datastore.CrossValidateResult;
+
+/**
+ * Reads {@link FarmMessage}s, refusing every class that a message can not contain before it is loaded or any of its code runs
+ * <p>
+ * Arrays are allowed if their element type is primitive or allowed.
+ */
+final class FarmObjectInputStream extends ObjectInputStream {
+
+	private static final Set<String> ALLOWED_CLASSES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+			FarmMessage.class.getName(),
+			FarmMessage.Type.class.getName(),
+			AlgorithmRunConfiguration.class.getName(),
+			AlgorithmExecutionConfiguration.class.getName(),
+			ParameterConfiguration.class.getName(),
+			//Configuration spaces are written as their PCS text
+			"ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace$PCSSerializationProxy",
+			ProblemInstanceSeedPair.class.getName(),
+			ProblemInstance.class.getName(),
+			CrossValidateResult.class.getName(),
+			"java.lang.Enum",
+			"java.lang.Number",
+			"java.lang.Boolean",
+			"java.lang.Integer",
+			"java.lang.Long",
+			"java.lang.Double",
+			"java.lang.String",
+			"java.util.Date",
+			"java.util.ArrayList",
+			"java.util.HashMap",
+			"java.util.LinkedHashMap",
+			"java.util.TreeMap",
+			"java.util.Collections$EmptyMap",
+			"java.util.Collections$SingletonMap",
+			"java.util.Collections$UnmodifiableMap",
+			"java.util.Collections$UnmodifiableList",
+			"java.util.Collections$UnmodifiableRandomAccessList")));
+
+	FarmObjectInputStream(InputStream in) throws IOException
+	{
+		super(in);
+	}
+
+	@Override
+	protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+	{
+		if(!isAllowed(desc.getName()))
+		{
+			throw new InvalidClassException(desc.getName(), "Class is not allowed in a farm message");
+		}
+		return super.resolveClass(desc);
+	}
+
+	@Override
+	protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException
+	{
+		throw new InvalidClassException(Arrays.toString(interfaces), "Proxies are not allowed in a farm message");
+	}
+
+	static boolean isAllowed(String name)
+	{
+		int dimensions = 0;
+		while(dimensions < name.length() && name.charAt(dimensions) == '[')
+		{
+			dimensions++;
+		}
+
+		if(dimensions == 0)
+		{
+			return ALLOWED_CLASSES.contains(name);
+		} else if(name.length() == dimensions + 1)
+		{
+			//Array of a primitive type
+			return "ZBCSIJFD".indexOf(name.charAt(dimensions)) >= 0;
+		} else
+		{
+			return name.charAt(dimensions) == 'L' && name.endsWith(";") && ALLOWED_CLASSES.contains(name.substring(dimensions + 1, name.length() - 1));
+		}
+	}
+}
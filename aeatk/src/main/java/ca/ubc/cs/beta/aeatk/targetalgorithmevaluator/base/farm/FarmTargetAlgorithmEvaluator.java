@@ -0,0 +1,887 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.farm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beust.jcommander.ParameterException;
+
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.concurrent.threadfactory.SequentiallyNamedThreadFactory;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.AbstractAsyncTargetAlgorithmEvaluator;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorCallback;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorRunObserver;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.ResponseParser;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.exceptions.TargetAlgorithmAbortException;
+import ca.ubc.cs.datastore.ValidationResultStore;
+
+/**
+ * Coordinator of a farm of {@link FarmWorker}s
+ * <p>
+ * Runs go into a single queue. Workers register over TCP and pull from it: a worker asks for as many runs as it has slots plus a small prefetch,
+ * and for one more every time a run finishes. A worker that has nothing assigned while the queue is empty steals the runs another worker
+ * has received but not started yet, taking them from the end of that worker's backlog. Should both end up evaluating a run the first result wins.
+ * <p>
+ * Workers send a heartbeat, a worker that is silent for longer than <code>--farm-heartbeat-timeout</code> or whose connection drops is dropped
+ * and its runs go back to the front of the queue. A request is aborted once <code>--farm-max-attempts</code> workers died while evaluating one of its runs.
+ * <p>
+ * Workers return the result string and a summary of the {@link ca.ubc.cs.datastore.CrossValidateResult} of each run, the summary is recorded
+ * under the experiment key of the run exactly like a run evaluated in-process. The heavy parts of the result (the trained classifier and its evaluation)
+ * stay on the worker. Datasets that only live in the memory of the coordinator are shipped once per worker through a {@link FarmDatasetHandler}.
+ * <p>
+ * Workers connect to <code>--farm-bind-address</code>, which is a loopback address unless set otherwise, and must prove they know <code>--farm-password</code>
+ * before anything they send is deserialized, see {@link FarmHandshake}. Messages are then only allowed to contain the classes listed in {@link FarmObjectInputStream}.
+ * <p>
+ * Runs are not observable and can not be killed.
+ */
+@ThreadSafe
+public class FarmTargetAlgorithmEvaluator extends AbstractAsyncTargetAlgorithmEvaluator {
+
+	private static final Logger log = LoggerFactory.getLogger(FarmTargetAlgorithmEvaluator.class);
+
+	/**
+	 * Put in the outbox of a worker to stop its writer
+	 */
+	private static final FarmMessage CLOSE = new FarmMessage(FarmMessage.Type.HEARTBEAT);
+
+	private final FarmTargetAlgorithmEvaluatorOptions options;
+
+	private final FarmDatasetHandler datasetHandler;
+
+	private final ServerSocket serverSocket;
+
+	private final ExecutorService connectionThreads = Executors.newCachedThreadPool(new SequentiallyNamedThreadFactory("Farm Target Algorithm Evaluator Connection Thread", true));
+
+	private final ScheduledExecutorService heartbeatMonitor = Executors.newSingleThreadScheduledExecutor(new SequentiallyNamedThreadFactory("Farm Target Algorithm Evaluator Heartbeat Monitor", true));
+
+	private final ExecutorService callbackExecutor;
+
+	private final AtomicBoolean isShutdown = new AtomicBoolean(false);
+
+	private final Object lock = new Object();
+
+	@GuardedBy("lock")
+	private final Deque<Task> queue = new ArrayDeque<Task>();
+
+	@GuardedBy("lock")
+	private final Map<Long, Task> outstandingTasks = new HashMap<Long, Task>();
+
+	@GuardedBy("lock")
+	private final Set<WorkerConnection> workers = new LinkedHashSet<WorkerConnection>();
+
+	/**
+	 * Exported datasets by experiment key, <code>null</code> values for keys that have nothing to ship
+	 */
+	@GuardedBy("lock")
+	private final Map<String, byte[]> datasets = new HashMap<String, byte[]>();
+
+	@GuardedBy("lock")
+	private long nextTaskId = 0;
+
+	public FarmTargetAlgorithmEvaluator(FarmTargetAlgorithmEvaluatorOptions options)
+	{
+		this.options = options;
+
+		if(options.datasetHandler != null)
+		{
+			this.datasetHandler = newDatasetHandler(options.datasetHandler);
+		} else
+		{
+			this.datasetHandler = null;
+		}
+
+		InetAddress bindAddress;
+		try {
+			bindAddress = InetAddress.getByName(options.bindAddress);
+		} catch(UnknownHostException e)
+		{
+			throw new ParameterException("Unknown address to listen for workers on: " + options.bindAddress);
+		}
+
+		if(!bindAddress.isLoopbackAddress() && options.password == null)
+		{
+			throw new ParameterException("A password must be set with --farm-password to listen for workers on " + options.bindAddress);
+		}
+
+		try {
+			this.serverSocket = new ServerSocket(options.port, 50, bindAddress);
+		} catch(IOException e)
+		{
+			throw new ParameterException("Could not listen for workers on " + options.bindAddress + ":" + options.port + ": " + e.getMessage());
+		}
+
+		this.callbackExecutor = Executors.newFixedThreadPool(options.asyncThreads, new SequentiallyNamedThreadFactory("Farm Target Algorithm Evaluator Callback Thread", true));
+
+		connectionThreads.execute(new Runnable()
+		{
+			@Override
+			public void run() {
+				while(true)
+				{
+					try {
+						Socket socket = serverSocket.accept();
+						socket.setTcpNoDelay(true);
+						connectionThreads.execute(new WorkerConnection(socket));
+					} catch(SocketException e)
+					{
+						//Happens when the Target Algorithm Evaluator is shutdown
+						return;
+					} catch(IOException e)
+					{
+						log.error("Unknown Error occurred accepting workers", e);
+						return;
+					}
+				}
+			}
+		});
+
+		long period = Math.max(1, options.heartbeatTimeout / 3);
+		heartbeatMonitor.scheduleAtFixedRate(new Runnable()
+		{
+			@Override
+			public void run() {
+				dropSilentWorkers();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+
+		log.info("Farm Target Algorithm Evaluator is waiting for workers on {}:{}", options.bindAddress, getPort());
+	}
+
+	/**
+	 * Creates a {@link FarmDatasetHandler} from its class name
+	 */
+	static FarmDatasetHandler newDatasetHandler(String className)
+	{
+		try {
+			return (FarmDatasetHandler) Class.forName(className).newInstance();
+		} catch(ReflectiveOperationException | ClassCastException e)
+		{
+			throw new ParameterException("Could not create dataset handler " + className + ": " + e);
+		}
+	}
+
+	/**
+	 * @return port the coordinator is listening for workers on
+	 */
+	public int getPort()
+	{
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return number of workers currently registered
+	 */
+	public int getWorkerCount()
+	{
+		synchronized(lock)
+		{
+			return workers.size();
+		}
+	}
+
+	@Override
+	public void evaluateRunsAsync(List<AlgorithmRunConfiguration> runConfigs, TargetAlgorithmEvaluatorCallback taeCallback, TargetAlgorithmEvaluatorRunObserver runStatusObserver)
+	{
+		if(runConfigs.isEmpty())
+		{
+			taeCallback.onSuccess(Collections.<AlgorithmRunResult> emptyList());
+			return;
+		}
+
+		if(isShutdown.get())
+		{
+			throw new IllegalStateException("Target Algorithm Evaluator has been shutdown");
+		}
+
+		Set<String> keys = new HashSet<String>();
+		for(AlgorithmRunConfiguration rc : runConfigs)
+		{
+			if(rc.getExperiementKey() == null && options.experimentKey != null)
+			{
+				rc.setExperiementKey(options.experimentKey);
+			}
+
+			if(rc.getExperiementKey() != null)
+			{
+				keys.add(rc.getExperiementKey());
+			}
+		}
+
+		exportDatasets(keys);
+
+		synchronized(lock)
+		{
+			Job job = new Job(new ArrayList<AlgorithmRunConfiguration>(runConfigs), taeCallback);
+			for(int i=0; i < runConfigs.size(); i++)
+			{
+				Task task = new Task(nextTaskId++, job, i);
+				outstandingTasks.put(task.id, task);
+				queue.addLast(task);
+			}
+
+			dispatch();
+		}
+	}
+
+	/**
+	 * Exports the datasets of experiment keys seen for the first time, outside of the lock as this may be slow
+	 */
+	private void exportDatasets(Set<String> keys)
+	{
+		if(datasetHandler == null)
+		{
+			return;
+		}
+
+		for(String key : keys)
+		{
+			synchronized(lock)
+			{
+				if(datasets.containsKey(key))
+				{
+					continue;
+				}
+			}
+
+			byte[] dataset = datasetHandler.exportDataset(key);
+			if(dataset != null)
+			{
+				log.debug("Exported dataset {} ({} bytes)", key, dataset.length);
+			}
+
+			synchronized(lock)
+			{
+				datasets.put(key, dataset);
+			}
+		}
+	}
+
+	/**
+	 * Hands queued runs to workers that asked for more, then lets idle workers steal
+	 */
+	@GuardedBy("lock")
+	private void dispatch()
+	{
+		for(WorkerConnection worker : workers)
+		{
+			List<Task> assigned = new ArrayList<Task>();
+			while(worker.credit > assigned.size())
+			{
+				Task task = queue.pollFirst();
+				if(task == null)
+				{
+					break;
+				} else if(task.job.completed)
+				{
+					outstandingTasks.remove(task.id);
+					continue;
+				}
+				assigned.add(task);
+			}
+
+			if(!assigned.isEmpty())
+			{
+				assign(worker, assigned);
+			}
+		}
+
+		if(!queue.isEmpty())
+		{
+			return;
+		}
+
+		for(WorkerConnection thief : workers)
+		{
+			if(thief.credit == 0 || !thief.assigned.isEmpty())
+			{
+				continue;
+			}
+
+			WorkerConnection victim = null;
+			for(WorkerConnection worker : workers)
+			{
+				if(worker != thief && !worker.unstarted.isEmpty() && (victim == null || worker.unstarted.size() > victim.unstarted.size()))
+				{
+					victim = worker;
+				}
+			}
+
+			if(victim == null)
+			{
+				return;
+			}
+
+			int count = Math.min(thief.credit, (victim.unstarted.size() + 1) / 2);
+			List<Task> stolen = new ArrayList<Task>(count);
+			long[] ids = new long[count];
+			for(int i=0; i < count; i++)
+			{
+				Task task = victim.unstarted.pollLast();
+				victim.assigned.remove(task.id);
+				stolen.add(task);
+				ids[i] = task.id;
+			}
+
+			FarmMessage revoke = new FarmMessage(FarmMessage.Type.REVOKE);
+			revoke.ids = ids;
+			victim.send(revoke);
+
+			log.debug("Worker {} stole {} runs from worker {}", thief, count, victim);
+			assign(thief, stolen);
+		}
+	}
+
+	@GuardedBy("lock")
+	private void assign(WorkerConnection worker, List<Task> tasks)
+	{
+		List<AlgorithmRunConfiguration> runConfigs = new ArrayList<AlgorithmRunConfiguration>(tasks.size());
+		long[] ids = new long[tasks.size()];
+		for(int i=0; i < tasks.size(); i++)
+		{
+			Task task = tasks.get(i);
+			task.worker = worker;
+			worker.assigned.put(task.id, task);
+			worker.unstarted.addLast(task);
+			runConfigs.add(task.getRunConfiguration());
+			ids[i] = task.id;
+
+			String key = task.getRunConfiguration().getExperiementKey();
+			if(key != null && worker.datasets.add(key) && datasets.get(key) != null)
+			{
+				FarmMessage dataset = new FarmMessage(FarmMessage.Type.DATASET);
+				dataset.datasetKey = key;
+				dataset.datasetHandler = options.datasetHandler;
+				dataset.dataset = datasets.get(key);
+				worker.send(dataset);
+			}
+		}
+		worker.credit -= tasks.size();
+
+		FarmMessage runs = new FarmMessage(FarmMessage.Type.RUNS);
+		runs.ids = ids;
+		runs.runConfigs = runConfigs;
+		runs.paramArgumentsContainQuotes = options.paramArgumentsContainQuotes;
+		worker.send(runs);
+	}
+
+	private void onResult(WorkerConnection worker, FarmMessage message)
+	{
+		AlgorithmRunConfiguration rc;
+		synchronized(lock)
+		{
+			Task task = outstandingTasks.get(message.id);
+			if(task == null || task.job.completed)
+			{
+				//Duplicate of a stolen run, or the request already failed
+				worker.forget(message.id);
+				return;
+			}
+			rc = task.getRunConfiguration();
+		}
+
+		AlgorithmRunResult run = ResponseParser.processLine((message.resultString != null) ? message.resultString : "", rc, message.wallclockTime);
+
+		synchronized(lock)
+		{
+			Task task = outstandingTasks.remove(message.id);
+			worker.forget(message.id);
+			if(task == null || task.job.completed)
+			{
+				//Another worker finished first while we were parsing
+				return;
+			}
+
+			if(task.worker != null && task.worker != worker)
+			{
+				//Stolen after this worker started it, the thief does not need to bother
+				task.worker.forget(task.id);
+				FarmMessage revoke = new FarmMessage(FarmMessage.Type.REVOKE);
+				revoke.ids = new long[] { task.id };
+				task.worker.send(revoke);
+			}
+
+			if(message.summary != null && rc.getExperiementKey() != null)
+			{
+				ValidationResultStore.getInstance().getRunResultHistory(rc.getExperiementKey()).addData(message.summary);
+			}
+
+			task.job.onResult(task.index, run);
+		}
+	}
+
+	/**
+	 * Drops a worker and puts its runs back at the front of the queue, does nothing if it was already dropped
+	 */
+	private void workerLost(WorkerConnection worker, String reason)
+	{
+		synchronized(lock)
+		{
+			if(!workers.remove(worker))
+			{
+				return;
+			}
+
+			if(!isShutdown.get())
+			{
+				log.warn("Lost worker {} ({}) with {} runs assigned, handing them to other workers", worker, reason, worker.assigned.size());
+			}
+
+			List<Task> tasks = new ArrayList<Task>(worker.assigned.values());
+			Collections.reverse(tasks);
+			for(Task task : tasks)
+			{
+				task.worker = null;
+				if(task.job.completed)
+				{
+					outstandingTasks.remove(task.id);
+					continue;
+				}
+
+				if(!worker.unstarted.contains(task) && ++task.attempts >= options.maxAttempts)
+				{
+					outstandingTasks.remove(task.id);
+					task.job.onFailure(new TargetAlgorithmAbortException("Run " + task.getRunConfiguration() + " was lost with " + task.attempts + " workers, the last was " + worker));
+					continue;
+				}
+
+				queue.addFirst(task);
+			}
+			worker.assigned.clear();
+			worker.unstarted.clear();
+
+			dispatch();
+		}
+
+		worker.close();
+	}
+
+	private void dropSilentWorkers()
+	{
+		List<WorkerConnection> silent = new ArrayList<WorkerConnection>();
+		long now = System.currentTimeMillis();
+		synchronized(lock)
+		{
+			for(WorkerConnection worker : workers)
+			{
+				if(now - worker.lastHeard > options.heartbeatTimeout)
+				{
+					silent.add(worker);
+				}
+			}
+		}
+
+		for(WorkerConnection worker : silent)
+		{
+			workerLost(worker, "no heartbeat for " + (now - worker.lastHeard) + " ms");
+		}
+	}
+
+	@Override
+	public void notifyShutdown()
+	{
+		if(!isShutdown.compareAndSet(false, true))
+		{
+			return;
+		}
+
+		try {
+			serverSocket.close();
+		} catch(IOException e)
+		{
+			log.error("Could not close server socket.", e);
+		}
+
+		List<WorkerConnection> connected;
+		synchronized(lock)
+		{
+			connected = new ArrayList<WorkerConnection>(workers);
+		}
+		for(WorkerConnection worker : connected)
+		{
+			workerLost(worker, "shutdown");
+		}
+
+		synchronized(lock)
+		{
+			for(Task task : outstandingTasks.values())
+			{
+				task.job.onFailure(new TargetAlgorithmAbortException("Target Algorithm Evaluator was shutdown before run " + task.getRunConfiguration() + " completed"));
+			}
+			outstandingTasks.clear();
+			queue.clear();
+		}
+
+		heartbeatMonitor.shutdownNow();
+		connectionThreads.shutdownNow();
+		callbackExecutor.shutdown();
+	}
+
+	@Override
+	public boolean isRunFinal() {
+		return false;
+	}
+
+	@Override
+	public boolean areRunsPersisted() {
+		return false;
+	}
+
+	@Override
+	public boolean areRunsObservable() {
+		return false;
+	}
+
+	/**
+	 * Runs of one call to evaluateRunsAsync(), the callback fires once every run has a result or any of them failed
+	 */
+	private class Job
+	{
+		private final List<AlgorithmRunConfiguration> runConfigs;
+		private final AlgorithmRunResult[] results;
+		private final TargetAlgorithmEvaluatorCallback callback;
+
+		@GuardedBy("lock")
+		private int remaining;
+
+		@GuardedBy("lock")
+		private boolean completed = false;
+
+		Job(List<AlgorithmRunConfiguration> runConfigs, TargetAlgorithmEvaluatorCallback callback)
+		{
+			this.runConfigs = runConfigs;
+			this.results = new AlgorithmRunResult[runConfigs.size()];
+			this.remaining = runConfigs.size();
+			this.callback = callback;
+		}
+
+		@GuardedBy("lock")
+		void onResult(int index, AlgorithmRunResult run)
+		{
+			if(completed || results[index] != null)
+			{
+				return;
+			}
+
+			results[index] = run;
+			if(--remaining == 0)
+			{
+				completed = true;
+				final List<AlgorithmRunResult> runs = Collections.unmodifiableList(Arrays.asList(results));
+				dispatchCallback(new Runnable()
+				{
+					@Override
+					public void run() {
+						callback.onSuccess(runs);
+					}
+				});
+			}
+		}
+
+		@GuardedBy("lock")
+		void onFailure(final RuntimeException e)
+		{
+			if(completed)
+			{
+				return;
+			}
+
+			completed = true;
+			dispatchCallback(new Runnable()
+			{
+				@Override
+				public void run() {
+					callback.onFailure(e);
+				}
+			});
+		}
+
+		private void dispatchCallback(final Runnable r)
+		{
+			try {
+				callbackExecutor.execute(new Runnable()
+				{
+					@Override
+					public void run() {
+						try {
+							r.run();
+						} catch(RuntimeException e)
+						{
+							log.error("Callback threw an exception", e);
+						}
+					}
+				});
+			} catch(RejectedExecutionException e)
+			{
+				log.debug("Target Algorithm Evaluator is shutdown, dropping callback for {} runs", runConfigs.size());
+			}
+		}
+	}
+
+	/**
+	 * One run of a job
+	 */
+	private static class Task
+	{
+		final long id;
+		final Job job;
+		final int index;
+
+		/**
+		 * Worker the run is assigned to, or <code>null</code> while queued
+		 */
+		WorkerConnection worker;
+
+		/**
+		 * Number of workers that died after starting this run
+		 */
+		int attempts = 0;
+
+		Task(long id, Job job, int index)
+		{
+			this.id = id;
+			this.job = job;
+			this.index = index;
+		}
+
+		AlgorithmRunConfiguration getRunConfiguration()
+		{
+			return job.runConfigs.get(index);
+		}
+	}
+
+	/**
+	 * A registered worker, reads its messages on the connection thread and writes from a dedicated thread so that nothing blocks under the lock
+	 */
+	private class WorkerConnection implements Runnable
+	{
+		private final Socket socket;
+
+		private final LinkedBlockingQueue<FarmMessage> outbox = new LinkedBlockingQueue<FarmMessage>();
+
+		private volatile String name;
+
+		private volatile long lastHeard = System.currentTimeMillis();
+
+		/**
+		 * Number of runs the worker asked for that it has not been given yet
+		 */
+		@GuardedBy("lock")
+		private int credit = 0;
+
+		/**
+		 * Runs handed to the worker that have no result yet, in the order they were handed out
+		 */
+		@GuardedBy("lock")
+		private final Map<Long, Task> assigned = new LinkedHashMap<Long, Task>();
+
+		/**
+		 * Subset of assigned that the worker has not reported as started, these may be stolen
+		 */
+		@GuardedBy("lock")
+		private final Deque<Task> unstarted = new ArrayDeque<Task>();
+
+		/**
+		 * Experiment keys whose dataset was sent to the worker
+		 */
+		@GuardedBy("lock")
+		private final Set<String> datasets = new HashSet<String>();
+
+		WorkerConnection(Socket socket)
+		{
+			this.socket = socket;
+			this.name = String.valueOf(socket.getRemoteSocketAddress());
+		}
+
+		@Override
+		public void run() {
+			String reason = "connection closed";
+			try {
+				try {
+					FarmHandshake.authenticate(socket, options.password, FarmHandshake.COORDINATOR);
+				} catch(IOException e)
+				{
+					log.warn("Rejected connection from {}: {}", name, e.getMessage());
+					return;
+				}
+
+				ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65536));
+				out.flush();
+				ObjectInputStream in = new FarmObjectInputStream(new BufferedInputStream(socket.getInputStream(), 65536));
+
+				FarmMessage register = (FarmMessage) in.readObject();
+				if(register.type != FarmMessage.Type.REGISTER)
+				{
+					throw new IOException("Expected " + FarmMessage.Type.REGISTER + " but got " + register.type);
+				}
+				name = register.workerName + " (" + socket.getRemoteSocketAddress() + ")";
+
+				synchronized(lock)
+				{
+					if(isShutdown.get())
+					{
+						return;
+					}
+					workers.add(this);
+				}
+				log.info("Worker {} registered with {} slots", name, register.count);
+
+				connectionThreads.execute(new Writer(out));
+
+				while(true)
+				{
+					FarmMessage message = (FarmMessage) in.readObject();
+					lastHeard = System.currentTimeMillis();
+
+					switch(message.type)
+					{
+						case PULL:
+							synchronized(lock)
+							{
+								credit += message.count;
+								dispatch();
+							}
+							break;
+
+						case STARTED:
+							synchronized(lock)
+							{
+								Task task = assigned.get(message.id);
+								if(task != null)
+								{
+									unstarted.remove(task);
+								}
+							}
+							break;
+
+						case RESULT:
+							onResult(this, message);
+							break;
+
+						case HEARTBEAT:
+							break;
+
+						default:
+							throw new IOException("Unexpected message from worker: " + message.type);
+					}
+				}
+			} catch(EOFException | SocketException e)
+			{
+				reason = "connection closed";
+			} catch(IOException | ClassNotFoundException | ClassCastException e)
+			{
+				reason = e.toString();
+				log.error("Error reading from worker " + name + ", dropping it", e);
+			} finally
+			{
+				workerLost(this, reason);
+				close();
+			}
+		}
+
+		@GuardedBy("lock")
+		void forget(long id)
+		{
+			Task task = assigned.remove(id);
+			if(task != null)
+			{
+				unstarted.remove(task);
+			}
+		}
+
+		void send(FarmMessage message)
+		{
+			outbox.add(message);
+		}
+
+		void close()
+		{
+			outbox.add(CLOSE);
+			try {
+				socket.close();
+			} catch(IOException e)
+			{
+				log.trace("Error closing socket", e);
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return name;
+		}
+
+		private class Writer implements Runnable
+		{
+			private final ObjectOutputStream out;
+
+			Writer(ObjectOutputStream out)
+			{
+				this.out = out;
+			}
+
+			@Override
+			public void run() {
+				try {
+					while(true)
+					{
+						FarmMessage message = outbox.take();
+						if(message == CLOSE)
+						{
+							return;
+						}
+
+						out.writeObject(message);
+						//Run configurations are shared between messages, don't let the stream hold on to all of them
+						out.reset();
+						if(outbox.isEmpty())
+						{
+							out.flush();
+						}
+					}
+				} catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				} catch(IOException e)
+				{
+					//The reader will notice and hand the runs to other workers
+					log.debug("Could not write to worker {}", name, e);
+					close();
+				}
+			}
+		}
+	}
+}
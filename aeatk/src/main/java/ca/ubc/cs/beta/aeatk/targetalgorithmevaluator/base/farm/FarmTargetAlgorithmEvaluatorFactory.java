@@ -0,0 +1,29 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.farm;
+
+import org.mangosdk.spi.ProviderFor;
+
+import ca.ubc.cs.beta.aeatk.options.AbstractOptions;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.AbstractTargetAlgorithmEvaluatorFactory;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluator;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorFactory;
+
+@ProviderFor(TargetAlgorithmEvaluatorFactory.class)
+public class FarmTargetAlgorithmEvaluatorFactory extends AbstractTargetAlgorithmEvaluatorFactory
+{
+
+	@Override
+	public String getName() {
+		return "FARM";
+	}
+
+	@Override
+	public TargetAlgorithmEvaluator getTargetAlgorithmEvaluator(AbstractOptions options) {
+		return new FarmTargetAlgorithmEvaluator((FarmTargetAlgorithmEvaluatorOptions) options);
+	}
+
+	@Override
+	public FarmTargetAlgorithmEvaluatorOptions getOptionObject() {
+		return new FarmTargetAlgorithmEvaluatorOptions();
+	}
+
+}
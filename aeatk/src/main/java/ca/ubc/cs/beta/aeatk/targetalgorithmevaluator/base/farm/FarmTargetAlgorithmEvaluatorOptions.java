@@ -0,0 +1,42 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.farm;
+
+import ca.ubc.cs.beta.aeatk.misc.jcommander.validator.FixedPositiveInteger;
+import ca.ubc.cs.beta.aeatk.misc.jcommander.validator.ValidServerPortValidator;
+import ca.ubc.cs.beta.aeatk.misc.options.OptionLevel;
+import ca.ubc.cs.beta.aeatk.misc.options.UsageTextField;
+import ca.ubc.cs.beta.aeatk.options.AbstractOptions;
+
+import com.beust.jcommander.Parameter;
+
+@UsageTextField(title="Farm Target Algorithm Evaluator Options", description="This Target Algorithm Evaluator is the coordinator of a farm: it listens for workers (see FarmWorker), which may run on other machines, and hands them the runs as they ask for more. Idle workers steal runs that another worker has not started yet, and the runs of a worker that stops responding are handed to the others. Every worker evaluates runs in-process the same way as the CLI Target Algorithm Evaluator does for wrappers that return a result object.", level=OptionLevel.ADVANCED)
+public class FarmTargetAlgorithmEvaluatorOptions extends AbstractOptions {
+
+	@Parameter(names="--farm-port", description="Port to listen for workers on (if 0, this will be automatically allocated by the operating system)", validateWith=ValidServerPortValidator.class)
+	public int port = 47853;
+
+	@Parameter(names="--farm-bind-address", description="Address to listen for workers on, workers on other machines can only connect if this is not a loopback address")
+	public String bindAddress = "127.0.0.1";
+
+	@Parameter(names="--farm-password", description="Shared secret that workers must prove they know before anything they send is read, required unless listening on a loopback address")
+	public String password;
+
+	@Parameter(names="--farm-heartbeat-timeout", description="Milliseconds without hearing from a worker before it is considered dead and its runs are handed to other workers", validateWith=FixedPositiveInteger.class)
+	public int heartbeatTimeout = 15000;
+
+	@Parameter(names="--farm-max-attempts", description="Number of workers that may die while evaluating a run before the request is aborted", validateWith=FixedPositiveInteger.class)
+	public int maxAttempts = 3;
+
+	@Parameter(names="--farm-experiment-key", description="Experiment key to set on runs that do not have one, results are recorded under this key on the coordinator")
+	public String experimentKey;
+
+	@Parameter(names="--farm-dataset-handler", description="Name of a class implementing FarmDatasetHandler which ships in-memory datasets to the workers, once per worker and experiment key")
+	public String datasetHandler;
+
+	@Parameter(names="--farm-call-params-with-quotes", description="Whether parameter values are quoted when passed to the wrapper, same as --cli-call-params-with-quotes")
+	public boolean paramArgumentsContainQuotes = false;
+
+	@Parameter(names="--farm-async-threads", description="Number of threads used to fire callbacks", validateWith=FixedPositiveInteger.class)
+	public int asyncThreads = 2;
+
+	private static final long serialVersionUID = 6309548273194851360L;
+}
@@ -0,0 +1,339 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.farm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beust.jcommander.ParameterException;
+
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.concurrent.threadfactory.SequentiallyNamedThreadFactory;
+import ca.ubc.cs.beta.aeatk.misc.jcommander.JCommanderHelper;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.cli.CommandLineAlgorithmRun;
+import ca.ubc.cs.datastore.CrossValidateResult;
+
+/**
+ * Worker of a farm, see {@link FarmTargetAlgorithmEvaluator}
+ * <p>
+ * Evaluates the runs handed out by the coordinator in-process, by invoking the wrapper of the run the same way the CLI Target Algorithm Evaluator does,
+ * with up to <code>--farm-worker-slots</code> runs at a time. Several workers may run on the same machine, each in their own JVM.
+ * <p>
+ * Whenever the connection is lost the runs of that connection are abandoned, as the coordinator hands them to other workers, and the worker reconnects.
+ */
+@ThreadSafe
+public class FarmWorker implements AutoCloseable {
+
+	private static Logger log = LoggerFactory.getLogger(FarmWorker.class);
+
+	private final FarmWorkerOptions options;
+
+	private final String name;
+
+	/**
+	 * Dataset handlers by class name, created on first use
+	 */
+	@GuardedBy("datasetHandlers")
+	private final Map<String, FarmDatasetHandler> datasetHandlers = new HashMap<String, FarmDatasetHandler>();
+
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+
+	private volatile Socket socket;
+
+	public FarmWorker(FarmWorkerOptions options)
+	{
+		this.options = options;
+		this.name = (options.name != null) ? options.name : ManagementFactory.getRuntimeMXBean().getName();
+	}
+
+	/**
+	 * Serves coordinators until the worker is closed, reconnecting with a growing back off whenever there is none
+	 */
+	public void run() throws InterruptedException
+	{
+		int i = 1;
+		while(!closed.get())
+		{
+			try {
+				serve();
+				i = 1;
+			} catch(IOException e)
+			{
+				if(closed.get())
+				{
+					return;
+				}
+				log.info("No coordinator at {}:{} ({}), trying again in {} seconds", options.host, options.port, e.getMessage(), i);
+				Thread.sleep(1000 * i);
+				i = Math.min(i+1, 10);
+			}
+		}
+	}
+
+	/**
+	 * Serves one connection to the coordinator
+	 *
+	 * @throws IOException	if the coordinator could not be reached, or the handshake over the farm password failed
+	 */
+	private void serve() throws IOException
+	{
+		Socket socket = new Socket(options.host, options.port);
+		this.socket = socket;
+
+		try {
+			socket.setTcpNoDelay(true);
+			FarmHandshake.authenticate(socket, options.password, FarmHandshake.WORKER);
+		} catch(IOException e)
+		{
+			socket.close();
+			throw e;
+		}
+
+		ThreadPoolExecutor slots = new ThreadPoolExecutor(options.slots, options.slots, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new SequentiallyNamedThreadFactory("Farm Worker Slot", true));
+		ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(new SequentiallyNamedThreadFactory("Farm Worker Heartbeat", true));
+
+		try {
+			final ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65536));
+			out.flush();
+			ObjectInputStream in = new FarmObjectInputStream(new BufferedInputStream(socket.getInputStream(), 65536));
+
+			FarmMessage register = new FarmMessage(FarmMessage.Type.REGISTER);
+			register.workerName = name;
+			register.count = options.slots;
+			send(out, register);
+
+			FarmMessage pull = new FarmMessage(FarmMessage.Type.PULL);
+			pull.count = options.slots + options.prefetch;
+			send(out, pull);
+
+			log.info("Worker {} connected to coordinator at {}:{}", name, options.host, options.port);
+
+			heartbeat.scheduleAtFixedRate(new Runnable()
+			{
+				@Override
+				public void run() {
+					send(out, new FarmMessage(FarmMessage.Type.HEARTBEAT));
+				}
+			}, options.heartbeatInterval, options.heartbeatInterval, TimeUnit.MILLISECONDS);
+
+			//Runs that are queued on a slot and can still be revoked
+			Map<Long, Runnable> queued = new ConcurrentHashMap<Long, Runnable>();
+
+			while(true)
+			{
+				FarmMessage message;
+				try {
+					message = (FarmMessage) in.readObject();
+				} catch(ClassNotFoundException e)
+				{
+					throw new IOException("Coordinator sent a message with an unknown class", e);
+				}
+
+				switch(message.type)
+				{
+					case DATASET:
+						installDataset(message);
+						break;
+
+					case RUNS:
+						for(int j=0; j < message.ids.length; j++)
+						{
+							Runnable run = new RunEvaluator(message.ids[j], message.runConfigs.get(j), message.paramArgumentsContainQuotes, out, queued);
+							queued.put(message.ids[j], run);
+							slots.execute(run);
+						}
+						break;
+
+					case REVOKE:
+						int revoked = 0;
+						for(long id : message.ids)
+						{
+							Runnable run = queued.remove(id);
+							if(run != null && slots.remove(run))
+							{
+								revoked++;
+							}
+						}
+
+						log.debug("{} of {} runs were revoked before they started", revoked, message.ids.length);
+						if(revoked > 0)
+						{
+							FarmMessage more = new FarmMessage(FarmMessage.Type.PULL);
+							more.count = revoked;
+							send(out, more);
+						}
+						break;
+
+					default:
+						throw new IOException("Unexpected message from coordinator: " + message.type);
+				}
+			}
+		} catch(IOException e)
+		{
+			if(!closed.get())
+			{
+				log.warn("Lost connection to coordinator at {}:{}: {}", options.host, options.port, e.getMessage());
+			}
+		} finally
+		{
+			heartbeat.shutdownNow();
+			slots.shutdownNow();
+			try {
+				socket.close();
+			} catch(IOException e)
+			{
+				log.trace("Error closing socket", e);
+			}
+		}
+	}
+
+	private void installDataset(FarmMessage message)
+	{
+		FarmDatasetHandler handler;
+		synchronized(datasetHandlers)
+		{
+			handler = datasetHandlers.get(message.datasetHandler);
+			if(handler == null)
+			{
+				handler = FarmTargetAlgorithmEvaluator.newDatasetHandler(message.datasetHandler);
+				datasetHandlers.put(message.datasetHandler, handler);
+			}
+		}
+
+		handler.installDataset(message.datasetKey, message.dataset);
+		log.debug("Installed dataset {} ({} bytes)", message.datasetKey, message.dataset.length);
+	}
+
+	/**
+	 * Writes a message, the stream is shared by the reader, the slots and the heartbeat
+	 */
+	private void send(ObjectOutputStream out, FarmMessage message)
+	{
+		synchronized(out)
+		{
+			try {
+				out.writeObject(message);
+				out.reset();
+				out.flush();
+			} catch(IOException e)
+			{
+				//The reader will notice the connection is gone
+				log.debug("Could not write to coordinator", e);
+			}
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		if(!closed.compareAndSet(false, true))
+		{
+			return;
+		}
+
+		Socket socket = this.socket;
+		if(socket != null)
+		{
+			try {
+				socket.close();
+			} catch(IOException e)
+			{
+				log.trace("Error closing socket", e);
+			}
+		}
+	}
+
+	private class RunEvaluator implements Runnable
+	{
+		private final long id;
+		private final AlgorithmRunConfiguration rc;
+		private final boolean paramArgumentsContainQuotes;
+		private final ObjectOutputStream out;
+		private final Map<Long, Runnable> queued;
+
+		RunEvaluator(long id, AlgorithmRunConfiguration rc, boolean paramArgumentsContainQuotes, ObjectOutputStream out, Map<Long, Runnable> queued)
+		{
+			this.id = id;
+			this.rc = rc;
+			this.paramArgumentsContainQuotes = paramArgumentsContainQuotes;
+			this.out = out;
+			this.queued = queued;
+		}
+
+		@Override
+		public void run() {
+			queued.remove(id);
+
+			FarmMessage started = new FarmMessage(FarmMessage.Type.STARTED);
+			started.id = id;
+			send(out, started);
+
+			long startTime = System.currentTimeMillis();
+			CrossValidateResult result = null;
+			try {
+				result = CommandLineAlgorithmRun.invokeWrapper(CommandLineAlgorithmRun.getWrapperInvocation(rc, paramArgumentsContainQuotes));
+			} catch(ReflectiveOperationException | RuntimeException e)
+			{
+				//Reported back as a crash, as the CLI Target Algorithm Evaluator would
+				log.error("Error evaluating run " + rc, e);
+			}
+
+			FarmMessage message = new FarmMessage(FarmMessage.Type.RESULT);
+			message.id = id;
+			message.wallclockTime = (System.currentTimeMillis() - startTime) / 1000.0;
+			if(result != null)
+			{
+				message.resultString = result.getResultString();
+				message.summary = result.toSummary();
+			}
+			send(out, message);
+
+			FarmMessage pull = new FarmMessage(FarmMessage.Type.PULL);
+			pull.count = 1;
+			send(out, pull);
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		FarmWorkerOptions options = new FarmWorkerOptions();
+
+		try
+		{
+			try
+			{
+				JCommanderHelper.parseCheckingForHelpAndVersion(args, options);
+			} catch (ParameterException aParameterException)
+			{
+				throw aParameterException;
+			}
+		} finally
+		{
+			options.log.initializeLogging();
+			log = LoggerFactory.getLogger(FarmWorker.class);
+		}
+
+		try(FarmWorker worker = new FarmWorker(options))
+		{
+			worker.run();
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.farm;
+
+import ca.ubc.cs.beta.aeatk.help.HelpOptions;
+import ca.ubc.cs.beta.aeatk.logging.ConsoleOnlyLoggingOptions;
+import ca.ubc.cs.beta.aeatk.logging.LoggingOptions;
+import ca.ubc.cs.beta.aeatk.misc.jcommander.validator.FixedPositiveInteger;
+import ca.ubc.cs.beta.aeatk.misc.jcommander.validator.NonNegativeInteger;
+import ca.ubc.cs.beta.aeatk.misc.jcommander.validator.ValidPortValidator;
+import ca.ubc.cs.beta.aeatk.misc.options.UsageTextField;
+import ca.ubc.cs.beta.aeatk.options.AbstractOptions;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParametersDelegate;
+
+/**
+ * Parameters to start a {@link FarmWorker}
+ */
+@UsageTextField(title="Farm Worker", description="Connects to the coordinator of a farm (the FARM Target Algorithm Evaluator) and evaluates the runs it hands out. The worker reconnects whenever the coordinator goes away, so it can be left running across searches.")
+public class FarmWorkerOptions extends AbstractOptions {
+
+	@Parameter(names="--farm-coordinator-host", description="Host the coordinator runs on")
+	public String host = "127.0.0.1";
+
+	@Parameter(names="--farm-coordinator-port", description="Port the coordinator listens for workers on", validateWith=ValidPortValidator.class)
+	public int port = 47853;
+
+	@Parameter(names="--farm-password", description="Shared secret of the farm, must match --farm-password of the coordinator")
+	public String password;
+
+	@Parameter(names="--farm-worker-name", description="Name the worker registers with, defaults to the process id and host name")
+	public String name;
+
+	@Parameter(names="--farm-worker-slots", description="Number of runs evaluated at the same time", validateWith=FixedPositiveInteger.class)
+	public int slots = Runtime.getRuntime().availableProcessors();
+
+	@Parameter(names="--farm-worker-prefetch", description="Number of runs to ask for beyond the slots so that a slot never waits on the network, these may be stolen by idle workers", validateWith=NonNegativeInteger.class)
+	public int prefetch = 1;
+
+	@Parameter(names="--farm-heartbeat-interval", description="Milliseconds between heartbeats, must be well below --farm-heartbeat-timeout of the coordinator", validateWith=FixedPositiveInteger.class)
+	public int heartbeatInterval = 2000;
+
+	@ParametersDelegate
+	public LoggingOptions log = new ConsoleOnlyLoggingOptions();
+
+	@ParametersDelegate
+	public HelpOptions help = new HelpOptions();
+
+	private static final long serialVersionUID = -1832954712306644913L;
+}
@@ -4,7 +4,10 @@ import org.mangosdk.spi.ProviderFor;
 
 import ca.ubc.cs.beta.aeatk.options.AbstractOptions;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.AbstractTargetAlgorithmEvaluatorFactory;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluator;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorFactory;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.IPCTargetAlgorithmEvaluatorOptions.IPCMechanism;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.multiplexed.MultiplexedIPCTargetAlgorithmEvaluator;
 
 @ProviderFor(TargetAlgorithmEvaluatorFactory.class)
 public class IPCTargetAlgorithmEvaluatorFactory extends AbstractTargetAlgorithmEvaluatorFactory  
@@ -16,9 +19,14 @@ public class IPCTargetAlgorithmEvaluatorFactory extends AbstractTargetAlgorithmE
 	}
 
 	@Override
-	public IPCTargetAlgorithmEvaluator getTargetAlgorithmEvaluator(AbstractOptions options) {
+	public TargetAlgorithmEvaluator getTargetAlgorithmEvaluator(AbstractOptions options) {
 		IPCTargetAlgorithmEvaluatorOptions ipcOptions = (IPCTargetAlgorithmEvaluatorOptions) options;
 		
+		if(ipcOptions.ipcMechanism == IPCMechanism.MULTIPLEXED_TCP)
+		{
+			return new MultiplexedIPCTargetAlgorithmEvaluator(ipcOptions);
+		}
+		
 		IPCTargetAlgorithmEvaluator tae =  new IPCTargetAlgorithmEvaluator(ipcOptions);
 		
 		return tae;
@@ -4,6 +4,7 @@ package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc;
 import java.io.File;
 
 import ca.ubc.cs.beta.aeatk.misc.file.HomeFileUtils;
+import ca.ubc.cs.beta.aeatk.misc.jcommander.validator.FixedPositiveInteger;
 import ca.ubc.cs.beta.aeatk.misc.jcommander.validator.ValidPortValidator;
 import ca.ubc.cs.beta.aeatk.misc.jcommander.validator.ValidServerPortValidator;
 import ca.ubc.cs.beta.aeatk.misc.options.OptionLevel;
@@ -16,7 +17,7 @@ import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.encoding.JavaSeria
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterFile;
 
-@UsageTextField(title="Inter-Process Communication Target Algorithm Evaluator Options", description="This Target Algorithm Evaluator hands the requests off to another process. The current encoding mechanism is the same as on the command line, except that we do not specify the algo executable field. The current mechanism can only execute one request to the server at a time. A small code change would be required to handle the more general case, so please contact the developers if this is required. ", level=OptionLevel.ADVANCED)
+@UsageTextField(title="Inter-Process Communication Target Algorithm Evaluator Options", description="This Target Algorithm Evaluator hands the requests off to another process. The current encoding mechanism is the same as on the command line, except that we do not specify the algo executable field. The current mechanism can only execute one request to the server at a time. A small code change would be required to handle the more general case, so please contact the developers if this is required. The MULTIPLEXED_TCP mechanism is the exception, it keeps a pool of connections to a worker (see MultiplexedIPCWorker) open and has many runs in flight on each using a compact binary encoding, so --ipc-encoding does not apply to it. ", level=OptionLevel.ADVANCED)
 public class IPCTargetAlgorithmEvaluatorOptions extends AbstractOptions {
 
 
@@ -51,6 +52,15 @@ public class IPCTargetAlgorithmEvaluatorOptions extends AbstractOptions {
 	@Parameter(names="--ipc-reverse-tcp-pool-connections", description="If true we will pool all the connections instead of closing them")
 	public boolean poolConnections;
 	
+	@Parameter(names="--ipc-multiplexed-connections", description="Number of connections to keep open to the worker with the MULTIPLEXED_TCP mechanism", validateWith=FixedPositiveInteger.class)
+	public int multiplexedConnections = 2;
+	
+	@Parameter(names="--ipc-multiplexed-batch-size", description="Maximum number of runs sent to the worker in one frame with the MULTIPLEXED_TCP mechanism, larger requests are split over several frames and connections", validateWith=FixedPositiveInteger.class)
+	public int multiplexedBatchSize = 64;
+	
+	@Parameter(names="--ipc-multiplexed-max-attempts", description="Number of connections that may be lost while a run is in flight on them before its request is aborted with the MULTIPLEXED_TCP mechanism", validateWith=FixedPositiveInteger.class)
+	public int multiplexedMaxAttempts = 3;
+	
 	@UsageTextField(defaultValues="~/.aeatk/ipc-tae.opt", level=OptionLevel.ADVANCED)
 	@Parameter(names={"--ipc-default-file"}, description="file that contains default settings for IPC Target Algorithm Evaluator (it is recommended that you use this file to set the kill commands)")
 	@ParameterFile(ignoreFileNotExists = true) 
@@ -64,7 +74,8 @@ public class IPCTargetAlgorithmEvaluatorOptions extends AbstractOptions {
 	{
 		UDP,
 		TCP,
-		REVERSE_TCP
+		REVERSE_TCP,
+		MULTIPLEXED_TCP
 	}
 	
 	
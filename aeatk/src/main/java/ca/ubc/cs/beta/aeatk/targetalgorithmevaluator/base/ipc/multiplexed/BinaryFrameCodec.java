@@ -0,0 +1,568 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.multiplexed;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.ExistingAlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunStatus;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration.ParameterStringFormat;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+
+/**
+ * Wire format of the multiplexed IPC protocol
+ * <p>
+ * Every frame is an <code>int</code> length followed by that many bytes, the first of which is the frame type:
+ * <ul>
+ * <li><b>SUBMIT</b> (client to worker): <code>long</code> first request id, <code>int</code> number of runs, the definitions this frame introduces, then the runs. The i-th run has request id <code>first + i</code>.</li>
+ * <li><b>RESULT</b> (worker to client): for every run, its request id followed by the status, runtime, run length, quality, result seed, wallclock time and additional run data.</li>
+ * <li><b>ERROR</b> (worker to client): the request ids that could not be evaluated, and a message.</li>
+ * </ul>
+ * A run refers to its execution configuration, problem instance and parameter configuration by an id that is defined once per connection,
+ * so after the first few frames a run costs a few dozen bytes. Execution configurations are defined with Java serialization as they are rare and large,
+ * everything else is written field by field.
+ * <p>
+ * The definition tables are per connection and only grow, one {@link Encoder} and one {@link Decoder} exist for each direction of each connection,
+ * and frames must be written in the order they are encoded. A definition the worker can not decode (e.g. a class it doesn't have) still takes its id,
+ * so only the runs that refer to it fail and the tables stay in step.
+ */
+final class BinaryFrameCodec {
+
+	static final byte SUBMIT = 1;
+	static final byte RESULT = 2;
+	static final byte ERROR = 3;
+
+	private static final byte DEFINE_EXECUTION_CONFIGURATION = 1;
+	private static final byte DEFINE_PROBLEM_INSTANCE = 2;
+	private static final byte DEFINE_PARAMETER_CONFIGURATION = 3;
+
+	/**
+	 * Frames larger than this are assumed to be garbage (e.g. someone speaking another protocol on the port)
+	 */
+	static final int MAXIMUM_FRAME_LENGTH = 256 * 1024 * 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final RunStatus[] RUN_STATUSES = RunStatus.values();
+
+	private BinaryFrameCodec()
+	{
+		//Static methods only
+	}
+
+	/**
+	 * Writes a frame
+	 * @param out	 stream to write to, it is flushed by the caller
+	 * @param frame	 body of the frame as returned by one of the encode methods
+	 */
+	static void writeFrame(DataOutputStream out, byte[] frame) throws IOException
+	{
+		out.writeInt(frame.length);
+		out.write(frame);
+	}
+
+	/**
+	 * Reads a frame
+	 * @param in	stream to read from
+	 * @return	the body of the frame, the first byte of which is its type
+	 */
+	static byte[] readFrame(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		if(length <= 0 || length > MAXIMUM_FRAME_LENGTH)
+		{
+			throw new IOException("Invalid frame length: " + length);
+		}
+
+		byte[] frame = new byte[length];
+		in.readFully(frame);
+		return frame;
+	}
+
+	/**
+	 * Opens a frame body for reading, the frame type has already been consumed
+	 */
+	static DataInputStream openFrame(byte[] frame)
+	{
+		return new DataInputStream(new ByteArrayInputStream(frame, 1, frame.length - 1));
+	}
+
+	/**
+	 * Reads the request ids of a SUBMIT frame from its header, so they can be answered with an ERROR frame even if the rest can not be decoded
+	 * @param frame	body of the frame, including the type
+	 */
+	static long[] getSubmitRequestIds(byte[] frame) throws IOException
+	{
+		DataInputStream in = openFrame(frame);
+		long firstRequestId = in.readLong();
+		int runCount = in.readInt();
+		if(runCount < 0 || runCount > frame.length)
+		{
+			throw new IOException("Invalid number of runs: " + runCount);
+		}
+
+		long[] requestIds = new long[runCount];
+		for(int i=0; i < runCount; i++)
+		{
+			requestIds[i] = firstRequestId + i;
+		}
+		return requestIds;
+	}
+
+	/**
+	 * Encodes the results of some runs
+	 * @param requestIds	request id of every run
+	 * @param runs			results in the same order
+	 */
+	static byte[] encodeResults(long[] requestIds, List<AlgorithmRunResult> runs) throws IOException
+	{
+		ByteArrayOutputStream bout = new ByteArrayOutputStream(16 + 64 * runs.size());
+		DataOutputStream out = new DataOutputStream(bout);
+
+		out.writeByte(RESULT);
+		out.writeInt(runs.size());
+		for(int i=0; i < runs.size(); i++)
+		{
+			AlgorithmRunResult run = runs.get(i);
+			out.writeLong(requestIds[i]);
+			out.writeByte(run.getRunStatus().ordinal());
+			out.writeDouble(run.getRuntime());
+			out.writeDouble(run.getRunLength());
+			out.writeDouble(run.getQuality());
+			out.writeLong(run.getResultSeed());
+			out.writeDouble(run.getWallclockExecutionTime());
+			writeString(out, run.getAdditionalRunData());
+		}
+
+		out.flush();
+		return bout.toByteArray();
+	}
+
+	/**
+	 * Callback for every result decoded from a RESULT frame
+	 */
+	interface ResultHandler
+	{
+		/**
+		 * @param requestId	request id of the run
+		 * @return	the run configuration the request id was issued for, or <code>null</code> if the result should be skipped
+		 */
+		public AlgorithmRunConfiguration getRunConfiguration(long requestId);
+
+		/**
+		 * @param requestId	request id of the run
+		 * @param run		decoded result
+		 */
+		public void onResult(long requestId, AlgorithmRunResult run);
+	}
+
+	/**
+	 * Decodes a RESULT frame
+	 * @param in		body of the frame, after the type
+	 * @param handler	receives every result
+	 */
+	static void decodeResults(DataInputStream in, ResultHandler handler) throws IOException
+	{
+		int count = in.readInt();
+		for(int i=0; i < count; i++)
+		{
+			long requestId = in.readLong();
+			int status = in.readUnsignedByte();
+			double runtime = in.readDouble();
+			double runLength = in.readDouble();
+			double quality = in.readDouble();
+			long resultSeed = in.readLong();
+			double wallclockTime = in.readDouble();
+			String additionalRunData = readString(in);
+
+			if(status >= RUN_STATUSES.length)
+			{
+				throw new IOException("Unknown run status: " + status);
+			}
+
+			AlgorithmRunConfiguration rc = handler.getRunConfiguration(requestId);
+			if(rc != null)
+			{
+				handler.onResult(requestId, new ExistingAlgorithmRunResult(rc, RUN_STATUSES[status], runtime, runLength, quality, resultSeed, additionalRunData, wallclockTime));
+			}
+		}
+	}
+
+	/**
+	 * Encodes an ERROR frame
+	 * @param requestIds	request ids that failed
+	 * @param message		description of the failure
+	 */
+	static byte[] encodeError(long[] requestIds, String message) throws IOException
+	{
+		ByteArrayOutputStream bout = new ByteArrayOutputStream(16 + 8 * requestIds.length);
+		DataOutputStream out = new DataOutputStream(bout);
+
+		out.writeByte(ERROR);
+		out.writeInt(requestIds.length);
+		for(long requestId : requestIds)
+		{
+			out.writeLong(requestId);
+		}
+		writeString(out, message);
+
+		out.flush();
+		return bout.toByteArray();
+	}
+
+	/**
+	 * Decodes the request ids of an ERROR frame, the message follows and can be read with {@link #readString(DataInputStream)}
+	 */
+	static long[] decodeErrorRequestIds(DataInputStream in) throws IOException
+	{
+		long[] requestIds = new long[in.readInt()];
+		for(int i=0; i < requestIds.length; i++)
+		{
+			requestIds[i] = in.readLong();
+		}
+		return requestIds;
+	}
+
+	static void writeString(DataOutputStream out, String s) throws IOException
+	{
+		if(s == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+
+		byte[] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		if(length < 0)
+		{
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Client side of a connection, assigns definition ids and encodes SUBMIT frames
+	 */
+	@NotThreadSafe
+	static final class Encoder
+	{
+		private final Map<AlgorithmExecutionConfiguration, Integer> executionConfigurations = new HashMap<AlgorithmExecutionConfiguration, Integer>();
+		private final Map<ProblemInstance, Integer> problemInstances = new HashMap<ProblemInstance, Integer>();
+		private final Map<ParameterConfiguration, Integer> parameterConfigurations = new HashMap<ParameterConfiguration, Integer>();
+
+		/**
+		 * Encodes a SUBMIT frame, defining anything the worker hasn't seen yet on this connection
+		 * @param firstRequestId	request id of the first run, the others follow consecutively
+		 * @param rcs				runs to submit
+		 */
+		byte[] encodeSubmit(long firstRequestId, List<AlgorithmRunConfiguration> rcs) throws IOException
+		{
+			ByteArrayOutputStream definitionBytes = new ByteArrayOutputStream(0);
+			DataOutputStream definitions = new DataOutputStream(definitionBytes);
+			int definitionCount = 0;
+
+			ByteArrayOutputStream runBytes = new ByteArrayOutputStream(48 * rcs.size());
+			DataOutputStream runs = new DataOutputStream(runBytes);
+
+			for(AlgorithmRunConfiguration rc : rcs)
+			{
+				AlgorithmExecutionConfiguration execConfig = rc.getAlgorithmExecutionConfiguration();
+				Integer execId = executionConfigurations.get(execConfig);
+				if(execId == null)
+				{
+					execId = executionConfigurations.size();
+					executionConfigurations.put(execConfig, execId);
+
+					ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+					ObjectOutputStream oout = new ObjectOutputStream(serialized);
+					oout.writeObject(execConfig);
+					oout.close();
+
+					definitions.writeByte(DEFINE_EXECUTION_CONFIGURATION);
+					definitions.writeInt(execId);
+					definitions.writeInt(serialized.size());
+					definitions.write(serialized.toByteArray());
+					definitionCount++;
+				}
+
+				ProblemInstance pi = rc.getProblemInstanceSeedPair().getProblemInstance();
+				Integer instanceId = problemInstances.get(pi);
+				if(instanceId == null)
+				{
+					instanceId = problemInstances.size();
+					problemInstances.put(pi, instanceId);
+
+					definitions.writeByte(DEFINE_PROBLEM_INSTANCE);
+					definitions.writeInt(instanceId);
+					writeString(definitions, pi.getInstanceName());
+					definitions.writeInt(pi.getInstanceID());
+					writeString(definitions, pi.getInstanceSpecificInformation());
+
+					Map<String, Double> features = pi.getFeatures();
+					definitions.writeInt(features.size());
+					for(Entry<String, Double> ent : features.entrySet())
+					{
+						writeString(definitions, ent.getKey());
+						definitions.writeDouble(ent.getValue());
+					}
+					definitionCount++;
+				}
+
+				ParameterConfiguration config = rc.getParameterConfiguration();
+				Integer configId = parameterConfigurations.get(config);
+				if(configId == null)
+				{
+					configId = parameterConfigurations.size();
+					parameterConfigurations.put(config, configId);
+
+					definitions.writeByte(DEFINE_PARAMETER_CONFIGURATION);
+					definitions.writeInt(configId);
+					definitions.writeInt(execId);
+					writeString(definitions, config.getFormattedParameterString(ParameterStringFormat.NODB_SYNTAX));
+					definitionCount++;
+				}
+
+				runs.writeInt(execId);
+				runs.writeInt(instanceId);
+				runs.writeInt(configId);
+				runs.writeLong(rc.getProblemInstanceSeedPair().getSeed());
+				runs.writeDouble(rc.getCutoffTime());
+				runs.writeDouble(rc.getQualityBound());
+			}
+
+			definitions.flush();
+			runs.flush();
+
+			ByteArrayOutputStream bout = new ByteArrayOutputStream(1 + 8 + 4 + 4 + definitionBytes.size() + runBytes.size());
+			DataOutputStream out = new DataOutputStream(bout);
+			out.writeByte(SUBMIT);
+			out.writeLong(firstRequestId);
+			out.writeInt(rcs.size());
+			out.writeInt(definitionCount);
+			definitionBytes.writeTo(out);
+			runBytes.writeTo(out);
+			out.flush();
+
+			return bout.toByteArray();
+		}
+	}
+
+	/**
+	 * Worker side of a connection, records definitions and decodes SUBMIT frames
+	 */
+	@NotThreadSafe
+	static final class Decoder
+	{
+		private final DefinitionTable<AlgorithmExecutionConfiguration> executionConfigurations = new DefinitionTable<AlgorithmExecutionConfiguration>("execution configuration");
+		private final DefinitionTable<ProblemInstance> problemInstances = new DefinitionTable<ProblemInstance>("problem instance");
+		private final DefinitionTable<ParameterConfiguration> parameterConfigurations = new DefinitionTable<ParameterConfiguration>("parameter configuration");
+
+		/**
+		 * <code>false</code> once the definitions of a frame could not be read to the end
+		 */
+		private boolean intact = true;
+
+		/**
+		 * Decodes a SUBMIT frame
+		 * <p>
+		 * If this throws the runs of the frame can not be evaluated, but later frames can still be decoded as long as {@link #isIntact()}.
+		 *
+		 * @param in			body of the frame, after the type
+		 * @param requestIds	filled with the request id of every run returned
+		 * @return	the runs in the frame
+		 */
+		List<AlgorithmRunConfiguration> decodeSubmit(DataInputStream in, List<Long> requestIds) throws IOException
+		{
+			if(!intact)
+			{
+				throw new IOException("Definitions of an earlier frame could not be read");
+			}
+
+			long firstRequestId = in.readLong();
+			int runCount = in.readInt();
+
+			int definitionCount = in.readInt();
+			intact = false;
+			for(int i=0; i < definitionCount; i++)
+			{
+				byte kind = in.readByte();
+				int id = in.readInt();
+
+				switch(kind)
+				{
+					case DEFINE_EXECUTION_CONFIGURATION:
+						byte[] serialized = new byte[in.readInt()];
+						in.readFully(serialized);
+						try (ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(serialized)))
+						{
+							executionConfigurations.define(id, (AlgorithmExecutionConfiguration) oin.readObject());
+						} catch (IOException | ClassNotFoundException | RuntimeException e) {
+							executionConfigurations.defineUndecodable(id, e);
+						}
+						break;
+
+					case DEFINE_PROBLEM_INSTANCE:
+						String instanceName = readString(in);
+						int instanceId = in.readInt();
+						String instanceSpecificInformation = readString(in);
+
+						int featureCount = in.readInt();
+						Map<String, Double> features = new LinkedHashMap<String, Double>();
+						for(int j=0; j < featureCount; j++)
+						{
+							String key = readString(in);
+							features.put(key, in.readDouble());
+						}
+
+						try {
+							problemInstances.define(id, new ProblemInstance(instanceName, instanceId, Collections.unmodifiableMap(features), instanceSpecificInformation));
+						} catch(RuntimeException e)
+						{
+							problemInstances.defineUndecodable(id, e);
+						}
+						break;
+
+					case DEFINE_PARAMETER_CONFIGURATION:
+						int execId = in.readInt();
+						String paramString = readString(in);
+
+						try {
+							AlgorithmExecutionConfiguration execConfig = executionConfigurations.lookup(execId);
+							parameterConfigurations.define(id, execConfig.getParameterConfigurationSpace().getParameterConfigurationFromString(paramString, ParameterStringFormat.NODB_SYNTAX));
+						} catch(UndecodableDefinitionException | RuntimeException e)
+						{
+							parameterConfigurations.defineUndecodable(id, e);
+						}
+						break;
+
+					default:
+						throw new IOException("Unknown definition type: " + kind);
+				}
+			}
+			intact = true;
+
+			List<AlgorithmRunConfiguration> rcs = new ArrayList<AlgorithmRunConfiguration>(runCount);
+			for(int i=0; i < runCount; i++)
+			{
+				AlgorithmExecutionConfiguration execConfig = executionConfigurations.lookup(in.readInt());
+				ProblemInstance pi = problemInstances.lookup(in.readInt());
+				ParameterConfiguration config = parameterConfigurations.lookup(in.readInt());
+				long seed = in.readLong();
+				double cutoffTime = in.readDouble();
+				double qualityBound = in.readDouble();
+
+				AlgorithmRunConfiguration rc = new AlgorithmRunConfiguration(new ProblemInstanceSeedPair(pi, seed), cutoffTime, config, execConfig);
+				rc.setQualityBound(qualityBound);
+
+				rcs.add(rc);
+				requestIds.add(firstRequestId + i);
+			}
+
+			return rcs;
+		}
+
+		/**
+		 * @return <code>true</code> if every definition sent so far has been read, so later frames can be decoded
+		 */
+		boolean isIntact()
+		{
+			return intact;
+		}
+	}
+
+	/**
+	 * Thrown when a run refers to a definition that was read but could not be decoded
+	 */
+	static final class UndecodableDefinitionException extends IOException
+	{
+		private static final long serialVersionUID = -6314721874261120384L;
+
+		UndecodableDefinitionException(String message)
+		{
+			super(message);
+		}
+	}
+
+	/**
+	 * Definitions of one kind, by id
+	 */
+	private static final class DefinitionTable<T>
+	{
+		private final String kind;
+		private final List<T> values = new ArrayList<T>();
+
+		/**
+		 * Why each undecodable definition failed, <code>null</code> for the others
+		 */
+		private final List<String> failures = new ArrayList<String>();
+
+		DefinitionTable(String kind)
+		{
+			this.kind = kind;
+		}
+
+		void define(int id, T value) throws IOException
+		{
+			checkNextId(id);
+			values.add(value);
+			failures.add(null);
+		}
+
+		void defineUndecodable(int id, Exception e) throws IOException
+		{
+			checkNextId(id);
+			values.add(null);
+			failures.add(e.getClass().getSimpleName() + ": " + e.getMessage());
+		}
+
+		private void checkNextId(int id) throws IOException
+		{
+			if(id != values.size())
+			{
+				throw new IOException("Definitions out of order, expected " + kind + " id " + values.size() + " but got " + id);
+			}
+		}
+
+		T lookup(int id) throws IOException
+		{
+			if(id < 0 || id >= values.size())
+			{
+				throw new IOException("Reference to undefined " + kind + " id: " + id);
+			}
+
+			if(failures.get(id) != null)
+			{
+				throw new UndecodableDefinitionException("Could not decode " + kind + " " + id + ", " + failures.get(id));
+			}
+			return values.get(id);
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.multiplexed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.multiplexed.PendingBatch.PendingRun;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.exceptions.TargetAlgorithmAbortException;
+
+/**
+ * Long-lived connection to a worker with any number of runs in flight
+ * <p>
+ * Submissions are written by the calling thread, a dedicated reader thread matches results to pending runs by request id.
+ * When the connection is lost every run still pending is handed to the {@link ConnectionListener}.
+ */
+@ThreadSafe
+final class MultiplexedConnection {
+
+	private static final Logger log = LoggerFactory.getLogger(MultiplexedConnection.class);
+
+	/**
+	 * Notified once when a connection is lost or closed
+	 */
+	interface ConnectionListener
+	{
+		/**
+		 * @param connection	connection that was lost
+		 * @param pendingRuns	runs that were submitted on the connection but had no result yet
+		 */
+		public void onConnectionLost(MultiplexedConnection connection, List<PendingRun> pendingRuns);
+	}
+
+	private final Socket socket;
+	private final String description;
+	private final ConnectionListener listener;
+
+	private final DataInputStream in;
+
+	private final Object writeLock = new Object();
+
+	@GuardedBy("writeLock")
+	private final DataOutputStream out;
+
+	@GuardedBy("writeLock")
+	private final BinaryFrameCodec.Encoder encoder = new BinaryFrameCodec.Encoder();
+
+	@GuardedBy("writeLock")
+	private long nextRequestId = 0;
+
+	@GuardedBy("writeLock")
+	private boolean closed = false;
+
+	private final ConcurrentHashMap<Long, PendingRun> pendingRuns = new ConcurrentHashMap<Long, PendingRun>();
+
+	MultiplexedConnection(String host, int port, ConnectionListener listener) throws IOException
+	{
+		this.socket = new Socket(host, port);
+		this.description = host + ":" + port + " (local port " + socket.getLocalPort() + ")";
+		this.listener = listener;
+
+		try {
+			socket.setTcpNoDelay(true);
+			this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 65536));
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65536));
+		} catch(IOException e)
+		{
+			socket.close();
+			throw e;
+		}
+
+		Thread reader = new Thread(new ResultReader(), "Multiplexed IPC Connection Reader " + description);
+		reader.setDaemon(true);
+		reader.start();
+
+		log.debug("Opened connection to {}", description);
+	}
+
+	/**
+	 * Sends runs to the worker in one frame
+	 *
+	 * @param runs	runs to submit
+	 * @throws IOException	if the connection is already closed, in which case nothing was submitted
+	 */
+	void submit(List<PendingRun> runs) throws IOException
+	{
+		List<AlgorithmRunConfiguration> rcs = new ArrayList<AlgorithmRunConfiguration>(runs.size());
+		for(PendingRun run : runs)
+		{
+			rcs.add(run.getRunConfiguration());
+		}
+
+		synchronized(writeLock)
+		{
+			if(closed)
+			{
+				throw new IOException("Connection to " + description + " is closed");
+			}
+
+			long firstRequestId = nextRequestId;
+			nextRequestId += runs.size();
+
+			//Register before writing, the result may come back before the write returns
+			for(int i=0; i < runs.size(); i++)
+			{
+				pendingRuns.put(firstRequestId + i, runs.get(i));
+			}
+
+			try {
+				BinaryFrameCodec.writeFrame(out, encoder.encodeSubmit(firstRequestId, rcs));
+				out.flush();
+			} catch(IOException e)
+			{
+				//The runs are pending, so the reader will hand them back to the listener once it notices
+				log.debug("Error writing to {}, closing connection", description, e);
+				closeSocket();
+			}
+		}
+	}
+
+	boolean isOpen()
+	{
+		synchronized(writeLock)
+		{
+			return !closed;
+		}
+	}
+
+	/**
+	 * Closes the connection, runs still pending are handed to the listener
+	 */
+	void close()
+	{
+		synchronized(writeLock)
+		{
+			closed = true;
+		}
+		closeSocket();
+	}
+
+	private void closeSocket()
+	{
+		try {
+			socket.close();
+		} catch(IOException e)
+		{
+			log.trace("Error closing socket", e);
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return description;
+	}
+
+	private class ResultReader implements Runnable, BinaryFrameCodec.ResultHandler
+	{
+		@Override
+		public void run() {
+			try {
+				while(true)
+				{
+					byte[] frame = BinaryFrameCodec.readFrame(in);
+					switch(frame[0])
+					{
+						case BinaryFrameCodec.RESULT:
+							BinaryFrameCodec.decodeResults(BinaryFrameCodec.openFrame(frame), this);
+							break;
+
+						case BinaryFrameCodec.ERROR:
+							DataInputStream frameIn = BinaryFrameCodec.openFrame(frame);
+							long[] requestIds = BinaryFrameCodec.decodeErrorRequestIds(frameIn);
+							String message = BinaryFrameCodec.readString(frameIn);
+
+							log.error("Worker at {} could not evaluate {} runs: {}", description, requestIds.length, message);
+							for(long requestId : requestIds)
+							{
+								PendingRun run = pendingRuns.remove(requestId);
+								if(run != null)
+								{
+									run.batch.onFailure(new TargetAlgorithmAbortException("Worker at " + description + " could not evaluate run " + run.getRunConfiguration() + ": " + message));
+								}
+							}
+							break;
+
+						default:
+							throw new IOException("Unknown frame type: " + frame[0]);
+					}
+				}
+			} catch(IOException | RuntimeException e)
+			{
+				if(isOpen())
+				{
+					log.warn("Lost connection to {}: {}", description, e.getMessage());
+					log.debug("Exception:", e);
+				}
+			} finally
+			{
+				synchronized(writeLock)
+				{
+					closed = true;
+				}
+				closeSocket();
+
+				List<PendingRun> lost = new ArrayList<PendingRun>(pendingRuns.values());
+				pendingRuns.clear();
+				listener.onConnectionLost(MultiplexedConnection.this, lost);
+			}
+		}
+
+		@Override
+		public AlgorithmRunConfiguration getRunConfiguration(long requestId) {
+			PendingRun run = pendingRuns.get(requestId);
+			if(run == null)
+			{
+				return null;
+			} else if(run.batch.isCompleted())
+			{
+				pendingRuns.remove(requestId);
+				return null;
+			}
+			return run.getRunConfiguration();
+		}
+
+		@Override
+		public void onResult(long requestId, AlgorithmRunResult result) {
+			PendingRun run = pendingRuns.remove(requestId);
+			if(run != null)
+			{
+				run.batch.onResult(run.index, result);
+			}
+		}
+	}
+}
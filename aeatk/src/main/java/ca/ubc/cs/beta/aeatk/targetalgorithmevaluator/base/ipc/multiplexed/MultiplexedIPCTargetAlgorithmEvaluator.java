@@ -0,0 +1,257 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.multiplexed;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beust.jcommander.ParameterException;
+
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.concurrent.threadfactory.SequentiallyNamedThreadFactory;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.AbstractAsyncTargetAlgorithmEvaluator;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorCallback;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorRunObserver;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.IPCTargetAlgorithmEvaluatorOptions;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.multiplexed.MultiplexedConnection.ConnectionListener;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.multiplexed.PendingBatch.PendingRun;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.exceptions.TargetAlgorithmAbortException;
+
+/**
+ * IPC Target Algorithm Evaluator that multiplexes runs over a pool of long-lived connections
+ * <p>
+ * Unlike {@link ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.IPCTargetAlgorithmEvaluator} no thread blocks while runs are evaluated:
+ * requests are split into frames of at most <code>--ipc-multiplexed-batch-size</code> runs which are spread round robin over the connections,
+ * and the callback is fired from a pool of <code>--ipc-async-threads</code> threads once every result is back.
+ * See {@link BinaryFrameCodec} for the protocol and {@link MultiplexedIPCWorker} for the other end.
+ * <p>
+ * If a connection is lost the runs that were in flight on it are resubmitted on a new connection, retrying with the same back off as the TCP mechanism.
+ * A request is aborted once <code>--ipc-multiplexed-max-attempts</code> connections were lost while one of its runs was in flight, or if the worker answers one of its runs with an error.
+ * Runs are not observable and can not be killed.
+ */
+@ThreadSafe
+public class MultiplexedIPCTargetAlgorithmEvaluator extends AbstractAsyncTargetAlgorithmEvaluator {
+
+	private static final Logger log = LoggerFactory.getLogger(MultiplexedIPCTargetAlgorithmEvaluator.class);
+
+	private final IPCTargetAlgorithmEvaluatorOptions options;
+
+	private final MultiplexedConnection[] connections;
+	private final Object[] connectionLocks;
+	private final AtomicInteger nextConnection = new AtomicInteger(0);
+
+	private final ExecutorService callbackExecutor;
+
+	private final AtomicBoolean isShutdown = new AtomicBoolean(false);
+
+	private final ConnectionListener resubmitLostRuns = new ConnectionListener()
+	{
+		@Override
+		public void onConnectionLost(MultiplexedConnection connection, List<PendingRun> pendingRuns) {
+			for(PendingRun run : pendingRuns)
+			{
+				if(!run.batch.isCompleted() && run.connectionsLost.incrementAndGet() >= options.multiplexedMaxAttempts)
+				{
+					run.batch.onFailure(new TargetAlgorithmAbortException("Run " + run.getRunConfiguration() + " was lost with " + run.connectionsLost.get() + " connections, the last was " + connection));
+				}
+			}
+
+			//Runs of aborted requests are dropped too
+			List<PendingRun> runs = new ArrayList<PendingRun>(pendingRuns.size());
+			for(PendingRun run : pendingRuns)
+			{
+				if(!run.batch.isCompleted())
+				{
+					runs.add(run);
+				}
+			}
+
+			if(runs.isEmpty())
+			{
+				return;
+			}
+
+			if(isShutdown.get())
+			{
+				abort(runs);
+			} else
+			{
+				log.warn("Connection to {} lost with {} runs in flight, resubmitting them", connection, runs.size());
+				submit(runs);
+			}
+		}
+	};
+
+	public MultiplexedIPCTargetAlgorithmEvaluator(IPCTargetAlgorithmEvaluatorOptions options)
+	{
+		this.options = options;
+
+		if(options.remotePort <= 0 || options.remotePort > 65535)
+		{
+			throw new ParameterException("To use the " + options.ipcMechanism + " mechanism you must specify a port in [1,65535]");
+		}
+
+		if(options.remoteHost == null)
+		{
+			throw new ParameterException("You must specify a remote host to use the " + options.ipcMechanism);
+		}
+
+		try {
+			InetAddress.getByName(options.remoteHost);
+		} catch(UnknownHostException e)
+		{
+			throw new ParameterException("Could resolve hostname: " + options.remoteHost);
+		}
+
+		if(options.execScript != null && options.execScript.trim().length() > 0)
+		{
+			log.warn("The {} mechanism does not start an exec script, start the worker separately", options.ipcMechanism);
+		}
+
+		this.connections = new MultiplexedConnection[options.multiplexedConnections];
+		this.connectionLocks = new Object[options.multiplexedConnections];
+		for(int i=0; i < connectionLocks.length; i++)
+		{
+			connectionLocks[i] = new Object();
+		}
+
+		this.callbackExecutor = Executors.newFixedThreadPool(options.asyncThreads, new SequentiallyNamedThreadFactory("Multiplexed IPC Target Algorithm Evaluator Callback Thread", true));
+
+		log.info("Target Algorithm Evaluator multiplexing runs over {} TCP connections to {}:{}.", options.multiplexedConnections, options.remoteHost, options.remotePort);
+	}
+
+	@Override
+	public void evaluateRunsAsync(List<AlgorithmRunConfiguration> runConfigs, TargetAlgorithmEvaluatorCallback taeCallback, TargetAlgorithmEvaluatorRunObserver runStatusObserver)
+	{
+		if(runConfigs.isEmpty())
+		{
+			taeCallback.onSuccess(Collections.<AlgorithmRunResult> emptyList());
+			return;
+		}
+
+		if(isShutdown.get())
+		{
+			throw new IllegalStateException("Target Algorithm Evaluator has been shutdown");
+		}
+
+		PendingBatch batch = new PendingBatch(Collections.unmodifiableList(new ArrayList<AlgorithmRunConfiguration>(runConfigs)), taeCallback, callbackExecutor);
+		submit(batch.getPendingRuns());
+	}
+
+	/**
+	 * Submits runs, blocking only while they are written (or while no connection can be established)
+	 */
+	private void submit(List<PendingRun> runs)
+	{
+		for(int from=0; from < runs.size(); from += options.multiplexedBatchSize)
+		{
+			submitFrame(runs.subList(from, Math.min(runs.size(), from + options.multiplexedBatchSize)));
+		}
+	}
+
+	private void submitFrame(List<PendingRun> runs)
+	{
+		int i = 1;
+		while(true)
+		{
+			if(isShutdown.get())
+			{
+				abort(runs);
+				return;
+			}
+
+			try {
+				getConnection().submit(runs);
+				return;
+			} catch(IOException e)
+			{
+				log.error("Error communicating with " + options.remoteHost + ":" + options.remotePort + ", trying again in " + i + " seconds", e);
+
+				try {
+					Thread.sleep(1000 * i);
+				} catch (InterruptedException e1) {
+					Thread.currentThread().interrupt();
+					throw new TargetAlgorithmAbortException(e1);
+				}
+
+				i = Math.min(i+1, 10);
+			}
+		}
+	}
+
+	/**
+	 * Returns the next connection round robin, (re)connecting if necessary
+	 */
+	private MultiplexedConnection getConnection() throws IOException
+	{
+		int slot = (nextConnection.getAndIncrement() & Integer.MAX_VALUE) % connections.length;
+
+		synchronized(connectionLocks[slot])
+		{
+			MultiplexedConnection connection = connections[slot];
+			if(connection == null || !connection.isOpen())
+			{
+				connection = new MultiplexedConnection(options.remoteHost, options.remotePort, resubmitLostRuns);
+				connections[slot] = connection;
+			}
+			return connection;
+		}
+	}
+
+	private void abort(List<PendingRun> runs)
+	{
+		for(PendingRun run : runs)
+		{
+			run.batch.onFailure(new TargetAlgorithmAbortException("Target Algorithm Evaluator was shutdown before run " + run.getRunConfiguration() + " completed"));
+		}
+	}
+
+	@Override
+	public void notifyShutdown()
+	{
+		if(!isShutdown.compareAndSet(false, true))
+		{
+			return;
+		}
+
+		for(int slot=0; slot < connections.length; slot++)
+		{
+			synchronized(connectionLocks[slot])
+			{
+				if(connections[slot] != null)
+				{
+					connections[slot].close();
+				}
+			}
+		}
+
+		callbackExecutor.shutdown();
+	}
+
+	@Override
+	public boolean isRunFinal() {
+		return false;
+	}
+
+	@Override
+	public boolean areRunsPersisted() {
+		return options.persistent;
+	}
+
+	@Override
+	public boolean areRunsObservable() {
+		return false;
+	}
+}
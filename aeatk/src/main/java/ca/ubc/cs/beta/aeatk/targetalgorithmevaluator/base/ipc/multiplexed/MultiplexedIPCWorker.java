@@ -0,0 +1,309 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.multiplexed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beust.jcommander.ParameterException;
+
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.concurrent.threadfactory.SequentiallyNamedThreadFactory;
+import ca.ubc.cs.beta.aeatk.misc.jcommander.JCommanderHelper;
+import ca.ubc.cs.beta.aeatk.options.AbstractOptions;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluator;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorCallback;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.init.TargetAlgorithmEvaluatorBuilder;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.init.TargetAlgorithmEvaluatorLoader;
+
+/**
+ * Reference worker for the MULTIPLEXED_TCP IPC mechanism
+ * <p>
+ * Accepts any number of connections, decodes every SUBMIT frame and hands its runs to an in-process {@link TargetAlgorithmEvaluator} asynchronously,
+ * so the connection keeps reading while earlier frames are evaluated. Results are written back in a RESULT frame per SUBMIT frame as soon as they are done.
+ * A SUBMIT frame that can not be decoded is answered with an ERROR frame for its runs, the connection is only closed if later frames can not be decoded either.
+ * <p>
+ * The worker does not own the Target Algorithm Evaluator, callers embedding it are responsible for shutting it down after {@link #close()}.
+ */
+@ThreadSafe
+public class MultiplexedIPCWorker implements AutoCloseable {
+
+	private static Logger log = LoggerFactory.getLogger(MultiplexedIPCWorker.class);
+
+	private final TargetAlgorithmEvaluator tae;
+
+	private final ServerSocket serverSocket;
+
+	private final ExecutorService connectionThreads = Executors.newCachedThreadPool(new SequentiallyNamedThreadFactory("Multiplexed IPC Worker Connection Thread", true));
+
+	private final Set<Socket> openSockets = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+
+	private final CountDownLatch closeLatch = new CountDownLatch(1);
+
+	/**
+	 * Creates a worker listening on the given port, call {@link #start()} to accept connections
+	 *
+	 * @param tae	Target Algorithm Evaluator that evaluates the runs
+	 * @param port	port to listen on, 0 to let the operating system pick one
+	 */
+	public MultiplexedIPCWorker(TargetAlgorithmEvaluator tae, int port) throws IOException
+	{
+		this.tae = tae;
+		this.serverSocket = new ServerSocket(port);
+	}
+
+	/**
+	 * @return port the worker is listening on
+	 */
+	public int getPort()
+	{
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Starts accepting connections in the background
+	 */
+	public void start()
+	{
+		connectionThreads.execute(new Runnable()
+		{
+			@Override
+			public void run() {
+				while(true)
+				{
+					try {
+						Socket socket = serverSocket.accept();
+						socket.setTcpNoDelay(true);
+						openSockets.add(socket);
+						connectionThreads.execute(new ConnectionHandler(socket));
+					} catch(SocketException e)
+					{
+						//Happens when the worker is closed
+						return;
+					} catch(IOException e)
+					{
+						log.error("Unknown Error occurred", e);
+						return;
+					}
+				}
+			}
+		});
+
+		log.info("Multiplexed IPC Worker is listening on port {}", getPort());
+	}
+
+	/**
+	 * Blocks until the worker is closed
+	 */
+	public void awaitClose() throws InterruptedException
+	{
+		closeLatch.await();
+	}
+
+	@Override
+	public void close()
+	{
+		if(!closed.compareAndSet(false, true))
+		{
+			return;
+		}
+
+		try {
+			serverSocket.close();
+		} catch(IOException e)
+		{
+			log.error("Could not close server socket.", e);
+		}
+
+		for(Socket socket : openSockets)
+		{
+			try {
+				socket.close();
+			} catch(IOException e)
+			{
+				log.trace("Error closing socket", e);
+			}
+		}
+
+		connectionThreads.shutdownNow();
+		closeLatch.countDown();
+	}
+
+	private class ConnectionHandler implements Runnable
+	{
+		private final Socket socket;
+		private final DataOutputStream out;
+
+		ConnectionHandler(Socket socket) throws IOException
+		{
+			this.socket = socket;
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65536));
+		}
+
+		@Override
+		public void run() {
+			log.debug("Accepted connection from {}", socket.getRemoteSocketAddress());
+
+			BinaryFrameCodec.Decoder decoder = new BinaryFrameCodec.Decoder();
+			try {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 65536));
+				while(true)
+				{
+					byte[] frame = BinaryFrameCodec.readFrame(in);
+					if(frame[0] != BinaryFrameCodec.SUBMIT)
+					{
+						throw new IOException("Unexpected frame type: " + frame[0]);
+					}
+
+					List<Long> ids = new ArrayList<Long>();
+					List<AlgorithmRunConfiguration> rcs;
+					try {
+						rcs = decoder.decodeSubmit(BinaryFrameCodec.openFrame(frame), ids);
+					} catch(IOException | RuntimeException e)
+					{
+						//Otherwise the client would resubmit these runs on every new connection
+						long[] failedRequestIds = BinaryFrameCodec.getSubmitRequestIds(frame);
+						log.error("Could not decode {} runs from {}: {}", failedRequestIds.length, socket.getRemoteSocketAddress(), e.getMessage());
+						sendError(failedRequestIds, "Could not decode runs, " + e.getClass().getSimpleName() + ": " + e.getMessage());
+
+						if(!decoder.isIntact())
+						{
+							throw new IOException("Definitions sent on this connection were lost", e);
+						}
+						continue;
+					}
+
+					final long[] requestIds = new long[ids.size()];
+					for(int i=0; i < requestIds.length; i++)
+					{
+						requestIds[i] = ids.get(i);
+					}
+
+					try {
+						tae.evaluateRunsAsync(rcs, new TargetAlgorithmEvaluatorCallback()
+						{
+							@Override
+							public void onSuccess(List<AlgorithmRunResult> runs) {
+								try {
+									write(BinaryFrameCodec.encodeResults(requestIds, runs));
+								} catch(IOException e)
+								{
+									log.error("Could not encode results", e);
+								}
+							}
+
+							@Override
+							public void onFailure(RuntimeException e) {
+								log.error("Error evaluating runs", e);
+								sendError(requestIds, e);
+							}
+						});
+					} catch(RuntimeException e)
+					{
+						log.error("Error submitting runs", e);
+						sendError(requestIds, e);
+					}
+				}
+			} catch(EOFException | SocketException e)
+			{
+				log.debug("Connection from {} closed", socket.getRemoteSocketAddress());
+			} catch(IOException | RuntimeException e)
+			{
+				log.error("Error reading from " + socket.getRemoteSocketAddress() + ", closing connection", e);
+			} finally
+			{
+				openSockets.remove(socket);
+				try {
+					socket.close();
+				} catch(IOException e)
+				{
+					log.trace("Error closing socket", e);
+				}
+			}
+		}
+
+		private void sendError(long[] requestIds, RuntimeException e)
+		{
+			sendError(requestIds, e.getClass().getSimpleName() + ": " + e.getMessage());
+		}
+
+		private void sendError(long[] requestIds, String message)
+		{
+			try {
+				write(BinaryFrameCodec.encodeError(requestIds, message));
+			} catch(IOException e1)
+			{
+				log.error("Could not encode error", e1);
+			}
+		}
+
+		private void write(byte[] frame)
+		{
+			synchronized(out)
+			{
+				try {
+					BinaryFrameCodec.writeFrame(out, frame);
+					out.flush();
+				} catch(IOException e)
+				{
+					//The reader will notice the connection is gone, the client resubmits the runs elsewhere
+					log.debug("Could not write to {}", socket.getRemoteSocketAddress(), e);
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		MultiplexedIPCWorkerOptions options = new MultiplexedIPCWorkerOptions();
+		Map<String, AbstractOptions> taeOptionsMap = TargetAlgorithmEvaluatorLoader.getAvailableTargetAlgorithmEvaluators();
+
+		try
+		{
+			try
+			{
+				options.taeOptions.turnOffCrashes();
+				JCommanderHelper.parseCheckingForHelpAndVersion(args, options, taeOptionsMap);
+			} catch (ParameterException aParameterException)
+			{
+				throw aParameterException;
+			}
+		} finally
+		{
+			options.log.initializeLogging();
+			log = LoggerFactory.getLogger(MultiplexedIPCWorker.class);
+		}
+
+		try(TargetAlgorithmEvaluator tae = TargetAlgorithmEvaluatorBuilder.getTargetAlgorithmEvaluator(options.taeOptions, false, false, taeOptionsMap, null))
+		{
+			try(MultiplexedIPCWorker worker = new MultiplexedIPCWorker(tae, options.port))
+			{
+				worker.start();
+				worker.awaitClose();
+			}
+		}
+	}
+}
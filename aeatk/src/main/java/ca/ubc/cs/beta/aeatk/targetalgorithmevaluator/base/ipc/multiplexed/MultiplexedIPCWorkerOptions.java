@@ -0,0 +1,33 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.multiplexed;
+
+import ca.ubc.cs.beta.aeatk.help.HelpOptions;
+import ca.ubc.cs.beta.aeatk.logging.ConsoleOnlyLoggingOptions;
+import ca.ubc.cs.beta.aeatk.logging.LoggingOptions;
+import ca.ubc.cs.beta.aeatk.misc.jcommander.validator.ValidServerPortValidator;
+import ca.ubc.cs.beta.aeatk.misc.options.UsageTextField;
+import ca.ubc.cs.beta.aeatk.options.AbstractOptions;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorOptions;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParametersDelegate;
+
+/**
+ * Parameters to start a {@link MultiplexedIPCWorker}
+ */
+@UsageTextField(title="Multiplexed IPC Worker", description="Serves runs from the MULTIPLEXED_TCP IPC mechanism using the Target Algorithm Evaluator given by the options below.")
+public class MultiplexedIPCWorkerOptions extends AbstractOptions {
+
+	@Parameter(names="--ipc-worker-port", description="Port to listen on (if 0, this will be automatically allocated by the operating system)", validateWith=ValidServerPortValidator.class)
+	public int port = 5050;
+
+	@ParametersDelegate
+	public TargetAlgorithmEvaluatorOptions taeOptions = new TargetAlgorithmEvaluatorOptions();
+
+	@ParametersDelegate
+	public LoggingOptions log = new ConsoleOnlyLoggingOptions();
+
+	@ParametersDelegate
+	public HelpOptions help = new HelpOptions();
+
+	private static final long serialVersionUID = 2853127462818740297L;
+}
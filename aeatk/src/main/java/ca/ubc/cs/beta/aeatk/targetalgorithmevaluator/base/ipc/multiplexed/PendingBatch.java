@@ -0,0 +1,152 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.multiplexed;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorCallback;
+
+/**
+ * Runs of one call to evaluateRunsAsync(), the callback is fired once every run has a result or any of them failed
+ * <p>
+ * The runs of a batch may be spread over several frames and connections, and may be resubmitted if a connection is lost,
+ * so results are accepted at most once per run.
+ */
+@ThreadSafe
+final class PendingBatch {
+
+	private static final Logger log = LoggerFactory.getLogger(PendingBatch.class);
+
+	private final List<AlgorithmRunConfiguration> runConfigs;
+	private final AtomicReferenceArray<AlgorithmRunResult> results;
+	private final AtomicInteger remaining;
+	private final AtomicBoolean completed = new AtomicBoolean(false);
+
+	private final TargetAlgorithmEvaluatorCallback callback;
+	private final Executor callbackExecutor;
+
+	PendingBatch(List<AlgorithmRunConfiguration> runConfigs, TargetAlgorithmEvaluatorCallback callback, Executor callbackExecutor)
+	{
+		this.runConfigs = runConfigs;
+		this.results = new AtomicReferenceArray<AlgorithmRunResult>(runConfigs.size());
+		this.remaining = new AtomicInteger(runConfigs.size());
+		this.callback = callback;
+		this.callbackExecutor = callbackExecutor;
+	}
+
+	/**
+	 * @return a pending run for every run configuration of the batch
+	 */
+	List<PendingRun> getPendingRuns()
+	{
+		List<PendingRun> runs = new ArrayList<PendingRun>(runConfigs.size());
+		for(int i=0; i < runConfigs.size(); i++)
+		{
+			runs.add(new PendingRun(this, i));
+		}
+		return runs;
+	}
+
+	boolean isCompleted()
+	{
+		return completed.get();
+	}
+
+	void onResult(int index, AlgorithmRunResult run)
+	{
+		if(!results.compareAndSet(index, null, run))
+		{
+			//Result of a resubmitted run that came back twice
+			return;
+		}
+
+		if(remaining.decrementAndGet() == 0 && completed.compareAndSet(false, true))
+		{
+			final List<AlgorithmRunResult> runs = new ArrayList<AlgorithmRunResult>(results.length());
+			for(int i=0; i < results.length(); i++)
+			{
+				runs.add(results.get(i));
+			}
+
+			dispatch(new Runnable()
+			{
+				@Override
+				public void run() {
+					callback.onSuccess(Collections.unmodifiableList(runs));
+				}
+			});
+		}
+	}
+
+	void onFailure(final RuntimeException e)
+	{
+		if(completed.compareAndSet(false, true))
+		{
+			dispatch(new Runnable()
+			{
+				@Override
+				public void run() {
+					callback.onFailure(e);
+				}
+			});
+		}
+	}
+
+	private void dispatch(final Runnable r)
+	{
+		try {
+			callbackExecutor.execute(new Runnable()
+			{
+				@Override
+				public void run() {
+					try {
+						r.run();
+					} catch(RuntimeException e)
+					{
+						log.error("Callback threw an exception", e);
+					}
+				}
+			});
+		} catch(RejectedExecutionException e)
+		{
+			log.debug("Target Algorithm Evaluator is shutdown, dropping callback for {} runs", runConfigs.size());
+		}
+	}
+
+	/**
+	 * One run of a batch
+	 */
+	static final class PendingRun
+	{
+		final PendingBatch batch;
+		final int index;
+
+		/**
+		 * Number of connections lost while this run was in flight on them
+		 */
+		final AtomicInteger connectionsLost = new AtomicInteger(0);
+
+		PendingRun(PendingBatch batch, int index)
+		{
+			this.batch = batch;
+			this.index = index;
+		}
+
+		AlgorithmRunConfiguration getRunConfiguration()
+		{
+			return batch.runConfigs.get(index);
+		}
+	}
+}
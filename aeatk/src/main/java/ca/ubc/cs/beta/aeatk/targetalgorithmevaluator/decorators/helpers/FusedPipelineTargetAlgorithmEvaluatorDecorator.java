@@ -0,0 +1,638 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.helpers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beust.jcommander.ParameterException;
+
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.ExistingAlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunStatus;
+import ca.ubc.cs.beta.aeatk.concurrent.ReducableSemaphore;
+import ca.ubc.cs.beta.aeatk.concurrent.threadfactory.SequentiallyNamedThreadFactory;
+import ca.ubc.cs.beta.aeatk.misc.watch.AutoStartStopWatch;
+import ca.ubc.cs.beta.aeatk.misc.watch.StopWatch;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluator;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorCallback;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorOptions;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorRunObserver;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.cli.CommandLineAlgorithmRun;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.AbstractTargetAlgorithmEvaluatorDecorator;
+
+/**
+ * Single decorator that does the work of the stateless checks and transforms at the end of the default decorator chain
+ * <p>
+ * The {@link ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.init.TargetAlgorithmEvaluatorBuilder} normally wraps the TAE in
+ * {@link ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.safety.TimingCheckerTargetAlgorithmEvaluator},
+ * {@link ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.functionality.OutstandingEvaluationsTargetAlgorithmEvaluatorDecorator},
+ * {@link ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.debug.CheckForDuplicateRunConfigDecorator},
+ * {@link KillCaptimeExceedingRunsRunsTargetAlgorithmEvaluatorDecorator},
+ * {@link ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.safety.WarnOnNoWallOrRuntimeTargetAlgorithmEvaluatorDecorator},
+ * {@link ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.safety.CrashedSolutionQualityTransformingTargetAlgorithmEvaluatorDecorator},
+ * {@link CallObserverBeforeCompletionTargetAlgorithmEvaluatorDecorator} and
+ * {@link ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.safety.SynchronousObserverTargetAlgorithmEvaluatorDecorator},
+ * each of which wraps the callback and observer and walks or copies the result list again.
+ * <p>
+ * This decorator does the same checks and transforms, enabled by the same options, with one observer and one callback wrapper per batch
+ * and a single pass over the results. It does not hand off work to other threads, so callbacks still run in whatever thread the wrapped TAE uses.
+ * Log messages and the order in which the client observer and callback see the runs are the same as with the nested decorators.
+ */
+@ThreadSafe
+public class FusedPipelineTargetAlgorithmEvaluatorDecorator extends AbstractTargetAlgorithmEvaluatorDecorator {
+
+	private static final Logger log = LoggerFactory.getLogger(FusedPipelineTargetAlgorithmEvaluatorDecorator.class);
+
+	private final boolean trackOutstanding;
+	private final boolean checkRunConfigsUnique;
+	private final boolean checkRunConfigsUniqueException;
+	private final boolean killCaptimeExceedingRun;
+	private final double killCaptimeExceedingRunFactor;
+	private final boolean transformCrashedQuality;
+	private final double transformCrashedQualityValue;
+	private final boolean callObserverBeforeCompletion;
+	private final boolean synchronousObserver;
+
+	//==== Outstanding evaluations
+	private final ReducableSemaphore outstandingRunBlocks = new ReducableSemaphore(1);
+	private final AtomicInteger outstandingRuns = new AtomicInteger(0);
+	private final AtomicInteger runCount = new AtomicInteger(0);
+
+	//==== Warning if there is no response
+	private final ExecutorService warnExecService;
+	private volatile boolean observed;
+	private final Semaphore runsSubmitted = new Semaphore(0);
+	private final Semaphore runsObserved = new Semaphore(0);
+
+	private final AtomicBoolean transformedResponseValueWarning = new AtomicBoolean(false);
+
+	//==== Timing checks
+	private final Object timingLock = new Object();
+
+	@GuardedBy("timingLock")
+	private double totalWallClockOverhead = 0;
+	@GuardedBy("timingLock")
+	private double totalRuntimeOverhead = 0;
+	@GuardedBy("timingLock")
+	private double totalWallClockVersusRuntimeDifference = 0;
+	@GuardedBy("timingLock")
+	private double totalWalltime = 0;
+	@GuardedBy("timingLock")
+	private double totalRuntime = 0;
+	@GuardedBy("timingLock")
+	private double runtimeDeltaToRequireLogging = 1;
+	@GuardedBy("timingLock")
+	private double wallClockDeltaToRequireLogging = 10;
+
+	public FusedPipelineTargetAlgorithmEvaluatorDecorator(TargetAlgorithmEvaluator tae, TargetAlgorithmEvaluatorOptions options)
+	{
+		super(tae);
+
+		this.trackOutstanding = !options.skipOutstandingEvaluationsTAE;
+		this.checkRunConfigsUnique = options.checkRunConfigsUnique;
+		this.checkRunConfigsUniqueException = options.checkRunConfigsUniqueException;
+		this.killCaptimeExceedingRun = options.killCaptimeExceedingRun;
+		this.killCaptimeExceedingRunFactor = options.killCaptimeExceedingRunFactor;
+		this.transformCrashedQuality = options.transformCrashedQuality;
+		this.transformCrashedQualityValue = options.transformCrashedQualityValue;
+		this.callObserverBeforeCompletion = options.callObserverBeforeCompletion;
+		this.synchronousObserver = options.synchronousObserver;
+
+		if(killCaptimeExceedingRun)
+		{
+			if(killCaptimeExceedingRunFactor <= 1.0)
+			{
+				throw new ParameterException("Scaling Factor for killing cannot be less than or equal to 1.0");
+			}
+
+			if(killCaptimeExceedingRunFactor < 2.0)
+			{
+				log.warn("Scaling factors less than 2.0 are STRONGLY discouraged, as the runtime observations we make are only very approximate.");
+			}
+		}
+
+		if(options.warnIfNoResponseFromTAE > 0)
+		{
+			this.observed = false;
+			this.warnExecService = Executors.newFixedThreadPool(1,new SequentiallyNamedThreadFactory("TAE Warning Checking Thread",true));
+			final int timeToWaitInSeconds = options.warnIfNoResponseFromTAE;
+			warnExecService.execute(new Runnable()
+			{
+				@Override
+				public void run() {
+					try {
+						runsSubmitted.acquire();
+						StopWatch watch = new AutoStartStopWatch();
+						boolean acquired = runsObserved.tryAcquire(timeToWaitInSeconds, TimeUnit.SECONDS);
+						watch.stop();
+						if(!acquired)
+						{
+							log.warn("Runs have been submitted to Target Algorithm Evaluator but we have not seen any progress (no observed runs have any non-zero walltime or runtime) after {} seconds of waiting, it's possible that the observer frequency is too low, or something is wrong with the Target Algorithm Evaluator (for instance some require that you start external processes and will hang if you don't).", watch.time() / 1000 );
+						}
+					} catch (InterruptedException e) {
+						//==== Do nothing because we probably are just being shutdown
+						Thread.currentThread().interrupt();
+					} finally
+					{
+						warnExecService.shutdown();
+					}
+				}
+			});
+		} else
+		{
+			//Nothing to warn about, so we behave as if we have already seen progress
+			this.observed = true;
+			this.warnExecService = null;
+		}
+	}
+
+	@Override
+	public List<AlgorithmRunResult> evaluateRun(List<AlgorithmRunConfiguration> runConfigs, TargetAlgorithmEvaluatorRunObserver obs)
+	{
+		Batch batch = submit(runConfigs, obs);
+		try
+		{
+			List<AlgorithmRunResult> runs = batch.complete(tae.evaluateRun(runConfigs, batch));
+			batch.beforeCompletion(runs);
+			return runs;
+		} finally
+		{
+			batch.release();
+		}
+	}
+
+	@Override
+	public void evaluateRunsAsync(List<AlgorithmRunConfiguration> runConfigs, final TargetAlgorithmEvaluatorCallback handler, TargetAlgorithmEvaluatorRunObserver obs)
+	{
+		final Batch batch = submit(runConfigs, obs);
+
+		TargetAlgorithmEvaluatorCallback callback = new TargetAlgorithmEvaluatorCallback()
+		{
+			@Override
+			public void onSuccess(List<AlgorithmRunResult> runs) {
+				//Unlike the OutstandingEvaluations decorator a failing transform still releases the batch
+				try
+				{
+					runs = batch.complete(runs);
+					batch.beforeCompletion(runs);
+					handler.onSuccess(runs);
+				} finally
+				{
+					//Release happens after because it is still outstanding at this point until the callback has fired.
+					batch.release();
+				}
+			}
+
+			@Override
+			public void onFailure(RuntimeException t) {
+				try
+				{
+					markObserved();
+					handler.onFailure(t);
+				} finally
+				{
+					batch.release();
+				}
+			}
+		};
+
+		try
+		{
+			tae.evaluateRunsAsync(runConfigs, callback, batch);
+		} catch(RuntimeException e)
+		{
+			batch.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Does the request side checks, and returns the state of the batch
+	 */
+	private Batch submit(List<AlgorithmRunConfiguration> runConfigs, TargetAlgorithmEvaluatorRunObserver obs)
+	{
+		if(checkRunConfigsUnique)
+		{
+			checkRunConfigs(runConfigs);
+		}
+
+		if(!observed)
+		{
+			runsSubmitted.release();
+		}
+
+		if(trackOutstanding)
+		{
+			outstandingRunBlocks.reducePermits();
+			outstandingRuns.addAndGet(runConfigs.size());
+		}
+
+		return new Batch(runConfigs.size(), obs);
+	}
+
+	private void checkRunConfigs(List<AlgorithmRunConfiguration> runConfigs)
+	{
+		Set<AlgorithmRunConfiguration> rcs = new HashSet<AlgorithmRunConfiguration>(runConfigs);
+
+		if(rcs.size() != runConfigs.size())
+		{
+			log.error("Duplicate Run Configurations Requested this is almost certainly a bug");
+			log.error("Duplicate Run Configs Follow:");
+
+			Set<AlgorithmRunConfiguration> seen = new HashSet<AlgorithmRunConfiguration>();
+			Set<AlgorithmRunConfiguration> duplicates = new HashSet<AlgorithmRunConfiguration>();
+			for(AlgorithmRunConfiguration rc : runConfigs)
+			{
+				if(!seen.add(rc))
+				{
+					duplicates.add(rc);
+				}
+			}
+
+			for(AlgorithmRunConfiguration rc : duplicates)
+			{
+				log.error("\tDuplicate Run Config: {}", rc);
+			}
+
+			log.error("All Run Configs follow:");
+			for(AlgorithmRunConfiguration rc : runConfigs)
+			{
+				log.error("\tRun Config: {} ", rc);
+			}
+
+			if(checkRunConfigsUniqueException)
+			{
+				throw new IllegalStateException("Duplicate Run Configurations cannot be part of the same call of evaluateRun()/evaluateRunAsync()");
+			}
+		}
+	}
+
+	/**
+	 * Accounts for the run in the timing totals and logs a warning if it exceeded its cutoff
+	 */
+	@GuardedBy("timingLock")
+	private void checkTiming(AlgorithmRunResult run)
+	{
+		double runtimeOverhead = run.getRuntime() - run.getAlgorithmRunConfiguration().getCutoffTime();
+
+		totalRuntime += Math.max(run.getRuntime(), 0);
+		totalRuntimeOverhead += Math.max(runtimeOverhead, 0);
+
+		if(runtimeOverhead > runtimeDeltaToRequireLogging)
+		{
+			runtimeDeltaToRequireLogging = runtimeOverhead + 1;
+
+			Object[] args = {run.getRuntime(), run.getAlgorithmRunConfiguration().getCutoffTime(), runtimeOverhead, runtimeDeltaToRequireLogging};
+			log.warn("Algorithm Run Result reported a runtime of {} (secs) that exceeded it's cutoff time of {} (secs) by {} (secs). Next warning at {} (secs)  ", args);
+		}
+
+		double wallClockOverhead = run.getWallclockExecutionTime() - run.getAlgorithmRunConfiguration().getCutoffTime();
+
+		totalWalltime += Math.max(run.getWallclockExecutionTime(), 0);
+		totalWallClockOverhead += Math.max(wallClockOverhead, 0);
+
+		if(wallClockOverhead > Math.min(Math.max(10,1.5*run.getAlgorithmRunConfiguration().getAlgorithmExecutionConfiguration().getAlgorithmMaximumCutoffTime()), wallClockDeltaToRequireLogging))
+		{
+			wallClockDeltaToRequireLogging = wallClockOverhead + 1;
+
+			Object[] args = {run.getWallclockExecutionTime(), run.getAlgorithmRunConfiguration().getCutoffTime(), wallClockOverhead, wallClockDeltaToRequireLogging};
+			log.warn("Algorithm Run Result reported wallclock time of {} (secs) that exceeded it's cutoff time of {} (secs) by {} (secs). Next warning at {} (secs)  ", args);
+		}
+
+		totalWallClockVersusRuntimeDifference += Math.max(run.getWallclockExecutionTime()-run.getRuntime(), 0);
+	}
+
+	private AlgorithmRunResult transformCrashedQuality(AlgorithmRunResult run)
+	{
+		if(run.getRunStatus().equals(RunStatus.CRASHED) && run.getQuality() < transformCrashedQualityValue)
+		{
+			if(transformedResponseValueWarning.compareAndSet(false, true))
+			{
+				log.warn("Detected CRASHED run. The Solution Quality of CRASHED runs will be transformed to the MAX(quality, {}), to disable this use --transform-crashed-quality false to change the value use --transform-crashed-quality-value", transformCrashedQualityValue);
+			}
+			run = new ExistingAlgorithmRunResult(run.getAlgorithmRunConfiguration(), run.getRunStatus(), run.getRuntime(),run.getRunLength(), Math.max(transformCrashedQualityValue, run.getQuality()),run.getResultSeed(), run.getAdditionalRunData(), run.getWallclockExecutionTime());
+		}
+		return run;
+	}
+
+	private synchronized void markObserved()
+	{
+		if(observed)
+		{
+			return;
+		}
+
+		observed = true;
+		runsObserved.release();
+		if(!warnExecService.isShutdown())
+		{
+			warnExecService.shutdownNow();
+		}
+	}
+
+	/**
+	 * State of one call to evaluateRun() or evaluateRunsAsync()
+	 */
+	private class Batch implements TargetAlgorithmEvaluatorRunObserver
+	{
+		private final int size;
+
+		private final TargetAlgorithmEvaluatorRunObserver obs;
+
+		private final AtomicBoolean released = new AtomicBoolean(false);
+
+		private final Object setLock = new Object();
+
+		/**
+		 * Created the first time we see a run that needs it, most batches never need them
+		 */
+		private volatile Set<AlgorithmRunConfiguration> killedRuns;
+		private volatile Set<AlgorithmRunConfiguration> warnCreated;
+
+		Batch(int size, TargetAlgorithmEvaluatorRunObserver obs)
+		{
+			this.size = size;
+			this.obs = obs;
+		}
+
+		@Override
+		public void currentStatus(List<? extends AlgorithmRunResult> runs)
+		{
+			try
+			{
+				if(killCaptimeExceedingRun)
+				{
+					killCaptimeExceedingRuns(runs);
+				}
+
+				notifyObserver(runs);
+
+				if(!observed)
+				{
+					for(AlgorithmRunResult run : runs)
+					{
+						if(run.getWallclockExecutionTime() > 0)
+						{
+							markObserved();
+							break;
+						}
+					}
+				}
+			} finally
+			{
+				warnOnExceededCutoff(runs);
+			}
+		}
+
+		private void notifyObserver(List<? extends AlgorithmRunResult> runs)
+		{
+			if(obs == null)
+			{
+				return;
+			}
+
+			if(synchronousObserver)
+			{
+				synchronized(this)
+				{
+					obs.currentStatus(runs);
+				}
+			} else
+			{
+				obs.currentStatus(runs);
+			}
+		}
+
+		private void killCaptimeExceedingRuns(List<? extends AlgorithmRunResult> runs)
+		{
+			for(AlgorithmRunResult run : runs)
+			{
+				if(run.getRunStatus().equals(RunStatus.RUNNING) && run.getAlgorithmRunConfiguration().getCutoffTime() * killCaptimeExceedingRunFactor < run.getRuntime())
+				{
+					Set<AlgorithmRunConfiguration> killed = getKilledRuns();
+					if(!killed.contains(run.getAlgorithmRunConfiguration()))
+					{
+						if(killed.add(run.getAlgorithmRunConfiguration()))
+						{
+							//Log the message only the first time we add the element to the set.
+							Object[] args = { run.getAlgorithmRunConfiguration() ,run.getRuntime(), killCaptimeExceedingRunFactor, run.getAlgorithmRunConfiguration().getCutoffTime()};
+							log.warn("Killed run {} at {} for exceeding {} times its cutoff time of {} (secs)", args);
+						}
+
+						run.kill();
+					}
+				}
+			}
+		}
+
+		private void warnOnExceededCutoff(List<? extends AlgorithmRunResult> runs)
+		{
+			for(AlgorithmRunResult run : runs)
+			{
+				//If the run has taken more 3 minutes, and it is more than 3 times the cutoff time we warn.
+				if(!run.isRunCompleted() && run.getWallclockExecutionTime() > 3 * run.getAlgorithmRunConfiguration().getCutoffTime() && run.getWallclockExecutionTime() > 180)
+				{
+					if(getWarnCreated().add(run.getAlgorithmRunConfiguration()))
+					{
+						log.warn("We have been waiting for {} seconds for a run that should have taken at most {} seconds.\n "
+								+ "The sample call for the run that is delayed is: cd \"{}\" " + CommandLineAlgorithmRun.COMMAND_SEPERATOR + "  {} ",run.getWallclockExecutionTime(), run.getAlgorithmRunConfiguration().getCutoffTime(), new File(run.getAlgorithmRunConfiguration().getAlgorithmExecutionConfiguration().getAlgorithmExecutionDirectory()).getAbsolutePath(), CommandLineAlgorithmRun.getTargetAlgorithmExecutionCommandAsString(run.getAlgorithmRunConfiguration()));
+					}
+				}
+			}
+		}
+
+		/**
+		 * Does the timing checks and transforms of the completed runs in one pass
+		 *
+		 * @param runs runs returned by the wrapped TAE
+		 * @return runs to give to the client
+		 */
+		List<AlgorithmRunResult> complete(List<AlgorithmRunResult> runs)
+		{
+			Set<AlgorithmRunConfiguration> killed = killedRuns;
+			boolean transform = (killed != null && !killed.isEmpty()) || transformCrashedQuality;
+
+			List<AlgorithmRunResult> results = (transform) ? new ArrayList<AlgorithmRunResult>(runs.size()) : runs;
+
+			synchronized(timingLock)
+			{
+				for(AlgorithmRunResult run : runs)
+				{
+					checkTiming(run);
+
+					if(!transform)
+					{
+						continue;
+					}
+
+					if(killed != null && run.getRunStatus().equals(RunStatus.KILLED) && killed.contains(run.getAlgorithmRunConfiguration()))
+					{
+						run = new ExistingAlgorithmRunResult(run.getAlgorithmRunConfiguration(), RunStatus.CRASHED, run.getRuntime(), run.getRunLength(), run.getQuality(), run.getResultSeed(),"Run Exceeded Captime -- Treating as " + RunStatus.CRASHED + ";" + run.getAdditionalRunData() , run.getWallclockExecutionTime());
+					}
+
+					if(transformCrashedQuality)
+					{
+						run = transformCrashedQuality(run);
+					}
+
+					results.add(run);
+				}
+			}
+
+			if(trackOutstanding)
+			{
+				runCount.addAndGet(results.size());
+			}
+
+			if(!observed)
+			{
+				markObserved();
+			}
+
+			return results;
+		}
+
+		/**
+		 * Notifies the observer of the final set of runs if requested
+		 */
+		void beforeCompletion(List<AlgorithmRunResult> runs)
+		{
+			if(callObserverBeforeCompletion && obs != null)
+			{
+				notifyObserver(Collections.unmodifiableList(runs));
+			}
+		}
+
+		void release()
+		{
+			if(trackOutstanding && released.compareAndSet(false, true))
+			{
+				outstandingRuns.addAndGet(-size);
+				outstandingRunBlocks.release();
+			}
+		}
+
+		private Set<AlgorithmRunConfiguration> getKilledRuns()
+		{
+			Set<AlgorithmRunConfiguration> killed = killedRuns;
+			if(killed == null)
+			{
+				synchronized(setLock)
+				{
+					killed = killedRuns;
+					if(killed == null)
+					{
+						killedRuns = killed = Collections.newSetFromMap(new ConcurrentHashMap<AlgorithmRunConfiguration, Boolean>());
+					}
+				}
+			}
+			return killed;
+		}
+
+		private Set<AlgorithmRunConfiguration> getWarnCreated()
+		{
+			Set<AlgorithmRunConfiguration> warned = warnCreated;
+			if(warned == null)
+			{
+				synchronized(setLock)
+				{
+					warned = warnCreated;
+					if(warned == null)
+					{
+						warnCreated = warned = Collections.newSetFromMap(new ConcurrentHashMap<AlgorithmRunConfiguration, Boolean>());
+					}
+				}
+			}
+			return warned;
+		}
+	}
+
+	/**
+	 * Waits for there to be no outstanding runs
+	 * <b>NOTE:</b> This isn't the same as waiting for a shutdown, this waits until the number of runs in progress is zero, it can later go higher again.
+	 */
+	@Override
+	public void waitForOutstandingEvaluations()
+	{
+		if(!trackOutstanding)
+		{
+			super.waitForOutstandingEvaluations();
+			return;
+		}
+
+		try {
+			outstandingRunBlocks.acquire();
+		} catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		outstandingRunBlocks.release();
+	}
+
+	@Override
+	public int getNumberOfOutstandingEvaluations()
+	{
+		return (trackOutstanding) ? 1 - outstandingRunBlocks.availablePermits() : super.getNumberOfOutstandingEvaluations();
+	}
+
+	@Override
+	public int getNumberOfOutstandingBatches()
+	{
+		return (trackOutstanding) ? 1 - outstandingRunBlocks.availablePermits() : super.getNumberOfOutstandingBatches();
+	}
+
+	@Override
+	public int getNumberOfOutstandingRuns()
+	{
+		return (trackOutstanding) ? outstandingRuns.get() : super.getNumberOfOutstandingRuns();
+	}
+
+	@Override
+	public int getRunCount()
+	{
+		return (trackOutstanding) ? runCount.get() : super.getRunCount();
+	}
+
+	@Override
+	protected void postDecorateeNotifyShutdown()
+	{
+		if(warnExecService != null)
+		{
+			warnExecService.shutdownNow();
+		}
+
+		synchronized(timingLock)
+		{
+			double maxOverhead = 0.0;
+			maxOverhead = Math.max(totalRuntimeOverhead / totalRuntime, maxOverhead);
+			maxOverhead = Math.max(totalWallClockOverhead / totalWalltime, maxOverhead);
+			maxOverhead = Math.max(totalWalltime / totalRuntime, maxOverhead);
+
+			if(log.isDebugEnabled() || maxOverhead > 0.1)
+			{
+				log.debug("Total Reported Runtime: {} (s), Total of Sum Max(runtime-cutoff,0): {} (s)", totalRuntime, totalRuntimeOverhead);
+				log.debug("Total Walltime: {} (s), Total of Sum Max(walltime - cutoff, 0): {} (s)", totalWalltime, totalWallClockOverhead);
+				log.debug("Total Difference between Walltime and Runtime (Sum of the amount of wallclock time - sum of the amount of reported CPU time) : {} seconds", totalWallClockVersusRuntimeDifference);
+			}
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.helpers.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Histogram of latencies in microseconds with buckets in the style of an HDR histogram
+ * <p>
+ * Values below 128 get a bucket each, above that every power of two is split into 64 buckets,
+ * so percentiles are accurate to within 1/64th of the value from a microsecond up to about 12 days, in a fixed 18KB.
+ * Recording never locks or allocates.
+ */
+@ThreadSafe
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+	/**
+	 * Larger values are recorded as this value
+	 */
+	private static final long MAX_TRACKABLE_VALUE = (1L << 40) - 1;
+
+	private static final int BUCKETS = getIndex(MAX_TRACKABLE_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong count = new AtomicLong(0);
+	private final AtomicLong sum = new AtomicLong(0);
+	private final AtomicLong max = new AtomicLong(0);
+
+	/**
+	 * Records a latency
+	 * @param micros latency in microseconds, negative values are recorded as 0
+	 */
+	public void record(long micros)
+	{
+		long value = Math.min(Math.max(micros, 0), MAX_TRACKABLE_VALUE);
+
+		counts.incrementAndGet(getIndex(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+
+		long currentMax;
+		while((currentMax = max.get()) < value)
+		{
+			if(max.compareAndSet(currentMax, value))
+			{
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return number of latencies recorded
+	 */
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	/**
+	 * Summarizes the latencies recorded so far
+	 * <p>
+	 * Recording may go on concurrently, in which case the summary reflects some point during the call.
+	 *
+	 * @return summary with values in milliseconds
+	 */
+	public LatencySummary getSummary()
+	{
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for(int i=0; i < BUCKETS; i++)
+		{
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+
+		long maxValue = max.get();
+		double mean = (total > 0) ? sum.get() / (double) count.get() : 0;
+
+		return new LatencySummary(total, mean / 1000.0, getPercentile(snapshot, total, 0.5, maxValue) / 1000.0, getPercentile(snapshot, total, 0.9, maxValue) / 1000.0, getPercentile(snapshot, total, 0.99, maxValue) / 1000.0, maxValue / 1000.0);
+	}
+
+	private static long getPercentile(long[] snapshot, long total, double quantile, long maxValue)
+	{
+		if(total == 0)
+		{
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for(int i=0; i < snapshot.length; i++)
+		{
+			seen += snapshot[i];
+			if(seen >= rank)
+			{
+				//Like HDR histograms we report the highest value equivalent to the bucket
+				return Math.min(getHighestEquivalentValue(i), maxValue);
+			}
+		}
+		return maxValue;
+	}
+
+	private static int getIndex(long value)
+	{
+		if(value < SUB_BUCKETS)
+		{
+			return (int) value;
+		}
+
+		int magnitude = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+		int subBucket = (int) (value >>> magnitude);
+		return SUB_BUCKETS + (magnitude - 1) * HALF_SUB_BUCKETS + (subBucket - HALF_SUB_BUCKETS);
+	}
+
+	private static long getHighestEquivalentValue(int index)
+	{
+		if(index < SUB_BUCKETS)
+		{
+			return index;
+		}
+
+		int magnitude = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+		long subBucket = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+		return ((subBucket + 1) << magnitude) - 1;
+	}
+}
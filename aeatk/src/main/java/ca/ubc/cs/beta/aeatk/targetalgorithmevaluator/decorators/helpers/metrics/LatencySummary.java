@@ -0,0 +1,67 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.helpers.metrics;
+
+import java.io.Serializable;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * Summary of a {@link LatencyHistogram}, all times are in milliseconds
+ */
+@Immutable
+public class LatencySummary implements Serializable {
+
+	private static final long serialVersionUID = 4617094520346471822L;
+
+	private final long count;
+	private final double mean;
+	private final double median;
+	private final double percentile90;
+	private final double percentile99;
+	private final double max;
+
+	public LatencySummary(long count, double mean, double median, double percentile90, double percentile99, double max)
+	{
+		this.count = count;
+		this.mean = mean;
+		this.median = median;
+		this.percentile90 = percentile90;
+		this.percentile99 = percentile99;
+		this.max = max;
+	}
+
+	public long getCount()
+	{
+		return count;
+	}
+
+	public double getMean()
+	{
+		return mean;
+	}
+
+	public double getMedian()
+	{
+		return median;
+	}
+
+	public double getPercentile90()
+	{
+		return percentile90;
+	}
+
+	public double getPercentile99()
+	{
+		return percentile99;
+	}
+
+	public double getMax()
+	{
+		return max;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("n=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms", count, mean, median, percentile90, percentile99, max);
+	}
+}
@@ -0,0 +1,571 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.helpers.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanServer;
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+import javax.management.ObjectName;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunStatus;
+import ca.ubc.cs.beta.aeatk.concurrent.threadfactory.SequentiallyNamedThreadFactory;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluator;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorCallback;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorRunObserver;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.AbstractTargetAlgorithmEvaluatorDecorator;
+
+/**
+ * Records latency histograms, throughput and outcome counters of the runs going through it, and exports them through JMX
+ * (see {@link TargetAlgorithmEvaluatorMetricsMXBean}).
+ * <p>
+ * For every run three latencies are recorded:
+ * <ul>
+ * 	<li><b>queue</b>, from submission until the run started executing</li>
+ * 	<li><b>execution</b>, from the start until the run was first seen completed</li>
+ * 	<li><b>callback</b>, from the last run of a batch was first seen completed until the batch reached this decorator on the way back</li>
+ * </ul>
+ * The start of a run is estimated from the wallclock time it reports, as runs that are still queued are also reported as RUNNING by some decorators.
+ * Runs whose completion is only seen in the callback have it attributed to execution, and no callback latency is recorded for their batch.
+ * <p>
+ * Crashed, timed out and killed runs are also counted by the value of a parameter of their configuration, for Auto-WEKA <code>targetclass</code>,
+ * so that we can tell which classifiers misbehave.
+ */
+@ThreadSafe
+public class MetricsTargetAlgorithmEvaluatorDecorator extends AbstractTargetAlgorithmEvaluatorDecorator {
+
+	/**
+	 * Type of the periodic notification whose user data is a {@link TargetAlgorithmEvaluatorMetricsSnapshot}
+	 */
+	public static final String SNAPSHOT_NOTIFICATION = "ca.ubc.cs.beta.aeatk.tae.metrics.snapshot";
+
+	private static final String OBJECT_NAME_PREFIX = "ca.ubc.cs.beta.aeatk:type=TargetAlgorithmEvaluatorMetrics,name=";
+
+	private static final int COMPLETED_COUNTER = 0;
+	private static final int CRASHED_COUNTER = 1;
+	private static final int TIMEOUT_COUNTER = 2;
+	private static final int KILLED_COUNTER = 3;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final String name;
+	private final String breakdownParameter;
+
+	private final LatencyHistogram queueLatency = new LatencyHistogram();
+	private final LatencyHistogram executionLatency = new LatencyHistogram();
+	private final LatencyHistogram callbackLatency = new LatencyHistogram();
+
+	private final AtomicLong submittedRuns = new AtomicLong(0);
+	private final AtomicLong completedRuns = new AtomicLong(0);
+	private final AtomicLong failedRuns = new AtomicLong(0);
+	private final AtomicInteger runsInFlight = new AtomicInteger(0);
+
+	private final AtomicLongArray runsByStatus = new AtomicLongArray(RunStatus.values().length);
+
+	/**
+	 * Completed, crashed, timeout and killed runs by class
+	 */
+	private final ConcurrentMap<String, AtomicLongArray> runsByClass = new ConcurrentHashMap<String, AtomicLongArray>();
+
+	private final long creationTime = System.nanoTime();
+
+	@GuardedBy("this")
+	private long rateTime = creationTime;
+	@GuardedBy("this")
+	private long rateCompletedRuns = 0;
+	@GuardedBy("this")
+	private double rate = 0;
+
+	private final Metrics metrics = new Metrics();
+
+	private final ObjectName objectName;
+
+	private final ScheduledExecutorService snapshotExecutor;
+
+	private final AtomicLong notificationSequence = new AtomicLong(0);
+
+	/**
+	 * @param tae					decorated target algorithm evaluator
+	 * @param name					name of the MBean, if it is taken a number is appended
+	 * @param snapshotInterval		seconds between snapshot notifications, 0 to never send any
+	 * @param breakdownParameter	parameter whose value runs are broken down by, <code>null</code> to not break down runs
+	 */
+	public MetricsTargetAlgorithmEvaluatorDecorator(TargetAlgorithmEvaluator tae, String name, int snapshotInterval, String breakdownParameter)
+	{
+		super(tae);
+
+		if(snapshotInterval < 0)
+		{
+			throw new IllegalArgumentException("Snapshot interval must be non-negative, not: " + snapshotInterval);
+		}
+
+		this.breakdownParameter = breakdownParameter;
+		this.objectName = register(name);
+		this.name = (objectName != null) ? ObjectName.unquote(objectName.getKeyProperty("name")) : name;
+
+		if(snapshotInterval > 0)
+		{
+			snapshotExecutor = Executors.newSingleThreadScheduledExecutor(new SequentiallyNamedThreadFactory("TAE Metrics Snapshot", true));
+			snapshotExecutor.scheduleAtFixedRate(new Runnable()
+			{
+				@Override
+				public void run() {
+					try {
+						publishSnapshot();
+					} catch(RuntimeException e)
+					{
+						log.error("Error publishing metrics snapshot", e);
+					}
+				}
+			}, snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+		} else
+		{
+			snapshotExecutor = null;
+		}
+	}
+
+	private ObjectName register(String name)
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for(int i=1; ; i++)
+		{
+			try {
+				ObjectName on = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote((i == 1) ? name : name + "-" + i));
+				server.registerMBean(metrics, on);
+				log.debug("Registered target algorithm evaluator metrics as {}", on);
+				return on;
+			} catch(InstanceAlreadyExistsException e)
+			{
+				//Try the next name
+			} catch(JMException e)
+			{
+				log.warn("Could not register target algorithm evaluator metrics with JMX, they will only be logged: {}", e.getMessage());
+				return null;
+			}
+		}
+	}
+
+	@Override
+	public List<AlgorithmRunResult> evaluateRun(List<AlgorithmRunConfiguration> runConfigs, TargetAlgorithmEvaluatorRunObserver observer)
+	{
+		Batch batch = new Batch(runConfigs);
+		List<AlgorithmRunResult> runs;
+		try {
+			runs = tae.evaluateRun(runConfigs, batch.getObserver(observer));
+		} catch(RuntimeException e)
+		{
+			batch.failed();
+			throw e;
+		}
+		batch.completed(runs);
+		return runs;
+	}
+
+	@Override
+	public void evaluateRunsAsync(List<AlgorithmRunConfiguration> runConfigs, final TargetAlgorithmEvaluatorCallback callback, TargetAlgorithmEvaluatorRunObserver observer)
+	{
+		final Batch batch = new Batch(runConfigs);
+
+		TargetAlgorithmEvaluatorCallback myCallback = new TargetAlgorithmEvaluatorCallback()
+		{
+			@Override
+			public void onSuccess(List<AlgorithmRunResult> runs) {
+				batch.completed(runs);
+				callback.onSuccess(runs);
+			}
+
+			@Override
+			public void onFailure(RuntimeException e) {
+				batch.failed();
+				callback.onFailure(e);
+			}
+		};
+
+		try {
+			tae.evaluateRunsAsync(runConfigs, myCallback, batch.getObserver(observer));
+		} catch(RuntimeException e)
+		{
+			batch.failed();
+			throw e;
+		}
+	}
+
+	/**
+	 * Tracks the runs of one batch, the position of a run in the batch is the same in every list we see
+	 */
+	private class Batch
+	{
+		private final List<AlgorithmRunConfiguration> runConfigs;
+
+		private final long submitted = System.nanoTime();
+
+		/**
+		 * Nanoseconds after submission plus one, 0 while unknown
+		 */
+		private final AtomicLongArray started;
+		private final AtomicLongArray ended;
+
+		Batch(List<AlgorithmRunConfiguration> runConfigs)
+		{
+			this.runConfigs = runConfigs;
+			this.started = new AtomicLongArray(runConfigs.size());
+			this.ended = new AtomicLongArray(runConfigs.size());
+
+			submittedRuns.addAndGet(runConfigs.size());
+			runsInFlight.addAndGet(runConfigs.size());
+		}
+
+		TargetAlgorithmEvaluatorRunObserver getObserver(final TargetAlgorithmEvaluatorRunObserver observer)
+		{
+			return new TargetAlgorithmEvaluatorRunObserver()
+			{
+				@Override
+				public void currentStatus(List<? extends AlgorithmRunResult> runs) {
+					observe(runs);
+					if(observer != null)
+					{
+						observer.currentStatus(runs);
+					}
+				}
+			};
+		}
+
+		private void observe(List<? extends AlgorithmRunResult> runs)
+		{
+			long now = System.nanoTime() - submitted;
+			for(int i=0; i < runs.size() && i < runConfigs.size(); i++)
+			{
+				AlgorithmRunResult run = runs.get(i);
+				if(run.isRunCompleted())
+				{
+					complete(i, run, now);
+				} else if(run.getWallclockExecutionTime() > 0 && started.get(i) == 0)
+				{
+					started.compareAndSet(i, 0, Math.max(0, now - toNanos(run.getWallclockExecutionTime())) + 1);
+				}
+			}
+		}
+
+		void completed(List<AlgorithmRunResult> runs)
+		{
+			long now = System.nanoTime() - submitted;
+
+			long lastObservedEnd = 0;
+			boolean allObserved = true;
+			for(int i=0; i < ended.length(); i++)
+			{
+				long end = ended.get(i);
+				if(end == 0)
+				{
+					allObserved = false;
+				} else
+				{
+					lastObservedEnd = Math.max(lastObservedEnd, end - 1);
+				}
+			}
+
+			for(int i=0; i < runs.size() && i < runConfigs.size(); i++)
+			{
+				complete(i, runs.get(i), now);
+			}
+
+			if(allObserved && ended.length() > 0)
+			{
+				callbackLatency.record(toMicros(now - lastObservedEnd));
+			}
+		}
+
+		void failed()
+		{
+			for(int i=0; i < ended.length(); i++)
+			{
+				if(ended.compareAndSet(i, 0, System.nanoTime() - submitted + 1))
+				{
+					runsInFlight.decrementAndGet();
+					failedRuns.incrementAndGet();
+				}
+			}
+		}
+
+		private void complete(int i, AlgorithmRunResult run, long now)
+		{
+			if(!ended.compareAndSet(i, 0, now + 1))
+			{
+				return;
+			}
+
+			long start = started.get(i) - 1;
+			if(start < 0)
+			{
+				start = (run.getWallclockExecutionTime() > 0) ? Math.max(0, now - toNanos(run.getWallclockExecutionTime())) : 0;
+			}
+
+			queueLatency.record(toMicros(start));
+			executionLatency.record(toMicros(now - start));
+
+			runsInFlight.decrementAndGet();
+			completedRuns.incrementAndGet();
+			runsByStatus.incrementAndGet(run.getRunStatus().ordinal());
+
+			AtomicLongArray counters = getClassCounters(runConfigs.get(i));
+			if(counters != null)
+			{
+				counters.incrementAndGet(COMPLETED_COUNTER);
+				switch(run.getRunStatus())
+				{
+					case CRASHED:
+						counters.incrementAndGet(CRASHED_COUNTER);
+						break;
+					case TIMEOUT:
+						counters.incrementAndGet(TIMEOUT_COUNTER);
+						break;
+					case KILLED:
+						counters.incrementAndGet(KILLED_COUNTER);
+						break;
+					default:
+						break;
+				}
+			}
+		}
+	}
+
+	private AtomicLongArray getClassCounters(AlgorithmRunConfiguration rc)
+	{
+		if(breakdownParameter == null)
+		{
+			return null;
+		}
+
+		String runClass = rc.getParameterConfiguration().get(breakdownParameter);
+		if(runClass == null)
+		{
+			return null;
+		}
+
+		AtomicLongArray counters = runsByClass.get(runClass);
+		if(counters == null)
+		{
+			AtomicLongArray newCounters = new AtomicLongArray(4);
+			counters = runsByClass.putIfAbsent(runClass, newCounters);
+			if(counters == null)
+			{
+				counters = newCounters;
+			}
+		}
+		return counters;
+	}
+
+	private static long toNanos(double seconds)
+	{
+		return (long) (seconds * 1000000000.0);
+	}
+
+	private static long toMicros(long nanos)
+	{
+		return nanos / 1000;
+	}
+
+	/**
+	 * Completed runs per second, over a window of at least a second ending now, or the previous window if the current one is still shorter
+	 */
+	private synchronized double getRunsPerSecond()
+	{
+		long now = System.nanoTime();
+		long completed = completedRuns.get();
+		if(now - rateTime >= TimeUnit.SECONDS.toNanos(1))
+		{
+			rate = (completed - rateCompletedRuns) / ((now - rateTime) / 1000000000.0);
+			rateTime = now;
+			rateCompletedRuns = completed;
+		}
+		return rate;
+	}
+
+	private double getAverageRunsPerSecond()
+	{
+		double elapsed = (System.nanoTime() - creationTime) / 1000000000.0;
+		return (elapsed > 0) ? completedRuns.get() / elapsed : 0;
+	}
+
+	private Map<String, Long> getRunsByClass(int counter)
+	{
+		Map<String, Long> map = new HashMap<String, Long>();
+		for(Entry<String, AtomicLongArray> ent : runsByClass.entrySet())
+		{
+			long value = ent.getValue().get(counter);
+			if(value > 0)
+			{
+				map.put(ent.getKey(), value);
+			}
+		}
+		return map;
+	}
+
+	private Map<String, Long> getRunsByStatus()
+	{
+		Map<String, Long> map = new HashMap<String, Long>();
+		for(RunStatus status : RunStatus.values())
+		{
+			long value = runsByStatus.get(status.ordinal());
+			if(value > 0)
+			{
+				map.put(status.name(), value);
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * @return the current metrics
+	 */
+	public TargetAlgorithmEvaluatorMetricsSnapshot getSnapshot()
+	{
+		return new TargetAlgorithmEvaluatorMetricsSnapshot(name, System.currentTimeMillis(), submittedRuns.get(), completedRuns.get(), failedRuns.get(), runsInFlight.get(), getRunsPerSecond(), getAverageRunsPerSecond(),
+				queueLatency.getSummary(), executionLatency.getSummary(), callbackLatency.getSummary(),
+				getRunsByStatus(), getRunsByClass(COMPLETED_COUNTER), getRunsByClass(CRASHED_COUNTER), getRunsByClass(TIMEOUT_COUNTER), getRunsByClass(KILLED_COUNTER));
+	}
+
+	private void publishSnapshot()
+	{
+		TargetAlgorithmEvaluatorMetricsSnapshot snapshot = getSnapshot();
+		log.debug("{}", snapshot);
+
+		Notification notification = new Notification(SNAPSHOT_NOTIFICATION, (objectName != null) ? objectName : metrics, notificationSequence.incrementAndGet(), snapshot.getTimestamp(), "Metrics of " + name);
+		notification.setUserData(snapshot);
+		metrics.sendNotification(notification);
+	}
+
+	@Override
+	protected void postDecorateeNotifyShutdown()
+	{
+		if(snapshotExecutor != null)
+		{
+			snapshotExecutor.shutdownNow();
+		}
+
+		log.info("{}", getSnapshot());
+
+		if(objectName != null)
+		{
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch(JMException e)
+			{
+				log.debug("Could not unregister " + objectName, e);
+			}
+		}
+	}
+
+	/**
+	 * The MBean, separate from the decorator as it has to extend {@link NotificationBroadcasterSupport}
+	 */
+	private class Metrics extends NotificationBroadcasterSupport implements TargetAlgorithmEvaluatorMetricsMXBean
+	{
+		Metrics()
+		{
+			super(new MBeanNotificationInfo(new String[] { SNAPSHOT_NOTIFICATION }, Notification.class.getName(), "Periodic snapshot of the metrics"));
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public long getSubmittedRuns() {
+			return submittedRuns.get();
+		}
+
+		@Override
+		public long getCompletedRuns() {
+			return completedRuns.get();
+		}
+
+		@Override
+		public long getFailedRuns() {
+			return failedRuns.get();
+		}
+
+		@Override
+		public int getRunsInFlight() {
+			return runsInFlight.get();
+		}
+
+		@Override
+		public double getRunsPerSecond() {
+			return MetricsTargetAlgorithmEvaluatorDecorator.this.getRunsPerSecond();
+		}
+
+		@Override
+		public double getAverageRunsPerSecond() {
+			return MetricsTargetAlgorithmEvaluatorDecorator.this.getAverageRunsPerSecond();
+		}
+
+		@Override
+		public LatencySummary getQueueLatency() {
+			return queueLatency.getSummary();
+		}
+
+		@Override
+		public LatencySummary getExecutionLatency() {
+			return executionLatency.getSummary();
+		}
+
+		@Override
+		public LatencySummary getCallbackLatency() {
+			return callbackLatency.getSummary();
+		}
+
+		@Override
+		public Map<String, Long> getRunsByStatus() {
+			return MetricsTargetAlgorithmEvaluatorDecorator.this.getRunsByStatus();
+		}
+
+		@Override
+		public Map<String, Long> getCompletedRunsByClass() {
+			return getRunsByClass(COMPLETED_COUNTER);
+		}
+
+		@Override
+		public Map<String, Long> getCrashedRunsByClass() {
+			return getRunsByClass(CRASHED_COUNTER);
+		}
+
+		@Override
+		public Map<String, Long> getTimeoutRunsByClass() {
+			return getRunsByClass(TIMEOUT_COUNTER);
+		}
+
+		@Override
+		public Map<String, Long> getKilledRunsByClass() {
+			return getRunsByClass(KILLED_COUNTER);
+		}
+
+		@Override
+		public TargetAlgorithmEvaluatorMetricsSnapshot getSnapshot() {
+			return MetricsTargetAlgorithmEvaluatorDecorator.this.getSnapshot();
+		}
+	}
+}
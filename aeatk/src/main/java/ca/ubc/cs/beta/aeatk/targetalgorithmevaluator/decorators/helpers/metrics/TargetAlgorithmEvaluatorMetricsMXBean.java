@@ -0,0 +1,47 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.helpers.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of a {@link MetricsTargetAlgorithmEvaluatorDecorator}
+ * <p>
+ * Registered as <code>ca.ubc.cs.beta.aeatk:type=TargetAlgorithmEvaluatorMetrics,name=&lt;name&gt;</code> on the platform MBean server.
+ * Listeners of the MBean receive a {@link MetricsTargetAlgorithmEvaluatorDecorator#SNAPSHOT_NOTIFICATION} periodically,
+ * with a {@link TargetAlgorithmEvaluatorMetricsSnapshot} as user data.
+ * <p>
+ * Latencies are in milliseconds, runs are broken down by class using the value of the configured parameter in the run configuration.
+ */
+public interface TargetAlgorithmEvaluatorMetricsMXBean {
+
+	public String getName();
+
+	public long getSubmittedRuns();
+
+	public long getCompletedRuns();
+
+	public long getFailedRuns();
+
+	public int getRunsInFlight();
+
+	public double getRunsPerSecond();
+
+	public double getAverageRunsPerSecond();
+
+	public LatencySummary getQueueLatency();
+
+	public LatencySummary getExecutionLatency();
+
+	public LatencySummary getCallbackLatency();
+
+	public Map<String, Long> getRunsByStatus();
+
+	public Map<String, Long> getCompletedRunsByClass();
+
+	public Map<String, Long> getCrashedRunsByClass();
+
+	public Map<String, Long> getTimeoutRunsByClass();
+
+	public Map<String, Long> getKilledRunsByClass();
+
+	public TargetAlgorithmEvaluatorMetricsSnapshot getSnapshot();
+}
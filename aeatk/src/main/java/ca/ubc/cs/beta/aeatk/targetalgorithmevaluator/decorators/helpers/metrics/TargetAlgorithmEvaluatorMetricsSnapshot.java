@@ -0,0 +1,179 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.helpers.metrics;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * Point in time view of the metrics of a {@link MetricsTargetAlgorithmEvaluatorDecorator}
+ * <p>
+ * This is the user data of the periodic snapshot notifications, and is also available from the MBean.
+ */
+@Immutable
+public class TargetAlgorithmEvaluatorMetricsSnapshot implements Serializable {
+
+	private static final long serialVersionUID = -2392057624131770530L;
+
+	private final String name;
+	private final long timestamp;
+
+	private final long submittedRuns;
+	private final long completedRuns;
+	private final long failedRuns;
+	private final int runsInFlight;
+	private final double runsPerSecond;
+	private final double averageRunsPerSecond;
+
+	private final LatencySummary queueLatency;
+	private final LatencySummary executionLatency;
+	private final LatencySummary callbackLatency;
+
+	private final Map<String, Long> runsByStatus;
+	private final Map<String, Long> completedRunsByClass;
+	private final Map<String, Long> crashedRunsByClass;
+	private final Map<String, Long> timeoutRunsByClass;
+	private final Map<String, Long> killedRunsByClass;
+
+	public TargetAlgorithmEvaluatorMetricsSnapshot(String name, long timestamp, long submittedRuns, long completedRuns, long failedRuns, int runsInFlight, double runsPerSecond, double averageRunsPerSecond, LatencySummary queueLatency, LatencySummary executionLatency, LatencySummary callbackLatency, Map<String, Long> runsByStatus, Map<String, Long> completedRunsByClass, Map<String, Long> crashedRunsByClass, Map<String, Long> timeoutRunsByClass, Map<String, Long> killedRunsByClass)
+	{
+		this.name = name;
+		this.timestamp = timestamp;
+		this.submittedRuns = submittedRuns;
+		this.completedRuns = completedRuns;
+		this.failedRuns = failedRuns;
+		this.runsInFlight = runsInFlight;
+		this.runsPerSecond = runsPerSecond;
+		this.averageRunsPerSecond = averageRunsPerSecond;
+		this.queueLatency = queueLatency;
+		this.executionLatency = executionLatency;
+		this.callbackLatency = callbackLatency;
+		this.runsByStatus = Collections.unmodifiableMap(new TreeMap<String, Long>(runsByStatus));
+		this.completedRunsByClass = Collections.unmodifiableMap(new TreeMap<String, Long>(completedRunsByClass));
+		this.crashedRunsByClass = Collections.unmodifiableMap(new TreeMap<String, Long>(crashedRunsByClass));
+		this.timeoutRunsByClass = Collections.unmodifiableMap(new TreeMap<String, Long>(timeoutRunsByClass));
+		this.killedRunsByClass = Collections.unmodifiableMap(new TreeMap<String, Long>(killedRunsByClass));
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * @return time the snapshot was taken, in milliseconds since the epoch
+	 */
+	public long getTimestamp()
+	{
+		return timestamp;
+	}
+
+	public long getSubmittedRuns()
+	{
+		return submittedRuns;
+	}
+
+	public long getCompletedRuns()
+	{
+		return completedRuns;
+	}
+
+	/**
+	 * @return runs of batches that were reported as failed, instead of completing
+	 */
+	public long getFailedRuns()
+	{
+		return failedRuns;
+	}
+
+	public int getRunsInFlight()
+	{
+		return runsInFlight;
+	}
+
+	/**
+	 * @return completed runs per second since the previous snapshot
+	 */
+	public double getRunsPerSecond()
+	{
+		return runsPerSecond;
+	}
+
+	/**
+	 * @return completed runs per second since the decorator was created
+	 */
+	public double getAverageRunsPerSecond()
+	{
+		return averageRunsPerSecond;
+	}
+
+	/**
+	 * @return time from submission until the run was first seen running
+	 */
+	public LatencySummary getQueueLatency()
+	{
+		return queueLatency;
+	}
+
+	/**
+	 * @return time from the run was first seen running until it was first seen completed
+	 */
+	public LatencySummary getExecutionLatency()
+	{
+		return executionLatency;
+	}
+
+	/**
+	 * @return time from the last run of a batch was first seen completed until the batch was handed back
+	 */
+	public LatencySummary getCallbackLatency()
+	{
+		return callbackLatency;
+	}
+
+	public Map<String, Long> getRunsByStatus()
+	{
+		return runsByStatus;
+	}
+
+	public Map<String, Long> getCompletedRunsByClass()
+	{
+		return completedRunsByClass;
+	}
+
+	public Map<String, Long> getCrashedRunsByClass()
+	{
+		return crashedRunsByClass;
+	}
+
+	public Map<String, Long> getTimeoutRunsByClass()
+	{
+		return timeoutRunsByClass;
+	}
+
+	public Map<String, Long> getKilledRunsByClass()
+	{
+		return killedRunsByClass;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("Metrics of ").append(name).append(": ");
+		sb.append(String.format("%d submitted, %d completed, %d failed, %d in flight, %.2f runs/s (%.2f runs/s overall)", submittedRuns, completedRuns, failedRuns, runsInFlight, runsPerSecond, averageRunsPerSecond));
+		sb.append("\n queue: ").append(queueLatency);
+		sb.append("\n execution: ").append(executionLatency);
+		sb.append("\n callback: ").append(callbackLatency);
+		sb.append("\n status: ").append(runsByStatus);
+		if(!crashedRunsByClass.isEmpty() || !timeoutRunsByClass.isEmpty() || !killedRunsByClass.isEmpty())
+		{
+			sb.append("\n crashed: ").append(crashedRunsByClass);
+			sb.append("\n timeout: ").append(timeoutRunsByClass);
+			sb.append("\n killed: ").append(killedRunsByClass);
+		}
+		return sb.toString();
+	}
+}
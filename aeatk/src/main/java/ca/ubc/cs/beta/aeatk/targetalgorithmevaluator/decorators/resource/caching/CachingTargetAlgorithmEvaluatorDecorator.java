@@ -17,6 +17,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -81,6 +82,11 @@ import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.AbstractRunResch
  * <p>
  * 
  * Killing is handled by keeping track of a counter of interested runs, if this hits zero and the observer sees it the kill is forwarded.
+ * <p>
+ * Finished runs are kept until the {@link RunRetentionPolicy} asks for them to be evicted (by default never). A run is only evicted once it is finished, no request token refers to it anymore
+ * and its submission has been released; eviction removes every per run entry so that the run is afterwards indistinguishable from one never requested. Requests register their runs under the read lock of
+ * <code>evictionLock</code> and eviction holds the write lock, so a run can't be evicted while a request is picking it up. Evicted completed runs are given to the {@link RunResultSpillStore}, if any,
+ * and a later request for them is answered from it without resubmitting the run.
  * 
  * A good way to understand how this class works is actually probably to look in the Git History. The first few commits,
  * only did the request caching, and didn't support observation. The next commit supported observation, but ignored killing.
@@ -102,6 +108,24 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 	//This will be greater than cache misses because of killed runs
 	private final AtomicInteger submittedToDecoratee = new AtomicInteger(0);
 	
+	private final AtomicLong evictions = new AtomicLong(0);
+	private final AtomicLong spillRestores = new AtomicLong(0);
+	
+	/**
+	 * Decides which finished runs are kept
+	 */
+	private final RunRetentionPolicy retentionPolicy;
+	
+	/**
+	 * Store for evicted completed runs, may be <code>null</code>
+	 */
+	private final RunResultSpillStore spillStore;
+	
+	/**
+	 * Requests hold the read lock while registering their runs, eviction holds the write lock
+	 */
+	private final ReentrantReadWriteLock evictionLock = new ReentrantReadWriteLock();
+	
 	
 	private static final int AVAILABLE_PROCESSORS = Runtime.getRuntime().availableProcessors();
 	
@@ -146,7 +170,7 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 	 * [Value: Used for coordination between threads on job re-submission, the thread that takes the permit on this job, is the one that must submit it].
 	 *  
 	 * Populated: On call to {@link #evaluateRunsAsync(List, TargetAlgorithmEvaluatorCallback, TargetAlgorithmEvaluatorRunObserver)}
-	 * Cleanup: Entries are never removed
+	 * Cleanup: Removed when the run is evicted
 	 */
 	private final ConcurrentHashMap<AlgorithmRunConfiguration, ReducableSemaphore> runConfigsSubmittedToWrappedDecoratorMap = new ConcurrentHashMap<AlgorithmRunConfiguration, ReducableSemaphore>();
 	
@@ -183,7 +207,7 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 	 * This map is used to determine which callbacks need to be notified on an individual run completion
 	 * 
 	 * Populated: on call to {@link #evaluateRunsAsync(List, TargetAlgorithmEvaluatorCallback, TargetAlgorithmEvaluatorRunObserver)}
-	 * Cleanup: During callback firing the inner set has elements removed, the outter map is never cleaned up
+	 * Cleanup: During callback firing the inner set has elements removed, the outter map is cleaned up when the run is evicted
 	 */
 	private final ConcurrentHashMap<AlgorithmRunConfiguration, Set<EvaluationRequestToken>> runConfigToTokenMap = new ConcurrentHashMap<AlgorithmRunConfiguration, Set<EvaluationRequestToken>>();
 	
@@ -214,7 +238,7 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 	 * 
 	 * Populated: When entries are created in {@link #evaluateRunsAsync(List, TargetAlgorithmEvaluatorCallback, TargetAlgorithmEvaluatorRunObserver)}
 	 * Updated: Initially created with true, and when the run comes back set to false. May be true again if the run was killed
-	 * Clean up: Keys are never removed
+	 * Clean up: Removed when the run is evicted
 	 */
 	private final ConcurrentHashMap<AlgorithmRunConfiguration, AtomicBoolean> outstandingRunConfigMap = new ConcurrentHashMap<AlgorithmRunConfiguration, AtomicBoolean>();
 	
@@ -226,7 +250,7 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 	 * as completed if the run is in the completedKilledRunsMap. (This is necessary to prevent clients who don't kill their runs from seeing the killed runs)
 	 * 
 	 * Populated: When entries are completed in {@link SubmissionOnCompleteHandler#onComplete()}
-	 * Cleanup: Entries are never removed
+	 * Cleanup: Removed when the run is evicted
 	 */
 	private final Set<AlgorithmRunConfiguration> completedRunConfigs = Collections.newSetFromMap(new ConcurrentHashMap<AlgorithmRunConfiguration, Boolean>());
 	
@@ -234,7 +258,7 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 	 * This map stores the completed runs (NO KILLED RUNS)
 	 * 
 	 * Populated: When entries are completed: {@link SubmissionOnCompleteHandler#onSuccess()}
-	 * Cleanup: Entries are never removed
+	 * Cleanup: Removed when the run is evicted
 	 */
 	private final ConcurrentHashMap<AlgorithmRunConfiguration, AlgorithmRunResult> completedRunsMap = new ConcurrentHashMap<AlgorithmRunConfiguration, AlgorithmRunResult>();
 	
@@ -243,7 +267,7 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 	 * This map stores completed exceptions
 	 * 
 	 * Populated: When entries are completed: {@link SubmissionOnCompleteHandler#onFailure()}
-	 * Cleanup: Entries are never removed
+	 * Cleanup: Removed when the run is evicted
 	 */
 	private final ConcurrentHashMap<AlgorithmRunConfiguration, RuntimeException> completedExceptionMap = new ConcurrentHashMap<AlgorithmRunConfiguration, RuntimeException>();
 	
@@ -252,6 +276,7 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 	 * 
 	 * Populated: When entries are killed
 	 * Updated: When entries are killed with a higher runtime
+	 * Cleanup: Removed when the run is evicted
 	 * 
 	 */
 	private final ConcurrentHashMap<AlgorithmRunConfiguration, AlgorithmRunResult> killedRunsMap = new ConcurrentHashMap<AlgorithmRunConfiguration, AlgorithmRunResult>();
@@ -268,6 +293,7 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 	 * [Synchronization point: When this hits zero, the thing that turned it to zero will then set the kill flag.]
 	 * Populated: When entries are created
 	 * Updated: Increment whenever we submit a run, decremented when we kill it.
+	 * Cleanup: Removed when the run is evicted
 	 */
 	private final ConcurrentHashMap<AlgorithmRunConfiguration, AtomicInteger> runConfigToInterestedEvaluationsCounter = new ConcurrentHashMap<AlgorithmRunConfiguration, AtomicInteger>();
 	
@@ -281,6 +307,7 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 	 * 
 	 * Populated: When entries are running
 	 * Updated: When Entries are Running (NOT WHEN THEY ARE COMPLETE HOWEVER)
+	 * Cleanup: Removed when the run is evicted
 	 */
 	private final ConcurrentHashMap<AlgorithmRunConfiguration, AlgorithmRunResult> runConfigToLiveLatestStatusMap = new ConcurrentHashMap<AlgorithmRunConfiguration, AlgorithmRunResult>();
 	
@@ -304,8 +331,27 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 	}
 	
 	public CachingTargetAlgorithmEvaluatorDecorator(TargetAlgorithmEvaluator tae, boolean logDebugMessages) {
+		this(tae, logDebugMessages, new UnboundedRunRetentionPolicy(), null);
+	}
+	
+	/**
+	 * Creates a cache with bounded retention
+	 * 
+	 * @param tae 					target algorithm evaluator to decorate
+	 * @param logDebugMessages		if <code>true</code> the state of the cache is logged every so often
+	 * @param retentionPolicy		decides which finished runs are kept
+	 * @param spillStore			store for evicted completed runs, may be <code>null</code> to simply forget them
+	 */
+	public CachingTargetAlgorithmEvaluatorDecorator(TargetAlgorithmEvaluator tae, boolean logDebugMessages, RunRetentionPolicy retentionPolicy, RunResultSpillStore spillStore) {
 		super(tae);
 		
+		if(retentionPolicy == null)
+		{
+			throw new IllegalArgumentException("Retention policy cannot be null");
+		}
+		this.retentionPolicy = retentionPolicy;
+		this.spillStore = spillStore;
+		
 		shutdownOnError = true;
 		for(int i=0; i < AVAILABLE_PROCESSORS; i++)
 		{
@@ -408,6 +454,9 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 			
 			List<AlgorithmRunConfiguration> runConfigsCurrentThreadSubmits = new ArrayList<AlgorithmRunConfiguration>(runConfigs.size());
 			
+			//Once our token's callback has fired the runs may be evicted, so we hold on to the submission semaphores ourselves
+			final List<ReducableSemaphore> submissionSemaphores = new ArrayList<ReducableSemaphore>(runConfigs.size());
+			
 			
 			
 			//We avoid the object creation every time through the loop, probably premature optimization.
@@ -415,45 +464,71 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 			ReducableSemaphore runsSubmittedToWrappedTAECompletedSemaphore = new ReducableSemaphore(0);
 			Set<EvaluationRequestToken> callbacksForRunConfig = Collections.newSetFromMap(new ConcurrentHashMap<EvaluationRequestToken,Boolean>());
 			
-			for(AlgorithmRunConfiguration rc : runConfigs )
-			{	
+			evictionLock.readLock().lock();
+			try 
+			{
+				for(AlgorithmRunConfiguration rc : runConfigs )
+				{	
 				
-				Semaphore value = runConfigsSubmittedToWrappedDecoratorMap.putIfAbsent(rc, runsSubmittedToWrappedTAECompletedSemaphore);
+					ReducableSemaphore value = runConfigsSubmittedToWrappedDecoratorMap.putIfAbsent(rc, runsSubmittedToWrappedTAECompletedSemaphore);
 				
-				//New value inserted
-				if(value == null)
-				{
-					runConfigsCurrentThreadSubmits.add(rc);
-					runsSubmittedToWrappedTAECompletedSemaphore = new ReducableSemaphore(0);
+					//New value inserted
+					if(value == null)
+					{
+						submissionSemaphores.add(runsSubmittedToWrappedTAECompletedSemaphore);
+						AlgorithmRunResult spilledRun = (spillStore != null) ? spillStore.restore(rc) : null;
+					
+						if(spilledRun == null)
+						{
+							runConfigsCurrentThreadSubmits.add(rc);
+							outstandingRunConfigMap.putIfAbsent(rc, new AtomicBoolean(true));
+						} else
+						{
+							//Run was evicted earlier, mark it completed and release the submission as if it had come back from the decoratee
+							outstandingRunConfigMap.putIfAbsent(rc, new AtomicBoolean(false));
+							completedRunsMap.put(rc, spilledRun);
+							completedRunConfigs.add(rc);
+							retentionPolicy.onRetain(rc, spilledRun);
+							spillRestores.incrementAndGet();
+							runsSubmittedToWrappedTAECompletedSemaphore.release();
+						}
 					
-					outstandingRunConfigMap.putIfAbsent(rc, new AtomicBoolean(true));
+						runsSubmittedToWrappedTAECompletedSemaphore = new ReducableSemaphore(0);
 					
-				}
+					} else
+					{
+						submissionSemaphores.add(value);
+						retentionPolicy.onHit(rc);
+					}
 				
-				//Just because are responsible for submitting, doesn't mean we created these guys. 
-				runConfigToLiveLatestStatusMap.putIfAbsent(rc, new RunningAlgorithmRunResult(rc, 0, 0, 0, rc.getProblemInstanceSeedPair().getSeed(), 0, new NullKillHandler()));
+					//Just because are responsible for submitting, doesn't mean we created these guys. 
+					runConfigToLiveLatestStatusMap.putIfAbsent(rc, new RunningAlgorithmRunResult(rc, 0, 0, 0, rc.getProblemInstanceSeedPair().getSeed(), 0, new NullKillHandler()));
 				
 				
-				//Flag our interest in a run, iff there is already at least one person interested.
-				AtomicInteger oldValue = runConfigToInterestedEvaluationsCounter.putIfAbsent(rc, new AtomicInteger(1));
-				if(oldValue != null)
-				{
-					runConfigToInterestedEvaluationsCounter.get(rc).incrementAndGet();
-				} else
-				{
-					//Inserted new value, we are responsible for submitting
-				}	
+					//Flag our interest in a run, iff there is already at least one person interested.
+					AtomicInteger oldValue = runConfigToInterestedEvaluationsCounter.putIfAbsent(rc, new AtomicInteger(1));
+					if(oldValue != null)
+					{
+						runConfigToInterestedEvaluationsCounter.get(rc).incrementAndGet();
+					} else
+					{
+						//Inserted new value, we are responsible for submitting
+					}	
 				
-				Set<EvaluationRequestToken> oSet =  runConfigToTokenMap.putIfAbsent(rc, callbacksForRunConfig);
+					Set<EvaluationRequestToken> oSet =  runConfigToTokenMap.putIfAbsent(rc, callbacksForRunConfig);
 				
-				if(oSet == null)
-				{
-					oSet = callbacksForRunConfig;
-					//Create a new set only when needed.
-					callbacksForRunConfig = Collections.newSetFromMap(new ConcurrentHashMap<EvaluationRequestToken,Boolean>());
-				} 
+					if(oSet == null)
+					{
+						oSet = callbacksForRunConfig;
+						//Create a new set only when needed.
+						callbacksForRunConfig = Collections.newSetFromMap(new ConcurrentHashMap<EvaluationRequestToken,Boolean>());
+					} 
 				
-				oSet.add(evalToken);
+					oSet.add(evalToken);
+				}
+			} finally
+			{
+				evictionLock.readLock().unlock();
 			}
 			
 			int requests = cacheRequests.addAndGet(runConfigs.size());
@@ -479,11 +554,11 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 			/**
 			 * Wait until everything is submitted
 			 */
-			for(AlgorithmRunConfiguration rc : runConfigs)
+			for(ReducableSemaphore submissionSemaphore : submissionSemaphores)
 			{
 				try {
-					runConfigsSubmittedToWrappedDecoratorMap.get(rc).acquire();
-					runConfigsSubmittedToWrappedDecoratorMap.get(rc).release();
+					submissionSemaphore.acquire();
+					submissionSemaphore.release();
 				} catch (InterruptedException e) {
 					Thread.currentThread().interrupt();
 					return;
@@ -497,15 +572,16 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 					outstandingRunsForTokenSet.size(),
 					outstandingRunsForTokenSet);
 			
-			for(AlgorithmRunConfiguration rc : runConfigs)
+			for(int i=0; i < runConfigs.size(); i++)
 			{
+				AlgorithmRunConfiguration rc = runConfigs.get(i);
 				if(completedRunConfigs.contains(rc) || killedRunsMap.containsKey(rc))
 				{
 					if(processRunConfigurationForRequestToken(evalToken,rc))
 					{
 						try {
-							runConfigsSubmittedToWrappedDecoratorMap.get(rc).acquire();
-							runConfigsSubmittedToWrappedDecoratorMap.get(rc).release();
+							submissionSemaphores.get(i).acquire();
+							submissionSemaphores.get(i).release();
 						} catch (InterruptedException e) {
 							Thread.currentThread().interrupt();
 							return;
@@ -543,8 +619,14 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 		int submittedToNextTAE = this.submittedToDecoratee.get();
 		
 		log.info("Cache misses {}, Submitted to Decoratee: {}, Cache requests {}, Hit Rate {} ", misses, submittedToNextTAE, requests, nf.format( ((double) requests - misses) / requests)  );
+		log.debug("Cache evictions {}, Runs restored from spill store {}", evictions.get(), spillRestores.get());
 		
 		debugThread.interrupt();
+		
+		if(spillStore != null)
+		{
+			spillStore.close();
+		}
 
 		
 	}
@@ -819,6 +901,7 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 						completedRunConfigs.add(rc);
 						
 					}
+					retentionPolicy.onRetain(rc, run);
 					
 					
 					
@@ -846,7 +929,14 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 					}
 					
 					
-					for(EvaluationRequestToken t : runConfigToTokenMap.get(rc))
+					Set<EvaluationRequestToken> tokens = runConfigToTokenMap.get(rc);
+					if(tokens == null)
+					{
+						//Nobody is waiting and the run has already been evicted
+						continue;
+					}
+					
+					for(EvaluationRequestToken t : tokens)
 					{
 						//System.err.println(t + "==>" + run );
 						processRunConfigurationForRequestToken(t,rc);
@@ -900,13 +990,20 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 				for(AlgorithmRunConfiguration rc : submissionRunConfigs)
 				{
 					completedExceptionMap.put(rc, e);
+					retentionPolicy.onRetain(rc, null);
 				}
 				
 				
 				for(AlgorithmRunConfiguration rc : submissionRunConfigs)
 				{
 					completedRunConfigs.add(rc);
-					for(EvaluationRequestToken t : runConfigToTokenMap.get(rc))
+					Set<EvaluationRequestToken> tokens = runConfigToTokenMap.get(rc);
+					if(tokens == null)
+					{
+						continue;
+					}
+					
+					for(EvaluationRequestToken t : tokens)
 					{
 						processRunConfigurationForRequestToken(t,rc);
 					}
@@ -947,10 +1044,18 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 				for(AlgorithmRunResult run : runs)
 				{
 					AlgorithmRunConfiguration rc = run.getAlgorithmRunConfiguration();
-										
+					
+					Set<EvaluationRequestToken> tokens = runConfigToTokenMap.get(rc);
+					AtomicInteger interestedEvaluationsCounter = runConfigToInterestedEvaluationsCounter.get(rc);
+					if(tokens == null || interestedEvaluationsCounter == null)
+					{
+						//Late update for a run that has already been evicted
+						continue;
+					}
+					
 					runConfigToLiveLatestStatusMap.put(rc, new RunningAlgorithmRunResult(rc, run.getRuntime(), run.getRunLength(), run.getQuality(), run.getResultSeed(), run.getWallclockExecutionTime(), new NullKillHandler()));
 					
-					for(EvaluationRequestToken token : runConfigToTokenMap.get(rc))
+					for(EvaluationRequestToken token : tokens)
 					{
 						
 						updateTokens.add(token);
@@ -958,7 +1063,7 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 					
 					
 					
-					int interestedEvaluations = runConfigToInterestedEvaluationsCounter.get(rc).get();
+					int interestedEvaluations = interestedEvaluationsCounter.get();
 					if(interestedEvaluations == 0)
 					{
 						//log.debug("Run Config {} has no one else interested... terminating", rc);
@@ -1218,17 +1323,30 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 					}
 				} finally
 				{
+					//A failed run stops the loop above early, the request no longer needs any of its runs and they must become evictable
+					for(AlgorithmRunConfiguration rc : allRunConfigsForTokenMap.get(token))
+					{
+						Set<EvaluationRequestToken> tokens = runConfigToTokenMap.get(rc);
+						if(tokens != null)
+						{
+							tokens.remove(token);
+						}
+					}
 					
 					allRunConfigsForTokenMap.remove(token);
 					outstandingRunsCountForTokenMap.remove(token);
 					
 					evalRequestToCallbackMap.remove(token);
+					evalRequestToObserverMap.remove(token);
 					
 					//Remove this last so that other calls to removeRC() don't throw an NPE
 					
 					outstandingRunsForTokenMap.remove(token);
+					killedRunsForToken.remove(token);
 					token.unlock();
 				}
+				
+				evictIfNecessary();
 			}
 		}
 		
@@ -1468,7 +1586,14 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 		public void kill() 
 		{
 
-			if(killedRunsForToken.get(token).add(rc))
+			Set<AlgorithmRunConfiguration> killedRuns = killedRunsForToken.get(token);
+			if(killedRuns == null)
+			{
+				//Callback has already fired, nothing left to kill
+				return;
+			}
+			
+			if(killedRuns.add(rc))
 			{
 				
 				log.debug("Run {} has been killed for token: {}", rc, token);
@@ -1501,7 +1626,8 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 		@Override
 		public boolean isKilled() {
 			try {
-				return killedRunsForToken.get(token).contains(rc);
+				Set<AlgorithmRunConfiguration> killedRuns = killedRunsForToken.get(token);
+				return (killedRuns != null) && killedRuns.contains(rc);
 			} catch(RuntimeException e)
 			{
 				
@@ -1544,6 +1670,117 @@ public class CachingTargetAlgorithmEvaluatorDecorator extends AbstractRunResched
 	{
 		return true;
 	}
+	
+	/**
+	 * Evicts finished runs the retention policy no longer wants, skipping runs that are still needed by a request
+	 * <p>
+	 * Only one thread evicts at a time, others return immediately.
+	 */
+	private void evictIfNecessary()
+	{
+		if(!retentionPolicy.shouldEvict())
+		{
+			return;
+		}
+		
+		if(!evictionLock.writeLock().tryLock())
+		{
+			return;
+		}
+		
+		try 
+		{
+			int evicted = 0;
+			for(AlgorithmRunConfiguration rc : retentionPolicy.getEvictionOrder())
+			{
+				Set<EvaluationRequestToken> tokens = runConfigToTokenMap.get(rc);
+				AtomicBoolean outstanding = outstandingRunConfigMap.get(rc);
+				ReducableSemaphore submitted = runConfigsSubmittedToWrappedDecoratorMap.get(rc);
+				
+				if(tokens == null || !tokens.isEmpty() || outstanding == null || outstanding.get() || submitted == null || submitted.availablePermits() == 0)
+				{
+					//Still in flight or in use by a request
+					continue;
+				}
+				
+				AlgorithmRunResult run = completedRunsMap.get(rc);
+				if(spillStore != null && run != null)
+				{
+					spillStore.spill(run);
+				}
+				
+				runConfigToTokenMap.remove(rc);
+				completedRunConfigs.remove(rc);
+				completedRunsMap.remove(rc);
+				completedExceptionMap.remove(rc);
+				killedRunsMap.remove(rc);
+				runConfigToInterestedEvaluationsCounter.remove(rc);
+				runConfigToLiveLatestStatusMap.remove(rc);
+				outstandingRunConfigMap.remove(rc);
+				runConfigsSubmittedToWrappedDecoratorMap.remove(rc);
+				
+				evicted++;
+				if(!retentionPolicy.onEvict(rc))
+				{
+					break;
+				}
+			}
+			
+			evictions.addAndGet(evicted);
+			log.trace("Evicted {} runs from the cache", evicted);
+		} finally
+		{
+			evictionLock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return number of runs requested from this cache
+	 */
+	public long getCacheRequests()
+	{
+		return cacheRequests.get();
+	}
+	
+	/**
+	 * @return number of requested runs that were answered without submitting them
+	 */
+	public long getCacheHits()
+	{
+		return cacheRequests.get() - cacheRequestMisses.get();
+	}
+	
+	/**
+	 * @return number of requested runs that had to be submitted
+	 */
+	public long getCacheMisses()
+	{
+		return cacheRequestMisses.get();
+	}
+	
+	/**
+	 * @return number of runs evicted
+	 */
+	public long getEvictions()
+	{
+		return evictions.get();
+	}
+	
+	/**
+	 * @return number of requested runs that were answered from the spill store
+	 */
+	public long getSpillRestores()
+	{
+		return spillRestores.get();
+	}
+	
+	/**
+	 * @return number of runs the cache currently holds, including outstanding ones
+	 */
+	public int getRetainedRuns()
+	{
+		return runConfigToTokenMap.size();
+	}
 
 
 	
@@ -0,0 +1,285 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.caching;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.ExistingAlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunStatus;
+
+/**
+ * Spills evicted runs to an append-only temporary file
+ * <p>
+ * Only the index from run configuration to file offset stays in memory. Run configurations are already referenced by the client,
+ * so the memory saved is that of the result and the cache's bookkeeping for it. Restored runs are {@link ExistingAlgorithmRunResult}s with the same values as the original.
+ * <p>
+ * A restored run is dropped from the store, as the cache holds it in memory again and spills it anew if it is evicted again. If a maximum number of runs is given
+ * the oldest spilled runs are dropped once it is exceeded. Records of dropped runs stay in the file until they make up more than half of it, at which point the live records
+ * are copied into a new file.
+ * The file is deleted when the store is closed or the JVM exits.
+ */
+@ThreadSafe
+public class DiskRunResultSpillStore implements RunResultSpillStore {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Bytes of dropped records below which the file is never compacted
+	 */
+	static final long COMPACTION_MINIMUM_BYTES = 1 << 20;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private final File directory;
+	private final int maximumRuns;
+
+	private File file;
+	private RandomAccessFile raf;
+
+	/**
+	 * Records of the spilled runs, oldest first
+	 */
+	private final LinkedHashMap<AlgorithmRunConfiguration, Record> records = new LinkedHashMap<AlgorithmRunConfiguration, Record>();
+	private long length = 0;
+	private long droppedBytes = 0;
+
+	/**
+	 * Creates a new store that keeps every spilled run
+	 * @param directory	directory to create the spill file in
+	 */
+	public DiskRunResultSpillStore(File directory)
+	{
+		this(directory, 0);
+	}
+
+	/**
+	 * Creates a new store
+	 * @param directory		directory to create the spill file in
+	 * @param maximumRuns	maximum number of spilled runs kept, the oldest are dropped first, <code>0</code> keeps every run
+	 */
+	public DiskRunResultSpillStore(File directory, int maximumRuns)
+	{
+		if(maximumRuns < 0)
+		{
+			throw new IllegalArgumentException("Maximum number of spilled runs must be non-negative: " + maximumRuns);
+		}
+
+		if(!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IllegalArgumentException("Could not create spill directory: " + directory.getAbsolutePath());
+		}
+
+		this.directory = directory;
+		this.maximumRuns = maximumRuns;
+
+		try {
+			this.file = createSpillFile();
+			this.raf = new RandomAccessFile(file, "rw");
+		} catch(IOException e)
+		{
+			throw new IllegalStateException("Could not create spill file in " + directory.getAbsolutePath(), e);
+		}
+
+		log.debug("Spilling evicted runs to {}", file.getAbsolutePath());
+	}
+
+	private File createSpillFile() throws IOException
+	{
+		File f = File.createTempFile("run-cache-spill-", ".bin", directory);
+		f.deleteOnExit();
+		return f;
+	}
+
+	@Override
+	public synchronized void spill(AlgorithmRunResult run)
+	{
+		AlgorithmRunConfiguration rc = run.getAlgorithmRunConfiguration();
+		if(records.containsKey(rc))
+		{
+			return;
+		}
+
+		try {
+			ByteArrayOutputStream bout = new ByteArrayOutputStream(96);
+			DataOutputStream out = new DataOutputStream(bout);
+			out.writeUTF(run.getRunStatus().name());
+			out.writeDouble(run.getRuntime());
+			out.writeDouble(run.getRunLength());
+			out.writeDouble(run.getQuality());
+			out.writeLong(run.getResultSeed());
+			out.writeDouble(run.getWallclockExecutionTime());
+			byte[] additionalRunData = ((run.getAdditionalRunData() != null) ? run.getAdditionalRunData() : "").getBytes(UTF8);
+			out.writeInt(additionalRunData.length);
+			out.write(additionalRunData);
+			out.flush();
+
+			raf.seek(length);
+			raf.writeInt(bout.size());
+			raf.write(bout.toByteArray());
+
+			records.put(rc, new Record(length, 4 + bout.size()));
+			length += 4 + bout.size();
+
+			if(maximumRuns > 0 && records.size() > maximumRuns)
+			{
+				Iterator<Record> oldest = records.values().iterator();
+				droppedBytes += oldest.next().size;
+				oldest.remove();
+			}
+			compactIfNecessary();
+		} catch(IOException e)
+		{
+			throw new IllegalStateException("Could not spill run to " + file.getAbsolutePath(), e);
+		}
+	}
+
+	@Override
+	public synchronized AlgorithmRunResult restore(AlgorithmRunConfiguration rc)
+	{
+		Record record = records.remove(rc);
+		if(record == null)
+		{
+			return null;
+		}
+
+		try {
+			raf.seek(record.offset + 4);
+			byte[] bytes = new byte[record.size - 4];
+			raf.readFully(bytes);
+
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+			RunStatus runStatus = RunStatus.valueOf(in.readUTF());
+			double runtime = in.readDouble();
+			double runLength = in.readDouble();
+			double quality = in.readDouble();
+			long resultSeed = in.readLong();
+			double wallclockTime = in.readDouble();
+			byte[] additionalRunData = new byte[in.readInt()];
+			in.readFully(additionalRunData);
+
+			droppedBytes += record.size;
+			compactIfNecessary();
+
+			return new ExistingAlgorithmRunResult(rc, runStatus, runtime, runLength, quality, resultSeed, new String(additionalRunData, UTF8), wallclockTime);
+		} catch(IOException e)
+		{
+			throw new IllegalStateException("Could not restore run from " + file.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Copies the live records into a new file once the dropped ones make up more than half of the current one
+	 */
+	private void compactIfNecessary() throws IOException
+	{
+		if(droppedBytes < COMPACTION_MINIMUM_BYTES || 2 * droppedBytes <= length)
+		{
+			return;
+		}
+
+		File compacted = createSpillFile();
+		RandomAccessFile out = new RandomAccessFile(compacted, "rw");
+		long[] newOffsets = new long[records.size()];
+		long newLength = 0;
+		try {
+			int i = 0;
+			for(Record record : records.values())
+			{
+				byte[] bytes = new byte[record.size];
+				raf.seek(record.offset);
+				raf.readFully(bytes);
+				out.write(bytes);
+				newOffsets[i++] = newLength;
+				newLength += bytes.length;
+			}
+		} catch(IOException e)
+		{
+			out.close();
+			if(!compacted.delete())
+			{
+				log.debug("Could not delete spill file {}", compacted.getAbsolutePath());
+			}
+			throw e;
+		}
+
+		int i = 0;
+		for(Record record : records.values())
+		{
+			record.offset = newOffsets[i++];
+		}
+
+		raf.close();
+		if(!file.delete())
+		{
+			log.debug("Could not delete spill file {}", file.getAbsolutePath());
+		}
+
+		log.trace("Compacted spill file from {} to {} bytes", length, newLength);
+		file = compacted;
+		raf = out;
+		length = newLength;
+		droppedBytes = 0;
+	}
+
+	/**
+	 * @return number of runs spilled
+	 */
+	public synchronized int size()
+	{
+		return records.size();
+	}
+
+	/**
+	 * @return number of bytes in the spill file, including dropped records
+	 */
+	synchronized long getFileLength()
+	{
+		return length;
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		try {
+			raf.close();
+		} catch(IOException e)
+		{
+			log.warn("Could not close spill file {}", file.getAbsolutePath());
+		}
+
+		if(!file.delete())
+		{
+			log.debug("Could not delete spill file {}", file.getAbsolutePath());
+		}
+		records.clear();
+	}
+
+	/**
+	 * Location of a spilled run in the file, including its length prefix
+	 */
+	private static final class Record
+	{
+		private long offset;
+		private final int size;
+
+		Record(long offset, int size)
+		{
+			this.offset = offset;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.caching;
+
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+
+/**
+ * Secondary storage for runs evicted from the {@link CachingTargetAlgorithmEvaluatorDecorator}
+ * <p>
+ * Completed runs (never killed ones) are spilled when they are evicted, and a request for a run that is not in memory is answered from here before it is submitted. Implementations must be thread safe.
+ */
+public interface RunResultSpillStore {
+
+	/**
+	 * Stores a completed run
+	 * @param run	run to store
+	 */
+	public void spill(AlgorithmRunResult run);
+
+	/**
+	 * Retrieves a stored run
+	 * @param rc	run configuration to look up
+	 * @return the stored run, or <code>null</code> if it was never spilled or the store has since dropped it
+	 */
+	public AlgorithmRunResult restore(AlgorithmRunConfiguration rc);
+
+	/**
+	 * Releases any resources held by the store
+	 */
+	public void close();
+}
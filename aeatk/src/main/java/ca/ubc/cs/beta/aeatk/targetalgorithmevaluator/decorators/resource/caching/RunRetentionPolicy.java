@@ -0,0 +1,49 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.caching;
+
+import java.util.List;
+
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+
+/**
+ * Decides which finished runs the {@link CachingTargetAlgorithmEvaluatorDecorator} keeps in memory
+ * <p>
+ * The decorator tells the policy about every run it retains and every cache hit, and when the policy reports that it is over capacity
+ * evicts runs in the order the policy gives, skipping runs that an outstanding request still needs. Implementations must be thread safe.
+ *
+ * @see UnboundedRunRetentionPolicy
+ * @see SizeBoundedRunRetentionPolicy
+ */
+public interface RunRetentionPolicy {
+
+	/**
+	 * Called when the result of a run is retained, possibly again if a killed run is later completed
+	 * @param rc	run configuration
+	 * @param run	result that is retained, <code>null</code> if the run failed with an exception
+	 */
+	public void onRetain(AlgorithmRunConfiguration rc, AlgorithmRunResult run);
+
+	/**
+	 * Called when a request for a run is answered from a run already known to the cache
+	 * @param rc	run configuration requested
+	 */
+	public void onHit(AlgorithmRunConfiguration rc);
+
+	/**
+	 * @return <code>true</code> if runs should be evicted
+	 */
+	public boolean shouldEvict();
+
+	/**
+	 * Returns the retained runs in the order they should be evicted
+	 * @return runs to evict, first ones first, empty if nothing needs evicting
+	 */
+	public List<AlgorithmRunConfiguration> getEvictionOrder();
+
+	/**
+	 * Called when a run has been evicted
+	 * @param rc	run configuration evicted
+	 * @return <code>true</code> if more runs should be evicted
+	 */
+	public boolean onEvict(AlgorithmRunConfiguration rc);
+}
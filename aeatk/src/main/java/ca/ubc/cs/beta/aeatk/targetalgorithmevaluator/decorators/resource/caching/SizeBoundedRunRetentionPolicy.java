@@ -0,0 +1,216 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.caching;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import net.jcip.annotations.ThreadSafe;
+
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+
+/**
+ * Retention policy that bounds the total weight of the retained runs, evicting the least recently or least frequently used runs first
+ * <p>
+ * Once the total weight exceeds the maximum, runs are evicted until it is at most 90% of the maximum, so that eviction happens in batches rather than on every run.
+ * Runs that the cache can not evict yet (because a request is still waiting on them) stay counted, so the total weight may exceed the maximum while many requests are outstanding.
+ */
+@ThreadSafe
+public class SizeBoundedRunRetentionPolicy implements RunRetentionPolicy {
+
+	/**
+	 * Order in which runs are evicted
+	 */
+	public enum EvictionOrder
+	{
+		/**
+		 * Evict the run that was retained or hit longest ago first
+		 */
+		LRU,
+		/**
+		 * Evict the run with the fewest hits first, ties broken by LRU
+		 */
+		LFU
+	}
+
+	/**
+	 * Assigns a weight to a retained run
+	 */
+	public interface RunWeigher
+	{
+		/**
+		 * @param rc	run configuration
+		 * @param run	result retained, <code>null</code> if the run failed with an exception
+		 * @return	non-negative weight of the run
+		 */
+		public long weigh(AlgorithmRunConfiguration rc, AlgorithmRunResult run);
+	}
+
+	/**
+	 * Every run weighs one, so the maximum weight is a number of runs
+	 */
+	public static final RunWeigher UNIT_WEIGHER = new RunWeigher()
+	{
+		@Override
+		public long weigh(AlgorithmRunConfiguration rc, AlgorithmRunResult run) {
+			return 1;
+		}
+	};
+
+	/**
+	 * Rough number of bytes the cache holds for a run, so the maximum weight is a number of bytes
+	 */
+	public static final RunWeigher ESTIMATED_BYTES_WEIGHER = new RunWeigher()
+	{
+		/**
+		 * Approximate cost of the result object and the cache's map entries for a run
+		 */
+		private static final long RUN_OVERHEAD_BYTES = 1024;
+
+		@Override
+		public long weigh(AlgorithmRunConfiguration rc, AlgorithmRunResult run) {
+			String additionalRunData = (run != null) ? run.getAdditionalRunData() : null;
+			return RUN_OVERHEAD_BYTES + ((additionalRunData != null) ? 2L * additionalRunData.length() : 0);
+		}
+	};
+
+	private final long maximumWeight;
+	private final long targetWeight;
+	private final EvictionOrder evictionOrder;
+	private final RunWeigher weigher;
+
+	private final Map<AlgorithmRunConfiguration, Entry> entries = new HashMap<AlgorithmRunConfiguration, Entry>();
+	private final TreeSet<Entry> order;
+
+	private long totalWeight = 0;
+	private long tick = 0;
+
+	/**
+	 * Creates a new policy
+	 * @param maximumWeight		maximum total weight of the runs retained
+	 * @param evictionOrder		order to evict runs in
+	 * @param weigher			weight of each run
+	 */
+	public SizeBoundedRunRetentionPolicy(long maximumWeight, EvictionOrder evictionOrder, RunWeigher weigher)
+	{
+		if(maximumWeight <= 0)
+		{
+			throw new IllegalArgumentException("Maximum weight must be positive: " + maximumWeight);
+		}
+
+		if(evictionOrder == null) throw new IllegalArgumentException("Eviction order cannot be null");
+		if(weigher == null) throw new IllegalArgumentException("Weigher cannot be null");
+
+		this.maximumWeight = maximumWeight;
+		this.targetWeight = maximumWeight - maximumWeight / 10;
+		this.evictionOrder = evictionOrder;
+		this.weigher = weigher;
+
+		this.order = new TreeSet<Entry>(new Comparator<Entry>()
+		{
+			@Override
+			public int compare(Entry o1, Entry o2) {
+				if(SizeBoundedRunRetentionPolicy.this.evictionOrder == EvictionOrder.LFU && o1.hits != o2.hits)
+				{
+					return (o1.hits < o2.hits) ? -1 : 1;
+				}
+				return (o1.tick < o2.tick) ? -1 : ((o1.tick == o2.tick) ? 0 : 1);
+			}
+		});
+	}
+
+	@Override
+	public synchronized void onRetain(AlgorithmRunConfiguration rc, AlgorithmRunResult run)
+	{
+		long weight = weigher.weigh(rc, run);
+		Entry entry = entries.get(rc);
+		if(entry == null)
+		{
+			entry = new Entry(rc);
+			entries.put(rc, entry);
+		} else
+		{
+			order.remove(entry);
+			totalWeight -= entry.weight;
+		}
+
+		entry.weight = weight;
+		entry.tick = tick++;
+		totalWeight += weight;
+		order.add(entry);
+	}
+
+	@Override
+	public synchronized void onHit(AlgorithmRunConfiguration rc)
+	{
+		Entry entry = entries.get(rc);
+		if(entry == null)
+		{
+			//Run not finished yet
+			return;
+		}
+
+		order.remove(entry);
+		entry.hits++;
+		entry.tick = tick++;
+		order.add(entry);
+	}
+
+	@Override
+	public synchronized boolean shouldEvict()
+	{
+		return totalWeight > maximumWeight;
+	}
+
+	@Override
+	public synchronized List<AlgorithmRunConfiguration> getEvictionOrder()
+	{
+		if(totalWeight <= maximumWeight)
+		{
+			return new ArrayList<AlgorithmRunConfiguration>(0);
+		}
+
+		List<AlgorithmRunConfiguration> rcs = new ArrayList<AlgorithmRunConfiguration>(order.size());
+		for(Entry entry : order)
+		{
+			rcs.add(entry.rc);
+		}
+		return rcs;
+	}
+
+	@Override
+	public synchronized boolean onEvict(AlgorithmRunConfiguration rc)
+	{
+		Entry entry = entries.remove(rc);
+		if(entry != null)
+		{
+			order.remove(entry);
+			totalWeight -= entry.weight;
+		}
+		return totalWeight > targetWeight;
+	}
+
+	/**
+	 * @return total weight of the runs currently retained
+	 */
+	public synchronized long getTotalWeight()
+	{
+		return totalWeight;
+	}
+
+	private static final class Entry
+	{
+		private final AlgorithmRunConfiguration rc;
+		private long weight;
+		private long hits;
+		private long tick;
+
+		Entry(AlgorithmRunConfiguration rc)
+		{
+			this.rc = rc;
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.caching;
+
+import java.util.Collections;
+import java.util.List;
+
+import net.jcip.annotations.ThreadSafe;
+
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+
+/**
+ * Retention policy that keeps every run for the lifetime of the cache
+ */
+@ThreadSafe
+public class UnboundedRunRetentionPolicy implements RunRetentionPolicy {
+
+	@Override
+	public void onRetain(AlgorithmRunConfiguration rc, AlgorithmRunResult run) {
+		//Nothing to track
+	}
+
+	@Override
+	public void onHit(AlgorithmRunConfiguration rc) {
+		//Nothing to track
+	}
+
+	@Override
+	public boolean shouldEvict() {
+		return false;
+	}
+
+	@Override
+	public List<AlgorithmRunConfiguration> getEvictionOrder() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public boolean onEvict(AlgorithmRunConfiguration rc) {
+		return false;
+	}
+}
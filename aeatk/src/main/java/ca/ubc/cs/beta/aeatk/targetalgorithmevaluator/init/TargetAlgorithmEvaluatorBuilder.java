@@ -26,16 +26,23 @@ import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.functionality.Te
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.functionality.transform.TransformTargetAlgorithmEvaluatorDecorator;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.helpers.CallObserverBeforeCompletionTargetAlgorithmEvaluatorDecorator;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.helpers.CompleteZeroSecondCutoffRunsTargetAlgorithmEvaluatorDecorator;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.helpers.FusedPipelineTargetAlgorithmEvaluatorDecorator;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.helpers.KillCaptimeExceedingRunsRunsTargetAlgorithmEvaluatorDecorator;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.helpers.OutstandingRunLoggingTargetAlgorithmEvaluatorDecorator;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.helpers.RetryCrashedRunsTargetAlgorithmEvaluatorDecorator;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.helpers.StrictlyIncreasingRuntimesTargetAlgorithmEvaluatorDecorator;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.helpers.UseDynamicCappingExclusivelyTargetAlgorithmEvaluatorDecorator;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.helpers.WalltimeAsRuntimeTargetAlgorithmEvaluatorDecorator;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.helpers.metrics.MetricsTargetAlgorithmEvaluatorDecorator;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.prepostcommand.PrePostCommandTargetAlgorithmEvaluator;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.BoundedTargetAlgorithmEvaluator;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.FileCacheTargetAlgorithmEvaluatorDecorator;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.caching.CachingTargetAlgorithmEvaluatorDecorator;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.caching.DiskRunResultSpillStore;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.caching.RunResultSpillStore;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.caching.RunRetentionPolicy;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.caching.SizeBoundedRunRetentionPolicy;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.caching.UnboundedRunRetentionPolicy;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.forking.ForkingTargetAlgorithmEvaluatorDecorator;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.safety.AbortOnCrashTargetAlgorithmEvaluator;
 import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.safety.AbortOnFirstRunCrashTargetAlgorithmEvaluator;
@@ -262,7 +269,29 @@ public class TargetAlgorithmEvaluatorBuilder {
 		if(options.cacheRuns)
 		{
 			log.debug("[TAE] Caching TAE enabled");
-			tae = new CachingTargetAlgorithmEvaluatorDecorator(tae, options.cacheDebug);
+			if(options.cacheMaxRetained < 0)
+			{
+				throw new ParameterException("Maximum retained weight of the run cache must be non-negative: " + options.cacheMaxRetained);
+			}
+			
+			RunRetentionPolicy retentionPolicy;
+			if(options.cacheMaxRetained > 0)
+			{
+				log.debug("[TAE] Caching TAE retains at most {} ({}, {})", options.cacheMaxRetained, (options.cacheWeighBySize ? "bytes" : "runs"), options.cacheEvictionOrder);
+				retentionPolicy = new SizeBoundedRunRetentionPolicy(options.cacheMaxRetained, options.cacheEvictionOrder, (options.cacheWeighBySize ? SizeBoundedRunRetentionPolicy.ESTIMATED_BYTES_WEIGHER : SizeBoundedRunRetentionPolicy.UNIT_WEIGHER));
+			} else
+			{
+				retentionPolicy = new UnboundedRunRetentionPolicy();
+			}
+			
+			RunResultSpillStore spillStore = null;
+			if(options.cacheSpillDirectory != null)
+			{
+				log.debug("[TAE] Caching TAE spills evicted runs to {}", options.cacheSpillDirectory);
+				spillStore = new DiskRunResultSpillStore(new File(options.cacheSpillDirectory), options.cacheSpillMaxRuns);
+			}
+			
+			tae = new CachingTargetAlgorithmEvaluatorDecorator(tae, options.cacheDebug, retentionPolicy, spillStore);
 			
 			
 		}
@@ -361,37 +390,47 @@ public class TargetAlgorithmEvaluatorBuilder {
 		 * 
 		 */
 		
-		//==== Doesn't change anything and so is safe after the RunHashCode
-		tae = new TimingCheckerTargetAlgorithmEvaluator( tae);		
-		
-		//==== Doesn't change anything and so is safe after the RunHashCode
-		tae = new PrePostCommandTargetAlgorithmEvaluator(tae, options.prePostOptions);
-		
-
-		if(!options.skipOutstandingEvaluationsTAE)
+		if(options.taeFusedPipeline)
 		{
-			//==== This class must be near the end as it is very sensitive to ordering of other TAEs, it does not change anything
-			tae = new OutstandingEvaluationsTargetAlgorithmEvaluatorDecorator(tae);
-			log.trace("[TAE] Waiting / Monitoring outstanding target algorithm evaluations is supported");
+			//==== Doesn't change anything and so is safe after the RunHashCode
+			tae = new PrePostCommandTargetAlgorithmEvaluator(tae, options.prePostOptions);
+			
+			//==== Does the work of the decorators below in one pass, changes the same things they do
+			log.debug("[TAE] Using a single decorator for timing checks, outstanding evaluations, and the safety and observer decorators");
+			tae = new FusedPipelineTargetAlgorithmEvaluatorDecorator(tae, options);
 		} else
 		{
-			log.debug("[TAE] Waiting / Monitoring outstanding target algorithm evaluations will NOT be supported");
-		}
+			//==== Doesn't change anything and so is safe after the RunHashCode
+			tae = new TimingCheckerTargetAlgorithmEvaluator( tae);		
+			
+			//==== Doesn't change anything and so is safe after the RunHashCode
+			tae = new PrePostCommandTargetAlgorithmEvaluator(tae, options.prePostOptions);
+			
+
+			if(!options.skipOutstandingEvaluationsTAE)
+			{
+				//==== This class must be near the end as it is very sensitive to ordering of other TAEs, it does not change anything
+				tae = new OutstandingEvaluationsTargetAlgorithmEvaluatorDecorator(tae);
+				log.trace("[TAE] Waiting / Monitoring outstanding target algorithm evaluations is supported");
+			} else
+			{
+				log.debug("[TAE] Waiting / Monitoring outstanding target algorithm evaluations will NOT be supported");
+			}
 		
-		if(options.checkRunConfigsUnique)
-		{
-			log.trace("[TAE] Checking that every request in a batch is unique");
-			tae = new CheckForDuplicateRunConfigDecorator(tae, options.checkRunConfigsUniqueException);
-		} else
-		{
-			log.debug("[TAE] Not Checking that every request to the TAE is unique, this may cause weird errors");
-		}
+			if(options.checkRunConfigsUnique)
+			{
+				log.trace("[TAE] Checking that every request in a batch is unique");
+				tae = new CheckForDuplicateRunConfigDecorator(tae, options.checkRunConfigsUniqueException);
+			} else
+			{
+				log.debug("[TAE] Not Checking that every request to the TAE is unique, this may cause weird errors");
+			}
 		
-		if(options.killCaptimeExceedingRun)
-		{
-			log.trace("[TAE] Killing runs that exceed there captime by a factor of {} ", options.killCaptimeExceedingRunFactor);
-			tae = new KillCaptimeExceedingRunsRunsTargetAlgorithmEvaluatorDecorator(tae, options.killCaptimeExceedingRunFactor);
-		}
+			if(options.killCaptimeExceedingRun)
+			{
+				log.trace("[TAE] Killing runs that exceed there captime by a factor of {} ", options.killCaptimeExceedingRunFactor);
+				tae = new KillCaptimeExceedingRunsRunsTargetAlgorithmEvaluatorDecorator(tae, options.killCaptimeExceedingRunFactor);
+			}
 		
 //		if(options.fileToWatch != null)
 //		{
@@ -399,35 +438,43 @@ public class TargetAlgorithmEvaluatorBuilder {
 //			tae = new TerminateAllRunsOnFileDeleteTargetAlgorithmEvaluatorDecorator(tae, new File(options.fileToWatch));
 //		}
 		
-		if(options.warnIfNoResponseFromTAE > 0)
-		{
-			log.trace("[TAE] Warning if no response after {} seconds", options.warnIfNoResponseFromTAE);
-			tae = new WarnOnNoWallOrRuntimeTargetAlgorithmEvaluatorDecorator(tae, options.warnIfNoResponseFromTAE);
-		}
+			if(options.warnIfNoResponseFromTAE > 0)
+			{
+				log.trace("[TAE] Warning if no response after {} seconds", options.warnIfNoResponseFromTAE);
+				tae = new WarnOnNoWallOrRuntimeTargetAlgorithmEvaluatorDecorator(tae, options.warnIfNoResponseFromTAE);
+			}
 		
-		if(options.transformCrashedQuality)
-		{
-			log.trace("[TAE] Transforming the solution quality of CRASHED runs to {}", options.transformCrashedQualityValue);
-			tae = new CrashedSolutionQualityTransformingTargetAlgorithmEvaluatorDecorator(tae, options.transformCrashedQualityValue);
-		}
+			if(options.transformCrashedQuality)
+			{
+				log.trace("[TAE] Transforming the solution quality of CRASHED runs to {}", options.transformCrashedQualityValue);
+				tae = new CrashedSolutionQualityTransformingTargetAlgorithmEvaluatorDecorator(tae, options.transformCrashedQualityValue);
+			}
 		
-		if(options.callObserverBeforeCompletion)
-		{
-		    tae = new CallObserverBeforeCompletionTargetAlgorithmEvaluatorDecorator(tae);
-		}
+			if(options.callObserverBeforeCompletion)
+			{
+			    tae = new CallObserverBeforeCompletionTargetAlgorithmEvaluatorDecorator(tae);
+			}
 		
-		if(options.synchronousObserver)
-		{
-			log.trace("[TAE] Synchronizing notifications to the observer");
-			tae = new SynchronousObserverTargetAlgorithmEvaluatorDecorator(tae);
-		} else
-		{
-			log.debug("[TAE] Skipping synchronization of observers, this may cause weird threading issues");
+			if(options.synchronousObserver)
+			{
+				log.trace("[TAE] Synchronizing notifications to the observer");
+				tae = new SynchronousObserverTargetAlgorithmEvaluatorDecorator(tae);
+			} else
+			{
+				log.debug("[TAE] Skipping synchronization of observers, this may cause weird threading issues");
+			}
 		}
 		
 		
 		
 		//==== Doesn't change anything and so is safe after RunHashCode
+		if(options.taeMetrics)
+		{
+			String name = (options.taeMetricsName != null) ? options.taeMetricsName : "run-" + numRun;
+			log.debug("[TAE] Exporting metrics of all runs as {}", name);
+			tae = new MetricsTargetAlgorithmEvaluatorDecorator(tae, name, options.taeMetricsSnapshotInterval, options.taeMetricsBreakdownParameter);
+		}
+		
 		if(options.logRequestResponses)
 		{
 			log.trace("[TAE] Logging every request and response");
@@ -4,17 +4,20 @@ import weka.attributeSelection.AttributeSelection;
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Evaluation;
 
+import java.io.Serializable;
 import java.util.Date;
 
-public class CrossValidateResult implements Comparable<CrossValidateResult> {
+public class CrossValidateResult implements Comparable<CrossValidateResult>, Serializable {
     private double matricValue;
     private String crossValidationString;
     private String resultString;
     private boolean isComplete;
-    private AbstractClassifier classifier;
+    // only summaries travel between processes, the receiver rebuilds the model from the class names and arguments
+    private transient AbstractClassifier classifier;
+    private String classifierClass;
     private String[] classifierArgs;
-    private Evaluation evaluation;
-    private AttributeSelection attributeSelection;
+    private transient Evaluation evaluation;
+    private transient AttributeSelection attributeSelection;
 
     private String attributeSearch;
     private String[] attributeSearchArgs;
@@ -91,6 +94,14 @@ public class CrossValidateResult implements Comparable<CrossValidateResult> {
         this.attributeSelection = attributeSelection;
     }
 
+    public String getClassifierClass() {
+        return classifierClass;
+    }
+
+    public void setClassifierClass(String classifierClass) {
+        this.classifierClass = classifierClass;
+    }
+
     public String[] getClassifierArgs() {
         return classifierArgs;
     }
@@ -163,6 +174,31 @@ public class CrossValidateResult implements Comparable<CrossValidateResult> {
         this.seed = seed;
     }
 
+    /**
+     * Copies everything but the classifier, evaluation and attribute selection, which hold on to most of the memory.
+     * @return A lightweight copy of this result.
+     */
+    public CrossValidateResult toSummary() {
+        CrossValidateResult summary = new CrossValidateResult();
+        summary.matricValue = this.matricValue;
+        summary.crossValidationString = this.crossValidationString;
+        summary.resultString = this.resultString;
+        summary.isComplete = this.isComplete;
+        summary.classifierClass = this.classifierClass;
+        summary.classifierArgs = this.classifierArgs;
+        summary.attributeSearch = this.attributeSearch;
+        summary.attributeSearchArgs = this.attributeSearchArgs;
+        summary.attributeEval = this.attributeEval;
+        summary.attributeEvalArgs = this.attributeEvalArgs;
+        summary.foldNo = this.foldNo;
+        summary.seed = this.seed;
+        summary.startTime = this.startTime;
+        summary.finishTime = this.finishTime;
+        return summary;
+    }
+
+    private static final long serialVersionUID = 4127930582364713905L;
+
     public int hashCode() {
         return this.crossValidationString.hashCode();
     }
@@ -2,26 +2,54 @@ package ca.ubc.cs.datastore;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.SortedSet;
-import java.util.TreeSet;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the best results of an experiment, ordered by metric value (lower is better).
+ *
+ * Only the best maxResults results are kept in full; the worst of them sits on top of a heap, so adding a result
+ * takes O(log maxResults), and results that cannot make it into the top are rejected without taking the lock.
+ * The best result and the size are published in volatile fields so they can be read without locking.
+ *
+ * When keepSummaries is set, results that are rejected or pushed out of the top are kept as summaries,
+ * which hold everything but the classifier, evaluation and attribute selection.
+ */
 public class RunResultHistory {
 
-    private static final int MAX_NUMBER_OF_RESULT = 30;
+    public static final int DEFAULT_MAX_NUMBER_OF_RESULTS = 30;
+
+    private final int maxResults;
+
+    private final boolean keepSummaries;
+
+    /** Worst result on top */
+    private final PriorityQueue<CrossValidateResult> topResults;
+
+    private final ConcurrentLinkedQueue<CrossValidateResult> droppedSummaries = new ConcurrentLinkedQueue<>();
+
+    private volatile CrossValidateResult bestResult = null;
 
-    private List<CrossValidateResult> crossValidateResultList;
+    private volatile int size = 0;
 
-    private long totalModel = 0L;
+    /** Metric value a result must beat once the top is full */
+    private volatile double worstRetainedValue = Double.POSITIVE_INFINITY;
 
-    private ReadWriteLock readWriteLock;
+    private final AtomicLong totalModel = new AtomicLong(0L);
 
     RunResultHistory(){
-        this.crossValidateResultList = new LinkedList<>();
-        readWriteLock = new ReentrantReadWriteLock();
+        this(DEFAULT_MAX_NUMBER_OF_RESULTS, false);
+    }
+
+    RunResultHistory(int maxResults, boolean keepSummaries){
+        if(maxResults < 1)
+            throw new IllegalArgumentException("Run result history must keep at least one result, not " + maxResults);
+
+        this.maxResults = maxResults;
+        this.keepSummaries = keepSummaries;
+        this.topResults = new PriorityQueue<>(maxResults + 1, Collections.<CrossValidateResult>reverseOrder());
     }
 
     public void addData(CrossValidateResult result){
@@ -30,39 +58,84 @@ public class RunResultHistory {
         if(!result.isComplete())
             return;
 
-        readWriteLock.writeLock().lock();
-        try{
-            crossValidateResultList.add(result);
-            Collections.sort(this.crossValidateResultList);
+        // cheap rejection, a full top only ever gets better
+        if(size >= maxResults && !(result.getMatricValue() < worstRetainedValue)){
+            drop(result);
+            return;
+        }
 
-            if(crossValidateResultList.size() > MAX_NUMBER_OF_RESULT){
-                this.crossValidateResultList.remove(MAX_NUMBER_OF_RESULT);
-                this.totalModel++;
+        CrossValidateResult evicted = null;
+        synchronized(topResults){
+            if(topResults.size() >= maxResults){
+                if(!(result.compareTo(topResults.peek()) < 0)){
+                    evicted = result;
+                } else {
+                    evicted = topResults.poll();
+                    topResults.add(result);
+                }
+            } else {
+                topResults.add(result);
             }
-        }finally {
-            readWriteLock.writeLock().unlock();
+
+            CrossValidateResult best = bestResult;
+            if(best == null || result.compareTo(best) < 0)
+                bestResult = result;
+
+            size = topResults.size();
+            if(size >= maxResults)
+                worstRetainedValue = topResults.peek().getMatricValue();
         }
+
+        if(evicted != null)
+            drop(evicted);
+    }
+
+    private void drop(CrossValidateResult result){
+        totalModel.incrementAndGet();
+        if(keepSummaries)
+            droppedSummaries.add(result.toSummary());
     }
 
     public int size(){
-        return crossValidateResultList.size();
+        return size;
     }
 
     public CrossValidateResult getBestResult(){
-        if (this.crossValidateResultList.size() > 0)
-            return this.crossValidateResultList.get(0);
-        return null;
+        return bestResult;
     }
 
+    /**
+     * @return The kept results, best first.
+     */
     public List<CrossValidateResult> getResultList(){
-        return new ArrayList<>(crossValidateResultList);
+        List<CrossValidateResult> results;
+        synchronized(topResults){
+            results = new ArrayList<>(topResults);
+        }
+        Collections.sort(results);
+        return results;
+    }
+
+    /**
+     * @return Summaries of the results that did not make it into the top, in the order they were dropped; empty unless keepSummaries is set.
+     */
+    public List<CrossValidateResult> getDroppedResultSummaries(){
+        return new ArrayList<>(droppedSummaries);
+    }
+
+    public int getMaxNumberOfResults(){
+        return this.maxResults;
+    }
+
+    public boolean isKeepingSummaries(){
+        return this.keepSummaries;
     }
 
     public long getTotalModel() {
-        return this.totalModel;
+        return this.totalModel.get();
     }
 
     public void setTotalModel(long totalModel) {
-        this.totalModel = totalModel;
+        this.totalModel.set(totalModel);
     }
 }
@@ -22,12 +22,28 @@ public class ValidationResultStore {
         RunResultHistory runResultHistory = runResultMap.get(runKey);
         if(runResultHistory == null){
             runResultHistory = new RunResultHistory();
-            runResultMap.put(runKey, runResultHistory);
+            RunResultHistory existing = runResultMap.putIfAbsent(runKey, runResultHistory);
+            if(existing != null)
+                runResultHistory = existing;
         }
 
          return runResultHistory;
     }
 
+    /**
+     * Sets up the history of an experiment before any result is added to it.
+     * @param runKey The experiment key.
+     * @param maxResults How many of the best results to keep in full.
+     * @param keepSummaries Whether to keep summaries of the results that are not among the best.
+     * @return The new history.
+     */
+    public RunResultHistory createRunResultHistory(String runKey, int maxResults, boolean keepSummaries){
+        RunResultHistory runResultHistory = new RunResultHistory(maxResults, keepSummaries);
+        if(runResultMap.putIfAbsent(runKey, runResultHistory) != null)
+            throw new IllegalStateException("A run result history already exists for " + runKey);
+        return runResultHistory;
+    }
+
     public RunResultHistory pollRunResultHistory(String runKey){
         return runResultMap.remove(runKey);
     }
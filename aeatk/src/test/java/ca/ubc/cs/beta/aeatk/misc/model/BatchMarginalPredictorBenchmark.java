@@ -0,0 +1,113 @@
+package ca.ubc.cs.beta.aeatk.misc.model;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ca.ubc.cs.beta.aeatk.misc.math.ArrayMathOps;
+import ca.ubc.cs.beta.aeatk.misc.watch.AutoStartStopWatch;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.models.fastrf.RandomForest;
+import ca.ubc.cs.beta.models.fastrf.RegtreeBuildParams;
+
+import ec.util.MersenneTwister;
+
+/**
+ * Compares predicting neighbourhoods with {@link BatchMarginalPredictor} against cloning value arrays and transposing the result,
+ * which is what local search used to do on every step.
+ * <p>
+ * Usage: <code>BatchMarginalPredictorBenchmark [numberOfParameters] [numberOfNeighbourhoods] [rounds]</code>
+ */
+public class BatchMarginalPredictorBenchmark {
+
+	public static void main(String[] args)
+	{
+		int numberOfParameters = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+		int numberOfNeighbourhoods = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+		int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+		StringBuilder pcs = new StringBuilder();
+		for(int i=0; i < numberOfParameters; i++)
+		{
+			if(i % 2 == 0)
+			{
+				pcs.append("x").append(i).append(" [0, 10] [5]\n");
+			} else
+			{
+				pcs.append("x").append(i).append(" {a,b,c} [a]\n");
+			}
+		}
+		ParameterConfigurationSpace configSpace = new ParameterConfigurationSpace(new StringReader(pcs.toString()));
+
+		Random rand = new MersenneTwister(1);
+		RandomForest forest = buildForest(configSpace, rand);
+		RandomForest preparedForest = RandomForest.preprocessForest(forest, new double[][] {{ 0 }});
+
+		List<List<ParameterConfiguration>> neighbourhoods = new ArrayList<List<ParameterConfiguration>>(numberOfNeighbourhoods);
+		for(int i=0; i < numberOfNeighbourhoods; i++)
+		{
+			neighbourhoods.add(configSpace.getRandomParameterConfiguration(rand).getNeighbourhood(rand, 4));
+		}
+
+		int[] treeIdxsToUse = new int[forest.numTrees];
+		for(int i=0; i < forest.numTrees; i++)
+		{
+			treeIdxsToUse[i] = i;
+		}
+
+		BatchMarginalPredictor predictor = new BatchMarginalPredictor(forest, preparedForest, null);
+
+		for(int round=0; round < rounds; round++)
+		{
+			double checksum = 0;
+			AutoStartStopWatch watch = new AutoStartStopWatch();
+			for(List<ParameterConfiguration> neighbourhood : neighbourhoods)
+			{
+				double[][] configArrays = new double[neighbourhood.size()][];
+				for(int i=0; i < configArrays.length; i++)
+				{
+					configArrays[i] = neighbourhood.get(i).toValueArray();
+				}
+				double[][] prediction = ArrayMathOps.transpose(RandomForest.applyMarginal(preparedForest, treeIdxsToUse, configArrays));
+				checksum += prediction[0][0] + prediction[1][0];
+			}
+			long copyingTime = watch.stop();
+
+			watch = new AutoStartStopWatch();
+			for(List<ParameterConfiguration> neighbourhood : neighbourhoods)
+			{
+				predictor.predict(neighbourhood);
+				checksum -= predictor.getMeans()[0] + predictor.getVariances()[0];
+			}
+			long batchTime = watch.stop();
+
+			System.out.println("Round " + (round+1) + ": copying " + copyingTime + " ms, batch " + batchTime + " ms (checksum difference " + checksum + ")");
+		}
+	}
+
+	private static RandomForest buildForest(ParameterConfigurationSpace configSpace, Random rand)
+	{
+		int numberOfPoints = 500;
+		double[][] configs = new double[numberOfPoints][];
+		double[] responses = new double[numberOfPoints];
+		int[][] thetaInstIdxs = new int[numberOfPoints][];
+		for(int i=0; i < numberOfPoints; i++)
+		{
+			configs[i] = configSpace.getRandomParameterConfiguration(rand).toValueArray();
+			responses[i] = configs[i][0] + rand.nextDouble();
+			thetaInstIdxs[i] = new int[] { i, 0 };
+		}
+
+		int[] categoricalSize = configSpace.getCategoricalSize();
+		RegtreeBuildParams buildParams = new RegtreeBuildParams(false, 10, 5.0/6, categoricalSize);
+		buildParams.logModel = 0;
+		buildParams.random = rand;
+		buildParams.minVariance = Math.pow(10, -14);
+		buildParams.catDomainSizes = new int[categoricalSize.length + 1];
+		System.arraycopy(categoricalSize, 0, buildParams.catDomainSizes, 0, categoricalSize.length);
+
+		return RandomForest.learnModel(10, configs, new double[][] {{ 0 }}, thetaInstIdxs, responses, buildParams);
+	}
+}
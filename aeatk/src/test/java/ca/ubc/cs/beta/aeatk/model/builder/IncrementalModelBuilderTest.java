@@ -0,0 +1,55 @@
+package ca.ubc.cs.beta.aeatk.model.builder;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ca.ubc.cs.beta.aeatk.model.data.PCAModelDataSanitizer;
+import ca.ubc.cs.beta.aeatk.model.data.SanitizedModelData;
+
+/**
+ * Trees of a previous forest may only be kept while the projected instance features they were fit on are unchanged
+ */
+public class IncrementalModelBuilderTest {
+
+	private static final double[][] FEATURES = { { 1, 5 }, { 1, 6 }, { 2, 7 } };
+
+	private static SanitizedModelData sanitize(double[][] features, int[][] thetaInstIdxs)
+	{
+		double[][] configs = { { 0.5 } };
+		double[] responseValues = new double[thetaInstIdxs.length];
+		boolean[] censored = new boolean[thetaInstIdxs.length];
+		for(int i=0; i < responseValues.length; i++)
+		{
+			responseValues[i] = i + 1;
+		}
+		return new PCAModelDataSanitizer(features, configs, 7, responseValues, false, thetaInstIdxs, censored);
+	}
+
+	@Test
+	public void testSameInstancesCanReuseTrees()
+	{
+		SanitizedModelData previous = sanitize(FEATURES, new int[][] { { 1, 1 }, { 1, 2 } });
+		SanitizedModelData current = sanitize(FEATURES, new int[][] { { 1, 1 }, { 1, 2 }, { 1, 2 } });
+		assertTrue(IncrementalModelBuilder.canReuseTrees(previous, current));
+	}
+
+	@Test
+	public void testNewInstanceChangesProjection()
+	{
+		//The first feature is constant on the first two instances only, so running the third one brings it back
+		SanitizedModelData previous = sanitize(FEATURES, new int[][] { { 1, 1 }, { 1, 2 } });
+		SanitizedModelData current = sanitize(FEATURES, new int[][] { { 1, 1 }, { 1, 2 }, { 1, 3 } });
+		assertFalse(IncrementalModelBuilder.canReuseTrees(previous, current));
+	}
+
+	@Test
+	public void testChangedFeaturesCannotReuseTrees()
+	{
+		double[][] features = { { 1, 5 }, { 1, 6 }, { 2, 8 } };
+		SanitizedModelData previous = sanitize(FEATURES, new int[][] { { 1, 1 }, { 1, 3 } });
+		SanitizedModelData current = sanitize(features, new int[][] { { 1, 1 }, { 1, 3 } });
+		assertFalse(IncrementalModelBuilder.canReuseTrees(previous, current));
+	}
+}
@@ -0,0 +1,180 @@
+package ca.ubc.cs.beta.aeatk.parameterconfigurationspace;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import ca.ubc.cs.beta.aeatk.misc.watch.AutoStartStopWatch;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace.Conditional;
+
+import ec.util.MersenneTwister;
+
+/**
+ * Compares determining the active parameters with the compiled conditions against walking the conditions by name and string value,
+ * which is how {@link ParameterConfiguration} used to do it, and checks that both agree.
+ * <p>
+ * Usage: <code>ActiveParameterBenchmark [pcs file] [numberOfConfigurations] [rounds]</code>, without a PCS file a synthetic
+ * space shaped like the Auto-WEKA one (a classifier choice with conditional hyperparameters, some of them nested) is used.
+ */
+public class ActiveParameterBenchmark {
+
+	public static void main(String[] args)
+	{
+		ParameterConfigurationSpace configSpace;
+		if(args.length > 0 && !args[0].equals("-"))
+		{
+			configSpace = new ParameterConfigurationSpace(new File(args[0]));
+		} else
+		{
+			configSpace = new ParameterConfigurationSpace(new StringReader(syntheticSpace(30, 10)));
+		}
+		int numberOfConfigurations = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+		int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+		Random rand = new MersenneTwister(1);
+		List<ParameterConfiguration> configs = new ArrayList<ParameterConfiguration>(numberOfConfigurations);
+		List<double[]> valueArrays = new ArrayList<double[]>(numberOfConfigurations);
+		for(int i=0; i < numberOfConfigurations; i++)
+		{
+			ParameterConfiguration config = configSpace.getRandomParameterConfiguration(rand);
+			if(!config.getActiveParameters().equals(getActiveParametersByName(configSpace, config)))
+			{
+				throw new IllegalStateException("Compiled conditions disagree on " + config.getFormattedParameterString());
+			}
+			configs.add(config);
+			valueArrays.add(config.toValueArray());
+		}
+
+		boolean[] active = new boolean[configSpace.getParameterNames().size()];
+
+		for(int round=0; round < rounds; round++)
+		{
+			int checksum = 0;
+			AutoStartStopWatch watch = new AutoStartStopWatch();
+			for(ParameterConfiguration config : configs)
+			{
+				checksum += getActiveParametersByName(configSpace, config).size();
+			}
+			long byNameTime = watch.stop();
+
+			watch = new AutoStartStopWatch();
+			for(double[] valueArray : valueArrays)
+			{
+				configSpace.computeActiveParameters(valueArray, active);
+				for(boolean b : active)
+				{
+					checksum -= (b) ? 1 : 0;
+				}
+			}
+			long compiledTime = watch.stop();
+
+			System.out.println("Round " + (round+1) + ": by name " + byNameTime + " ms, compiled " + compiledTime + " ms (checksum difference " + checksum + ")");
+		}
+	}
+
+	private static String syntheticSpace(int numberOfClassifiers, int parametersPerClassifier)
+	{
+		StringBuilder pcs = new StringBuilder();
+		StringBuilder classifiers = new StringBuilder();
+		for(int c=0; c < numberOfClassifiers; c++)
+		{
+			classifiers.append((c > 0) ? "," : "").append("c").append(c);
+		}
+		pcs.append("classifier {").append(classifiers).append("} [c0]\n");
+
+		StringBuilder conditions = new StringBuilder();
+		for(int c=0; c < numberOfClassifiers; c++)
+		{
+			for(int p=0; p < parametersPerClassifier; p++)
+			{
+				String name = "c" + c + "_p" + p;
+				switch(p % 3)
+				{
+					case 0:
+						pcs.append(name).append(" {on,off} [on]\n");
+						break;
+					case 1:
+						pcs.append(name).append(" [1, 100] [10]il\n");
+						break;
+					default:
+						pcs.append(name).append(" [0, 1] [0.5]\n");
+						break;
+				}
+
+				if(p % 3 == 2)
+				{
+					//nested under an earlier hyperparameter of the same classifier
+					conditions.append(name).append(" | classifier in {c").append(c).append("} && c").append(c).append("_p").append(p-1).append(" > 20\n");
+				} else
+				{
+					conditions.append(name).append(" | classifier in {c").append(c).append("}\n");
+				}
+			}
+		}
+		pcs.append("Conditionals:\n").append(conditions);
+		return pcs.toString();
+	}
+
+	/**
+	 * The string based check of active parameters that the compiled conditions replaced
+	 */
+	private static Set<String> getActiveParametersByName(ParameterConfigurationSpace configSpace, ParameterConfiguration config)
+	{
+		Set<String> activeParams = new TreeSet<String>();
+		Map<Integer, ArrayList<ArrayList<Conditional>>> conds = configSpace.getNameConditionsMap();
+		List<String> paramNames = configSpace.getParameterNamesInAuthorativeOrder();
+		for(String param : configSpace.getActiveCheckOrderString())
+		{
+			Integer paramId = configSpace.getParamKeyIndexMap().get(param);
+			if(!conds.containsKey(paramId))
+			{
+				activeParams.add(param);
+				continue;
+			}
+
+			for(ArrayList<Conditional> clause : conds.get(paramId))
+			{
+				boolean allSatisfied = true;
+				for(Conditional cond : clause)
+				{
+					String parentName = paramNames.get(cond.parent_ID);
+					if(!activeParams.contains(parentName))
+					{
+						allSatisfied = false;
+						break;
+					}
+
+					String parentValue = config.get(parentName);
+					double encodedParentValue;
+					switch(configSpace.getParameterTypes().get(parentName))
+					{
+						case ORDINAL:
+						case CATEGORICAL:
+							encodedParentValue = configSpace.getCategoricalValueMap().get(parentName).get(parentValue);
+							break;
+						default:
+							encodedParentValue = Double.parseDouble(parentValue);
+							break;
+					}
+
+					if(!cond.op.conditionalClauseMatch(encodedParentValue, cond.values))
+					{
+						allSatisfied = false;
+						break;
+					}
+				}
+				if(allSatisfied)
+				{
+					activeParams.add(param);
+					break;
+				}
+			}
+		}
+		return activeParams;
+	}
+}
@@ -0,0 +1,47 @@
+package ca.ubc.cs.beta.aeatk.parameterconfigurationspace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import ec.util.MersenneTwister;
+
+/**
+ * The fingerprint is not serialized, deserialized configurations must still compare equal to the configurations they were written from
+ */
+public class ParameterConfigurationSerializationTest {
+
+	@Test
+	public void testDeserializedConfigurationIsEqual() throws IOException, ClassNotFoundException
+	{
+		ParameterConfigurationSpace configSpace = new ParameterConfigurationSpace(new StringReader("a {x,y,z} [x]\nc [0, 1] [0.5]\nConditionals:\nc | a in {z}\n"));
+		ParameterConfiguration config = configSpace.getRandomParameterConfiguration(new MersenneTwister(1));
+		long fingerprint = config.getFingerprint();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(ObjectOutputStream out = new ObjectOutputStream(bytes))
+		{
+			out.writeObject(config);
+		}
+
+		ParameterConfiguration read;
+		try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+		{
+			read = (ParameterConfiguration) in.readObject();
+		}
+
+		assertNotSame(config, read);
+		assertEquals(fingerprint, read.getFingerprint());
+		assertEquals(config.hashCode(), read.hashCode());
+		assertEquals(config, read);
+		assertEquals(read, config);
+	}
+}
@@ -0,0 +1,104 @@
+package ca.ubc.cs.beta.aeatk.parameterconfigurationspace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Equality, hashing and interned IDs must agree, including for values within the comparison tolerance of each other
+ */
+public class ParameterConfigurationTableTest {
+
+	/**
+	 * Halfway between the floats 0.5 and 0.5 + 2^-24, values on either side of it hash differently
+	 */
+	private static final double FLOAT_MIDPOINT = 0.5 + Math.pow(2, -25);
+
+	private static final double TINY = Math.pow(2, -50);
+
+	private ParameterConfigurationSpace configSpace;
+
+	@Before
+	public void setUp()
+	{
+		configSpace = new ParameterConfigurationSpace(new StringReader("c [0, 1] [0.25]\n"));
+	}
+
+	private ParameterConfiguration config(double value)
+	{
+		ParameterConfiguration config = configSpace.getDefaultConfiguration();
+		config.put("c", Double.toString(value));
+		return config;
+	}
+
+	@Test
+	public void testValuesWithinToleranceThatRoundTogetherAreEqual()
+	{
+		ParameterConfiguration a = config(0.3);
+		ParameterConfiguration b = config(0.3 + TINY);
+
+		assertEquals(a.hashCode(), b.hashCode());
+		assertEquals(a.getFingerprint(), b.getFingerprint());
+		assertTrue(a.equals(b));
+		assertEquals(a.getInternedID(), b.getInternedID());
+		assertTrue(a.equals(b));
+	}
+
+	/**
+	 * Before configurations had fingerprints these compared equal even though their hash codes differed, so hash based collections already told them apart
+	 */
+	@Test
+	public void testValuesWithinToleranceThatRoundApartAreNotEqual()
+	{
+		ParameterConfiguration a = config(FLOAT_MIDPOINT - TINY);
+		ParameterConfiguration b = config(FLOAT_MIDPOINT + TINY);
+		assertTrue(Math.abs(a.toValueArray()[0] - b.toValueArray()[0]) < Math.pow(10, -14));
+
+		assertNotEquals(a.hashCode(), b.hashCode());
+		assertNotEquals(a.getFingerprint(), b.getFingerprint());
+		assertFalse(a.equals(b));
+		assertFalse(b.equals(a));
+		assertNotEquals(a.getInternedID(), b.getInternedID());
+		assertFalse(a.equals(b));
+	}
+
+	@Test
+	public void testFindDoesNotIntern()
+	{
+		ParameterConfigurationTable table = configSpace.getConfigurationTable();
+		ParameterConfiguration config = config(0.7);
+
+		int size = table.size();
+		assertEquals(-1, table.findID(config));
+		assertEquals(size, table.size());
+
+		int id = config.getInternedID();
+		assertEquals(size + 1, table.size());
+		assertEquals(id, table.findID(config(0.7)));
+		assertEquals(id, table.getID(config(0.7)));
+		assertEquals(size + 1, table.size());
+	}
+
+	@Test
+	public void testConfigurationOfOtherSpaceGetsSameID()
+	{
+		ParameterConfigurationSpace otherSpace = new ParameterConfigurationSpace(new StringReader("c [0, 1] [0.25]\n"));
+		ParameterConfiguration other = otherSpace.getDefaultConfiguration();
+		other.put("c", "0.7");
+
+		ParameterConfigurationTable table = configSpace.getConfigurationTable();
+		int id = table.getID(config(0.7));
+		assertEquals(id, table.findID(other));
+		assertEquals(id, table.getID(other));
+
+		//Not cached on the configuration, its own space has a table of its own
+		assertEquals(0, other.getInternedID());
+		assertEquals(id, table.getID(other));
+	}
+}
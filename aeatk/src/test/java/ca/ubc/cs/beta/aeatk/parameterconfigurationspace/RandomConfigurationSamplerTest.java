@@ -0,0 +1,170 @@
+package ca.ubc.cs.beta.aeatk.parameterconfigurationspace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ec.util.MersenneTwister;
+
+/**
+ * Checks that random configurations are valid and follow the distribution documented on {@link RandomConfigurationSampler}
+ * <p>
+ * In the space below <code>a</code> is uniform over three values, <code>b</code> is only active for <code>a</code> in {x,y} and
+ * <code>c</code> only for <code>a=z</code>, and <code>{a=x, b=off}</code> is forbidden. Conditioned on not being forbidden,
+ * P(a=x) = 1/5, P(a=y) = P(a=z) = 2/5 and P(b=off) = 1/5, and <code>c</code> is uniform on [0,1] when it is active.
+ */
+public class RandomConfigurationSamplerTest {
+
+	private static final String SPACE = "a {x,y,z} [x]\n"
+			+ "b {on,off} [on]\n"
+			+ "c [0, 1] [0.5]\n"
+			+ "Conditionals:\n"
+			+ "b | a in {x,y}\n"
+			+ "c | a in {z}\n"
+			+ "Forbidden:\n"
+			+ "{a=x, b=off}\n";
+
+	private static final int SAMPLES = 20000;
+
+	private static final double TOLERANCE = 0.02;
+
+	private ParameterConfigurationSpace configSpace;
+
+	@Before
+	public void setUp()
+	{
+		configSpace = new ParameterConfigurationSpace(new StringReader(SPACE));
+	}
+
+	@Test
+	public void testSingleSamplesAreValidAndFollowDistribution()
+	{
+		Random rand = new MersenneTwister(1);
+		Frequencies frequencies = new Frequencies();
+		for(int i=0; i < SAMPLES; i++)
+		{
+			frequencies.add(configSpace.getRandomParameterConfiguration(rand));
+		}
+		frequencies.check();
+	}
+
+	@Test
+	public void testBatchSamplesAreValidAndFollowDistribution()
+	{
+		Random rand = new MersenneTwister(2);
+		Frequencies frequencies = new Frequencies();
+		for(int i=0; i < SAMPLES / 100; i++)
+		{
+			List<ParameterConfiguration> configs = configSpace.getRandomParameterConfigurations(100, rand);
+			for(ParameterConfiguration config : configs)
+			{
+				frequencies.add(config);
+			}
+		}
+		frequencies.check();
+	}
+
+	@Test
+	public void testSampleIntoReusesRows()
+	{
+		double[][] rows = new double[10][];
+		rows[3] = new double[configSpace.getParameterNames().size()];
+		double[] row = rows[3];
+		configSpace.sampleInto(rows, 5, new MersenneTwister(3));
+
+		assertTrue(row == rows[3]);
+		for(int i=0; i < 5; i++)
+		{
+			assertEquals(configSpace.getParameterNames().size(), rows[i].length);
+		}
+		for(int i=5; i < rows.length; i++)
+		{
+			assertTrue(rows[i] == null);
+		}
+	}
+
+	@Test
+	public void testForbiddenAllowedWhenRequested()
+	{
+		Random rand = new MersenneTwister(4);
+		int forbidden = 0;
+		for(int i=0; i < SAMPLES; i++)
+		{
+			if(configSpace.getRandomParameterConfiguration(rand, true).isForbiddenParameterConfiguration())
+			{
+				forbidden++;
+			}
+		}
+		assertEquals(1.0 / 6, forbidden / (double) SAMPLES, TOLERANCE);
+	}
+
+	private static class Frequencies
+	{
+		private int n;
+		private int ax;
+		private int ay;
+		private int az;
+		private int boff;
+		private int cActive;
+		private int cBelowQuarter;
+		private double cSum;
+
+		void add(ParameterConfiguration config)
+		{
+			assertFalse(config.isForbiddenParameterConfiguration());
+			n++;
+
+			String a = config.get("a");
+			double c = Double.valueOf(config.get("c"));
+			if(a.equals("z"))
+			{
+				assertFalse(config.getActiveParameters().contains("b"));
+				assertTrue(config.getActiveParameters().contains("c"));
+				assertEquals("on", config.get("b"));
+				assertTrue(c >= 0 && c <= 1);
+				az++;
+				cActive++;
+				cSum += c;
+				if(c < 0.25)
+				{
+					cBelowQuarter++;
+				}
+			} else
+			{
+				assertTrue(config.getActiveParameters().contains("b"));
+				assertFalse(config.getActiveParameters().contains("c"));
+				assertEquals(0.5, c, 1e-12);
+				if(a.equals("x"))
+				{
+					assertEquals("on", config.get("b"));
+					ax++;
+				} else
+				{
+					assertEquals("y", a);
+					ay++;
+				}
+				if(config.get("b").equals("off"))
+				{
+					boff++;
+				}
+			}
+		}
+
+		void check()
+		{
+			assertEquals(0.2, ax / (double) n, TOLERANCE);
+			assertEquals(0.4, ay / (double) n, TOLERANCE);
+			assertEquals(0.4, az / (double) n, TOLERANCE);
+			assertEquals(0.2, boff / (double) n, TOLERANCE);
+			assertEquals(0.5, cSum / cActive, TOLERANCE);
+			assertEquals(0.25, cBelowQuarter / (double) cActive, TOLERANCE);
+		}
+	}
+}
@@ -0,0 +1,275 @@
+package ca.ubc.cs.beta.aeatk.runhistory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.ExistingAlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunStatus;
+import ca.ubc.cs.beta.aeatk.exceptions.DuplicateRunException;
+import ca.ubc.cs.beta.aeatk.objectives.OverallObjective;
+import ca.ubc.cs.beta.aeatk.objectives.RunObjective;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+
+import ec.util.MersenneTwister;
+
+/**
+ * Appends the same random runs, with early censored runs, their supersessions and duplicates, to a {@link ColumnarRunHistory} and a
+ * {@link NewRunHistory}, and checks that both answer the same
+ */
+public class ColumnarRunHistoryTest {
+
+	private static final double CUTOFF = 10;
+
+	private ParameterConfigurationSpace configSpace;
+	private AlgorithmExecutionConfiguration execConfig;
+	private List<ProblemInstance> instances;
+	private List<ParameterConfiguration> configs;
+
+	@Before
+	public void setUp()
+	{
+		configSpace = new ParameterConfigurationSpace(new StringReader("x [0, 10] [5]\ny {a,b,c} [a]\n"));
+		execConfig = new AlgorithmExecutionConfiguration("test", ".", configSpace, false, false, CUTOFF);
+
+		instances = new ArrayList<ProblemInstance>();
+		for(int i=1; i <= 5; i++)
+		{
+			instances.add(new ProblemInstance("instance" + i, i));
+		}
+
+		Random rand = new MersenneTwister(1);
+		configs = new ArrayList<ParameterConfiguration>();
+		for(int i=0; i < 6; i++)
+		{
+			configs.add(configSpace.getRandomParameterConfiguration(rand));
+		}
+	}
+
+	/**
+	 * Generates runs in a random order: every key is first run censored early zero to two times with growing bounds, and then usually completed
+	 */
+	private List<AlgorithmRunResult> generateRuns(Random rand, RunObjective runObj)
+	{
+		List<List<AlgorithmRunResult>> runsOfKey = new ArrayList<List<AlgorithmRunResult>>();
+		for(ParameterConfiguration config : configs)
+		{
+			for(ProblemInstance pi : instances)
+			{
+				int seeds = rand.nextInt(3);
+				for(int seed=0; seed < seeds; seed++)
+				{
+					AlgorithmRunConfiguration rc = new AlgorithmRunConfiguration(new ProblemInstanceSeedPair(pi, seed), CUTOFF, config, execConfig);
+					List<AlgorithmRunResult> runs = new ArrayList<AlgorithmRunResult>();
+
+					double bound = 0;
+					int censored = rand.nextInt(3);
+					for(int i=0; i < censored; i++)
+					{
+						bound += 0.1 + rand.nextDouble();
+						runs.add(new ExistingAlgorithmRunResult(rc, RunStatus.KILLED, bound, 0, (runObj == RunObjective.QUALITY) ? bound : 0, seed, "", bound));
+					}
+
+					if(censored == 0 || rand.nextInt(4) != 0)
+					{
+						double value = bound + 0.1 + rand.nextDouble() * (CUTOFF - bound - 0.1);
+						boolean timeout = rand.nextInt(6) == 0;
+						double runtime = (timeout) ? CUTOFF : value;
+						runs.add(new ExistingAlgorithmRunResult(rc, (timeout) ? RunStatus.TIMEOUT : RunStatus.SAT, runtime, 0, (runObj == RunObjective.QUALITY) ? value : 0, seed, "", runtime));
+
+						if(rand.nextInt(5) == 0)
+						{
+							//A duplicate of a completed run that both run histories must reject
+							runs.add(new ExistingAlgorithmRunResult(rc, RunStatus.SAT, runtime, 0, value, seed, "", runtime));
+						}
+					}
+					runsOfKey.add(runs);
+				}
+			}
+		}
+
+		//Interleave the keys, keeping the runs of each key in order
+		List<AlgorithmRunResult> result = new ArrayList<AlgorithmRunResult>();
+		while(!runsOfKey.isEmpty())
+		{
+			int key = rand.nextInt(runsOfKey.size());
+			result.add(runsOfKey.get(key).remove(0));
+			if(runsOfKey.get(key).isEmpty())
+			{
+				runsOfKey.remove(key);
+			}
+		}
+		return result;
+	}
+
+	private void checkEquivalent(RunObjective runObj, long seed)
+	{
+		Random rand = new MersenneTwister(seed);
+		RunHistory expected = new NewRunHistory(OverallObjective.MEAN, OverallObjective.MEAN10, runObj);
+		RunHistory actual = new ColumnarRunHistory(OverallObjective.MEAN, OverallObjective.MEAN10, runObj);
+
+		int duplicates = 0;
+		for(AlgorithmRunResult run : generateRuns(rand, runObj))
+		{
+			boolean expectedDuplicate = false;
+			try
+			{
+				expected.append(run);
+			} catch(DuplicateRunException e)
+			{
+				expectedDuplicate = true;
+				duplicates++;
+			}
+
+			boolean actualDuplicate = false;
+			try
+			{
+				actual.append(run);
+			} catch(DuplicateRunException e)
+			{
+				actualDuplicate = true;
+			}
+			assertEquals(expectedDuplicate, actualDuplicate);
+
+			if(rand.nextInt(20) == 0)
+			{
+				expected.incrementIteration();
+				actual.incrementIteration();
+			}
+		}
+		assertTrue(duplicates > 0);
+
+		assertEquals(new ArrayList<ParameterConfiguration>(expected.getUniqueParamConfigurations()), new ArrayList<ParameterConfiguration>(actual.getUniqueParamConfigurations()));
+		assertEquals(expected.getUniqueInstancesRan(), actual.getUniqueInstancesRan());
+		assertEquals(expected.getAllParameterConfigurationsRan(), actual.getAllParameterConfigurationsRan());
+		assertEquals(expected.getIteration(), actual.getIteration());
+		assertEquals(expected.getTotalRunCost(), actual.getTotalRunCost(), 1e-9);
+		assertEquals(expected.getAlgorithmRunsIncludingRedundant().size(), actual.getAlgorithmRunsIncludingRedundant().size());
+
+		assertTrue(Arrays.deepEquals(expected.getParameterConfigurationInstancesRanByIndexExcludingRedundant(), actual.getParameterConfigurationInstancesRanByIndexExcludingRedundant()));
+		assertArrayEquals(expected.getRunResponseValuesExcludingRedundant(), actual.getRunResponseValuesExcludingRedundant(), 0);
+		assertTrue(Arrays.equals(expected.getCensoredEarlyFlagsExcludingRedundant(), actual.getCensoredEarlyFlagsExcludingRedundant()));
+
+		List<RunData> expectedRunData = expected.getAlgorithmRunDataExcludingRedundant();
+		List<RunData> actualRunData = actual.getAlgorithmRunDataExcludingRedundant();
+		assertEquals(expectedRunData.size(), actualRunData.size());
+		for(int i=0; i < expectedRunData.size(); i++)
+		{
+			assertEquals(expectedRunData.get(i).getResponseValue(), actualRunData.get(i).getResponseValue(), 0);
+			assertEquals(expectedRunData.get(i).isCappedRun(), actualRunData.get(i).isCappedRun());
+			assertEquals(expectedRunData.get(i).getThetaIdx(), actualRunData.get(i).getThetaIdx());
+		}
+
+		if(runObj == RunObjective.QUALITY)
+		{
+			//Under the runtime objective NewRunHistory keeps superseded early censored runs in this list
+			assertEquals(expected.getAlgorithmRunsExcludingRedundant(), actual.getAlgorithmRunsExcludingRedundant());
+		}
+
+		for(ProblemInstance pi : instances)
+		{
+			//NewRunHistory also records the seeds of rejected duplicates
+			assertEquals(new HashSet<Long>(expected.getSeedsUsedByInstance(pi)), new HashSet<Long>(actual.getSeedsUsedByInstance(pi)));
+		}
+
+		for(ParameterConfiguration config : expected.getUniqueParamConfigurations())
+		{
+			assertEquals(expected.getThetaIdx(config), actual.getThetaIdx(config));
+			assertEquals(expected.getTotalNumRunsOfConfigExcludingRedundant(config), actual.getTotalNumRunsOfConfigExcludingRedundant(config));
+			assertEquals(expected.getProblemInstanceSeedPairsRan(config), actual.getProblemInstanceSeedPairsRan(config));
+			assertEquals(expected.getEarlyCensoredProblemInstanceSeedPairs(config), actual.getEarlyCensoredProblemInstanceSeedPairs(config));
+
+			for(int i=0; i < 10; i++)
+			{
+				Set<ProblemInstance> instanceSet = new HashSet<ProblemInstance>();
+				for(ProblemInstance pi : instances)
+				{
+					if(rand.nextBoolean())
+					{
+						instanceSet.add(pi);
+					}
+				}
+				assertEquals(expected.getEmpiricalCost(config, instanceSet, CUTOFF), actual.getEmpiricalCost(config, instanceSet, CUTOFF), 1e-9);
+
+				//NewRunHistory can only bound the cost on instances the configuration was run on
+				instanceSet.retainAll(expected.getProblemInstancesRan(config));
+				assertEquals(expected.getEmpiricalCostLowerBound(config, instanceSet, CUTOFF), actual.getEmpiricalCostLowerBound(config, instanceSet, CUTOFF), 1e-9);
+				assertEquals(expected.getEmpiricalCostUpperBound(config, instanceSet, CUTOFF), actual.getEmpiricalCostUpperBound(config, instanceSet, CUTOFF), 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void testEquivalentUnderRuntimeObjective()
+	{
+		for(long seed=1; seed <= 20; seed++)
+		{
+			checkEquivalent(RunObjective.RUNTIME, seed);
+		}
+	}
+
+	@Test
+	public void testRunsAreRebuiltUnchanged() throws DuplicateRunException
+	{
+		Random rand = new MersenneTwister(3);
+		ColumnarRunHistory runHistory = new ColumnarRunHistory(OverallObjective.MEAN, OverallObjective.MEAN10, RunObjective.QUALITY);
+		RunStatus[] statuses = { RunStatus.SAT, RunStatus.UNSAT, RunStatus.TIMEOUT, RunStatus.CRASHED };
+
+		List<AlgorithmRunResult> appended = new ArrayList<AlgorithmRunResult>();
+		for(int i=0; i < 40; i++)
+		{
+			AlgorithmRunConfiguration rc = new AlgorithmRunConfiguration(new ProblemInstanceSeedPair(instances.get(i % instances.size()), i), 1 + i % 7, new ParameterConfiguration(configs.get(i % configs.size())), execConfig);
+			AlgorithmRunResult run = new ExistingAlgorithmRunResult(rc, statuses[i % statuses.length], rand.nextDouble(), i * 3, rand.nextDouble(), i, (i % 3 == 0) ? "" : "data " + i, rand.nextDouble());
+			runHistory.append(run);
+			appended.add(run);
+		}
+
+		List<AlgorithmRunResult> rebuilt = runHistory.getAlgorithmRunsIncludingRedundant();
+		assertEquals(appended.size(), rebuilt.size());
+		for(int i=0; i < appended.size(); i++)
+		{
+			AlgorithmRunResult e = appended.get(i);
+			AlgorithmRunResult a = rebuilt.get(i);
+
+			assertEquals(e.getAlgorithmRunConfiguration(), a.getAlgorithmRunConfiguration());
+			assertEquals(e.getAlgorithmRunConfiguration().getCutoffTime(), a.getAlgorithmRunConfiguration().getCutoffTime(), 0);
+			assertEquals(e.getRunStatus(), a.getRunStatus());
+			assertEquals(e.getRuntime(), a.getRuntime(), 0);
+			assertEquals(e.getRunLength(), a.getRunLength(), 0);
+			assertEquals(e.getQuality(), a.getQuality(), 0);
+			assertEquals(e.getResultSeed(), a.getResultSeed());
+			assertEquals(e.getAdditionalRunData(), a.getAdditionalRunData());
+			assertEquals(e.getWallclockExecutionTime(), a.getWallclockExecutionTime(), 0);
+			assertEquals(e.isCensoredEarly(), a.isCensoredEarly());
+
+			AlgorithmRunResult found = runHistory.getAlgorithmRunResultForAlgorithmRunConfiguration(e.getAlgorithmRunConfiguration());
+			assertEquals(e.getQuality(), found.getQuality(), 0);
+		}
+	}
+
+	@Test
+	public void testEquivalentUnderQualityObjective()
+	{
+		for(long seed=1; seed <= 20; seed++)
+		{
+			checkEquivalent(RunObjective.QUALITY, seed);
+		}
+	}
+}
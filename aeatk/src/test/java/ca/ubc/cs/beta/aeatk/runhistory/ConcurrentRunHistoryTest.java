@@ -0,0 +1,381 @@
+package ca.ubc.cs.beta.aeatk.runhistory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.ExistingAlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunStatus;
+import ca.ubc.cs.beta.aeatk.exceptions.DuplicateRunException;
+import ca.ubc.cs.beta.aeatk.objectives.OverallObjective;
+import ca.ubc.cs.beta.aeatk.objectives.RunObjective;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+
+import ec.util.MersenneTwister;
+
+/**
+ * Snapshots of a {@link ConcurrentRunHistory} must not change as runs are appended, and readers running next to an appending thread must
+ * always see a consistent prefix of the runs, also through the decorators SMACBuilder puts around it
+ */
+public class ConcurrentRunHistoryTest {
+
+	private static final double CUTOFF = 10;
+
+	private ParameterConfigurationSpace configSpace;
+	private AlgorithmExecutionConfiguration execConfig;
+	private List<ProblemInstance> instances;
+	private List<ParameterConfiguration> configs;
+
+	@Before
+	public void setUp()
+	{
+		configSpace = new ParameterConfigurationSpace(new StringReader("x [0, 10] [5]\n"));
+		execConfig = new AlgorithmExecutionConfiguration("test", ".", configSpace, false, false, CUTOFF);
+
+		instances = new ArrayList<ProblemInstance>();
+		for(int i=1; i <= 8; i++)
+		{
+			instances.add(new ProblemInstance("instance" + i, i));
+		}
+
+		Random rand = new MersenneTwister(1);
+		configs = new ArrayList<ParameterConfiguration>();
+		for(int i=0; i < 10; i++)
+		{
+			configs.add(configSpace.getRandomParameterConfiguration(rand));
+		}
+	}
+
+	/**
+	 * Generates runs on random keys, about a tenth of them censored early and later superseded by a completed run of the same key
+	 */
+	private List<AlgorithmRunResult> generateRuns(Random rand, int n)
+	{
+		List<AlgorithmRunResult> runs = new ArrayList<AlgorithmRunResult>(n);
+		Set<AlgorithmRunConfiguration> used = new HashSet<AlgorithmRunConfiguration>();
+		List<AlgorithmRunConfiguration> censored = new ArrayList<AlgorithmRunConfiguration>();
+		while(runs.size() < n)
+		{
+			if(!censored.isEmpty() && rand.nextInt(4) == 0)
+			{
+				AlgorithmRunConfiguration rc = censored.remove(rand.nextInt(censored.size()));
+				double runtime = 2 + rand.nextDouble() * (CUTOFF - 2);
+				runs.add(new ExistingAlgorithmRunResult(rc, RunStatus.SAT, runtime, 0, 0, rc.getProblemInstanceSeedPair().getSeed(), "", runtime));
+				continue;
+			}
+
+			ParameterConfiguration config = configs.get(rand.nextInt(configs.size()));
+			ProblemInstance pi = instances.get(rand.nextInt(instances.size()));
+			AlgorithmRunConfiguration rc = new AlgorithmRunConfiguration(new ProblemInstanceSeedPair(pi, rand.nextInt(1000)), CUTOFF, config, execConfig);
+			if(!used.add(rc))
+			{
+				continue;
+			}
+
+			if(rand.nextInt(10) == 0)
+			{
+				double bound = rand.nextDouble() * 2;
+				runs.add(new ExistingAlgorithmRunResult(rc, RunStatus.KILLED, bound, 0, 0, rc.getProblemInstanceSeedPair().getSeed(), "", bound));
+				censored.add(rc);
+			} else
+			{
+				boolean timeout = rand.nextInt(8) == 0;
+				double runtime = (timeout) ? CUTOFF : rand.nextDouble() * CUTOFF;
+				runs.add(new ExistingAlgorithmRunResult(rc, (timeout) ? RunStatus.TIMEOUT : RunStatus.SAT, runtime, 0, 0, rc.getProblemInstanceSeedPair().getSeed(), "", runtime));
+			}
+		}
+		return runs;
+	}
+
+	private static void assertSameAnswers(RunHistory expected, RunHistory actual, Collection<ParameterConfiguration> configs, Set<ProblemInstance> instanceSet)
+	{
+		assertEquals(new ArrayList<ParameterConfiguration>(expected.getUniqueParamConfigurations()), new ArrayList<ParameterConfiguration>(actual.getUniqueParamConfigurations()));
+		assertEquals(expected.getAlgorithmRunsIncludingRedundant(), actual.getAlgorithmRunsIncludingRedundant());
+		assertEquals(expected.getAlgorithmRunsExcludingRedundant(), actual.getAlgorithmRunsExcludingRedundant());
+		assertTrue(Arrays.deepEquals(expected.getParameterConfigurationInstancesRanByIndexExcludingRedundant(), actual.getParameterConfigurationInstancesRanByIndexExcludingRedundant()));
+		assertArrayEquals(expected.getRunResponseValuesExcludingRedundant(), actual.getRunResponseValuesExcludingRedundant(), 1e-12);
+		assertTrue(Arrays.equals(expected.getCensoredEarlyFlagsExcludingRedundant(), actual.getCensoredEarlyFlagsExcludingRedundant()));
+		for(ParameterConfiguration config : configs)
+		{
+			assertEquals(expected.getEmpiricalCost(config, instanceSet, CUTOFF), actual.getEmpiricalCost(config, instanceSet, CUTOFF), 1e-9);
+			assertEquals(expected.getEarlyCensoredProblemInstanceSeedPairs(config), actual.getEarlyCensoredProblemInstanceSeedPairs(config));
+		}
+	}
+
+	@Test
+	public void testSnapshotIsIsolatedFromLaterAppends() throws DuplicateRunException
+	{
+		List<AlgorithmRunResult> runs = generateRuns(new MersenneTwister(2), 400);
+		Set<ProblemInstance> instanceSet = new HashSet<ProblemInstance>(instances);
+
+		ConcurrentRunHistory runHistory = new ConcurrentRunHistory(OverallObjective.MEAN, OverallObjective.MEAN10, RunObjective.RUNTIME);
+		ColumnarRunHistory reference = new ColumnarRunHistory(OverallObjective.MEAN, OverallObjective.MEAN10, RunObjective.RUNTIME);
+
+		List<RunHistory> snapshots = new ArrayList<RunHistory>();
+		List<ColumnarRunHistory> references = new ArrayList<ColumnarRunHistory>();
+		for(int i=0; i < runs.size(); i++)
+		{
+			runHistory.append(runs.get(i));
+			reference.append(runs.get(i));
+
+			if(i % 100 == 50)
+			{
+				snapshots.add(runHistory.snapshot());
+
+				//A reference frozen at the same point
+				ColumnarRunHistory frozen = new ColumnarRunHistory(OverallObjective.MEAN, OverallObjective.MEAN10, RunObjective.RUNTIME);
+				for(AlgorithmRunResult run : runs.subList(0, i+1))
+				{
+					frozen.append(run);
+				}
+				references.add(frozen);
+			}
+		}
+
+		assertSameAnswers(reference, runHistory, configs, instanceSet);
+		for(int i=0; i < snapshots.size(); i++)
+		{
+			assertSameAnswers(references.get(i), snapshots.get(i), configs, instanceSet);
+		}
+
+		try
+		{
+			snapshots.get(0).append(runs.get(0));
+			fail("Snapshots must be read only");
+		} catch(UnsupportedOperationException e)
+		{
+			//Expected
+		}
+	}
+
+	@Test
+	public void testReadersSeeConsistentStateDuringAppends() throws Exception
+	{
+		final List<AlgorithmRunResult> runs = generateRuns(new MersenneTwister(3), 3000);
+		final ConcurrentRunHistory runHistory = new ConcurrentRunHistory(OverallObjective.MEAN, OverallObjective.MEAN10, RunObjective.RUNTIME);
+		final Set<ProblemInstance> instanceSet = new HashSet<ProblemInstance>(instances);
+		final AtomicBoolean done = new AtomicBoolean(false);
+
+		ExecutorService executor = Executors.newFixedThreadPool(5);
+		try
+		{
+			List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+			for(int t=0; t < 4; t++)
+			{
+				readers.add(executor.submit(new Callable<Integer>()
+				{
+					@Override
+					public Integer call()
+					{
+						int reads = 0;
+						int lastSize = 0;
+						while(!done.get())
+						{
+							RunHistory snapshot = runHistory.snapshot();
+							int[][] thetaInstIdxs = snapshot.getParameterConfigurationInstancesRanByIndexExcludingRedundant();
+							double[] responseValues = snapshot.getRunResponseValuesExcludingRedundant();
+							boolean[] censored = snapshot.getCensoredEarlyFlagsExcludingRedundant();
+							List<AlgorithmRunResult> runsExcludingRedundant = snapshot.getAlgorithmRunsExcludingRedundant();
+
+							//Everything read from one snapshot describes the same runs
+							assertEquals(thetaInstIdxs.length, responseValues.length);
+							assertEquals(thetaInstIdxs.length, censored.length);
+							assertEquals(thetaInstIdxs.length, runsExcludingRedundant.size());
+							assertTrue(thetaInstIdxs.length >= lastSize);
+							lastSize = thetaInstIdxs.length;
+
+							//The runs of a snapshot are a prefix of the runs appended
+							List<AlgorithmRunResult> including = snapshot.getAlgorithmRunsIncludingRedundant();
+							assertEquals(runs.subList(0, including.size()), including);
+
+							for(ParameterConfiguration config : snapshot.getUniqueParamConfigurations())
+							{
+								double cost = snapshot.getEmpiricalCost(config, instanceSet, CUTOFF);
+								assertTrue(cost >= 0 && cost <= CUTOFF * 10);
+							}
+
+							//Reads straight from the run history never block on appends
+							runHistory.getEmpiricalCost(configs.get(reads % configs.size()), instanceSet, CUTOFF);
+							reads++;
+						}
+						return reads;
+					}
+				}));
+			}
+
+			Future<?> writer = executor.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call() throws DuplicateRunException
+				{
+					try
+					{
+						for(AlgorithmRunResult run : runs)
+						{
+							runHistory.append(run);
+						}
+					} finally
+					{
+						done.set(true);
+					}
+					return null;
+				}
+			});
+
+			writer.get();
+			for(Future<Integer> reader : readers)
+			{
+				assertTrue(reader.get() > 0);
+			}
+		} finally
+		{
+			executor.shutdownNow();
+		}
+
+		ColumnarRunHistory reference = new ColumnarRunHistory(OverallObjective.MEAN, OverallObjective.MEAN10, RunObjective.RUNTIME);
+		for(AlgorithmRunResult run : runs)
+		{
+			reference.append(run);
+		}
+		assertSameAnswers(reference, runHistory, configs, instanceSet);
+		assertSameAnswers(reference, runHistory.snapshot(), configs, instanceSet);
+	}
+
+	/**
+	 * Waits until a thread is parked on a lock
+	 */
+	private static void awaitBlocked(Thread thread) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 30000;
+		while(thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.BLOCKED)
+		{
+			assertTrue("Thread " + thread.getName() + " never blocked", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	private static Thread startAppend(final RunHistory runHistory, final AlgorithmRunResult run)
+	{
+		Thread thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run() {
+				try {
+					runHistory.append(run);
+				} catch(DuplicateRunException e)
+				{
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	@Test
+	public void testDecoratorReadsDoNotWaitForAppends() throws Exception
+	{
+		List<AlgorithmRunResult> runs = generateRuns(new MersenneTwister(4), 102);
+		final Set<ProblemInstance> instanceSet = new HashSet<ProblemInstance>(instances);
+		final ParameterConfiguration config = runs.get(0).getParameterConfiguration();
+
+		File directory = File.createTempFile("concurrent-test-", "");
+		assertTrue(directory.delete());
+		assertTrue(directory.mkdirs());
+
+		//The same decorators SMACBuilder puts around a ConcurrentRunHistory
+		ConcurrentRunHistory modelStore = new ConcurrentRunHistory(OverallObjective.MEAN, OverallObjective.MEAN10, RunObjective.RUNTIME);
+		ConcurrentRunHistory runHistory = new ConcurrentRunHistory(OverallObjective.MEAN, OverallObjective.MEAN10, RunObjective.RUNTIME);
+		final FileSharingRunHistoryDecorator fileSharingRH = new FileSharingRunHistoryDecorator(modelStore, directory, 0, instances, 0, false);
+		final ThreadSafeTeeRunHistory teeRH = new ThreadSafeTeeRunHistory(runHistory, fileSharingRH);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try
+		{
+			teeRH.append(runs.subList(0, 100));
+			final double cost = teeRH.getEmpiricalCost(config, instanceSet, CUTOFF);
+
+			//Holds appends to the model store back, so both decorators end up holding their own lock in an append
+			modelStore.readLock();
+			Thread blockedInFileSharing;
+			Thread blockedInTee;
+			try
+			{
+				blockedInFileSharing = startAppend(fileSharingRH, runs.get(100));
+				awaitBlocked(blockedInFileSharing);
+				blockedInTee = startAppend(teeRH, runs.get(101));
+				awaitBlocked(blockedInTee);
+
+				Future<Void> reads = executor.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call()
+					{
+						assertEquals(cost, fileSharingRH.getEmpiricalCost(config, instanceSet, CUTOFF), 1e-12);
+						assertEquals(cost, teeRH.getEmpiricalCost(config, instanceSet, CUTOFF), 1e-12);
+						assertEquals(100, fileSharingRH.getAlgorithmRunsIncludingRedundant().size());
+						assertEquals(teeRH.getProblemInstanceSeedPairsRan(config), fileSharingRH.getProblemInstanceSeedPairsRan(config));
+						return null;
+					}
+				});
+
+				try
+				{
+					reads.get(10, TimeUnit.SECONDS);
+				} catch(TimeoutException e)
+				{
+					fail("Reads waited for an append holding the decorator lock");
+				}
+			} finally
+			{
+				modelStore.releaseReadLock();
+			}
+
+			blockedInFileSharing.join(30000);
+			blockedInTee.join(30000);
+			assertEquals(102, fileSharingRH.getAlgorithmRunsIncludingRedundant().size());
+			assertEquals(101, teeRH.getAlgorithmRunsIncludingRedundant().size());
+		} finally
+		{
+			executor.shutdownNow();
+
+			File[] files = directory.listFiles();
+			if(files != null)
+			{
+				for(File f : files)
+				{
+					f.delete();
+				}
+			}
+			directory.delete();
+		}
+	}
+}
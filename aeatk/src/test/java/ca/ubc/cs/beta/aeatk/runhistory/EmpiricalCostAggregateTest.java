@@ -0,0 +1,177 @@
+package ca.ubc.cs.beta.aeatk.runhistory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.ExistingAlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunStatus;
+import ca.ubc.cs.beta.aeatk.exceptions.DuplicateRunException;
+import ca.ubc.cs.beta.aeatk.objectives.OverallObjective;
+import ca.ubc.cs.beta.aeatk.objectives.RunObjective;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+
+import ec.util.MersenneTwister;
+
+/**
+ * The incrementally maintained cost aggregates of {@link NewRunHistory} must agree with the cost computed from the performance map,
+ * and must give the same answer to concurrent readers
+ */
+public class EmpiricalCostAggregateTest {
+
+	private static final double CUTOFF = 10;
+
+	private ParameterConfigurationSpace configSpace;
+	private AlgorithmExecutionConfiguration execConfig;
+	private List<ProblemInstance> instances;
+	private List<ParameterConfiguration> configs;
+	private RunHistory runHistory;
+
+	@Before
+	public void setUp() throws DuplicateRunException
+	{
+		configSpace = new ParameterConfigurationSpace(new StringReader("x [0, 10] [5]\n"));
+		execConfig = new AlgorithmExecutionConfiguration("test", ".", configSpace, false, false, CUTOFF);
+
+		instances = new ArrayList<ProblemInstance>();
+		for(int i=1; i <= 6; i++)
+		{
+			instances.add(new ProblemInstance("instance" + i, i));
+		}
+
+		Random rand = new MersenneTwister(1);
+		configs = new ArrayList<ParameterConfiguration>();
+		for(int i=0; i < 4; i++)
+		{
+			configs.add(configSpace.getRandomParameterConfiguration(rand));
+		}
+
+		runHistory = new NewRunHistory(OverallObjective.MEAN, OverallObjective.MEAN10, RunObjective.RUNTIME);
+		for(ParameterConfiguration config : configs)
+		{
+			for(ProblemInstance pi : instances)
+			{
+				int seeds = 1 + rand.nextInt(3);
+				for(int seed=0; seed < seeds; seed++)
+				{
+					//About a fifth of the runs time out and get penalized
+					boolean timeout = rand.nextInt(5) == 0;
+					double runtime = timeout ? CUTOFF : rand.nextDouble() * CUTOFF;
+					AlgorithmRunConfiguration rc = new AlgorithmRunConfiguration(new ProblemInstanceSeedPair(pi, seed), CUTOFF, config, execConfig);
+					runHistory.append(new ExistingAlgorithmRunResult(rc, timeout ? RunStatus.TIMEOUT : RunStatus.SAT, runtime, 0, 0, seed, "", runtime));
+				}
+			}
+		}
+	}
+
+	private Set<ProblemInstance> randomInstanceSet(Random rand)
+	{
+		Set<ProblemInstance> instanceSet = new HashSet<ProblemInstance>();
+		for(ProblemInstance pi : instances)
+		{
+			if(rand.nextBoolean())
+			{
+				instanceSet.add(pi);
+			}
+		}
+		if(instanceSet.isEmpty())
+		{
+			instanceSet.add(instances.get(0));
+		}
+		return instanceSet;
+	}
+
+	@Test
+	public void testAggregateMatchesPerformanceMap()
+	{
+		//Hallucinating nothing on an instance outside the set forces the cost to be computed from the performance map
+		Map<ProblemInstance, Map<Long, Double>> noHallucinatedValues = Collections.<ProblemInstance, Map<Long, Double>> singletonMap(new ProblemInstance("unused", 100), Collections.<Long, Double> emptyMap());
+
+		Random rand = new MersenneTwister(2);
+		for(int i=0; i < 200; i++)
+		{
+			ParameterConfiguration config = configs.get(rand.nextInt(configs.size()));
+			Set<ProblemInstance> instanceSet = randomInstanceSet(rand);
+			for(double minimumResponseValue : new double[] { 0, 2 })
+			{
+				double expected = runHistory.getEmpiricalCost(config, instanceSet, CUTOFF, noHallucinatedValues, minimumResponseValue);
+				double actual = runHistory.getEmpiricalCost(config, instanceSet, CUTOFF, Collections.<ProblemInstance, Map<Long, Double>> emptyMap(), minimumResponseValue);
+				assertEquals(expected, actual, 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentReadersAgree() throws Exception
+	{
+		final RunHistory threadSafeRunHistory = new ThreadSafeRunHistoryWrapper(runHistory);
+
+		final List<ParameterConfiguration> queryConfigs = new ArrayList<ParameterConfiguration>();
+		final List<Set<ProblemInstance>> queryInstances = new ArrayList<Set<ProblemInstance>>();
+		final double[] expected = new double[100];
+		Random rand = new MersenneTwister(3);
+		for(int i=0; i < expected.length; i++)
+		{
+			queryConfigs.add(configs.get(rand.nextInt(configs.size())));
+			queryInstances.add(randomInstanceSet(rand));
+			expected[i] = runHistory.getEmpiricalCost(queryConfigs.get(i), queryInstances.get(i), CUTOFF);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try
+		{
+			List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+			for(int t=0; t < 8; t++)
+			{
+				final int offset = t;
+				futures.add(executor.submit(new Callable<Integer>()
+				{
+					@Override
+					public Integer call()
+					{
+						int mismatches = 0;
+						for(int i=0; i < 20000; i++)
+						{
+							int q = (i + offset * 13) % expected.length;
+							if(Double.compare(expected[q], threadSafeRunHistory.getEmpiricalCost(queryConfigs.get(q), queryInstances.get(q), CUTOFF)) != 0)
+							{
+								mismatches++;
+							}
+						}
+						return mismatches;
+					}
+				}));
+			}
+
+			for(Future<Integer> future : futures)
+			{
+				assertEquals(0, (int) future.get());
+			}
+		} finally
+		{
+			executor.shutdownNow();
+		}
+
+		assertTrue(expected[0] > 0);
+	}
+}
@@ -0,0 +1,197 @@
+package ca.ubc.cs.beta.aeatk.runhistory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.ExistingAlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunStatus;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+
+import ec.util.MersenneTwister;
+
+/**
+ * Runs written to the memory mapped segment files must be read back unchanged, each exactly once, and only by readers of the same scenario
+ */
+public class MappedRunDataTest {
+
+	private static final RunStatus[] STATUSES = { RunStatus.SAT, RunStatus.UNSAT, RunStatus.TIMEOUT, RunStatus.CRASHED };
+
+	private ParameterConfigurationSpace configSpace;
+	private AlgorithmExecutionConfiguration execConfig;
+	private List<ProblemInstance> pis;
+	private MersenneTwister rand;
+	private File directory;
+	private File segmentZero;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		configSpace = new ParameterConfigurationSpace(new StringReader("x [0, 10] [5]\ny {a,b,c} [a]\nz [1, 100] [10]il\n"));
+		execConfig = new AlgorithmExecutionConfiguration("test", ".", configSpace, false, false, 10);
+		pis = Arrays.asList(new ProblemInstance("instance1", 1), new ProblemInstance("instance2", 2), new ProblemInstance("instance3", 3));
+		rand = new MersenneTwister(1);
+
+		directory = File.createTempFile("mapped-test-", "");
+		assertTrue(directory.delete());
+		assertTrue(directory.mkdirs());
+		segmentZero = new File(directory, MappedRunDataFormat.FILE_PREFIX + "0" + MappedRunDataFormat.FILE_SUFFIX);
+	}
+
+	@After
+	public void tearDown()
+	{
+		File[] files = directory.listFiles();
+		if(files != null)
+		{
+			for(File f : files)
+			{
+				f.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private List<AlgorithmRunResult> runs(int from, int to)
+	{
+		List<AlgorithmRunResult> runs = new ArrayList<AlgorithmRunResult>();
+		for(int i=from; i < to; i++)
+		{
+			AlgorithmRunConfiguration rc = new AlgorithmRunConfiguration(new ProblemInstanceSeedPair(pis.get(i % pis.size()), i), 1 + i % 7, configSpace.getRandomParameterConfiguration(rand), execConfig);
+			runs.add(new ExistingAlgorithmRunResult(rc, STATUSES[i % STATUSES.length], rand.nextDouble(), i * 3, rand.nextDouble(), i + 1000, "not shared", rand.nextDouble()));
+		}
+		return runs;
+	}
+
+	private void write(MappedRunDataWriter writer, List<AlgorithmRunResult> runs) throws IOException
+	{
+		for(AlgorithmRunResult run : runs)
+		{
+			assertTrue(writer.write(run));
+		}
+	}
+
+	private static void assertSameRuns(List<AlgorithmRunResult> expected, List<AlgorithmRunResult> actual)
+	{
+		assertEquals(expected.size(), actual.size());
+		for(int i=0; i < expected.size(); i++)
+		{
+			AlgorithmRunResult e = expected.get(i);
+			AlgorithmRunResult a = actual.get(i);
+
+			assertEquals(e.getAlgorithmRunConfiguration(), a.getAlgorithmRunConfiguration());
+			assertEquals(e.getParameterConfiguration().getFormattedParameterString(), a.getParameterConfiguration().getFormattedParameterString());
+			assertEquals(e.getRunStatus(), a.getRunStatus());
+			assertEquals(e.getRuntime(), a.getRuntime(), 0);
+			assertEquals(e.getRunLength(), a.getRunLength(), 0);
+			assertEquals(e.getQuality(), a.getQuality(), 0);
+			assertEquals(e.getResultSeed(), a.getResultSeed());
+			assertEquals(e.getWallclockExecutionTime(), a.getWallclockExecutionTime(), 0);
+			assertEquals("", a.getAdditionalRunData());
+		}
+	}
+
+	@Test
+	public void testRoundTripAcrossSegments() throws IOException
+	{
+		MappedRunDataWriter writer = new MappedRunDataWriter(segmentZero, 4, pis, configSpace);
+		MappedRunDataReader reader = new MappedRunDataReader(segmentZero, pis, configSpace, execConfig);
+
+		assertTrue(reader.readNewRuns().isEmpty());
+
+		//Batches that end inside a segment, exactly at its end, and span several segments
+		int[] ends = { 3, 4, 9, 9, 17, 20 };
+		int written = 0;
+		for(int end : ends)
+		{
+			List<AlgorithmRunResult> runs = runs(written, end);
+			write(writer, runs);
+			written = end;
+
+			assertSameRuns(runs, reader.readNewRuns());
+			assertEquals(written, reader.getRunsRead());
+		}
+
+		assertTrue(MappedRunDataFormat.getSegmentFile(segmentZero, 4).exists());
+		assertFalse(MappedRunDataFormat.getSegmentFile(segmentZero, 5).exists());
+
+		//A reader that starts late sees everything
+		MappedRunDataReader lateReader = new MappedRunDataReader(segmentZero, pis, configSpace, execConfig);
+		assertEquals(20, lateReader.readNewRuns().size());
+		assertTrue(lateReader.readNewRuns().isEmpty());
+	}
+
+	@Test
+	public void testReaderWaitsForWriter() throws IOException
+	{
+		MappedRunDataReader reader = new MappedRunDataReader(segmentZero, pis, configSpace, execConfig);
+		assertTrue(reader.readNewRuns().isEmpty());
+
+		MappedRunDataWriter writer = new MappedRunDataWriter(segmentZero, 8, pis, configSpace);
+		assertTrue(reader.readNewRuns().isEmpty());
+
+		List<AlgorithmRunResult> runs = runs(0, 5);
+		write(writer, runs);
+		assertSameRuns(runs, reader.readNewRuns());
+	}
+
+	@Test
+	public void testRunsOnUnsharedInstancesAreSkipped() throws IOException
+	{
+		MappedRunDataWriter writer = new MappedRunDataWriter(segmentZero, 4, pis, configSpace);
+
+		ProblemInstance other = new ProblemInstance("other", 4);
+		AlgorithmRunConfiguration rc = new AlgorithmRunConfiguration(new ProblemInstanceSeedPair(other, 1), 10, configSpace.getDefaultConfiguration(), execConfig);
+		assertFalse(writer.write(new ExistingAlgorithmRunResult(rc, RunStatus.SAT, 1, 0, 0, 1, "", 1)));
+
+		List<AlgorithmRunResult> runs = runs(0, 2);
+		write(writer, runs);
+		assertSameRuns(runs, new MappedRunDataReader(segmentZero, pis, configSpace, execConfig).readNewRuns());
+	}
+
+	@Test
+	public void testDifferentScenarioIsIgnored() throws IOException
+	{
+		MappedRunDataWriter writer = new MappedRunDataWriter(segmentZero, 4, pis, configSpace);
+		write(writer, runs(0, 3));
+
+		List<ProblemInstance> reordered = Arrays.asList(pis.get(1), pis.get(0), pis.get(2));
+		assertTrue(new MappedRunDataReader(segmentZero, reordered, configSpace, execConfig).readNewRuns().isEmpty());
+
+		ParameterConfigurationSpace otherSpace = new ParameterConfigurationSpace(new StringReader("x [0, 10] [5]\ny {a,b,c} [a]\nw [1, 100] [10]il\n"));
+		AlgorithmExecutionConfiguration otherExecConfig = new AlgorithmExecutionConfiguration("test", ".", otherSpace, false, false, 10);
+		assertTrue(new MappedRunDataReader(segmentZero, pis, otherSpace, otherExecConfig).readNewRuns().isEmpty());
+	}
+
+	@Test
+	public void testRestartedWriterReplacesStaleSegments() throws IOException
+	{
+		MappedRunDataWriter writer = new MappedRunDataWriter(segmentZero, 4, pis, configSpace);
+		write(writer, runs(0, 10));
+		assertTrue(MappedRunDataFormat.getSegmentFile(segmentZero, 2).exists());
+
+		MappedRunDataWriter restarted = new MappedRunDataWriter(segmentZero, 4, pis, configSpace);
+		assertFalse(MappedRunDataFormat.getSegmentFile(segmentZero, 1).exists());
+		assertFalse(MappedRunDataFormat.getSegmentFile(segmentZero, 2).exists());
+
+		List<AlgorithmRunResult> runs = runs(100, 103);
+		write(restarted, runs);
+		assertSameRuns(runs, new MappedRunDataReader(segmentZero, pis, configSpace, execConfig).readNewRuns());
+	}
+}
@@ -0,0 +1,131 @@
+package ca.ubc.cs.beta.aeatk.runhistory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.ExistingAlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunStatus;
+import ca.ubc.cs.beta.aeatk.exceptions.DuplicateRunException;
+import ca.ubc.cs.beta.aeatk.objectives.OverallObjective;
+import ca.ubc.cs.beta.aeatk.objectives.RunObjective;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+
+/**
+ * Runs of a quality objective that were raced against the incumbent are censored early, and must be superseded by their full re-run
+ */
+public class NewRunHistoryTest {
+
+	private ParameterConfigurationSpace configSpace;
+	private AlgorithmExecutionConfiguration execConfig;
+	private ProblemInstance pi;
+	private ParameterConfiguration config;
+	private Set<ProblemInstance> instances;
+
+	@Before
+	public void setUp()
+	{
+		configSpace = new ParameterConfigurationSpace(new StringReader("x [0, 10] [5]\n"));
+		execConfig = new AlgorithmExecutionConfiguration("test", ".", configSpace, false, false, 10);
+		pi = new ProblemInstance("instance", 1);
+		config = configSpace.getDefaultConfiguration();
+		instances = Collections.singleton(pi);
+	}
+
+	private AlgorithmRunResult run(RunStatus status, double runtime, double quality)
+	{
+		AlgorithmRunConfiguration rc = new AlgorithmRunConfiguration(new ProblemInstanceSeedPair(pi, 1), 10, config, execConfig);
+		return new ExistingAlgorithmRunResult(rc, status, runtime, 0, quality, 1, "", runtime);
+	}
+
+	@Test
+	public void testRacedQualityRunSupersededByFullRun() throws DuplicateRunException
+	{
+		RunHistory runHistory = new NewRunHistory(OverallObjective.MEAN, OverallObjective.MEAN, RunObjective.QUALITY);
+
+		AlgorithmRunResult raced = run(RunStatus.KILLED, 1, 0.3);
+		assertTrue(raced.isCensoredEarly());
+		runHistory.append(raced);
+
+		assertEquals(0.3, runHistory.getEmpiricalCost(config, instances, 10), 1e-12);
+		assertTrue(runHistory.getEarlyCensoredProblemInstanceSeedPairs(config).contains(raced.getAlgorithmRunConfiguration().getProblemInstanceSeedPair()));
+
+		AlgorithmRunResult full = run(RunStatus.SAT, 5, 0.4);
+		runHistory.append(full);
+
+		assertEquals(0.4, runHistory.getEmpiricalCost(config, instances, 10), 1e-12);
+		assertTrue(runHistory.getEarlyCensoredProblemInstanceSeedPairs(config).isEmpty());
+
+		assertEquals(1, runHistory.getAlgorithmRunsExcludingRedundant().size());
+		assertSame(full, runHistory.getAlgorithmRunsExcludingRedundant().get(0));
+		assertSame(full, runHistory.getAlgorithmRunsExcludingRedundant(config).get(0));
+		assertEquals(1, runHistory.getAlgorithmRunDataExcludingRedundant().size());
+		assertFalse(runHistory.getAlgorithmRunDataExcludingRedundant().get(0).isCappedRun());
+		assertEquals(0.4, runHistory.getAlgorithmRunDataExcludingRedundant().get(0).getResponseValue(), 1e-12);
+		assertEquals(2, runHistory.getAlgorithmRunsIncludingRedundant().size());
+	}
+
+	@Test
+	public void testFullRunSupersedesLargerRacedBound() throws DuplicateRunException
+	{
+		RunHistory runHistory = new NewRunHistory(OverallObjective.MEAN, OverallObjective.MEAN, RunObjective.QUALITY);
+
+		//Rounding in the wrapper can leave the bound slightly above the final quality
+		runHistory.append(run(RunStatus.KILLED, 1, 0.41));
+		AlgorithmRunResult full = run(RunStatus.SAT, 5, 0.4);
+		runHistory.append(full);
+
+		assertEquals(0.4, runHistory.getEmpiricalCost(config, instances, 10), 1e-12);
+		assertSame(full, runHistory.getAlgorithmRunDataExcludingRedundant().get(0).getRun());
+	}
+
+	@Test
+	public void testRacedQualityRunsKeepLargestBound() throws DuplicateRunException
+	{
+		RunHistory runHistory = new NewRunHistory(OverallObjective.MEAN, OverallObjective.MEAN, RunObjective.QUALITY);
+
+		runHistory.append(run(RunStatus.KILLED, 1, 0.3));
+		AlgorithmRunResult tighter = run(RunStatus.KILLED, 2, 0.35);
+		runHistory.append(tighter);
+
+		assertEquals(0.35, runHistory.getEmpiricalCost(config, instances, 10), 1e-12);
+		assertSame(tighter, runHistory.getAlgorithmRunsExcludingRedundant().get(0));
+		assertEquals(1, runHistory.getEarlyCensoredProblemInstanceSeedPairs(config).size());
+
+		runHistory.append(run(RunStatus.SAT, 5, 0.4));
+		assertEquals(0.4, runHistory.getEmpiricalCost(config, instances, 10), 1e-12);
+		assertTrue(runHistory.getEarlyCensoredProblemInstanceSeedPairs(config).isEmpty());
+	}
+
+	@Test
+	public void testCompletedQualityRunIsStillDuplicate() throws DuplicateRunException
+	{
+		RunHistory runHistory = new NewRunHistory(OverallObjective.MEAN, OverallObjective.MEAN, RunObjective.QUALITY);
+
+		runHistory.append(run(RunStatus.SAT, 5, 0.4));
+		try
+		{
+			runHistory.append(run(RunStatus.SAT, 5, 0.5));
+			fail("Expected a duplicate run");
+		} catch(DuplicateRunException e)
+		{
+			//Expected
+		}
+		assertEquals(0.4, runHistory.getEmpiricalCost(config, instances, 10), 1e-12);
+	}
+}
@@ -0,0 +1,75 @@
+package ca.ubc.cs.beta.aeatk.runhistory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+
+import ec.util.MersenneTwister;
+
+/**
+ * Theta indexes found through interned IDs must behave like the KeyObjectManager they replace, and looking one up must not intern the configuration
+ */
+public class ThetaIndexesTest {
+
+	@Test
+	public void testIndexesFollowFirstUse()
+	{
+		ParameterConfigurationSpace configSpace = new ParameterConfigurationSpace(new StringReader("x [0, 10] [5]\ny {a,b,c} [a]\n"));
+		MersenneTwister rand = new MersenneTwister(1);
+
+		ThetaIndexes indexes = new ThetaIndexes();
+		KeyObjectManager<ParameterConfiguration> expected = new KeyObjectManager<ParameterConfiguration>();
+
+		//Interned by somebody else first, so the IDs do not start at zero
+		for(int i=0; i < 5; i++)
+		{
+			configSpace.getRandomParameterConfiguration(rand).getInternedID();
+		}
+
+		ParameterConfiguration[] configs = new ParameterConfiguration[200];
+		for(int i=0; i < configs.length; i++)
+		{
+			configs[i] = configSpace.getRandomParameterConfiguration(rand);
+		}
+
+		for(int i=0; i < 1000; i++)
+		{
+			ParameterConfiguration config = new ParameterConfiguration(configs[rand.nextInt(configs.length)]);
+			assertEquals(expected.getKey(config), indexes.getKey(config));
+			assertEquals(expected.getOrCreateKey(config), indexes.getOrCreateKey(config));
+		}
+
+		assertEquals(expected.size(), indexes.size());
+		for(int i=1; i <= indexes.size(); i++)
+		{
+			assertEquals(expected.getValue(i), indexes.getValue(i));
+		}
+	}
+
+	@Test
+	public void testLookupDoesNotIntern()
+	{
+		ParameterConfigurationSpace configSpace = new ParameterConfigurationSpace(new StringReader("x [0, 10] [5]\n"));
+		ThetaIndexes indexes = new ThetaIndexes();
+		ParameterConfiguration config = configSpace.getDefaultConfiguration();
+		indexes.getOrCreateKey(config);
+
+		int interned = configSpace.getConfigurationTable().size();
+		ParameterConfiguration other = configSpace.getDefaultConfiguration();
+		other.put("x", "7");
+		assertEquals(-1, indexes.getKey(other));
+		assertEquals(interned, configSpace.getConfigurationTable().size());
+
+		//A configuration of another space with the same parameters is indexed in the table of the first one
+		ParameterConfigurationSpace otherSpace = new ParameterConfigurationSpace(new StringReader("x [0, 10] [5]\n"));
+		assertEquals(1, indexes.getKey(otherSpace.getDefaultConfiguration()));
+		assertEquals(1, indexes.getOrCreateKey(otherSpace.getDefaultConfiguration()));
+		assertSame(config, indexes.getValue(1));
+	}
+}
@@ -0,0 +1,222 @@
+package ca.ubc.cs.beta.aeatk.state.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.ExistingAlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunStatus;
+import ca.ubc.cs.beta.aeatk.exceptions.DuplicateRunException;
+import ca.ubc.cs.beta.aeatk.exceptions.StateSerializationException;
+import ca.ubc.cs.beta.aeatk.objectives.OverallObjective;
+import ca.ubc.cs.beta.aeatk.objectives.RunObjective;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+import ca.ubc.cs.beta.aeatk.runhistory.NewRunHistory;
+import ca.ubc.cs.beta.aeatk.runhistory.RunHistory;
+import ca.ubc.cs.beta.aeatk.state.StateDeserializer;
+import ca.ubc.cs.beta.aeatk.state.StateSerializer;
+
+/**
+ * Every save must restore to exactly the runs, incumbent and objects it was given, from the journal, from a snapshot, after a torn write and after a purge
+ */
+public class JournalStateFactoryTest {
+
+	/**
+	 * One run is added per iteration, so iterations 1 to 3 are journaled in segment 0 and iteration 4 rolls over into the snapshot of segment 1
+	 */
+	private static final int SNAPSHOT_MINIMUM_RUNS = 4;
+
+	private ParameterConfigurationSpace configSpace;
+	private AlgorithmExecutionConfiguration execConfig;
+	private ProblemInstance pi;
+	private List<ProblemInstance> instances;
+	private RunHistory runHistory;
+	private File directory;
+	private JournalStateFactory factory;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		configSpace = new ParameterConfigurationSpace(new StringReader("x [0, 10] [5]\n"));
+		execConfig = new AlgorithmExecutionConfiguration("test", ".", configSpace, false, false, 10);
+		pi = new ProblemInstance("instance", 1);
+		instances = Collections.singletonList(pi);
+		runHistory = new NewRunHistory(OverallObjective.MEAN, OverallObjective.MEAN, RunObjective.RUNTIME);
+
+		directory = File.createTempFile("journal-test-", "");
+		assertTrue(directory.delete());
+		assertTrue(directory.mkdirs());
+		factory = new JournalStateFactory(directory.getAbsolutePath(), directory.getAbsolutePath(), SNAPSHOT_MINIMUM_RUNS, 0);
+	}
+
+	@After
+	public void tearDown()
+	{
+		factory.shutdown();
+		File[] files = directory.listFiles();
+		if(files != null)
+		{
+			for(File f : files)
+			{
+				f.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private ParameterConfiguration config(int iteration)
+	{
+		ParameterConfiguration config = configSpace.getDefaultConfiguration();
+		config.put("x", String.valueOf(iteration));
+		return config;
+	}
+
+	/**
+	 * Runs iterations up to and including the last one, saving after each
+	 */
+	private void runAndSave(int lastIteration) throws DuplicateRunException
+	{
+		for(int iteration = runHistory.getIteration() + 1; iteration <= lastIteration; iteration++)
+		{
+			runHistory.incrementIteration();
+			AlgorithmRunConfiguration rc = new AlgorithmRunConfiguration(new ProblemInstanceSeedPair(pi, iteration), 10, config(iteration), execConfig);
+			runHistory.append(new ExistingAlgorithmRunResult(rc, RunStatus.SAT, iteration / 2.0, iteration * 3, 0, iteration + 1000, "run " + iteration, iteration));
+
+			StateSerializer serializer = factory.getStateSerializer("it", iteration);
+			serializer.setRunHistory(runHistory);
+			serializer.setIncumbent(config(iteration));
+			serializer.setObjectStateMap(Collections.<String, Serializable>singletonMap("iteration", Integer.valueOf(iteration)));
+			serializer.save();
+		}
+	}
+
+	private StateDeserializer restore(int iteration)
+	{
+		return factory.getStateDeserializer("it", iteration, configSpace, instances, execConfig, new NewRunHistory(OverallObjective.MEAN, OverallObjective.MEAN, RunObjective.RUNTIME));
+	}
+
+	/**
+	 * Checks that the deserializer restored exactly the save made at the iteration
+	 */
+	private void assertRestored(int iteration, StateDeserializer restored)
+	{
+		assertEquals(iteration, restored.getIteration());
+		assertEquals(config(iteration), restored.getIncumbent());
+
+		Map<String, Serializable> objectState = restored.getObjectStateMap();
+		assertEquals(Integer.valueOf(iteration), objectState.get("iteration"));
+
+		List<AlgorithmRunResult> runs = restored.getRunHistory().getAlgorithmRunsIncludingRedundant();
+		assertEquals(iteration, runs.size());
+		assertEquals(iteration, restored.getRunHistory().getIteration());
+		for(int i=0; i < iteration; i++)
+		{
+			AlgorithmRunResult expected = runHistory.getAlgorithmRunsIncludingRedundant().get(i);
+			AlgorithmRunResult actual = runs.get(i);
+			assertEquals(expected.getAlgorithmRunConfiguration(), actual.getAlgorithmRunConfiguration());
+			assertEquals(expected.getRunStatus(), actual.getRunStatus());
+			assertEquals(expected.getRuntime(), actual.getRuntime(), 0);
+			assertEquals(expected.getRunLength(), actual.getRunLength(), 0);
+			assertEquals(expected.getQuality(), actual.getQuality(), 0);
+			assertEquals(expected.getResultSeed(), actual.getResultSeed());
+			assertEquals(expected.getAdditionalRunData(), actual.getAdditionalRunData());
+			assertEquals(expected.getWallclockExecutionTime(), actual.getWallclockExecutionTime(), 0);
+		}
+	}
+
+	@Test
+	public void testSaveAndRestore() throws DuplicateRunException
+	{
+		runAndSave(3);
+		assertRestored(3, restore(Integer.MAX_VALUE));
+	}
+
+	@Test
+	public void testRestoreEarlierIteration() throws DuplicateRunException
+	{
+		runAndSave(3);
+		assertRestored(2, restore(2));
+		assertRestored(1, restore(1));
+	}
+
+	@Test
+	public void testTornLastRecordIsIgnored() throws DuplicateRunException, IOException
+	{
+		runAndSave(3);
+		factory.shutdown();
+
+		//Cut the save record of iteration 3 in half, the run journaled before it must be ignored along with it
+		RandomAccessFile journal = new RandomAccessFile(JournalFormat.getJournalFile(directory.getAbsolutePath(), 0), "rw");
+		try {
+			journal.setLength(journal.length() - 10);
+		} finally
+		{
+			journal.close();
+		}
+
+		assertRestored(2, restore(Integer.MAX_VALUE));
+	}
+
+	@Test
+	public void testRolloverAtSnapshotThreshold() throws DuplicateRunException
+	{
+		runAndSave(SNAPSHOT_MINIMUM_RUNS - 1);
+		assertFalse(JournalFormat.getSnapshotFile(directory.getAbsolutePath(), 1).exists());
+
+		runAndSave(SNAPSHOT_MINIMUM_RUNS);
+		assertTrue(JournalFormat.getSnapshotFile(directory.getAbsolutePath(), 1).exists());
+		assertFalse(JournalFormat.getJournalFile(directory.getAbsolutePath(), 1).exists());
+
+		runAndSave(SNAPSHOT_MINIMUM_RUNS + 2);
+		assertTrue(JournalFormat.getJournalFile(directory.getAbsolutePath(), 1).exists());
+
+		assertRestored(SNAPSHOT_MINIMUM_RUNS + 2, restore(Integer.MAX_VALUE));
+		assertRestored(SNAPSHOT_MINIMUM_RUNS + 1, restore(SNAPSHOT_MINIMUM_RUNS + 1));
+		assertRestored(SNAPSHOT_MINIMUM_RUNS, restore(SNAPSHOT_MINIMUM_RUNS));
+		assertRestored(SNAPSHOT_MINIMUM_RUNS - 1, restore(SNAPSHOT_MINIMUM_RUNS - 1));
+	}
+
+	@Test
+	public void testPurgeKeepsObjectDumpsOfCurrentSegment() throws DuplicateRunException
+	{
+		runAndSave(SNAPSHOT_MINIMUM_RUNS + 2);
+		factory.purgePreviousStates();
+
+		assertFalse(JournalFormat.getJournalFile(directory.getAbsolutePath(), 0).exists());
+		assertFalse(JournalFormat.getObjectDumpFile(directory.getAbsolutePath(), "it", SNAPSHOT_MINIMUM_RUNS - 1).exists());
+
+		for(int iteration = SNAPSHOT_MINIMUM_RUNS; iteration <= SNAPSHOT_MINIMUM_RUNS + 2; iteration++)
+		{
+			assertTrue(JournalFormat.getObjectDumpFile(directory.getAbsolutePath(), "it", iteration).exists());
+			assertRestored(iteration, restore(iteration));
+		}
+
+		try {
+			restore(SNAPSHOT_MINIMUM_RUNS - 1);
+			fail("Restored an iteration whose segment was purged");
+		} catch(StateSerializationException e)
+		{
+			//Expected
+		}
+	}
+}
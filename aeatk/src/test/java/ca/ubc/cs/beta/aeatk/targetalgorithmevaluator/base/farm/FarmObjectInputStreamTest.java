@@ -0,0 +1,106 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.farm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedList;
+
+import org.junit.Test;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+import ca.ubc.cs.datastore.CrossValidateResult;
+
+import ec.util.MersenneTwister;
+
+/**
+ * Every message the farm sends must get through the allow-list, anything else must be refused before it is loaded
+ */
+public class FarmObjectInputStreamTest {
+
+	private static Object roundTrip(Object o) throws IOException, ClassNotFoundException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(o);
+		out.close();
+
+		ObjectInputStream in = new FarmObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		try {
+			return in.readObject();
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	@Test
+	public void testFarmMessagesAreAllowed() throws IOException, ClassNotFoundException
+	{
+		ParameterConfigurationSpace configSpace = new ParameterConfigurationSpace(new StringReader("a {x,y,z} [x]\nb [1,10] [2]i\nc [1,100] [10]l\nb | a in {x,y}\n{a=y, b=3}\n"));
+		AlgorithmExecutionConfiguration execConfig = new AlgorithmExecutionConfiguration("test", ".", configSpace, false, false, 10);
+		ProblemInstance pi = new ProblemInstance("instance", 1, Collections.singletonMap("feature", 1.0), "specifics");
+
+		FarmMessage runs = new FarmMessage(FarmMessage.Type.RUNS);
+		runs.ids = new long[] { 1, 2 };
+		runs.runConfigs = new ArrayList<AlgorithmRunConfiguration>();
+		runs.runConfigs.add(new AlgorithmRunConfiguration(new ProblemInstanceSeedPair(pi, 1), 10, configSpace.getDefaultConfiguration(), execConfig));
+		runs.runConfigs.add(new AlgorithmRunConfiguration(new ProblemInstanceSeedPair(pi, 2), 10, configSpace.getRandomParameterConfiguration(new MersenneTwister(1)), execConfig));
+		runs.runConfigs.get(1).setExperiementKey("experiment");
+
+		FarmMessage received = (FarmMessage) roundTrip(runs);
+		assertEquals(runs.runConfigs, received.runConfigs);
+
+		FarmMessage result = new FarmMessage(FarmMessage.Type.RESULT);
+		CrossValidateResult summary = new CrossValidateResult();
+		summary.setStartTime(new Date());
+		summary.setClassifierArgs(new String[] { "-K", "1" });
+		result.summary = summary;
+		assertEquals(FarmMessage.Type.RESULT, ((FarmMessage) roundTrip(result)).type);
+
+		FarmMessage dataset = new FarmMessage(FarmMessage.Type.DATASET);
+		dataset.datasetKey = "experiment";
+		dataset.dataset = new byte[] { 1, 2, 3 };
+		assertEquals(3, ((FarmMessage) roundTrip(dataset)).dataset.length);
+	}
+
+	@Test
+	public void testOtherClassesAreRefused() throws IOException, ClassNotFoundException
+	{
+		FarmMessage runs = new FarmMessage(FarmMessage.Type.RUNS);
+		runs.runConfigs = new LinkedList<AlgorithmRunConfiguration>();
+		try {
+			roundTrip(runs);
+			fail("Read a message with a class that is not allowed");
+		} catch(InvalidClassException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains(LinkedList.class.getName()));
+		}
+	}
+
+	@Test
+	public void testArraysFollowTheirElementType()
+	{
+		assertTrue(FarmObjectInputStream.isAllowed("[J"));
+		assertTrue(FarmObjectInputStream.isAllowed("[[D"));
+		assertTrue(FarmObjectInputStream.isAllowed("[Ljava.lang.String;"));
+		assertFalse(FarmObjectInputStream.isAllowed("[Ljava.lang.Object;"));
+		assertFalse(FarmObjectInputStream.isAllowed("[Ljava.util.LinkedList;"));
+		assertFalse(FarmObjectInputStream.isAllowed("[Q"));
+	}
+}
@@ -0,0 +1,338 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.farm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.beust.jcommander.ParameterException;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunStatus;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorCallback;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.exceptions.TargetAlgorithmAbortException;
+
+/**
+ * Runs of a worker that dies must go back to the queue and be evaluated by another worker, until too many workers died while evaluating them.
+ * Only workers that know the password may register.
+ */
+public class FarmTargetAlgorithmEvaluatorTest {
+
+	private static final String PASSWORD = "farm test password";
+
+	private ParameterConfigurationSpace configSpace;
+	private AlgorithmExecutionConfiguration execConfig;
+	private ProblemInstance pi;
+	private FarmTargetAlgorithmEvaluator tae;
+
+	@Before
+	public void setUp()
+	{
+		configSpace = new ParameterConfigurationSpace(new StringReader("x [0, 10] [5]\n"));
+		execConfig = new AlgorithmExecutionConfiguration("test", ".", configSpace, false, false, 10);
+		pi = new ProblemInstance("instance", 1);
+	}
+
+	@After
+	public void tearDown()
+	{
+		if(tae != null)
+		{
+			tae.notifyShutdown();
+		}
+	}
+
+	private FarmTargetAlgorithmEvaluator getTargetAlgorithmEvaluator(int maxAttempts)
+	{
+		FarmTargetAlgorithmEvaluatorOptions options = new FarmTargetAlgorithmEvaluatorOptions();
+		options.port = 0;
+		options.maxAttempts = maxAttempts;
+		//The fake workers do not send heartbeats
+		options.heartbeatTimeout = 600000;
+		options.password = PASSWORD;
+		return new FarmTargetAlgorithmEvaluator(options);
+	}
+
+	private List<AlgorithmRunConfiguration> runConfigs(int count)
+	{
+		List<AlgorithmRunConfiguration> rcs = new ArrayList<AlgorithmRunConfiguration>();
+		for(int i=0; i < count; i++)
+		{
+			rcs.add(new AlgorithmRunConfiguration(new ProblemInstanceSeedPair(pi, i), 10, configSpace.getDefaultConfiguration(), execConfig));
+		}
+		return rcs;
+	}
+
+	/**
+	 * @return queue that receives the results of the request, or the exception it failed with
+	 */
+	private static BlockingQueue<Object> submit(FarmTargetAlgorithmEvaluator tae, List<AlgorithmRunConfiguration> rcs)
+	{
+		final BlockingQueue<Object> outcome = new ArrayBlockingQueue<Object>(2);
+		tae.evaluateRunsAsync(rcs, new TargetAlgorithmEvaluatorCallback()
+		{
+			@Override
+			public void onSuccess(List<AlgorithmRunResult> runs) {
+				outcome.add(runs);
+			}
+
+			@Override
+			public void onFailure(RuntimeException e) {
+				outcome.add(e);
+			}
+		}, null);
+		return outcome;
+	}
+
+	private static Object await(BlockingQueue<Object> outcome) throws InterruptedException
+	{
+		Object result = outcome.poll(30, TimeUnit.SECONDS);
+		assertNotNull("Request never completed", result);
+		return result;
+	}
+
+	/**
+	 * Waits until the coordinator noticed that the workers are gone, so the next worker gets the requeued runs and not the originals
+	 */
+	private static void awaitNoWorkers(FarmTargetAlgorithmEvaluator tae) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 30000;
+		while(tae.getWorkerCount() > 0)
+		{
+			assertTrue("Worker was never dropped", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void assertAnswered(List<AlgorithmRunConfiguration> rcs, Object outcome)
+	{
+		if(outcome instanceof RuntimeException)
+		{
+			throw new AssertionError((RuntimeException) outcome);
+		}
+
+		List<AlgorithmRunResult> runs = (List<AlgorithmRunResult>) outcome;
+		assertEquals(rcs.size(), runs.size());
+		for(int i=0; i < rcs.size(); i++)
+		{
+			assertEquals(rcs.get(i), runs.get(i).getAlgorithmRunConfiguration());
+			assertEquals(RunStatus.SAT, runs.get(i).getRunStatus());
+			assertEquals(rcs.get(i).getProblemInstanceSeedPair().getSeed(), runs.get(i).getResultSeed());
+		}
+	}
+
+	@Test
+	public void testRunsOfDeadWorkerAreRequeued() throws IOException, InterruptedException
+	{
+		tae = getTargetAlgorithmEvaluator(2);
+		List<AlgorithmRunConfiguration> rcs = runConfigs(4);
+		BlockingQueue<Object> outcome = submit(tae, rcs);
+
+		FarmMessage lostRuns;
+		try(FakeWorker dying = new FakeWorker(tae.getPort(), "dying", 4))
+		{
+			lostRuns = dying.receiveRuns();
+			assertEquals(rcs, lostRuns.runConfigs);
+			dying.started(lostRuns.ids);
+		}
+		awaitNoWorkers(tae);
+
+		try(FakeWorker survivor = new FakeWorker(tae.getPort(), "survivor", 4))
+		{
+			FarmMessage runs = survivor.receiveRuns();
+			assertArrayEquals(lostRuns.ids, runs.ids);
+			survivor.started(runs.ids);
+			survivor.answer(runs);
+
+			assertAnswered(rcs, await(outcome));
+		}
+	}
+
+	@Test
+	public void testRequestAbortedAfterMaxAttempts() throws IOException, InterruptedException
+	{
+		tae = getTargetAlgorithmEvaluator(2);
+		BlockingQueue<Object> outcome = submit(tae, runConfigs(3));
+
+		for(int i=0; i < 2; i++)
+		{
+			assertTrue("Request completed early with " + outcome.peek(), outcome.isEmpty());
+			try(FakeWorker dying = new FakeWorker(tae.getPort(), "dying" + i, 3))
+			{
+				dying.started(dying.receiveRuns().ids);
+			}
+			awaitNoWorkers(tae);
+		}
+
+		Object result = await(outcome);
+		assertTrue("Expected an abort but got " + result, result instanceof TargetAlgorithmAbortException);
+		assertTrue(((Exception) result).getMessage(), ((Exception) result).getMessage().contains("was lost with 2 workers"));
+	}
+
+	@Test
+	public void testUnstartedRunsDoNotCountAsAttempts() throws IOException, InterruptedException
+	{
+		tae = getTargetAlgorithmEvaluator(1);
+		List<AlgorithmRunConfiguration> rcs = runConfigs(3);
+		BlockingQueue<Object> outcome = submit(tae, rcs);
+
+		//Dies before starting any run, with one attempt allowed the runs would be aborted if this counted
+		for(int i=0; i < 3; i++)
+		{
+			try(FakeWorker dying = new FakeWorker(tae.getPort(), "dying" + i, 3))
+			{
+				assertEquals(rcs, dying.receiveRuns().runConfigs);
+			}
+			awaitNoWorkers(tae);
+		}
+
+		try(FakeWorker survivor = new FakeWorker(tae.getPort(), "survivor", 3))
+		{
+			FarmMessage runs = survivor.receiveRuns();
+			survivor.started(runs.ids);
+			survivor.answer(runs);
+
+			assertAnswered(rcs, await(outcome));
+		}
+	}
+
+	@Test
+	public void testWorkerWithWrongPasswordIsRejected() throws IOException, InterruptedException
+	{
+		tae = getTargetAlgorithmEvaluator(1);
+		BlockingQueue<Object> outcome = submit(tae, runConfigs(1));
+
+		try(Socket socket = new Socket("127.0.0.1", tae.getPort()))
+		{
+			FarmHandshake.authenticate(socket, "wrong " + PASSWORD, FarmHandshake.WORKER);
+			fail("Coordinator accepted a worker with the wrong password");
+		} catch(IOException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("password"));
+		}
+		assertEquals(0, tae.getWorkerCount());
+
+		try(FakeWorker survivor = new FakeWorker(tae.getPort(), "survivor", 1))
+		{
+			FarmMessage runs = survivor.receiveRuns();
+			survivor.started(runs.ids);
+			survivor.answer(runs);
+			assertTrue(await(outcome) instanceof List);
+		}
+	}
+
+	@Test(expected = ParameterException.class)
+	public void testListeningBeyondLoopbackNeedsPassword()
+	{
+		FarmTargetAlgorithmEvaluatorOptions options = new FarmTargetAlgorithmEvaluatorOptions();
+		options.port = 0;
+		options.bindAddress = "0.0.0.0";
+		tae = new FarmTargetAlgorithmEvaluator(options);
+	}
+
+	/**
+	 * Speaks the worker side of the protocol by hand, so the test decides when a run is started and when the worker dies
+	 */
+	private static class FakeWorker implements Closeable
+	{
+		private final Socket socket;
+		private final ObjectOutputStream out;
+		private final ObjectInputStream in;
+
+		FakeWorker(int port, String name, int slots) throws IOException
+		{
+			socket = new Socket("127.0.0.1", port);
+			socket.setSoTimeout(30000);
+			FarmHandshake.authenticate(socket, PASSWORD, FarmHandshake.WORKER);
+			out = new ObjectOutputStream(socket.getOutputStream());
+			out.flush();
+			in = new FarmObjectInputStream(socket.getInputStream());
+
+			FarmMessage register = new FarmMessage(FarmMessage.Type.REGISTER);
+			register.workerName = name;
+			register.count = slots;
+			send(register);
+
+			FarmMessage pull = new FarmMessage(FarmMessage.Type.PULL);
+			pull.count = slots;
+			send(pull);
+		}
+
+		private void send(FarmMessage message) throws IOException
+		{
+			out.writeObject(message);
+			out.reset();
+			out.flush();
+		}
+
+		FarmMessage receiveRuns() throws IOException
+		{
+			while(true)
+			{
+				FarmMessage message;
+				try {
+					message = (FarmMessage) in.readObject();
+				} catch(ClassNotFoundException e)
+				{
+					throw new IOException(e);
+				}
+
+				if(message.type == FarmMessage.Type.RUNS)
+				{
+					return message;
+				}
+			}
+		}
+
+		void started(long[] ids) throws IOException
+		{
+			for(long id : ids)
+			{
+				FarmMessage started = new FarmMessage(FarmMessage.Type.STARTED);
+				started.id = id;
+				send(started);
+			}
+		}
+
+		void answer(FarmMessage runs) throws IOException
+		{
+			for(int i=0; i < runs.ids.length; i++)
+			{
+				FarmMessage result = new FarmMessage(FarmMessage.Type.RESULT);
+				result.id = runs.ids[i];
+				result.resultString = "Result for ParamILS: SAT, 1, 0, 0, " + runs.runConfigs.get(i).getProblemInstanceSeedPair().getSeed();
+				result.wallclockTime = 1;
+				send(result);
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,401 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.multiplexed;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.StringReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.ExistingAlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunStatus;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.AbstractTargetAlgorithmEvaluator;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluator;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorCallback;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorRunObserver;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.IPCTargetAlgorithmEvaluatorOptions;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.ipc.IPCTargetAlgorithmEvaluatorOptions.IPCMechanism;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.exceptions.TargetAlgorithmAbortException;
+
+import ec.util.MersenneTwister;
+
+/**
+ * Runs must survive the round trip through the codec and a worker, and runs that can not be decoded or keep losing their connection must fail instead of being resubmitted forever
+ */
+public class MultiplexedIPCTest {
+
+	private ParameterConfigurationSpace configSpace;
+	private AlgorithmExecutionConfiguration execConfig;
+	private AlgorithmExecutionConfiguration undecodableExecConfig;
+	private List<ProblemInstance> instances;
+
+	@Before
+	public void setUp()
+	{
+		configSpace = new ParameterConfigurationSpace(new StringReader("x [0, 10] [5]\ny {a,b,c} [a]\n"));
+		execConfig = new AlgorithmExecutionConfiguration("test", ".", configSpace, false, false, 10);
+		undecodableExecConfig = new UndecodableExecutionConfiguration(new ParameterConfigurationSpace(new StringReader("z [0, 10] [5]\n")));
+
+		instances = new ArrayList<ProblemInstance>();
+		for(int i=1; i <= 5; i++)
+		{
+			instances.add(new ProblemInstance("instance" + i, i));
+		}
+	}
+
+	private List<AlgorithmRunConfiguration> runConfigs(AlgorithmExecutionConfiguration execConfig, int from, int to)
+	{
+		MersenneTwister rand = new MersenneTwister(from);
+		List<AlgorithmRunConfiguration> rcs = new ArrayList<AlgorithmRunConfiguration>();
+		for(int i=from; i < to; i++)
+		{
+			rcs.add(new AlgorithmRunConfiguration(new ProblemInstanceSeedPair(instances.get(i % instances.size()), i), 1 + i % 7, execConfig.getParameterConfigurationSpace().getRandomParameterConfiguration(rand), execConfig));
+		}
+		return rcs;
+	}
+
+	private static void assertSameRunConfiguration(AlgorithmRunConfiguration expected, AlgorithmRunConfiguration actual)
+	{
+		assertEquals(expected.getAlgorithmExecutionConfiguration(), actual.getAlgorithmExecutionConfiguration());
+		assertEquals(expected.getProblemInstanceSeedPair(), actual.getProblemInstanceSeedPair());
+		assertEquals(expected.getParameterConfiguration().getFormattedParameterString(), actual.getParameterConfiguration().getFormattedParameterString());
+		assertEquals(expected.getCutoffTime(), actual.getCutoffTime(), 0);
+	}
+
+	private static List<Long> decode(BinaryFrameCodec.Decoder decoder, byte[] frame, List<AlgorithmRunConfiguration> expected) throws IOException
+	{
+		assertEquals(BinaryFrameCodec.SUBMIT, frame[0]);
+		List<Long> requestIds = new ArrayList<Long>();
+		List<AlgorithmRunConfiguration> rcs = decoder.decodeSubmit(BinaryFrameCodec.openFrame(frame), requestIds);
+
+		assertEquals(expected.size(), rcs.size());
+		for(int i=0; i < rcs.size(); i++)
+		{
+			assertSameRunConfiguration(expected.get(i), rcs.get(i));
+		}
+		return requestIds;
+	}
+
+	@Test
+	public void testCodecRoundTrip() throws IOException
+	{
+		BinaryFrameCodec.Encoder encoder = new BinaryFrameCodec.Encoder();
+		BinaryFrameCodec.Decoder decoder = new BinaryFrameCodec.Decoder();
+
+		List<AlgorithmRunConfiguration> first = runConfigs(execConfig, 0, 20);
+		byte[] firstFrame = encoder.encodeSubmit(100, first);
+		assertEquals(Arrays.asList(100L, 101L, 102L), decode(decoder, firstFrame, first).subList(0, 3));
+
+		//Only new definitions are sent, so the second frame is much smaller per run
+		List<AlgorithmRunConfiguration> second = new ArrayList<AlgorithmRunConfiguration>(first.subList(5, 15));
+		byte[] secondFrame = encoder.encodeSubmit(120, second);
+		assertTrue(secondFrame.length < 60 * second.size());
+		List<Long> requestIds = decode(decoder, secondFrame, second);
+		assertEquals(120L, (long) requestIds.get(0));
+		assertEquals(129L, (long) requestIds.get(9));
+
+		long[] ids = { 5, 7 };
+		List<AlgorithmRunResult> runs = new ArrayList<AlgorithmRunResult>();
+		runs.add(new ExistingAlgorithmRunResult(first.get(0), RunStatus.SAT, 1.5, 2, 3.25, 17, "some data", 1.75));
+		runs.add(new ExistingAlgorithmRunResult(first.get(1), RunStatus.TIMEOUT, 10, 0, 0, 18, null, 10.5));
+		byte[] resultFrame = BinaryFrameCodec.encodeResults(ids, runs);
+		assertEquals(BinaryFrameCodec.RESULT, resultFrame[0]);
+
+		final List<AlgorithmRunResult> decoded = new ArrayList<AlgorithmRunResult>();
+		final List<AlgorithmRunConfiguration> rcs = first;
+		BinaryFrameCodec.decodeResults(BinaryFrameCodec.openFrame(resultFrame), new BinaryFrameCodec.ResultHandler()
+		{
+			@Override
+			public AlgorithmRunConfiguration getRunConfiguration(long requestId) {
+				return rcs.get(requestId == 5 ? 0 : 1);
+			}
+
+			@Override
+			public void onResult(long requestId, AlgorithmRunResult run) {
+				decoded.add(run);
+			}
+		});
+
+		assertEquals(2, decoded.size());
+		for(int i=0; i < runs.size(); i++)
+		{
+			assertEquals(runs.get(i).getAlgorithmRunConfiguration(), decoded.get(i).getAlgorithmRunConfiguration());
+			assertEquals(runs.get(i).getRunStatus(), decoded.get(i).getRunStatus());
+			assertEquals(runs.get(i).getRuntime(), decoded.get(i).getRuntime(), 0);
+			assertEquals(runs.get(i).getRunLength(), decoded.get(i).getRunLength(), 0);
+			assertEquals(runs.get(i).getQuality(), decoded.get(i).getQuality(), 0);
+			assertEquals(runs.get(i).getResultSeed(), decoded.get(i).getResultSeed());
+			assertEquals(runs.get(i).getWallclockExecutionTime(), decoded.get(i).getWallclockExecutionTime(), 0);
+		}
+		assertEquals("some data", decoded.get(0).getAdditionalRunData());
+
+		byte[] errorFrame = BinaryFrameCodec.encodeError(ids, "failed");
+		assertEquals(BinaryFrameCodec.ERROR, errorFrame[0]);
+		DataInputStream in = BinaryFrameCodec.openFrame(errorFrame);
+		assertArrayEquals(ids, BinaryFrameCodec.decodeErrorRequestIds(in));
+		assertEquals("failed", BinaryFrameCodec.readString(in));
+	}
+
+	@Test
+	public void testUndecodableDefinitionOnlyFailsItsRuns() throws IOException
+	{
+		BinaryFrameCodec.Encoder encoder = new BinaryFrameCodec.Encoder();
+		BinaryFrameCodec.Decoder decoder = new BinaryFrameCodec.Decoder();
+
+		List<AlgorithmRunConfiguration> good = runConfigs(execConfig, 0, 10);
+		decode(decoder, encoder.encodeSubmit(0, good), good);
+
+		List<AlgorithmRunConfiguration> bad = runConfigs(undecodableExecConfig, 10, 13);
+		byte[] badFrame = encoder.encodeSubmit(10, bad);
+		assertArrayEquals(new long[] { 10, 11, 12 }, BinaryFrameCodec.getSubmitRequestIds(badFrame));
+		try
+		{
+			decoder.decodeSubmit(BinaryFrameCodec.openFrame(badFrame), new ArrayList<Long>());
+			fail("Expected the frame to fail to decode");
+		} catch(BinaryFrameCodec.UndecodableDefinitionException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("execution configuration"));
+		}
+		assertTrue(decoder.isIntact());
+
+		//Definitions of the failed frame still took their ids
+		List<AlgorithmRunConfiguration> more = runConfigs(execConfig, 13, 30);
+		decode(decoder, encoder.encodeSubmit(13, more), more);
+	}
+
+	@Test
+	public void testTruncatedDefinitionsAreNotIntact() throws IOException
+	{
+		BinaryFrameCodec.Encoder encoder = new BinaryFrameCodec.Encoder();
+		BinaryFrameCodec.Decoder decoder = new BinaryFrameCodec.Decoder();
+
+		byte[] frame = encoder.encodeSubmit(0, runConfigs(execConfig, 0, 5));
+		byte[] truncated = Arrays.copyOf(frame, 40);
+		assertEquals(5, BinaryFrameCodec.getSubmitRequestIds(truncated).length);
+
+		try
+		{
+			decoder.decodeSubmit(BinaryFrameCodec.openFrame(truncated), new ArrayList<Long>());
+			fail("Expected the frame to fail to decode");
+		} catch(IOException e)
+		{
+			//Expected
+		}
+		assertFalse(decoder.isIntact());
+	}
+
+	private static IPCTargetAlgorithmEvaluatorOptions getOptions(int port, int maxAttempts)
+	{
+		IPCTargetAlgorithmEvaluatorOptions options = new IPCTargetAlgorithmEvaluatorOptions();
+		options.ipcMechanism = IPCMechanism.MULTIPLEXED_TCP;
+		options.remoteHost = "127.0.0.1";
+		options.remotePort = port;
+		options.multiplexedMaxAttempts = maxAttempts;
+		return options;
+	}
+
+	/**
+	 * @return the results of the request, or the exception it failed with
+	 */
+	private static Object evaluate(TargetAlgorithmEvaluator tae, List<AlgorithmRunConfiguration> rcs) throws InterruptedException
+	{
+		final BlockingQueue<Object> outcome = new ArrayBlockingQueue<Object>(2);
+		tae.evaluateRunsAsync(rcs, new TargetAlgorithmEvaluatorCallback()
+		{
+			@Override
+			public void onSuccess(List<AlgorithmRunResult> runs) {
+				outcome.add(runs);
+			}
+
+			@Override
+			public void onFailure(RuntimeException e) {
+				outcome.add(e);
+			}
+		}, null);
+
+		Object result = outcome.poll(30, TimeUnit.SECONDS);
+		assertNotNull("Request never completed", result);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void assertEchoed(List<AlgorithmRunConfiguration> rcs, Object outcome)
+	{
+		if(outcome instanceof RuntimeException)
+		{
+			throw new AssertionError((RuntimeException) outcome);
+		}
+
+		List<AlgorithmRunResult> runs = (List<AlgorithmRunResult>) outcome;
+		assertEquals(rcs.size(), runs.size());
+		for(int i=0; i < rcs.size(); i++)
+		{
+			assertEquals(rcs.get(i), runs.get(i).getAlgorithmRunConfiguration());
+			assertEquals(rcs.get(i).getCutoffTime() / 2, runs.get(i).getRuntime(), 0);
+			assertEquals(rcs.get(i).getProblemInstanceSeedPair().getSeed(), runs.get(i).getResultSeed());
+			assertEquals(rcs.get(i).getParameterConfiguration().getFormattedParameterString(), runs.get(i).getAdditionalRunData());
+		}
+	}
+
+	@Test
+	public void testWorkerRoundTrip() throws IOException, InterruptedException
+	{
+		try(MultiplexedIPCWorker worker = new MultiplexedIPCWorker(new EchoTargetAlgorithmEvaluator(), 0))
+		{
+			worker.start();
+
+			MultiplexedIPCTargetAlgorithmEvaluator tae = new MultiplexedIPCTargetAlgorithmEvaluator(getOptions(worker.getPort(), 3));
+			try {
+				//Split over several frames and both connections
+				List<AlgorithmRunConfiguration> rcs = runConfigs(execConfig, 0, 150);
+				assertEchoed(rcs, evaluate(tae, rcs));
+
+				Object outcome = evaluate(tae, runConfigs(undecodableExecConfig, 150, 153));
+				assertTrue("Expected an abort but got " + outcome, outcome instanceof TargetAlgorithmAbortException);
+				assertTrue(((Exception) outcome).getMessage(), ((Exception) outcome).getMessage().contains("Could not decode"));
+
+				//The connections are still usable
+				for(int i=0; i < 4; i++)
+				{
+					rcs = runConfigs(execConfig, 200 + 10 * i, 210 + 10 * i);
+					assertEchoed(rcs, evaluate(tae, rcs));
+				}
+			} finally
+			{
+				tae.notifyShutdown();
+			}
+		}
+	}
+
+	@Test
+	public void testRunsLostTooOftenAreAborted() throws IOException, InterruptedException
+	{
+		final AtomicInteger framesDropped = new AtomicInteger(0);
+		final ServerSocket serverSocket = new ServerSocket(0);
+		Thread dropper = new Thread(new Runnable()
+		{
+			@Override
+			public void run() {
+				while(true)
+				{
+					try(Socket socket = serverSocket.accept())
+					{
+						BinaryFrameCodec.readFrame(new DataInputStream(socket.getInputStream()));
+						framesDropped.incrementAndGet();
+					} catch(IOException e)
+					{
+						if(serverSocket.isClosed())
+						{
+							return;
+						}
+					}
+				}
+			}
+		});
+		dropper.setDaemon(true);
+		dropper.start();
+
+		MultiplexedIPCTargetAlgorithmEvaluator tae = new MultiplexedIPCTargetAlgorithmEvaluator(getOptions(serverSocket.getLocalPort(), 4));
+		try {
+			Object outcome = evaluate(tae, runConfigs(execConfig, 0, 5));
+			assertTrue("Expected an abort but got " + outcome, outcome instanceof TargetAlgorithmAbortException);
+			assertTrue(((Exception) outcome).getMessage(), ((Exception) outcome).getMessage().contains("lost with 4 connections"));
+			assertEquals(4, framesDropped.get());
+		} finally
+		{
+			tae.notifyShutdown();
+			serverSocket.close();
+		}
+	}
+
+	/**
+	 * Execution configuration that can be sent but not received
+	 */
+	private static class UndecodableExecutionConfiguration extends AlgorithmExecutionConfiguration
+	{
+		private static final long serialVersionUID = 1L;
+
+		UndecodableExecutionConfiguration(ParameterConfigurationSpace configSpace)
+		{
+			super("undecodable", ".", configSpace, false, false, 10);
+		}
+
+		private void readObject(ObjectInputStream in) throws IOException
+		{
+			throw new InvalidObjectException("Not available on the worker");
+		}
+	}
+
+	/**
+	 * Completes every run immediately, with a runtime of half its cutoff and its configuration as additional run data
+	 */
+	private static class EchoTargetAlgorithmEvaluator extends AbstractTargetAlgorithmEvaluator
+	{
+
+		@Override
+		public List<AlgorithmRunResult> evaluateRun(List<AlgorithmRunConfiguration> runConfigs, TargetAlgorithmEvaluatorRunObserver obs)
+		{
+			List<AlgorithmRunResult> runs = new ArrayList<AlgorithmRunResult>(runConfigs.size());
+			for(AlgorithmRunConfiguration rc : runConfigs)
+			{
+				long seed = rc.getProblemInstanceSeedPair().getSeed();
+				runs.add(new ExistingAlgorithmRunResult(rc, RunStatus.SAT, rc.getCutoffTime() / 2, 0, 0, seed, rc.getParameterConfiguration().getFormattedParameterString(), rc.getCutoffTime() / 2));
+			}
+			return runs;
+		}
+
+		@Override
+		public void evaluateRunsAsync(List<AlgorithmRunConfiguration> runConfigs, TargetAlgorithmEvaluatorCallback callback, TargetAlgorithmEvaluatorRunObserver obs)
+		{
+			callback.onSuccess(evaluateRun(runConfigs, obs));
+		}
+
+		@Override
+		public boolean isRunFinal()
+		{
+			return false;
+		}
+
+		@Override
+		public boolean areRunsPersisted()
+		{
+			return false;
+		}
+
+		@Override
+		public boolean areRunsObservable()
+		{
+			return false;
+		}
+
+		@Override
+		public void notifyShutdown()
+		{
+			//Nothing to clean up
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.ExistingAlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunStatus;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunningAlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.misc.watch.AutoStartStopWatch;
+import ca.ubc.cs.beta.aeatk.options.AbstractOptions;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.AbstractTargetAlgorithmEvaluator;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluator;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorCallback;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorOptions;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorRunObserver;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.init.TargetAlgorithmEvaluatorBuilder;
+
+import ec.util.MersenneTwister;
+
+/**
+ * Compares the per run overhead of the decorator chain built by {@link TargetAlgorithmEvaluatorBuilder} with the nested decorators
+ * against the same chain with <code>--tae-fused-pipeline</code>, and checks that both return the same runs.
+ * <p>
+ * The wrapped TAE completes every run immediately in the calling thread, after one observation, so the times are only the decorators.
+ * <p>
+ * Usage: <code>FusedPipelineBenchmark [runsPerBatch] [batches] [rounds]</code>
+ */
+public class FusedPipelineBenchmark {
+
+	public static void main(String[] args)
+	{
+		int runsPerBatch = (args.length > 0) ? Integer.parseInt(args[0]) : 8;
+		int batches = (args.length > 1) ? Integer.parseInt(args[1]) : 50000;
+		int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+		ParameterConfigurationSpace configSpace = new ParameterConfigurationSpace(new StringReader("x [0, 10] [5]\ny {a,b,c} [a]\n"));
+		AlgorithmExecutionConfiguration execConfig = new AlgorithmExecutionConfiguration("benchmark", ".", configSpace, false, false, 10);
+		ProblemInstance pi = new ProblemInstance("instance", 1);
+
+		Random rand = new MersenneTwister(1);
+		List<List<AlgorithmRunConfiguration>> requests = new ArrayList<List<AlgorithmRunConfiguration>>(batches);
+		for(int i=0; i < batches; i++)
+		{
+			List<AlgorithmRunConfiguration> runConfigs = new ArrayList<AlgorithmRunConfiguration>(runsPerBatch);
+			for(int j=0; j < runsPerBatch; j++)
+			{
+				runConfigs.add(new AlgorithmRunConfiguration(new ProblemInstanceSeedPair(pi, i * runsPerBatch + j), 10, configSpace.getRandomParameterConfiguration(rand), execConfig));
+			}
+			requests.add(runConfigs);
+		}
+
+		TargetAlgorithmEvaluator nested = getTargetAlgorithmEvaluator(false);
+		TargetAlgorithmEvaluator fused = getTargetAlgorithmEvaluator(true);
+
+		if(!evaluate(nested, requests.subList(0, 100), false).equals(evaluate(fused, requests.subList(0, 100), false)))
+		{
+			throw new IllegalStateException("Fused pipeline returned different runs than the nested decorators");
+		}
+
+		for(int round=0; round < rounds; round++)
+		{
+			System.out.println("Round " + (round+1) + ":");
+			for(boolean async : new boolean[] { false, true })
+			{
+				AutoStartStopWatch watch = new AutoStartStopWatch();
+				evaluate(nested, requests, async);
+				long nestedTime = watch.stop();
+
+				watch = new AutoStartStopWatch();
+				evaluate(fused, requests, async);
+				long fusedTime = watch.stop();
+
+				double runs = batches * (double) runsPerBatch;
+				System.out.println(String.format("  %-5s nested %5d ms (%6.0f ns/run), fused %5d ms (%6.0f ns/run)", (async) ? "async" : "sync", nestedTime, nestedTime * 1e6 / runs, fusedTime, fusedTime * 1e6 / runs));
+			}
+		}
+
+		nested.notifyShutdown();
+		fused.notifyShutdown();
+	}
+
+	private static TargetAlgorithmEvaluator getTargetAlgorithmEvaluator(boolean fusedPipeline)
+	{
+		TargetAlgorithmEvaluatorOptions options = new TargetAlgorithmEvaluatorOptions();
+		options.taeFusedPipeline = fusedPipeline;
+		//Every run should reach the wrapped TAE, and some of them crash on purpose
+		options.cacheRuns = false;
+		options.abortOnFirstRunCrash = false;
+		return TargetAlgorithmEvaluatorBuilder.getTargetAlgorithmEvaluator(options, false, true, Collections.<String, AbstractOptions> emptyMap(), new ImmediateTargetAlgorithmEvaluator());
+	}
+
+	/**
+	 * @return the results of all runs as strings, so the two chains can be compared
+	 */
+	private static List<String> evaluate(TargetAlgorithmEvaluator tae, List<List<AlgorithmRunConfiguration>> requests, boolean async)
+	{
+		final List<String> results = new ArrayList<String>();
+		final AtomicInteger observations = new AtomicInteger();
+		TargetAlgorithmEvaluatorRunObserver obs = new TargetAlgorithmEvaluatorRunObserver()
+		{
+			@Override
+			public void currentStatus(List<? extends AlgorithmRunResult> runs) {
+				observations.incrementAndGet();
+			}
+		};
+
+		TargetAlgorithmEvaluatorCallback callback = new TargetAlgorithmEvaluatorCallback()
+		{
+			@Override
+			public void onSuccess(List<AlgorithmRunResult> runs) {
+				add(results, runs);
+			}
+
+			@Override
+			public void onFailure(RuntimeException e) {
+				throw e;
+			}
+		};
+
+		for(List<AlgorithmRunConfiguration> runConfigs : requests)
+		{
+			if(async)
+			{
+				tae.evaluateRunsAsync(runConfigs, callback, obs);
+			} else
+			{
+				add(results, tae.evaluateRun(runConfigs, obs));
+			}
+		}
+		tae.waitForOutstandingEvaluations();
+
+		if(observations.get() == 0)
+		{
+			throw new IllegalStateException("Observer was never notified");
+		}
+		return results;
+	}
+
+	private static void add(List<String> results, List<AlgorithmRunResult> runs)
+	{
+		if(results.size() < 1000)
+		{
+			for(AlgorithmRunResult run : runs)
+			{
+				results.add(run.getRunStatus() + "," + run.getRuntime() + "," + run.getQuality() + "," + run.getAdditionalRunData());
+			}
+		}
+	}
+
+	/**
+	 * Completes every run as soon as it is submitted, every tenth run crashes with a quality of zero
+	 */
+	private static class ImmediateTargetAlgorithmEvaluator extends AbstractTargetAlgorithmEvaluator
+	{
+
+		@Override
+		public List<AlgorithmRunResult> evaluateRun(List<AlgorithmRunConfiguration> runConfigs, TargetAlgorithmEvaluatorRunObserver obs)
+		{
+			if(obs != null)
+			{
+				List<AlgorithmRunResult> running = new ArrayList<AlgorithmRunResult>(runConfigs.size());
+				for(AlgorithmRunConfiguration rc : runConfigs)
+				{
+					running.add(new RunningAlgorithmRunResult(rc, 0.5, 0, 0, rc.getProblemInstanceSeedPair().getSeed(), 0.5, null));
+				}
+				obs.currentStatus(running);
+			}
+
+			List<AlgorithmRunResult> runs = new ArrayList<AlgorithmRunResult>(runConfigs.size());
+			for(AlgorithmRunConfiguration rc : runConfigs)
+			{
+				long seed = rc.getProblemInstanceSeedPair().getSeed();
+				RunStatus status = (seed % 10 == 0) ? RunStatus.CRASHED : RunStatus.SAT;
+				runs.add(new ExistingAlgorithmRunResult(rc, status, 1, 0, 0, seed, "", 1));
+			}
+			runCount.addAndGet(runs.size());
+			return runs;
+		}
+
+		@Override
+		public void evaluateRunsAsync(List<AlgorithmRunConfiguration> runConfigs, TargetAlgorithmEvaluatorCallback callback, TargetAlgorithmEvaluatorRunObserver obs)
+		{
+			List<AlgorithmRunResult> runs;
+			try
+			{
+				runs = evaluateRun(runConfigs, obs);
+			} catch(RuntimeException e)
+			{
+				callback.onFailure(e);
+				return;
+			}
+			callback.onSuccess(runs);
+		}
+
+		@Override
+		public boolean isRunFinal()
+		{
+			return false;
+		}
+
+		@Override
+		public boolean areRunsPersisted()
+		{
+			return false;
+		}
+
+		@Override
+		public boolean areRunsObservable()
+		{
+			return true;
+		}
+
+		@Override
+		public void notifyShutdown()
+		{
+			//Nothing to clean up
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.caching;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.AbstractTargetAlgorithmEvaluator;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorCallback;
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.TargetAlgorithmEvaluatorRunObserver;
+
+/**
+ * Runs that completed with an exception must be evicted by the retention policy like any other finished run
+ */
+public class CachingTargetAlgorithmEvaluatorDecoratorTest {
+
+	private AlgorithmExecutionConfiguration execConfig;
+	private ParameterConfigurationSpace configSpace;
+	private ProblemInstance pi;
+
+	@Before
+	public void setUp()
+	{
+		configSpace = new ParameterConfigurationSpace(new StringReader("x [0, 10] [5]\n"));
+		execConfig = new AlgorithmExecutionConfiguration("test", ".", configSpace, false, false, 10);
+		pi = new ProblemInstance("instance", 1);
+	}
+
+	private AlgorithmRunConfiguration runConfig(long seed)
+	{
+		return new AlgorithmRunConfiguration(new ProblemInstanceSeedPair(pi, seed), 10, configSpace.getDefaultConfiguration(), execConfig);
+	}
+
+	@Test
+	public void testFailedRunsAreEvicted() throws InterruptedException
+	{
+		final Semaphore failures = new Semaphore(0);
+		CachingTargetAlgorithmEvaluatorDecorator cache = new CachingTargetAlgorithmEvaluatorDecorator(new FailingTargetAlgorithmEvaluator(), false, new SizeBoundedRunRetentionPolicy(10, SizeBoundedRunRetentionPolicy.EvictionOrder.LRU, SizeBoundedRunRetentionPolicy.UNIT_WEIGHER), null);
+		try {
+			TargetAlgorithmEvaluatorCallback callback = new TargetAlgorithmEvaluatorCallback()
+			{
+				@Override
+				public void onSuccess(List<AlgorithmRunResult> runs) {
+					//Only failures are expected
+				}
+
+				@Override
+				public void onFailure(RuntimeException e) {
+					failures.release();
+				}
+			};
+
+			for(int i=0; i < 100; i++)
+			{
+				cache.evaluateRunsAsync(Collections.singletonList(runConfig(i)), callback, null);
+				assertTrue(failures.tryAcquire(10, TimeUnit.SECONDS));
+			}
+
+			//The cache evicts right after invoking the callback
+			long deadline = System.currentTimeMillis() + 10000;
+			while(cache.getRetainedRuns() > 10 && System.currentTimeMillis() < deadline)
+			{
+				Thread.sleep(10);
+			}
+			assertTrue("Retained " + cache.getRetainedRuns() + " runs", cache.getRetainedRuns() <= 10);
+			assertTrue(cache.getEvictions() >= 90);
+		} finally
+		{
+			cache.notifyShutdown();
+		}
+	}
+
+	/**
+	 * Fails every request
+	 */
+	private static class FailingTargetAlgorithmEvaluator extends AbstractTargetAlgorithmEvaluator
+	{
+
+		@Override
+		public List<AlgorithmRunResult> evaluateRun(List<AlgorithmRunConfiguration> runConfigs, TargetAlgorithmEvaluatorRunObserver obs)
+		{
+			throw new IllegalStateException("Target algorithm failed");
+		}
+
+		@Override
+		public void evaluateRunsAsync(List<AlgorithmRunConfiguration> runConfigs, TargetAlgorithmEvaluatorCallback callback, TargetAlgorithmEvaluatorRunObserver obs)
+		{
+			callback.onFailure(new IllegalStateException("Target algorithm failed"));
+		}
+
+		@Override
+		public boolean isRunFinal()
+		{
+			return false;
+		}
+
+		@Override
+		public boolean areRunsPersisted()
+		{
+			return false;
+		}
+
+		@Override
+		public boolean areRunsObservable()
+		{
+			return false;
+		}
+
+		@Override
+		public void notifyShutdown()
+		{
+			//Nothing to clean up
+		}
+	}
+}
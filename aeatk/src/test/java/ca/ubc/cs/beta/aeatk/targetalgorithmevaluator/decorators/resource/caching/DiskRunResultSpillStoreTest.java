@@ -0,0 +1,162 @@
+package ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.decorators.resource.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunconfiguration.AlgorithmRunConfiguration;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.ExistingAlgorithmRunResult;
+import ca.ubc.cs.beta.aeatk.algorithmrunresult.RunStatus;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
+import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstanceSeedPair;
+
+/**
+ * Spilled runs must be restored unchanged, and neither the index nor the file of the spill store may grow without bound
+ */
+public class DiskRunResultSpillStoreTest {
+
+	private AlgorithmExecutionConfiguration execConfig;
+	private ParameterConfigurationSpace configSpace;
+	private ProblemInstance pi;
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		configSpace = new ParameterConfigurationSpace(new StringReader("x [0, 10] [5]\n"));
+		execConfig = new AlgorithmExecutionConfiguration("test", ".", configSpace, false, false, 10);
+		pi = new ProblemInstance("instance", 1);
+
+		directory = File.createTempFile("spill-test-", "");
+		assertTrue(directory.delete());
+		assertTrue(directory.mkdirs());
+	}
+
+	@After
+	public void tearDown()
+	{
+		File[] files = directory.listFiles();
+		if(files != null)
+		{
+			for(File f : files)
+			{
+				f.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private AlgorithmRunConfiguration runConfig(long seed)
+	{
+		return new AlgorithmRunConfiguration(new ProblemInstanceSeedPair(pi, seed), 10, configSpace.getDefaultConfiguration(), execConfig);
+	}
+
+	private AlgorithmRunResult run(long seed, String additionalRunData)
+	{
+		return new ExistingAlgorithmRunResult(runConfig(seed), RunStatus.SAT, seed / 10.0, seed, seed * 2.0, seed, additionalRunData, seed / 5.0);
+	}
+
+	private static void assertSameRun(AlgorithmRunResult expected, AlgorithmRunResult actual)
+	{
+		assertNotNull(actual);
+		assertEquals(expected.getAlgorithmRunConfiguration(), actual.getAlgorithmRunConfiguration());
+		assertEquals(expected.getRunStatus(), actual.getRunStatus());
+		assertEquals(expected.getRuntime(), actual.getRuntime(), 0);
+		assertEquals(expected.getRunLength(), actual.getRunLength(), 0);
+		assertEquals(expected.getQuality(), actual.getQuality(), 0);
+		assertEquals(expected.getResultSeed(), actual.getResultSeed());
+		assertEquals(expected.getWallclockExecutionTime(), actual.getWallclockExecutionTime(), 0);
+		assertEquals(expected.getAdditionalRunData(), actual.getAdditionalRunData());
+	}
+
+	@Test
+	public void testRestoredRunIsDropped()
+	{
+		DiskRunResultSpillStore store = new DiskRunResultSpillStore(directory);
+		try {
+			AlgorithmRunResult run = run(3, "extra data é");
+			store.spill(run);
+			assertEquals(1, store.size());
+
+			assertSameRun(run, store.restore(run.getAlgorithmRunConfiguration()));
+			assertEquals(0, store.size());
+			assertNull(store.restore(run.getAlgorithmRunConfiguration()));
+
+			//Spilled anew when evicted again
+			store.spill(run);
+			assertSameRun(run, store.restore(run.getAlgorithmRunConfiguration()));
+		} finally
+		{
+			store.close();
+		}
+	}
+
+	@Test
+	public void testMaximumRunsDropsOldest()
+	{
+		DiskRunResultSpillStore store = new DiskRunResultSpillStore(directory, 10);
+		try {
+			for(int i=0; i < 25; i++)
+			{
+				store.spill(run(i, ""));
+				assertTrue(store.size() <= 10);
+			}
+
+			for(int i=0; i < 15; i++)
+			{
+				assertNull(store.restore(runConfig(i)));
+			}
+
+			for(int i=15; i < 25; i++)
+			{
+				assertSameRun(run(i, ""), store.restore(runConfig(i)));
+			}
+		} finally
+		{
+			store.close();
+		}
+	}
+
+	@Test
+	public void testFileCompactedOnceMostlyDropped()
+	{
+		StringBuilder sb = new StringBuilder();
+		for(int i=0; i < 8192; i++)
+		{
+			sb.append((char) ('a' + i % 26));
+		}
+		String additionalRunData = sb.toString();
+
+		DiskRunResultSpillStore store = new DiskRunResultSpillStore(directory, 100);
+		try {
+			for(int i=0; i < 1000; i++)
+			{
+				store.spill(run(i, additionalRunData + i));
+				assertTrue(store.getFileLength() <= 2 * 100 * 8300 + DiskRunResultSpillStore.COMPACTION_MINIMUM_BYTES + 8300);
+			}
+
+			for(int i=900; i < 1000; i++)
+			{
+				assertSameRun(run(i, additionalRunData + i), store.restore(runConfig(i)));
+			}
+			assertEquals(0, store.size());
+			assertTrue(store.getFileLength() <= DiskRunResultSpillStore.COMPACTION_MINIMUM_BYTES + 8300);
+		} finally
+		{
+			store.close();
+		}
+		assertEquals(0, directory.listFiles().length);
+	}
+}
@@ -0,0 +1,273 @@
+package autoweka;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import weka.attributeSelection.AttributeSelection;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.Remove;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide, bounded LRU cache of finished attribute selections.
+ *
+ * The attribute selection part of the search space is independent of the classifier part, so SMAC keeps asking for
+ * the same evaluator/search pair with a different classifier. Selections are keyed by the evaluator and search classes
+ * and their arguments, plus a fingerprint of the contents of the training data, so a cached selection is only ever
+ * reused on identical data.
+ *
+ * The number of selections kept in memory defaults to 32 and can be changed with the autoweka.attributeSelectionCacheSize
+ * system property (0 disables the cache). If autoweka.attributeSelectionCacheDir is set, selections evicted from memory
+ * are serialized into that directory and read back on a later miss; only the selected indices and the header are written.
+ */
+public class AttributeSelectionCache
+{
+    final static Logger log = LoggerFactory.getLogger(AttributeSelectionCache.class);
+
+    private static class AttributeSelectionCacheLoader {
+        private static final AttributeSelectionCache INSTANCE = new AttributeSelectionCache(
+                Integer.parseInt(System.getProperty("autoweka.attributeSelectionCacheSize", "32")),
+                System.getProperty("autoweka.attributeSelectionCacheDir"));
+    }
+
+    public static AttributeSelectionCache getInstance(){
+        return AttributeSelectionCacheLoader.INSTANCE;
+    }
+
+    /**
+     * The attributes a finished selection kept, which can be applied to any number of datasets with the same header.
+     *
+     * Only the indices and the header are kept, not the fitted AttributeSelection, which holds on to its training data.
+     */
+    public static class Selection
+    {
+        private final int[] mSelectedAttributes;
+        private final Instances mHeader;
+        private final Remove mFilter;
+
+        Selection(int[] selectedAttributes, Instances header) throws Exception
+        {
+            mSelectedAttributes = selectedAttributes.clone();
+            mHeader = new Instances(header, 0);
+            mFilter = new Remove();
+            mFilter.setAttributeIndicesArray(mSelectedAttributes);
+            mFilter.setInvertSelection(true);
+            mFilter.setInputFormat(mHeader);
+        }
+
+        /**
+         * Gets the selected attribute indices, including the class index
+         * @return A copy of the indices.
+         */
+        public int[] getSelectedAttributes()
+        {
+            return mSelectedAttributes.clone();
+        }
+
+        /**
+         * Reduces the data down to the selected attributes
+         * @param data The data, which must have the header the selection was made on.
+         * @return The reduced data.
+         * @throws Exception if the selection cannot be applied.
+         */
+        public Instances reduceDimensionality(Instances data) throws Exception
+        {
+            if(!mHeader.equalHeaders(data))
+                throw new IllegalArgumentException("Data does not match the header the selection was made on: " + mHeader.equalHeadersMsg(data));
+
+            //The filter keeps the batch it is converting, so it is only ever used by one thread at a time
+            synchronized(mFilter) {
+                return Filter.useFilter(data, mFilter);
+            }
+        }
+    }
+
+    private final int mCapacity;
+    private final File mSpillDir;
+    private final Map<String, Selection> mEntries;
+    private long mHits = 0;
+    private long mMisses = 0;
+
+    AttributeSelectionCache(int capacity, String spillDir)
+    {
+        mCapacity = Math.max(0, capacity);
+        mSpillDir = spillDir == null ? null : new File(spillDir);
+        if(mSpillDir != null && !mSpillDir.isDirectory() && !mSpillDir.mkdirs())
+            throw new RuntimeException("Could not create attribute selection cache directory '" + mSpillDir.getAbsolutePath() + "'");
+
+        mEntries = new LinkedHashMap<String, Selection>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Selection> eldest) {
+                if(size() <= mCapacity)
+                    return false;
+                spill(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Builds the key that identifies a selection
+     * @param evalClassName The attribute evaluator class.
+     * @param evalArgs The attribute evaluator arguments.
+     * @param searchClassName The attribute search class.
+     * @param searchArgs The attribute search arguments.
+     * @param dataFingerprint The fingerprint() of the training data the selection is made on.
+     * @return The key.
+     */
+    public static String getKey(String evalClassName, String[] evalArgs, String searchClassName, String[] searchArgs, String dataFingerprint)
+    {
+        return evalClassName + " " + Arrays.toString(evalArgs) + " " + searchClassName + " " + Arrays.toString(searchArgs) + " " + dataFingerprint;
+    }
+
+    /**
+     * Computes a digest of the header, values and weights of the given instances.
+     *
+     * This reads every value, so callers should compute it once per dataset, see InstanceGenerator.getTrainingFingerprint()
+     * @param data The data.
+     * @return The digest as a hex string.
+     */
+    public static String fingerprint(Instances data)
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch(NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        digest.update(new Instances(data, 0).toString().getBytes());
+        ByteBuffer buffer = ByteBuffer.allocate(8 * (data.numAttributes() + 1));
+        for(Instance inst: data)
+        {
+            buffer.clear();
+            buffer.putDouble(inst.weight());
+            for(int i = 0; i < inst.numAttributes(); i++) {
+                buffer.putDouble(inst.value(i));
+            }
+            digest.update(buffer.array(), 0, buffer.position());
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for(byte b: digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Looks up a selection, first in memory and then in the spill directory
+     * @param key The key from getKey().
+     * @return The selection, or null if it has not been made yet.
+     */
+    public Selection get(String key)
+    {
+        Selection selection;
+        synchronized(this) {
+            selection = mEntries.get(key);
+        }
+        if(selection == null)
+            selection = unspill(key);
+
+        synchronized(this) {
+            if(selection == null) {
+                mMisses++;
+            } else {
+                mHits++;
+                if(mCapacity > 0)
+                    mEntries.put(key, selection);
+            }
+        }
+        return selection;
+    }
+
+    /**
+     * Stores a finished selection
+     * @param key The key from getKey().
+     * @param selection A selection that SelectAttributes has completed on; it must not use an attribute transformer, since only the selected indices are kept.
+     * @param header The header of the data the selection was made on.
+     * @return The cached selection.
+     */
+    public Selection put(String key, AttributeSelection selection, Instances header)
+    {
+        Selection entry;
+        try {
+            entry = new Selection(selection.selectedAttributes(), header);
+        } catch(Exception e) {
+            throw new RuntimeException("Attribute selection has not been run", e);
+        }
+
+        synchronized(this) {
+            if(mCapacity > 0)
+                mEntries.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Gets a short description of how well the cache is doing
+     * @return The description.
+     */
+    public synchronized String getStatistics()
+    {
+        return "Attribute selection cache: " + mEntries.size() + " entries, " + mHits + " hits, " + mMisses + " misses";
+    }
+
+    private File getSpillFile(String key)
+    {
+        //Keys hold arbitrary option strings, so name the file after a digest of it
+        try {
+            StringBuilder sb = new StringBuilder();
+            for(byte b: MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"))) {
+                sb.append(String.format("%02x", b));
+            }
+            return new File(mSpillDir, sb.toString() + ".selection");
+        } catch(Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void spill(String key, Selection selection)
+    {
+        if(mSpillDir == null)
+            return;
+
+        File file = getSpillFile(key);
+        try {
+            SerializationHelper.writeAll(file.getAbsolutePath(), new Object[]{ key, selection.mSelectedAttributes, selection.mHeader });
+        } catch(Exception e) {
+            log.warn("Failed to spill attribute selection to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private Selection unspill(String key)
+    {
+        if(mSpillDir == null)
+            return null;
+
+        File file = getSpillFile(key);
+        if(!file.exists())
+            return null;
+        try {
+            Object[] stored = SerializationHelper.readAll(file.getAbsolutePath());
+            if(!key.equals(stored[0]))
+                return null;
+            return new Selection((int[])stored[1], (Instances)stored[2]);
+        } catch(Exception e) {
+            log.warn("Failed to read spilled attribute selection from {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+}
@@ -96,28 +96,62 @@ public class ClassifierResult
         public double getScore(Evaluation eval, Instances testingData);
     }
 
-    public static class ErrorRateMetric implements Metric
+    /**
+     * A metric that can bound its final value while only part of the data has been evaluated, which lets
+     * a cross validation stop once a classifier can no longer beat a known score
+     */
+    public static interface BoundedMetric extends Metric {
+        /**
+         * @param eval The evaluation so far.
+         * @param totalWeight The total weight of the instances the finished evaluation will have seen.
+         * @return A value the score cannot fall below, however the remaining instances are predicted.
+         */
+        public double getLowerBound(Evaluation eval, double totalWeight);
+    }
+
+    public static class ErrorRateMetric implements BoundedMetric
     {
         public double getDefault() { return getInfinity(); }
         public double getScore(Evaluation eval, Instances testingData){
             return eval.errorRate();
         }
+        public double getLowerBound(Evaluation eval, double totalWeight){
+            if(eval.getHeader().classAttribute().isNominal())
+                return eval.incorrect() / totalWeight;
+            return RootMeanSquaredErrorMetric.lowerBound(eval, totalWeight);
+        }
     }
 
-    public static class MeanAbsoluteErrorMetric implements Metric
+    public static class MeanAbsoluteErrorMetric implements BoundedMetric
     {
         public double getDefault() { return getInfinity(); }
         public double getScore(Evaluation eval, Instances testingData){
             return eval.meanAbsoluteError();
         }
+        public double getLowerBound(Evaluation eval, double totalWeight){
+            double evaluated = eval.numInstances() - eval.unclassified();
+            if(evaluated <= 0)
+                return 0;
+            return eval.meanAbsoluteError() * evaluated / totalWeight;
+        }
     }
 
-    public static class RootMeanSquaredErrorMetric implements Metric
+    public static class RootMeanSquaredErrorMetric implements BoundedMetric
     {
         public double getDefault() { return getInfinity(); }
         public double getScore(Evaluation eval, Instances testingData){
             return eval.rootMeanSquaredError();
         }
+        public double getLowerBound(Evaluation eval, double totalWeight){
+            return lowerBound(eval, totalWeight);
+        }
+        static double lowerBound(Evaluation eval, double totalWeight){
+            double evaluated = eval.numInstances() - eval.unclassified();
+            if(evaluated <= 0)
+                return 0;
+            double rmse = eval.rootMeanSquaredError();
+            return Math.sqrt(rmse * rmse * evaluated / totalWeight);
+        }
     }
 
     public static class RelativeAbsoluteErrorMetric implements Metric
@@ -171,12 +205,15 @@ public class ClassifierResult
         }
     }
 
-    public static class IncorrectMetric implements Metric
+    public static class IncorrectMetric implements BoundedMetric
     {
         public double getDefault() { return getInfinity(); }
         public double getScore(Evaluation eval, Instances testingData) {
             return eval.incorrect();
         }
+        public double getLowerBound(Evaluation eval, double totalWeight) {
+            return eval.incorrect();
+        }
     }
 
     public static class CorrelationCoefficientMetric implements Metric
@@ -267,12 +304,15 @@ public class ClassifierResult
         }
     }
 
-    public static class PctIncorrectMetric implements Metric
+    public static class PctIncorrectMetric implements BoundedMetric
     {
         public double getDefault() { return getInfinity(); }
         public double getScore(Evaluation eval, Instances testingData) {
             return eval.pctIncorrect();
         }
+        public double getLowerBound(Evaluation eval, double totalWeight) {
+            return 100 * eval.incorrect() / totalWeight;
+        }
     }
 
     public static class PrecisionMetric implements Metric
@@ -373,6 +413,7 @@ public class ClassifierResult
     private double mAttributeSelectionTime = 0;
     private double mRegularizationPlenalty = 0;
     private boolean mCompleted = false;
+    private boolean mCensored = false;
     private AbstractClassifier mClassifier = null;
     private AttributeSelection mAttributeSelection = null;
     private Metric mMetric = null;
@@ -409,10 +450,51 @@ public class ClassifierResult
         mCompleted = completed;
     }
 
+    /**
+     * Whether the evaluation was given up part way through, in which case the score is only a lower bound on the real one
+     * @return True if the result is censored.
+     */
+    public boolean getCensored() {
+        return mCensored;
+    }
+
     public double getRawScore(){
         return mRawScore;
     }
 
+    /**
+     * Checks whether the metric can bound its score from a partial evaluation
+     * @return True if getScoreLowerBound is meaningful.
+     */
+    public boolean isScoreBounded() {
+        return mMetric instanceof BoundedMetric;
+    }
+
+    /**
+     * Gets a lower bound on the score (including the regularization penalty) that the finished evaluation will have
+     * @param eval The evaluation so far.
+     * @param totalWeight The total weight of the instances the finished evaluation will have seen.
+     * @return The lower bound, or negative infinity if the metric cannot be bounded.
+     */
+    public double getScoreLowerBound(Evaluation eval, double totalWeight) {
+        if(!isScoreBounded())
+            return Double.NEGATIVE_INFINITY;
+        return mRegularizationPlenalty + ((BoundedMetric)mMetric).getLowerBound(eval, totalWeight);
+    }
+
+    /**
+     * Records an evaluation that was given up part way through, keeping the lower bound of the metric as the score
+     * @param eval The evaluation so far.
+     * @param totalWeight The total weight of the instances the finished evaluation would have seen.
+     */
+    public void setScoreLowerBoundFromEval(Evaluation eval, double totalWeight) {
+        evaluation = eval;
+        mRawScore = ((BoundedMetric)mMetric).getLowerBound(eval, totalWeight);
+        mCensored = true;
+        mCompleted = false;
+        setPercentEvaluated(100.0 * (eval.numInstances() / totalWeight));
+    }
+
     public void setScoreFromEval(Evaluation eval, Instances testingData) {
         evaluation = eval;
         mRawScore = mMetric.getScore(eval, testingData);
@@ -16,6 +16,7 @@ import java.util.Properties;
 import weka.attributeSelection.ASEvaluation;
 import weka.attributeSelection.ASSearch;
 import weka.attributeSelection.AttributeSelection;
+import weka.attributeSelection.AttributeTransformer;
 import java.util.Map;
 import java.util.Arrays;
 import java.util.Random;
@@ -44,11 +45,17 @@ public class ClassifierRunner
     private boolean mDisableOutput = false;
     private java.io.PrintStream mSavedOutput = null;
     private String mPredictionsFileName = null;
+    private boolean mParallelFolds = true;
+    private double mQualityBound = Double.POSITIVE_INFINITY;
+    //Runs that save their model also save the attribute selection, which has to be the fitted one
+    private boolean mSavesModel = false;
 
     /**
      * Prepares a runner with the specified properties.
      *
-     * Importantly, you must define 'instanceGenerator' and 'datasetString', while optional properties are 'verbose', 'onlyTest' and 'disableOutput'
+     * Importantly, you must define 'instanceGenerator' and 'datasetString', while optional properties are 'verbose', 'onlyTest', 'disableOutput',
+     * 'parallelFolds' (evaluate the cross validation folds concurrently, on by default) and 'qualityBound' (give up on the cross validation,
+     * reporting a censored result, once the score can no longer come in under this value)
      *
      * @param props Properties to set.
      */
@@ -62,6 +69,13 @@ public class ClassifierRunner
         mTestOnly = Boolean.valueOf(props.getProperty("onlyTest", "false"));
         mDisableOutput = Boolean.valueOf(props.getProperty("disableOutput", "false"));
         mPredictionsFileName = props.getProperty("predictionsFileName", null);
+        mParallelFolds = Boolean.valueOf(props.getProperty("parallelFolds", "true"));
+        mSavesModel = props.getProperty("modelOutputFilePrefix") != null;
+        try{
+            mQualityBound = Double.parseDouble(props.getProperty("qualityBound", "Infinity"));
+        }catch(NumberFormatException e){
+            log.warn("Ignoring invalid quality bound '{}'", props.getProperty("qualityBound"));
+        }
     }
 
     /*
@@ -71,6 +85,13 @@ public class ClassifierRunner
         return mInstanceGenerator;
     }
 
+    /**
+     * Releases the dataset this runner borrowed through its InstanceGenerator; call once the runner is no longer needed
+     */
+    public void release(){
+        mInstanceGenerator.release();
+    }
+
     /** Wrapper method on the runner thread so we can be doubly sure we terminate when we should */
     private class RunnerThread extends WorkerThread
     {
@@ -126,6 +147,13 @@ public class ClassifierRunner
             res.setTrainingTime(time);
         }else {
             runner.stop();
+            //The folds the runner was waiting on ignore interrupts, make sure they go with it
+            try {
+                runner.join(1000);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ParallelCrossValidator.stopFoldThreads(runner);
         }
 
         return runner.result;
@@ -218,51 +246,74 @@ public class ClassifierRunner
                 throw new RuntimeException("Failed to create ASSearch " + attribSearchClassName + ": " + e.getMessage(), e);
             }
 
+            //The same selection is asked for with many different classifiers, so see if it has already been made on this data.
+            //Only the selected indices are cached, which is not enough to replay an attribute transformer
+            boolean useCache = !mSavesModel && !(asEval instanceof AttributeTransformer);
+            AttributeSelectionCache cache = AttributeSelectionCache.getInstance();
+            String cacheKey = null;
+            AttributeSelectionCache.Selection selection = null;
+            long lookupStart = System.currentTimeMillis();
+            if(useCache)
+            {
+                cacheKey = AttributeSelectionCache.getKey(attribEvalClassName, res.getAttributeEvalArgs(), attribSearchClassName, res.getAttributeSearchArgs(), mInstanceGenerator.getTrainingFingerprint());
+                selection = cache.get(cacheKey);
+            }
+
             //Build ourselves a selector
             AttributeSelection attribSelect = new AttributeSelection();
             attribSelect.setEvaluator(asEval);
             attribSelect.setSearch(asSearch);
 
+            if(selection != null)
+            {
+                res.setAttributeSelectionTime((System.currentTimeMillis() - lookupStart) / 1000.0f);
+                log.debug("Reusing cached attribute selection (search {}, eval {})", attribSearchClassName, attribEvalClassName);
+            }
+            else
+            {
+                AttributeSelectorThread asThread = new AttributeSelectorThread(attribSelect, trainingSet);
 
-            AttributeSelectorThread asThread = new AttributeSelectorThread(attribSelect, trainingSet);
+                disableOutput();
+//                float asTime = asThread.runWorker(attribTimeout);
+                float asTime = asThread.runWorker(Integer.MAX_VALUE);
+                enableOutput();
+                res.setAttributeSelectionTime(asTime);
 
-            disableOutput();
-//            float asTime = asThread.runWorker(attribTimeout);
-            float asTime = asThread.runWorker(Integer.MAX_VALUE);
-            enableOutput();
-            res.setAttributeSelectionTime(asTime);
-
-            //If we had to stop/got an exception, we need to report a false run
-            if(asThread.getException() != null || asThread.terminated())
-            {
-                if(asThread.getException() != null)
+                //If we had to stop/got an exception, we need to report a false run
+                if(asThread.getException() != null || asThread.terminated())
                 {
-                    res.setMemOut(asThread.getException().getCause() instanceof OutOfMemoryError);
-                    log.warn("Attribute selection (search {} {}, eval {} {}) failed: {}", attribSearchClassName, argMap.get("attributeeval"), attribEvalClassName, argMap.get("attributesearch"), asThread.getException().getMessage(), asThread.getException());
+                    if(asThread.getException() != null)
+                    {
+                        res.setMemOut(asThread.getException().getCause() instanceof OutOfMemoryError);
+                        log.warn("Attribute selection (search {} {}, eval {} {}) failed: {}", attribSearchClassName, argMap.get("attributeeval"), attribEvalClassName, argMap.get("attributesearch"), asThread.getException().getMessage(), asThread.getException());
+                    }
+
+                    asThread = null;
+                    res.setCompleted(false);
+                    return res;
                 }
-
-                asThread = null;
-                res.setCompleted(false);
-                return res;
+                if(useCache)
+                    selection = cache.put(cacheKey, attribSelect, trainingSet);
             }
-            else
+
+            try
             {
+                //On a cache hit the result gets a selector that has not been fit, the result's selection is refit on the full training set later anyway
                 res.setAttributeSelection(attribSelect);
-                try
-                {
-                    //Filter the instances
-//                    int[] attrs = attribSelect.selectedAttributes();
-//                    log.debug("Using {}% attributes:", (100.0*(attrs.length) / trainingSet.numAttributes()));
-//                    for(int i = 0; i < attrs.length; i++){
-//                        log.debug("{}", i);
-//                    }
-//                    training = attribSelect.reduceDimensionality(training);
-//                    testing = attribSelect.reduceDimensionality(testing);
+
+                //Filter the instances
+//                int[] attrs = attribSelect.selectedAttributes();
+//                log.debug("Using {}% attributes:", (100.0*(attrs.length) / trainingSet.numAttributes()));
+//                for(int i = 0; i < attrs.length; i++){
+//                    log.debug("{}", i);
+//                }
+                if(selection != null)
+                    trainingSet = selection.reduceDimensionality(trainingSet);
+                else
                     trainingSet = attribSelect.reduceDimensionality(trainingSet);
-                    log.debug("Target class: {}", trainingSet.classAttribute());
-                }catch(Exception e){
-                    throw new RuntimeException(e);
-                }
+                log.debug("Target class: {}", trainingSet.classAttribute());
+            }catch(Exception e){
+                throw new RuntimeException(e);
             }
         }
 
@@ -368,14 +419,32 @@ public class ClassifierRunner
         Evaluation eval = null;
         try {
             eval = new Evaluation(trainingSet);
-            eval.crossValidateModel(classifier, trainingSet, foldNo, new Random(seed));
+            double totalWeight = 0;
+            for(Instance inst: trainingSet){
+                if(!inst.classIsMissing())
+                    totalWeight += inst.weight();
+            }
+            ParallelCrossValidator.FoldListener racer = createRacer(res, totalWeight);
+
+            boolean finished = true;
+            if(mParallelFolds || racer != null)
+                finished = ParallelCrossValidator.crossValidateModel(eval, classifier, trainingSet, foldNo, new Random(seed), mParallelFolds, racer);
+            else
+                eval.crossValidateModel(classifier, trainingSet, foldNo, new Random(seed));
 
-            res.setCompleted(true);
-            res.setPercentEvaluated((100.0F * (float)(1.0D - eval.unclassified() / trainingSet.numInstances())));
-            res.setScoreFromEval(eval, trainingSet);
             res.setSeed(seed);
             res.setFoldNo(foldNo);
-            saveConfiguration(res, args, instanceStr);
+            if(finished)
+            {
+                res.setCompleted(true);
+                res.setPercentEvaluated((100.0F * (float)(1.0D - eval.unclassified() / trainingSet.numInstances())));
+                res.setScoreFromEval(eval, trainingSet);
+                saveConfiguration(res, args, instanceStr);
+            }
+            else
+            {
+                res.setScoreLowerBoundFromEval(eval, totalWeight);
+            }
 
         } catch (Exception e) {
             this.log.error("Cannot build model ", e);
@@ -395,6 +464,27 @@ public class ClassifierRunner
         return res;
     }
 
+    /*
+     * Gets a listener that stops the cross validation once the score is known to end up above the quality bound, or null if we can't race
+     */
+    private ParallelCrossValidator.FoldListener createRacer(final ClassifierResult res, final double totalWeight)
+    {
+        if(Double.isInfinite(mQualityBound) || !res.isScoreBounded() || totalWeight <= 0)
+            return null;
+
+        return new ParallelCrossValidator.FoldListener() {
+            @Override
+            public boolean foldCompleted(Evaluation eval, int fold) {
+                double lowerBound = res.getScoreLowerBound(eval, totalWeight);
+                if(lowerBound > mQualityBound) {
+                    log.debug("Score after fold {} is at least {}, which can no longer beat {}", fold, lowerBound, mQualityBound);
+                    return false;
+                }
+                return true;
+            }
+        };
+    }
+
     /*
      * Internal method that performs the evaluation of a classifier on a bunch of instances
      *
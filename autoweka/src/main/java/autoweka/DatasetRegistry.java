@@ -0,0 +1,148 @@
+package autoweka;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import weka.core.Instances;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide, reference counted store of datasets that are already held in memory, keyed by experiment key.
+ *
+ * AutoWEKAClassifier registers its training data here before starting the search, so that the InstanceGenerator built for
+ * every evaluation can borrow the same Instances instead of writing them out and re-parsing an ARFF file each time.
+ * The registered data must be treated as read only by borrowers; InstanceGenerator only ever hands out copies of it.
+ */
+public class DatasetRegistry
+{
+    final static Logger log = LoggerFactory.getLogger(DatasetRegistry.class);
+
+    private static class DatasetRegistryLoader {
+        private static final DatasetRegistry INSTANCE = new DatasetRegistry();
+    }
+
+    public static DatasetRegistry getInstance(){
+        return DatasetRegistryLoader.INSTANCE;
+    }
+
+    /** A registered dataset together with the number of outstanding leases on it */
+    private static class Entry
+    {
+        private final Instances header;
+        private final Instances data;
+        private int references;
+        private String fingerprint;
+
+        Entry(Instances data)
+        {
+            this.data = data;
+            this.header = new Instances(data, 0);
+            this.references = 1;
+        }
+    }
+
+    private final Map<String, Entry> mEntries = new HashMap<String, Entry>();
+
+    DatasetRegistry(){
+    }
+
+    /**
+     * Registers a dataset under the given key, holding one reference on behalf of the caller.
+     *
+     * The registry keeps its own copy of the instance list, so the caller is free to keep using (and modifying) the Instances it passed in.
+     * @param key The experiment key.
+     * @param data The dataset, with its class index already set.
+     */
+    public synchronized void register(String key, Instances data)
+    {
+        if(key == null)
+            throw new IllegalArgumentException("Cannot register a dataset without a key");
+        if(data.classIndex() == -1)
+            throw new IllegalArgumentException("Dataset registered under '" + key + "' has no class index set");
+        if(mEntries.containsKey(key))
+            throw new IllegalStateException("A dataset is already registered under '" + key + "'");
+
+        mEntries.put(key, new Entry(new Instances(data)));
+        log.debug("Registered dataset {} ({} instances)", key, data.numInstances());
+    }
+
+    /**
+     * Borrows the dataset registered under the given key; every call must be matched by a call to release()
+     * @param key The experiment key.
+     * @return The shared instances, which must not be modified.
+     */
+    public synchronized Instances acquire(String key)
+    {
+        Entry entry = mEntries.get(key);
+        if(entry == null)
+            throw new IllegalStateException("No dataset is registered under '" + key + "', it can only be shared within the process that registered it");
+        entry.references++;
+        return entry.data;
+    }
+
+    /**
+     * Gets the header of the dataset registered under the given key without taking a reference
+     * @param key The experiment key.
+     * @return A copy of the header, or null if nothing is registered.
+     */
+    public synchronized Instances getHeader(String key)
+    {
+        Entry entry = mEntries.get(key);
+        if(entry == null)
+            return null;
+        return new Instances(entry.header, 0);
+    }
+
+    /**
+     * Gets the AttributeSelectionCache fingerprint of the dataset registered under the given key, computing it only once per registration
+     * @param key The experiment key.
+     * @return The fingerprint.
+     */
+    public String getFingerprint(String key)
+    {
+        Entry entry;
+        synchronized(this) {
+            entry = mEntries.get(key);
+        }
+        if(entry == null)
+            throw new IllegalStateException("No dataset is registered under '" + key + "'");
+
+        //Hashing reads every value, so do it without holding up the rest of the registry
+        synchronized(entry) {
+            if(entry.fingerprint == null)
+                entry.fingerprint = AttributeSelectionCache.fingerprint(entry.data);
+            return entry.fingerprint;
+        }
+    }
+
+    /**
+     * Returns a reference taken by register() or acquire(), dropping the dataset once nobody holds it any more
+     * @param key The experiment key.
+     */
+    public synchronized void release(String key)
+    {
+        Entry entry = mEntries.get(key);
+        if(entry == null)
+        {
+            log.warn("Released dataset {} which is not registered", key);
+            return;
+        }
+        if(--entry.references <= 0)
+        {
+            mEntries.remove(key);
+            log.debug("Dropped dataset {}", key);
+        }
+    }
+
+    /**
+     * Checks whether a dataset is currently registered under the given key
+     * @param key The experiment key.
+     * @return True if the dataset is registered.
+     */
+    public synchronized boolean contains(String key)
+    {
+        return mEntries.containsKey(key);
+    }
+}
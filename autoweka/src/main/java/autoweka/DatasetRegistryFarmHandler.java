@@ -0,0 +1,64 @@
+package autoweka;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import weka.core.Instances;
+
+import ca.ubc.cs.beta.aeatk.targetalgorithmevaluator.base.farm.FarmDatasetHandler;
+
+/**
+ * Ships the datasets of the DatasetRegistry to the workers of a farm, so that "type=registry" dataset strings resolve on the workers too.
+ *
+ * Datasets installed on a worker stay registered for as long as the worker runs, as the worker can not tell when a search is over.
+ */
+public class DatasetRegistryFarmHandler implements FarmDatasetHandler
+{
+    public byte[] exportDataset(String key)
+    {
+        DatasetRegistry registry = DatasetRegistry.getInstance();
+        if(!registry.contains(key))
+            return null;
+
+        Instances data = registry.acquire(key);
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(data);
+            out.close();
+            return bytes.toByteArray();
+        }
+        catch(IOException e)
+        {
+            throw new RuntimeException("Failed to export dataset '" + key + "': " + e.getMessage(), e);
+        }
+        finally
+        {
+            registry.release(key);
+        }
+    }
+
+    public void installDataset(String key, byte[] dataset)
+    {
+        DatasetRegistry registry = DatasetRegistry.getInstance();
+        synchronized(registry)
+        {
+            if(registry.contains(key))
+                return;
+
+            try
+            {
+                ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(dataset));
+                registry.register(key, (Instances)in.readObject());
+            }
+            catch(IOException | ClassNotFoundException e)
+            {
+                throw new RuntimeException("Failed to install dataset '" + key + "': " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -243,6 +243,9 @@ public abstract class ExperimentConstructor
         mExperiment.callString = getCallString(absExperimentDir);
         mExperiment.envVariables = getEnvVariables();
         mExperiment.toXML(mExperimentPath + File.separator + mExperiment.name + File.separator + mExperiment.name + ".experiment");
+
+        //The generator is only needed while preparing the experiment
+        mInstanceGenerator.release();
     }
 
     /*
@@ -29,6 +29,8 @@ public abstract class InstanceGenerator
 
     private Instances mTraining = null;
     private Instances mTesting = null;
+    private String mRegistryKey = null;
+    private String mTrainingFingerprint = null;
 
     /**
      * Clones an InstanceGenerator from another
@@ -80,6 +82,8 @@ public abstract class InstanceGenerator
                 loadZipFile(props.getProperty("zipFile"), props.getProperty("classIndex", "last"));
             }else if(type.equals("trainTestArff")){
                 loadTrainTestArff(props.getProperty("trainArff"), props.getProperty("testArff"), props.getProperty("classIndex", "last"));
+            }else if(type.equals("registry")){
+                loadRegistry(props.getProperty("experimentKey"));
             }else{
                 throw new RuntimeException("Unhandled type data set type '" + type  + "'");
             }
@@ -180,6 +184,32 @@ public abstract class InstanceGenerator
         }
     }
 
+    /*
+     * Borrows the training data that was registered in memory by the caller, rather than loading it from disk
+     */
+    private void loadRegistry(String experimentKey)
+    {
+        if(experimentKey == null)
+            throw new RuntimeException("Dataset string of type 'registry' does not contain an experimentKey");
+
+        mTraining = DatasetRegistry.getInstance().acquire(experimentKey);
+        mRegistryKey = experimentKey;
+        mTesting = mTraining;
+    }
+
+    /**
+     * Returns the dataset borrowed from the DatasetRegistry, if any.
+     *
+     * The data that this generator already holds stays usable, this only lets the registry drop the dataset once nobody needs it any more
+     */
+    public void release()
+    {
+        if(mRegistryKey == null)
+            return;
+        DatasetRegistry.getInstance().release(mRegistryKey);
+        mRegistryKey = null;
+    }
+
     /**
      * Given a parameter string (generally in the form of a property string), get the training data; if params is 'default', then this method returns the raw training data
      * @param params The parameter string.
@@ -222,6 +252,22 @@ public abstract class InstanceGenerator
         return new Instances(mTraining);
     }
 
+    /**
+     * Gets the AttributeSelectionCache fingerprint of the training data, which is computed once per registered dataset, or once per generator otherwise
+     * @return The fingerprint.
+     */
+    public synchronized String getTrainingFingerprint()
+    {
+        if(mTrainingFingerprint == null)
+        {
+            if(mRegistryKey != null)
+                mTrainingFingerprint = DatasetRegistry.getInstance().getFingerprint(mRegistryKey);
+            else
+                mTrainingFingerprint = AttributeSelectionCache.fingerprint(mTraining);
+        }
+        return mTrainingFingerprint;
+    }
+
     /**
      * Gets a copy of the testing data
      * @return The testing instances.
@@ -0,0 +1,293 @@
+package autoweka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.classifiers.misc.InputMappedClassifier;
+import weka.core.BatchPredictor;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cross validates a classifier with its folds trained and tested concurrently on threads owned by that cross validation.
+ *
+ * The result is identical to Evaluation.crossValidateModel with the same Random: the folds are split up front exactly as
+ * WEKA would split them, every fold trains its own copy of the classifier, and the per-fold results are then recorded
+ * into the caller's Evaluation serially and in fold order, with the priors set from that fold's training data.
+ *
+ * The number of fold threads of a cross validation defaults to the number of available processors, and can be overridden
+ * with the autoweka.foldThreads system property. WEKA learners ignore interrupts, so when the calling thread is interrupted
+ * or stopped (as the RunnerThread of the ClassifierRunner is on a timeout) the fold threads still running are stopped too,
+ * and a fold that never returns can not hold up later evaluations.
+ */
+public class ParallelCrossValidator
+{
+    final static Logger log = LoggerFactory.getLogger(ParallelCrossValidator.class);
+
+    private static final AtomicInteger threadCount = new AtomicInteger(0);
+
+    /** The fold threads of every running parallel cross validation, by the thread that is waiting on them */
+    private static final ConcurrentHashMap<Thread, List<FoldThread>> foldThreadsByOwner = new ConcurrentHashMap<Thread, List<FoldThread>>();
+
+    /**
+     * Gets the number of threads a cross validation trains its folds on
+     * @return The number of threads.
+     */
+    public static int getFoldThreads()
+    {
+        int threads = Runtime.getRuntime().availableProcessors();
+        if(System.getProperty("autoweka.foldThreads") != null) {
+            threads = Math.max(1, Integer.parseInt(System.getProperty("autoweka.foldThreads")));
+        }
+        return threads;
+    }
+
+    /**
+     * Gets told about the evaluation after every fold but the last has been recorded, and can cut the cross validation short
+     */
+    public interface FoldListener
+    {
+        /**
+         * @param eval The evaluation, holding the results of every fold up to and including this one.
+         * @param fold The index of the fold that was just recorded.
+         * @return False to abandon the remaining folds.
+         */
+        public boolean foldCompleted(Evaluation eval, int fold);
+    }
+
+    /** The outcome of training and testing a single fold */
+    private static class FoldResult
+    {
+        private Instances train;
+        private Instances test;
+        private Classifier classifier;
+        private double[][] distributions;
+        private Exception exception;
+        private final CountDownLatch done = new CountDownLatch(1);
+    }
+
+    /** Trains and tests folds in order until there are none left, or the cross validation is over */
+    private static class FoldThread extends WorkerThread
+    {
+        private final List<FoldResult> folds;
+        private final AtomicInteger nextFold;
+        private final boolean predictInTask;
+        private volatile boolean abandoned = false;
+
+        FoldThread(List<FoldResult> folds, AtomicInteger nextFold, boolean predictInTask)
+        {
+            this.folds = folds;
+            this.nextFold = nextFold;
+            this.predictInTask = predictInTask;
+            setName("AutoWEKA Fold Evaluator " + threadCount.incrementAndGet());
+            setDaemon(true);
+        }
+
+        protected void doWork()
+        {
+            int i;
+            while(!abandoned && (i = nextFold.getAndIncrement()) < folds.size())
+            {
+                FoldResult fold = folds.get(i);
+                try {
+                    fold.classifier.buildClassifier(fold.train);
+                    if(predictInTask) {
+                        fold.distributions = distributionsForInstances(fold.classifier, fold.test);
+                    }
+                } catch(Exception e) {
+                    fold.exception = e;
+                } finally {
+                    fold.done.countDown();
+                }
+            }
+        }
+
+        protected String getOpName()
+        {
+            return getName();
+        }
+    }
+
+    /**
+     * Cross validates the classifier, recording the results into eval
+     * @param eval The evaluation to record into.
+     * @param classifier The (untrained) classifier; it is only used as a template and is not modified.
+     * @param data The data to cross validate on.
+     * @param numFolds The number of folds.
+     * @param random The random number generator used to split the data.
+     * @throws Exception if any fold fails, or the calling thread is interrupted.
+     */
+    public static void crossValidateModel(Evaluation eval, Classifier classifier, Instances data, int numFolds, Random random) throws Exception
+    {
+        crossValidateModel(eval, classifier, data, numFolds, random, true, null);
+    }
+
+    /**
+     * Cross validates the classifier, recording the results into eval and stopping early if the listener asks to.
+     *
+     * When run serially the folds are trained one after the other on the calling thread, so abandoning the cross validation
+     * also saves the work of the remaining folds; in parallel, folds that are still running are stopped.
+     * @param eval The evaluation to record into.
+     * @param classifier The (untrained) classifier; it is only used as a template and is not modified.
+     * @param data The data to cross validate on.
+     * @param numFolds The number of folds.
+     * @param random The random number generator used to split the data.
+     * @param parallel Whether to evaluate the folds on threads of their own, rather than on the calling thread.
+     * @param listener Told after each fold but the last is recorded, may be null.
+     * @return True if every fold was recorded, false if the listener stopped the cross validation.
+     * @throws Exception if any fold fails, or the calling thread is interrupted.
+     */
+    public static boolean crossValidateModel(Evaluation eval, Classifier classifier, Instances data, int numFolds, Random random, boolean parallel, FoldListener listener) throws Exception
+    {
+        //Split the data exactly as Evaluation.crossValidateModel does, so the random stream is consumed identically
+        data = new Instances(data);
+        data.randomize(random);
+        if(data.classAttribute().isNominal()) {
+            data.stratify(numFolds);
+        }
+
+        //Predictions can be computed in the fold tasks unless the evaluation needs the classifier itself
+        final boolean predictInTask = data.classAttribute().isNominal() && !(classifier instanceof InputMappedClassifier);
+
+        Classifier[] copies = AbstractClassifier.makeCopies(classifier, numFolds);
+        List<FoldResult> folds = new ArrayList<FoldResult>(numFolds);
+        for(int i = 0; i < numFolds; i++)
+        {
+            FoldResult fold = new FoldResult();
+            fold.train = data.trainCV(numFolds, i, random);
+            fold.test = data.testCV(numFolds, i);
+            fold.classifier = copies[i];
+            folds.add(fold);
+        }
+
+        Thread owner = Thread.currentThread();
+        List<FoldThread> threads = new CopyOnWriteArrayList<FoldThread>();
+        AtomicInteger nextFold = new AtomicInteger(0);
+        try
+        {
+            if(parallel)
+            {
+                foldThreadsByOwner.put(owner, threads);
+                int numThreads = Math.min(numFolds, getFoldThreads());
+                for(int i = 0; i < numThreads; i++)
+                {
+                    //Registered before it starts, so whoever stops the owner can always find it
+                    FoldThread thread = new FoldThread(folds, nextFold, predictInTask);
+                    threads.add(thread);
+                    thread.start();
+                }
+            }
+
+            for(int i = 0; i < numFolds; i++)
+            {
+                FoldResult fold = folds.get(i);
+                if(parallel)
+                {
+                    fold.done.await();
+                    if(fold.exception != null)
+                        throw fold.exception;
+                }
+                else
+                {
+                    fold.classifier.buildClassifier(fold.train);
+                    if(predictInTask) {
+                        fold.distributions = distributionsForInstances(fold.classifier, fold.test);
+                    }
+                }
+
+                eval.setPriors(fold.train);
+                if(fold.distributions != null) {
+                    for(int j = 0; j < fold.test.numInstances(); j++) {
+                        eval.evaluateModelOnceAndRecordPrediction(fold.distributions[j], fold.test.instance(j));
+                    }
+                } else {
+                    eval.evaluateModel(fold.classifier, fold.test);
+                }
+                //Let the fold go as soon as it has been recorded
+                folds.set(i, null);
+
+                if(listener != null && i < numFolds - 1 && !listener.foldCompleted(eval, i))
+                {
+                    log.debug("Abandoning cross validation after {} of {} folds", i + 1, numFolds);
+                    return false;
+                }
+            }
+            return true;
+        }
+        finally
+        {
+            //Only does something if we bailed out early, because we were interrupted, stopped, a fold failed or the listener gave up
+            stopFoldThreads(threads);
+            foldThreadsByOwner.remove(owner, threads);
+        }
+    }
+
+    /**
+     * Stops the fold threads of a cross validation whose calling thread has been stopped, in case it was stopped before it could
+     * stop them itself
+     * @param owner The thread that called crossValidateModel.
+     */
+    public static void stopFoldThreads(Thread owner)
+    {
+        List<FoldThread> threads = foldThreadsByOwner.remove(owner);
+        if(threads != null) {
+            stopFoldThreads(threads);
+        }
+    }
+
+    /*
+     * Stops the fold threads that are still running, WEKA learners rarely check for interrupts so the threads are stopped hard
+     */
+    @SuppressWarnings("deprecation")
+    private static void stopFoldThreads(List<FoldThread> threads)
+    {
+        for(FoldThread thread: threads) {
+            thread.abandoned = true;
+            thread.interrupt();
+        }
+
+        for(FoldThread thread: threads) {
+            if(thread.isAlive()) {
+                log.debug("Stopping {}", thread.getName());
+                thread.stop();
+            }
+        }
+    }
+
+    /*
+     * Mirrors how Evaluation.evaluateModel gets the predictions for a set of instances
+     */
+    private static double[][] distributionsForInstances(Classifier classifier, Instances test) throws Exception
+    {
+        if(classifier instanceof BatchPredictor && ((BatchPredictor)classifier).implementsMoreEfficientBatchPrediction()) {
+            Instances classMissing = new Instances(test);
+            for(int i = 0; i < classMissing.numInstances(); i++) {
+                classMissing.instance(i).setClassMissing();
+            }
+            return ((BatchPredictor)classifier).distributionsForInstances(classMissing);
+        }
+
+        double[][] distributions = new double[test.numInstances()][];
+        for(int i = 0; i < test.numInstances(); i++) {
+            if(Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Fold evaluation interrupted");
+            }
+            Instance classMissing = (Instance)test.instance(i).copy();
+            classMissing.setDataset(test);
+            classMissing.setClassMissing();
+            distributions[i] = classifier.distributionForInstance(classMissing);
+        }
+        return distributions;
+    }
+}
@@ -31,6 +31,7 @@ public abstract class Wrapper
     protected ClassifierRunner mRunner;
     protected Properties mProperties;
     protected String mResultMetric = null;
+    protected String mQualityBound = null;
 
     final Logger log = LoggerFactory.getLogger(Wrapper.class);
 
@@ -62,6 +63,11 @@ public abstract class Wrapper
                 //See if it's telling us to get it from an env variable
                 mExperimentSeed = args.poll();
             }
+            else if(!inWrapper && arg.equals("-qualitybound"))
+            {
+                //The score above which the SMBO method no longer cares about this evaluation
+                mQualityBound = args.poll();
+            }
             else if(!inWrapper && arg.equals("-wrapper"))
             {
                 inWrapper = true;
@@ -126,6 +132,8 @@ public abstract class Wrapper
 
         //Get the properties that were specified on the command line
         Util.parseCommandLineProperties(mProperties, wrapperConstructorArgs);
+        if(mQualityBound != null)
+            mProperties.setProperty("qualityBound", mQualityBound);
 
         //What kind of evaluation type are we using?
         mResultMetric = mProperties.getProperty("resultMetric", null);
@@ -140,17 +148,24 @@ public abstract class Wrapper
         //Build the classifier runner
         mRunner = new ClassifierRunner(mProperties);
 
-        ClassifierResult res = _doRun(wrapperArgs);
+        try
+        {
+            ClassifierResult res = _doRun(wrapperArgs);
 
-        if(res == null) {
-            throw new RuntimeException("Failed compute result!");
-        }
+            if(res == null) {
+                throw new RuntimeException("Failed compute result!");
+            }
 
-        //Post event
-        _postRun();
+            //Post event
+            _postRun();
 
-        //Process the result
-        return _processResults(res);
+            //Process the result
+            return _processResults(res);
+        }
+        finally
+        {
+            mRunner.release();
+        }
     }
 
     /*
@@ -117,6 +117,10 @@ public class SMACExperimentConstructor extends ExperimentConstructor
         args.add("--kill-run-exceeding-captime-factor");
         args.add("2.0");
 
+        //Stop cross validating a challenger once it can no longer beat the incumbent
+        args.add("--quality-racing");
+        args.add(props.getProperty("qualityRacing", "true"));
+
         int coreNo = (Runtime.getRuntime().availableProcessors());
 //        int coreNo = 1;
 
@@ -137,6 +141,31 @@ public class SMACExperimentConstructor extends ExperimentConstructor
         args.add("--cli-experiment-key");
         args.add(mExperiment.experimentKey);
 
+        //Hand the evaluations to a farm of workers (see FarmWorker) instead of evaluating them here
+        if(props.containsKey("farmPort"))
+        {
+            args.add("--tae");
+            args.add("FARM");
+            args.add("--farm-port");
+            args.add(props.getProperty("farmPort"));
+            args.add("--farm-experiment-key");
+            args.add(mExperiment.experimentKey);
+            args.add("--farm-dataset-handler");
+            args.add("autoweka.DatasetRegistryFarmHandler");
+
+            if(props.containsKey("farmBindAddress"))
+            {
+                args.add("--farm-bind-address");
+                args.add(props.getProperty("farmBindAddress"));
+            }
+
+            if(props.containsKey("farmPassword"))
+            {
+                args.add("--farm-password");
+                args.add(props.getProperty("farmPassword"));
+            }
+        }
+
         if(props.containsKey("deterministicInstanceOrdering"))
         {
             //throw new RuntimeException("This option only works on a hacked up version of SMAC");
@@ -168,6 +197,12 @@ public class SMACExperimentConstructor extends ExperimentConstructor
             args.add(props.getProperty("initialChallenge"));
         }
 
+        if(props.containsKey("asyncSMBO"))
+        {
+            args.add("--async-smbo");
+            args.add(props.getProperty("asyncSMBO"));
+        }
+
         if(props.containsKey("stateSerializer"))
         {
             args.add("--stateSerializer");
@@ -54,6 +54,7 @@ public class SMACWrapper extends Wrapper
         //Did we complete?
         String resultStr = "SAT";
         if (!res.getCompleted()) {
+            //A censored result gave up once it could no longer win, so its score is a lower bound
             resultStr = "TIMEOUT";
         }
 
@@ -81,7 +82,7 @@ public class SMACWrapper extends Wrapper
 
         extraResultsSB.append(res.getPercentEvaluated());
 
-        if (!res.getCompleted()) {
+        if (!res.getCompleted() && !res.getCensored()) {
             return null;
         }
 
@@ -9,6 +9,8 @@ public class CrossValidateResultUpdater {
     crossValidateResult.setComplete(res.getCompleted());
     crossValidateResult.setEvaluation(res.getEvaluation());
     crossValidateResult.setClassifier(res.getClassifier());
+    if (res.getClassifier() != null)
+      crossValidateResult.setClassifierClass(res.getClassifier().getClass().getName());
     crossValidateResult.setClassifierArgs(res.getClassiferArgsArray());
     crossValidateResult.setAttributeSelection(res.getAttributeSelection());
     crossValidateResult.setAttributeEval(res.getAttributeEvalClassName());
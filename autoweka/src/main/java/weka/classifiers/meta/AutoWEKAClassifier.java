@@ -17,10 +17,13 @@
 package weka.classifiers.meta;
 
 import autoweka.ClassifierResult;
+import autoweka.DatasetRegistry;
 import autoweka.tools.CrossValidateResultUpdater;
 import ca.ubc.cs.datastore.CrossValidateResult;
 import ca.ubc.cs.datastore.RunResultHistory;
 import ca.ubc.cs.datastore.ValidationResultStore;
+import weka.attributeSelection.ASEvaluation;
+import weka.attributeSelection.ASSearch;
 import weka.attributeSelection.AttributeSelection;
 
 import weka.classifiers.AbstractClassifier;
@@ -30,7 +33,6 @@ import weka.classifiers.Evaluation;
 import weka.core.AdditionalMeasureProducer;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
-import weka.core.converters.ArffSaver;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
@@ -42,7 +44,6 @@ import weka.core.Utils;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.net.URLDecoder;
 
 import java.security.Permission;
 import java.util.Arrays;
@@ -320,6 +321,12 @@ public class AutoWEKAClassifier extends AbstractClassifier implements Additional
 
     protected RunResultHistory runResultHistory;
 
+    /** The number of best evaluated configurations kept in full during the search. */
+    protected int resultHistorySize = RunResultHistory.DEFAULT_MAX_NUMBER_OF_RESULTS;
+
+    /** Whether to keep summaries of the evaluated configurations that are not among the best. */
+    protected boolean keepResultSummaries = false;
+
     /**
      * Main method for testing this class.
      *
@@ -388,6 +395,7 @@ public class AutoWEKAClassifier extends AbstractClassifier implements Additional
     */
     public void buildClassifier(Instances is) throws Exception {
         String experimentKey = UUID.randomUUID().toString();
+        ValidationResultStore.getInstance().createRunResultHistory(experimentKey, this.resultHistorySize, this.keepResultSummaries);
         try {
             if (this.externalModel != null)
                 buildClassifierExternalModel(is, experimentKey);
@@ -399,9 +407,15 @@ public class AutoWEKAClassifier extends AbstractClassifier implements Additional
         if (this.runResultHistory != null && this.runResultHistory.size() > 0) {
             CrossValidateResult result = this.runResultHistory.getBestResult();
             Evaluation eval = result.getEvaluation();
-            this.log.info(" {}, {} ", Double.valueOf(eval.incorrect()), Double.valueOf(eval.pctIncorrect()));
+            if (eval != null)
+                this.log.info(" {}, {} ", Double.valueOf(eval.incorrect()), Double.valueOf(eval.pctIncorrect()));
             this.classifier = (Classifier)result.getClassifier();
             this.as = result.getAttributeSelection();
+            if (this.classifier == null) {
+                // a summary, e.g. from a farm worker which keeps the trained model to itself
+                this.classifier = AbstractClassifier.forName(result.getClassifierClass(), cloneArgs(result.getClassifierArgs()));
+                this.as = buildAttributeSelection(result);
+            }
             this.eval = eval;
             setAttributeEvalClass(result.getAttributeEval());
             setAttributeEvalArgs(result.getAttributeEvalArgs());
@@ -427,6 +441,8 @@ public class AutoWEKAClassifier extends AbstractClassifier implements Additional
             this.classifierArgs = result.getClassifierArgs();
             eval = new Evaluation(is);
             eval.evaluateModel(this.classifier, is, new Object[0]);
+            if (this.eval == null)
+                this.eval = eval;
             Instances newInstances = new Instances(is);
             Evaluation evalOther = new Evaluation(newInstances);
             for (Instance instance : newInstances)
@@ -437,8 +453,30 @@ public class AutoWEKAClassifier extends AbstractClassifier implements Additional
 
     }
 
+    private static String[] cloneArgs(String[] args) {
+        return (args == null) ? new String[0] : args.clone();
+    }
+
+    /**
+    * Recreates the untrained attribute selection of a result that only kept the class names and arguments.
+    *
+    * @param result the result summary.
+    * @return the attribute selection, or null if the result did not use one.
+    * @throws Exception if the evaluator or search could not be created.
+    */
+    private static AttributeSelection buildAttributeSelection(CrossValidateResult result) throws Exception {
+        if (result.getAttributeEval() == null || result.getAttributeSearch() == null)
+            return null;
+        AttributeSelection as = new AttributeSelection();
+        as.setEvaluator(ASEvaluation.forName(result.getAttributeEval(), cloneArgs(result.getAttributeEvalArgs())));
+        as.setSearch(ASSearch.forName(result.getAttributeSearch(), cloneArgs(result.getAttributeSearchArgs())));
+        return as;
+    }
+
     private void buildClassifierInternal(Instances is, String experimentKey) throws Exception {
         getCapabilities().testWithFail(is);
+        // every evaluation borrows the data from memory instead of re-parsing an ARFF copy of it
+        DatasetRegistry.getInstance().register(experimentKey, is);
         try {
             this.estimatedMetricValues = new double[this.parallelRuns];
             this.msExperimentPaths = new String[this.parallelRuns];
@@ -450,14 +488,8 @@ public class AutoWEKAClassifier extends AbstractClassifier implements Additional
                 exp.experimentKey = experimentKey;
                 exp.runCount = this.runCountLimit;
                 exp.resultMetric = this.metric.toString();
-                Properties props = Util.parsePropertyString("type=trainTestArff:testArff=__dummy__");
-                ArffSaver saver = new ArffSaver();
-                saver.setInstances(is);
-                File fp = new File(this.msExperimentPaths[i] + expName + File.separator + expName + ".arff");
-                saver.setFile(fp);
-                saver.writeBatch();
-                props.setProperty("trainArff", URLDecoder.decode(fp.getAbsolutePath()));
-                props.setProperty("classIndex", String.valueOf(is.classIndex()));
+                Properties props = Util.parsePropertyString("type=registry");
+                props.setProperty("experimentKey", experimentKey);
                 exp.datasetString = Util.propertiesToString(props);
                 exp.instanceGenerator = "autoweka.instancegenerators." + String.valueOf(this.resampling);
                 exp.instanceGeneratorArgs = "seed=" + (this.seed + 1) + ":numFolds=" + this.foldNo + ":seed=" + (this.seed + i);
@@ -512,6 +544,8 @@ public class AutoWEKAClassifier extends AbstractClassifier implements Additional
             }
         } catch (Exception e) {
             this.log.error("Result Future: ", e);
+        } finally {
+            DatasetRegistry.getInstance().release(experimentKey);
         }
     }
 
@@ -591,6 +625,12 @@ public class AutoWEKAClassifier extends AbstractClassifier implements Additional
         result.addElement(
                 new Option("\tSkip searching and relay on given parameters\n\t(default: false)",
                         "skipSearch", 1, "-skipSearch"));
+        result.addElement(
+            new Option("\tThe number of best evaluated configurations kept in full during the search.\n" + "\t(default: " + RunResultHistory.DEFAULT_MAX_NUMBER_OF_RESULTS + ")",
+                "resultHistorySize", 1, "-resultHistorySize <size>"));
+        result.addElement(
+            new Option("\tKeep summaries of the evaluated configurations that are not among the best.\n\t(default: false)",
+                "keepResultSummaries", 1, "-keepResultSummaries <true|false>"));
         //result.addElement(
         //    new Option("\tThe type of resampling used.\n" + "\t(default: " + String.valueOf(DEFAULT_RESAMPLING) + ")",
         //        "resampling", 1, "-resampling <resampling>"));
@@ -634,6 +674,10 @@ public class AutoWEKAClassifier extends AbstractClassifier implements Additional
         result.add("" + this.skipSearch);
         result.add("-runCountLimit");
         result.add("" + this.runCountLimit);
+        result.add("-resultHistorySize");
+        result.add("" + this.resultHistorySize);
+        result.add("-keepResultSummaries");
+        result.add("" + this.keepResultSummaries);
         //result.add("-resampling");
         //result.add("" + resampling);
         //result.add("-resamplingArgs");
@@ -718,6 +762,18 @@ public class AutoWEKAClassifier extends AbstractClassifier implements Additional
         } else {
             this.runCountLimit = Integer.MAX_VALUE;
         }
+        tmpStr = Utils.getOption("resultHistorySize", options);
+        if (tmpStr.length() != 0) {
+            this.resultHistorySize = Integer.parseInt(tmpStr);
+        } else {
+            this.resultHistorySize = RunResultHistory.DEFAULT_MAX_NUMBER_OF_RESULTS;
+        }
+        tmpStr = Utils.getOption("keepResultSummaries", options);
+        if (tmpStr.length() != 0) {
+            this.keepResultSummaries = Boolean.valueOf(tmpStr).booleanValue();
+        } else {
+            this.keepResultSummaries = false;
+        }
 
         //tmpStr = Utils.getOption("resampling", options);
         //if (tmpStr.length() != 0) {
@@ -887,6 +943,54 @@ public class AutoWEKAClassifier extends AbstractClassifier implements Additional
         return "How many of the best configurations should be returned as output";
     }
 
+    /**
+     * Set the number of best evaluated configurations kept in full during the search
+     * @param size The number of configurations.
+     */
+    public void setResultHistorySize(int size) {
+        resultHistorySize = size;
+    }
+
+    /**
+     * Get the number of best evaluated configurations kept in full during the search
+     * @return The number of configurations.
+     */
+    public int getResultHistorySize() {
+        return resultHistorySize;
+    }
+
+    /**
+     * Returns the tip text for this property.
+     * @return tip text for this property
+     */
+    public String resultHistorySizeTipText() {
+        return "How many of the best evaluated configurations are kept with their trained classifiers during the search";
+    }
+
+    /**
+     * Set whether to keep summaries of the evaluated configurations that are not among the best
+     * @param keep Whether to keep the summaries.
+     */
+    public void setKeepResultSummaries(boolean keep) {
+        keepResultSummaries = keep;
+    }
+
+    /**
+     * Get whether summaries of the evaluated configurations that are not among the best are kept
+     * @return Whether the summaries are kept.
+     */
+    public boolean getKeepResultSummaries() {
+        return keepResultSummaries;
+    }
+
+    /**
+     * Returns the tip text for this property.
+     * @return tip text for this property
+     */
+    public String keepResultSummariesTipText() {
+        return "Whether to keep the metric value and settings, but not the trained classifier, of evaluated configurations that are not among the best";
+    }
+
     //public void setResampling(Resampling r) {
     //    resampling = r;
     //    resamplingArgs = resamplingArgsMap.get(r);
@@ -0,0 +1,165 @@
+package autoweka;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import weka.attributeSelection.AttributeSelection;
+import weka.attributeSelection.CfsSubsetEval;
+import weka.attributeSelection.GreedyStepwise;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+
+/**
+ * Cached selections must reduce data exactly like the fitted selection they came from, and spill nothing but the selected indices and the header
+ */
+public class AttributeSelectionCacheTest
+{
+    private Instances data;
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+        for(int i = 0; i < 6; i++)
+            attributes.add(new Attribute("x" + i));
+        attributes.add(new Attribute("class", Arrays.asList("a", "b")));
+
+        data = new Instances("data", attributes, 200);
+        data.setClassIndex(6);
+        Random rand = new Random(1);
+        for(int i = 0; i < 200; i++)
+        {
+            double[] values = new double[7];
+            for(int j = 0; j < 6; j++)
+                values[j] = rand.nextDouble();
+            //Only the first two attributes say anything about the class
+            values[6] = (values[0] + values[1] + 0.1 * rand.nextGaussian() > 1) ? 0 : 1;
+            data.add(new DenseInstance(1.0, values));
+        }
+
+        directory = File.createTempFile("selection-cache-test-", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdirs());
+    }
+
+    @After
+    public void tearDown()
+    {
+        File[] files = directory.listFiles();
+        if(files != null)
+        {
+            for(File f : files)
+            {
+                f.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private AttributeSelection select() throws Exception
+    {
+        AttributeSelection selection = new AttributeSelection();
+        selection.setEvaluator(new CfsSubsetEval());
+        selection.setSearch(new GreedyStepwise());
+        selection.SelectAttributes(data);
+        return selection;
+    }
+
+    private static String getKey(String fingerprint)
+    {
+        return AttributeSelectionCache.getKey(CfsSubsetEval.class.getName(), new String[0], GreedyStepwise.class.getName(), new String[0], fingerprint);
+    }
+
+    private static void assertSameInstances(Instances expected, Instances actual)
+    {
+        assertEquals(expected.numAttributes(), actual.numAttributes());
+        assertEquals(expected.numInstances(), actual.numInstances());
+        assertEquals(expected.classIndex(), actual.classIndex());
+        for(int i = 0; i < expected.numInstances(); i++)
+            assertArrayEquals(expected.instance(i).toDoubleArray(), actual.instance(i).toDoubleArray(), 0);
+    }
+
+    @Test
+    public void testReducesLikeFittedSelection() throws Exception
+    {
+        AttributeSelection fitted = select();
+        AttributeSelectionCache cache = new AttributeSelectionCache(4, null);
+        String key = getKey(AttributeSelectionCache.fingerprint(data));
+
+        assertNull(cache.get(key));
+        AttributeSelectionCache.Selection selection = cache.put(key, fitted, data);
+        assertSame(selection, cache.get(key));
+        assertArrayEquals(fitted.selectedAttributes(), selection.getSelectedAttributes());
+        assertTrue(selection.getSelectedAttributes().length < data.numAttributes());
+
+        //The filter is reused, so applying it twice must give the same answer
+        assertSameInstances(fitted.reduceDimensionality(data), selection.reduceDimensionality(data));
+        assertSameInstances(fitted.reduceDimensionality(data), selection.reduceDimensionality(new Instances(data)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsOtherHeader() throws Exception
+    {
+        AttributeSelectionCache.Selection selection = new AttributeSelectionCache(4, null).put("key", select(), data);
+
+        Instances other = new Instances(data);
+        other.deleteAttributeAt(0);
+        selection.reduceDimensionality(other);
+    }
+
+    @Test
+    public void testSpillKeepsOnlyIndicesAndHeader() throws Exception
+    {
+        AttributeSelection fitted = select();
+        AttributeSelectionCache cache = new AttributeSelectionCache(1, directory.getAbsolutePath());
+        String key = getKey(AttributeSelectionCache.fingerprint(data));
+
+        cache.put(key, fitted, data);
+        cache.put(getKey("other"), fitted, data);
+
+        File[] spilled = directory.listFiles();
+        assertEquals(1, spilled.length);
+        for(Object stored : SerializationHelper.readAll(spilled[0].getAbsolutePath()))
+        {
+            if(stored instanceof Instances)
+                assertEquals(0, ((Instances) stored).numInstances());
+            else
+                assertTrue("Spilled " + stored.getClass(), stored instanceof String || stored instanceof int[]);
+        }
+
+        AttributeSelectionCache.Selection selection = cache.get(key);
+        assertNotNull(selection);
+        assertArrayEquals(fitted.selectedAttributes(), selection.getSelectedAttributes());
+        assertSameInstances(fitted.reduceDimensionality(data), selection.reduceDimensionality(data));
+    }
+
+    @Test
+    public void testRegistryFingerprintIsComputedOnce()
+    {
+        DatasetRegistry registry = new DatasetRegistry();
+        registry.register("experiment", data);
+
+        String fingerprint = registry.getFingerprint("experiment");
+        assertEquals(AttributeSelectionCache.fingerprint(data), fingerprint);
+        assertSame(fingerprint, registry.getFingerprint("experiment"));
+
+        registry.release("experiment");
+    }
+}
@@ -0,0 +1,171 @@
+package autoweka;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Evaluation;
+import weka.classifiers.trees.J48;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Parallel cross validation must give the same result as WEKA's, and must not leave a fold that never returns running once its caller is gone
+ */
+public class ParallelCrossValidatorTest
+{
+    private Instances data;
+
+    @Before
+    public void setUp()
+    {
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+        attributes.add(new Attribute("x"));
+        attributes.add(new Attribute("y"));
+        attributes.add(new Attribute("class", Arrays.asList("a", "b")));
+
+        data = new Instances("data", attributes, 60);
+        data.setClassIndex(2);
+        Random rand = new Random(1);
+        for(int i = 0; i < 60; i++)
+        {
+            double x = rand.nextDouble();
+            double y = rand.nextDouble();
+            double cls = (x + 0.3 * rand.nextGaussian() > y) ? 0 : 1;
+            data.add(new DenseInstance(1.0, new double[] { x, y, cls }));
+        }
+
+        HangingClassifier.hangNext.set(false);
+        HangingClassifier.hung = null;
+    }
+
+    @Test
+    public void testSameResultAsWeka() throws Exception
+    {
+        Evaluation expected = new Evaluation(data);
+        expected.crossValidateModel(new J48(), data, 10, new Random(3));
+
+        Evaluation actual = new Evaluation(data);
+        assertTrue(ParallelCrossValidator.crossValidateModel(actual, new J48(), data, 10, new Random(3), true, null));
+
+        assertEquals(expected.pctCorrect(), actual.pctCorrect(), 0);
+        assertEquals(expected.weightedAreaUnderROC(), actual.weightedAreaUnderROC(), 0);
+        assertEquals(expected.numInstances(), actual.numInstances(), 0);
+    }
+
+    @Test
+    public void testHungFoldStoppedWithInterruptedCaller() throws Exception
+    {
+        Thread caller = startHangingCrossValidation();
+        caller.interrupt();
+
+        assertCallerAndFoldGone(caller);
+        testSameResultAsWeka();
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testHungFoldStoppedWithStoppedCaller() throws Exception
+    {
+        Thread caller = startHangingCrossValidation();
+
+        //What ClassifierRunner does with a runner thread that is still going after its timeout
+        caller.stop();
+        caller.join(10000);
+        ParallelCrossValidator.stopFoldThreads(caller);
+
+        assertCallerAndFoldGone(caller);
+        testSameResultAsWeka();
+    }
+
+    /*
+     * Starts a cross validation on its own thread, and returns once one of its folds is stuck
+     */
+    private Thread startHangingCrossValidation() throws InterruptedException
+    {
+        HangingClassifier.hangNext.set(true);
+        HangingClassifier.started = new CountDownLatch(1);
+
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ParallelCrossValidator.crossValidateModel(new Evaluation(data), new HangingClassifier(), data, 5, new Random(1), true, null);
+                } catch(Exception e) {
+                    //Expected once interrupted
+                }
+            }
+        });
+        caller.setDaemon(true);
+        caller.start();
+
+        assertTrue("No fold ever started", HangingClassifier.started.await(30, TimeUnit.SECONDS));
+        return caller;
+    }
+
+    private static void assertCallerAndFoldGone(Thread caller) throws InterruptedException
+    {
+        caller.join(10000);
+        assertFalse("Caller still waiting on its folds", caller.isAlive());
+
+        Thread hung = HangingClassifier.hung;
+        assertNotNull(hung);
+        hung.join(10000);
+        assertFalse("Hung fold is still running", hung.isAlive());
+    }
+
+    /**
+     * Never returns from its first build, ignoring interrupts like most WEKA learners, and predicts the first class otherwise
+     */
+    private static class HangingClassifier extends AbstractClassifier
+    {
+        private static final long serialVersionUID = 1L;
+
+        static final AtomicBoolean hangNext = new AtomicBoolean(false);
+        static volatile CountDownLatch started;
+        static volatile Thread hung;
+
+        private int numClasses;
+
+        @Override
+        public void buildClassifier(Instances data) throws Exception
+        {
+            numClasses = data.numClasses();
+            if(hangNext.compareAndSet(true, false))
+            {
+                hung = Thread.currentThread();
+                started.countDown();
+                while(true)
+                {
+                    try {
+                        Thread.sleep(1000);
+                    } catch(InterruptedException e) {
+                        //Ignored on purpose
+                    }
+                }
+            }
+        }
+
+        @Override
+        public double[] distributionForInstance(Instance instance)
+        {
+            double[] distribution = new double[numClasses];
+            distribution[0] = 1;
+            return distribution;
+        }
+    }
+}
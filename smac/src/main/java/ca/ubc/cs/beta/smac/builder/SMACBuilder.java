@@ -43,12 +43,15 @@ import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
 import ca.ubc.cs.beta.aeatk.probleminstance.seedgenerator.InstanceSeedGenerator;
 import ca.ubc.cs.beta.aeatk.random.SeedableRandomPool;
 import ca.ubc.cs.beta.aeatk.random.SeedableRandomPoolConstants;
+import ca.ubc.cs.beta.aeatk.runhistory.ColumnarRunHistory;
+import ca.ubc.cs.beta.aeatk.runhistory.ConcurrentRunHistory;
 import ca.ubc.cs.beta.aeatk.runhistory.FileSharingRunHistoryDecorator;
 import ca.ubc.cs.beta.aeatk.runhistory.NewRunHistory;
 import ca.ubc.cs.beta.aeatk.runhistory.RunHistory;
 import ca.ubc.cs.beta.aeatk.runhistory.TeeRunHistory;
 import ca.ubc.cs.beta.aeatk.runhistory.ThreadSafeRunHistory;
 import ca.ubc.cs.beta.aeatk.runhistory.ThreadSafeRunHistoryWrapper;
+import ca.ubc.cs.beta.aeatk.runhistory.ThreadSafeTeeRunHistory;
 import ca.ubc.cs.beta.aeatk.smac.ExecutionMode;
 import ca.ubc.cs.beta.aeatk.smac.SMACOptions;
 import ca.ubc.cs.beta.aeatk.state.StateDeserializer;
@@ -194,20 +197,23 @@ public class SMACBuilder {
 
 
 
-		RunHistory rhROAR = new NewRunHistory(options.scenarioConfig.getIntraInstanceObjective(), options.scenarioConfig.interInstanceObj, options.scenarioConfig.getRunObjective());
+		RunHistory rhROAR = getRunHistory(options);
 		
 		
 		ThreadSafeRunHistory rhModel;
 		
+		//Run history the model data ends up in
+		RunHistory modelStore;
 		
 		//Make threadsafe
 		if(oRHModel == null)
 		{
-			rhModel= new ThreadSafeRunHistoryWrapper(new NewRunHistory(options.scenarioConfig.getIntraInstanceObjective(), options.scenarioConfig.interInstanceObj, options.scenarioConfig.getRunObjective()));;
+			modelStore = getRunHistory(options);
 		} else
 		{
-			rhModel = new ThreadSafeRunHistoryWrapper(oRHModel);
+			modelStore = oRHModel;
 		}
+		rhModel = makeThreadSafe(modelStore);
 		
 		
 		switch(options.execMode)
@@ -228,17 +234,27 @@ public class SMACBuilder {
 		{
 			//Don't make a seperate run history 
 			
-			rh = new ThreadSafeRunHistoryWrapper(new FileSharingRunHistoryDecorator(rhROAR,new File(outputDir), options.seedOptions.numRun, instances, options.shareRunDataFrequency * 1000, options.shareModelMode, options.sharedModeModeAssymetricMode, options.defaultHandler, options.writeRunData));
+			FileSharingRunHistoryDecorator fileSharingRH = new FileSharingRunHistoryDecorator(rhROAR,new File(outputDir), options.seedOptions.numRun, instances, options.shareRunDataFrequency * 1000, options.shareModelMode, options.sharedModeModeAssymetricMode, options.defaultHandler, options.writeRunData, options.sharedModelModeTransport, options.sharedModelModeJsonExport, options.sharedModelModeSegmentRuns);
+			
+			//The decorator reads a ConcurrentRunHistory without its lock, another wrapper would put the reads behind a lock again
+			rh = (rhROAR instanceof ConcurrentRunHistory) ? fileSharingRH : new ThreadSafeRunHistoryWrapper(fileSharingRH);
 			rhModel = rh;
+			modelStore = rhROAR;
 			
 			log.debug("No warm started data, and shared model mode is false using single run data object");
 		} else
 		{
 			//It's important that the FileSharingRunHistoryDecorator go on the rhModel object, and not the rh object, because some runs may
 			//be sent only to the model.
-			rhModel = new FileSharingRunHistoryDecorator(rhModel,new File(outputDir), options.seedOptions.numRun, instances, options.shareRunDataFrequency * 1000, options.shareModelMode, options.sharedModeModeAssymetricMode, options.defaultHandler, options.writeRunData);
+			rhModel = new FileSharingRunHistoryDecorator(rhModel,new File(outputDir), options.seedOptions.numRun, instances, options.shareRunDataFrequency * 1000, options.shareModelMode, options.sharedModeModeAssymetricMode, options.defaultHandler, options.writeRunData, options.sharedModelModeTransport, options.sharedModelModeJsonExport, options.sharedModelModeSegmentRuns);
 			
-			rh = new ThreadSafeRunHistoryWrapper(new TeeRunHistory(rhROAR, rhModel));
+			if(rhROAR instanceof ConcurrentRunHistory)
+			{
+				rh = new ThreadSafeTeeRunHistory((ConcurrentRunHistory) rhROAR, rhModel);
+			} else
+			{
+				rh = new ThreadSafeRunHistoryWrapper(new TeeRunHistory(rhROAR, rhModel));
+			}
 
 		}
 
@@ -360,7 +376,9 @@ public class SMACBuilder {
 			case SMAC:
 				
 				
-				smac = new SequentialModelBasedAlgorithmConfiguration(options, execConfig, instances, acTae, options.expFunc.getFunction(),sf, configSpace, instanceSeedGen, initialIncumbent, initialChallengers, eventManager, rh,pool, termCond, configTracker, initProc, rhModel, cpuTime);
+				//Every run reaches a concurrent store through the decorators around it, and it snapshots consistently without their locks
+				RunHistory rhModelToLearnFrom = (modelStore instanceof ConcurrentRunHistory) ? modelStore : rhModel;
+				smac = new SequentialModelBasedAlgorithmConfiguration(options, execConfig, instances, acTae, options.expFunc.getFunction(),sf, configSpace, instanceSeedGen, initialIncumbent, initialChallengers, eventManager, rh,pool, termCond, configTracker, initProc, rhModelToLearnFrom, cpuTime);
 
 				break;
 			case PSEL:
@@ -415,6 +433,40 @@ public class SMACBuilder {
 		
 	}
 		
+	/**
+	 * Makes a run history safe to share between threads
+	 * @param runHistory	run history to share
+	 * @return the run history itself if it is a {@link ConcurrentRunHistory}, whose reads never block, otherwise the run history behind a read write lock
+	 */
+	private static ThreadSafeRunHistory makeThreadSafe(RunHistory runHistory)
+	{
+		if(runHistory instanceof ConcurrentRunHistory)
+		{
+			return (ConcurrentRunHistory) runHistory;
+		}
+		return new ThreadSafeRunHistoryWrapper(runHistory);
+	}
+	
+	/**
+	 * Creates an empty run history of the kind selected by <code>--run-history-store</code>
+	 * @param options	options of this run
+	 * @return empty run history for the scenario's objectives
+	 */
+	private static RunHistory getRunHistory(SMACOptions options)
+	{
+		switch(options.runHistoryStore)
+		{
+			case MAP:
+				return new NewRunHistory(options.scenarioConfig.getIntraInstanceObjective(), options.scenarioConfig.interInstanceObj, options.scenarioConfig.getRunObjective());
+			case COLUMNAR:
+				return new ColumnarRunHistory(options.scenarioConfig.getIntraInstanceObjective(), options.scenarioConfig.interInstanceObj, options.scenarioConfig.getRunObjective());
+			case CONCURRENT:
+				return new ConcurrentRunHistory(options.scenarioConfig.getIntraInstanceObjective(), options.scenarioConfig.interInstanceObj, options.scenarioConfig.getRunObjective());
+			default:
+				throw new IllegalStateException("Run history store not supported: " + options.runHistoryStore);
+		}
+	}
+	
 	/**
 	 * Validates the various objective functions and ensures that they are legal together
 	 * @param scenarioOptions
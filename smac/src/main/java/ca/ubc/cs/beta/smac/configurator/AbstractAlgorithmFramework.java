@@ -13,9 +13,8 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -46,6 +45,7 @@ import ca.ubc.cs.beta.aeatk.misc.cputime.CPUTime;
 import ca.ubc.cs.beta.aeatk.misc.watch.AutoStartStopWatch;
 import ca.ubc.cs.beta.aeatk.misc.watch.StopWatch;
 import ca.ubc.cs.beta.aeatk.objectives.OverallObjective;
+import ca.ubc.cs.beta.aeatk.objectives.RunObjective;
 import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
 import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
 import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration.ParameterStringFormat;
@@ -147,6 +147,11 @@ public class AbstractAlgorithmFramework {
 	
 	private final String objectiveToReport;
 	
+	/**
+	 * Runs challenges during intensification, lives as long as the configurator
+	 */
+	private final IntensificationScheduler intensificationScheduler;
+	
 
 	public AbstractAlgorithmFramework(SMACOptions smacOptions, AlgorithmExecutionConfiguration execConfig, List<ProblemInstance> instances, TargetAlgorithmEvaluator algoEval, StateFactory stateFactory, ParameterConfigurationSpace configSpace, InstanceSeedGenerator instanceSeedGen, ParameterConfiguration initialIncumbent, List<ParameterConfiguration> initialChallengers, EventManager manager, ThreadSafeRunHistory rh, SeedableRandomPool pool, CompositeTerminationCondition termCond, ParamConfigurationOriginTracker originTracker, InitializationProcedure initProc, CPUTime cpuTime )
 	{
@@ -241,6 +246,8 @@ public class AbstractAlgorithmFramework {
 		this.configTracker = originTracker;
 		this.initProc = initProc;
 		
+		this.intensificationScheduler = new IntensificationScheduler((options.validationCores != null)?options.validationCores:Runtime.getRuntime().availableProcessors());
+		
 		if(options.saveRunsEveryIteration && options.scenarioConfig.algoExecOptions.cutoffTime <= 600)
 		{
 			log.warn("Saving runs every iteration is discouraged for small cap times and may cause a significant amount of overhead due to file I/O.");
@@ -558,38 +565,44 @@ public class AbstractAlgorithmFramework {
 					}
 				}
 				try{
-					while(!have_to_stop(iteration+1))
+					if(isAsynchronous())
 					{
-						log.info("After check have to stop");
-						shouldWriteStateOnCrash.set(true);
-						if(shouldSave()) saveState();
+						runAsynchronously();
+					} else
+					{
+						while(!have_to_stop(iteration+1))
+						{
+							log.info("After check have to stop");
+							shouldWriteStateOnCrash.set(true);
+							if(shouldSave()) saveState();
 						
 						
-						runHistory.incrementIteration();
-						iteration++;
-						log.debug("Starting Iteration {}", iteration);
+							runHistory.incrementIteration();
+							iteration++;
+							log.debug("Starting Iteration {}", iteration);
 						
-						fireEvent(new IterationStartEvent(termCond, iteration));
-						fireEvent(new ModelBuildStartEvent(termCond));
+							fireEvent(new IterationStartEvent(termCond, iteration));
+							fireEvent(new ModelBuildStartEvent(termCond));
 						
-						StopWatch t = new AutoStartStopWatch();
-						learnModel(runHistory, configSpace);
-						log.trace("Model Learn Time: {} (s)", t.time() / 1000.0);
+							StopWatch t = new AutoStartStopWatch();
+							learnModel(runHistory, configSpace);
+							log.trace("Model Learn Time: {} (s)", t.time() / 1000.0);
 						
-						fireEvent(new ModelBuildEndEvent(termCond, getModel(), options.randomForestOptions.logModel));
-						ArrayList<ParameterConfiguration> challengers = new ArrayList<ParameterConfiguration>();
-						challengers.addAll(selectConfigurations());
+							fireEvent(new ModelBuildEndEvent(termCond, getModel(), options.randomForestOptions.logModel));
+							ArrayList<ParameterConfiguration> challengers = new ArrayList<ParameterConfiguration>();
+							challengers.addAll(selectConfigurations());
 						
 
-						double learnModelTime = t.stop()/1000.0;
+							double learnModelTime = t.stop()/1000.0;
 						
-						double intensifyTime = Math.ceil( learnModelTime) * (options.intensificationPercentage / (1.0-options.intensificationPercentage));
+							double intensifyTime = Math.ceil( learnModelTime) * (options.intensificationPercentage / (1.0-options.intensificationPercentage));
 						
-						intensify(challengers, intensifyTime);
+							intensify(challengers, intensifyTime);
 						
-						logIncumbent(iteration);
+							logIncumbent(iteration);
 						
-					} 
+						} 
+					}
 				} catch(OutOfTimeException e){
 					// We're out of time.
 					logIncumbent(iteration);
@@ -623,6 +636,10 @@ public class AbstractAlgorithmFramework {
 		{
 			fireEvent(new AutomaticConfigurationEnd(termCond, incumbent, currentIncumbentCost));
 			
+			intensificationScheduler.shutdown();
+			releaseResources();
+			stateFactory.shutdown();
+			
 			if(options.shutdownTAEWhenDone)
 			{
 				tae.notifyShutdown();
@@ -640,6 +657,14 @@ public class AbstractAlgorithmFramework {
 		//ROAR mode
 	}
 
+	/**
+	 * Called once the configurator is done, subclasses shut down the threads they own here
+	 */
+	protected void releaseResources()
+	{
+		//ROAR mode
+	}
+
 	
 	public String logIncumbentPerformance(SortedMap<TrajectoryFileEntry, ValidationResult> tfePerformance)
 	{
@@ -745,6 +770,175 @@ public class AbstractAlgorithmFramework {
 		configTracker.addConfiguration(config, "RANDOM", "SelectionCount="+ selectionCount);
 		return Collections.singletonList(config);
 	}
+	/**
+	 * Whether the main loop should overlap model building with intensification instead of alternating between them
+	 * @return <code>true</code> to use {@link #runAsynchronously()}
+	 */
+	protected boolean isAsynchronous()
+	{
+		return false;
+	}
+	
+	/**
+	 * Main loop without a barrier between model building and intensification.
+	 * <p>
+	 * The intensification workers keep pulling challengers off a shared queue, and their runs stream into the run history as they finish.
+	 * Meanwhile this thread refits the model once enough challenges have finished since the last fit (or the queue runs dry),
+	 * and replaces whatever is still queued with challengers selected from the new model.
+	 */
+	private void runAsynchronously()
+	{
+		final LinkedBlockingDeque<ParameterConfiguration> challengerQueue = new LinkedBlockingDeque<ParameterConfiguration>();
+		final AtomicBoolean stopWorkers = new AtomicBoolean(false);
+		final Object challengeCompleted = new Object();
+		
+		final int numberOfThread = intensificationScheduler.getNumberOfThreads();
+		final int refitAfter = (options.asyncRefitChallenges != null) ? options.asyncRefitChallenges : numberOfThread;
+		
+		List<Runnable> workers = new ArrayList<Runnable>(numberOfThread);
+		for(int i =0; i<numberOfThread; i++) {
+			workers.add(new Runnable() {
+				
+				@Override
+				public void run() {
+					log.debug("Start asynchronous intensification worker : {}", Thread.currentThread().getId());
+					try {
+						while(!stopWorkers.get())
+						{
+							ParameterConfiguration challenger;
+							try {
+								challenger = challengerQueue.poll(1, TimeUnit.SECONDS);
+							} catch(InterruptedException e)
+							{
+								Thread.currentThread().interrupt();
+								return;
+							}
+							
+							if(challenger == null)
+							{
+								continue;
+							}
+							
+							challenger.lock();
+							intensificationScheduler.challengeStarted();
+							try {
+								challengeIncumbent(challenger);
+							} finally
+							{
+								intensificationScheduler.challengeFinished();
+								synchronized(challengeCompleted)
+								{
+									challengeCompleted.notifyAll();
+								}
+							}
+						}
+					} catch(OutOfTimeException e) {
+						log.debug("OutOfTime happen and need to stop");
+						stopWorkers.set(true);
+					} finally
+					{
+						//Wake the main loop so it notices as soon as the last worker is gone
+						synchronized(challengeCompleted)
+						{
+							challengeCompleted.notifyAll();
+						}
+					}
+				}
+			});
+		}
+		
+		List<Future<?>> runningWorkers = null;
+		try {
+			while(!stopWorkers.get() && !have_to_stop(iteration+1))
+			{
+				shouldWriteStateOnCrash.set(true);
+				if(shouldSave()) saveState();
+				
+				runHistory.incrementIteration();
+				iteration++;
+				log.debug("Starting Iteration {}", iteration);
+				
+				fireEvent(new IterationStartEvent(termCond, iteration));
+				fireEvent(new ModelBuildStartEvent(termCond));
+				
+				StopWatch t = new AutoStartStopWatch();
+				long challengesAtFit = intensificationScheduler.getCompletedChallenges();
+				learnModel(runHistory, configSpace);
+				log.trace("Model Learn Time: {} (s)", t.time() / 1000.0);
+				
+				fireEvent(new ModelBuildEndEvent(termCond, getModel(), options.randomForestOptions.logModel));
+				List<ParameterConfiguration> challengers = selectConfigurations();
+				
+				//Challengers selected from an older model are not worth running once newer ones are available
+				challengerQueue.clear();
+				challengerQueue.addAll(challengers);
+				log.debug("Iteration {}: queued {} challengers after {} (s), {} challenges active", iteration, challengers.size(), t.stop() / 1000.0, intensificationScheduler.getActiveChallenges());
+				
+				if(runningWorkers == null)
+				{
+					runningWorkers = intensificationScheduler.submitAll(workers);
+				}
+				
+				logIncumbent(iteration);
+				
+				synchronized(challengeCompleted)
+				{
+					while(!stopWorkers.get() && !have_to_stop(iteration+1))
+					{
+						if(allTerminated(runningWorkers))
+						{
+							//Rethrows whatever killed the workers
+							intensificationScheduler.awaitAll(runningWorkers);
+							if(!stopWorkers.get())
+							{
+								throw new IllegalStateException("All asynchronous intensification workers have terminated");
+							}
+							break;
+						}
+						
+						long newChallenges = intensificationScheduler.getCompletedChallenges() - challengesAtFit;
+						if(newChallenges >= refitAfter || (newChallenges > 0 && challengerQueue.isEmpty()))
+						{
+							break;
+						}
+						
+						try {
+							challengeCompleted.wait(1000);
+						} catch(InterruptedException e)
+						{
+							Thread.currentThread().interrupt();
+							throw new IllegalStateException("Interrupted while waiting for challenges to finish", e);
+						}
+					}
+				}
+			}
+		} finally
+		{
+			stopWorkers.set(true);
+			challengerQueue.clear();
+			if(runningWorkers != null)
+			{
+				intensificationScheduler.awaitAll(runningWorkers);
+			}
+		}
+	}
+	
+	/**
+	 * @param futures 	futures of the asynchronous intensification workers
+	 * @return <code>true</code> if none of the workers is running anymore
+	 */
+	private static boolean allTerminated(List<Future<?>> futures)
+	{
+		for(Future<?> future : futures)
+		{
+			if(!future.isDone())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
 	/**
 	 * Intensification
 	 * @param challengers - List of challengers we should check against
@@ -759,26 +953,36 @@ public class AbstractAlgorithmFramework {
 		final AtomicInteger atomicInt = new AtomicInteger(0);
 		
 		
-		final int numberOfThread = (options.validationCores != null)?options.validationCores:Runtime.getRuntime().availableProcessors();
+		final int numberOfThread = intensificationScheduler.getNumberOfThreads();
 		
-		ExecutorService taskExecutor = Executors.newFixedThreadPool(numberOfThread);
-
+		List<Runnable> workers = new ArrayList<Runnable>(numberOfThread);
 		for(int i =0; i<numberOfThread; i++) {
-			taskExecutor.execute(new Runnable() {
+			workers.add(new Runnable() {
 	
 				@Override
 				public void run() {
-					log.info("Start executable thread : {}", Thread.currentThread().getId());
+					log.debug("Start intensification worker : {}", Thread.currentThread().getId());
 					
 					long timeUsed = (long)runHistory.getTotalRunCost() - initialTime;
 					try {
-						while(timeUsed <= timeLimit && atomicInt.get() < challengers.size()) {
+						while(timeUsed <= timeLimit) {
+							int challengerIndex = atomicInt.getAndIncrement();
+							if(challengerIndex >= challengers.size())
+							{
+								break;
+							}
 						
-							log.info("Processing evaluation thread : {}, {} ",Thread.currentThread().getId(), atomicInt.get());
-							ParameterConfiguration challenger = challengers.get(atomicInt.getAndIncrement());
-							log.info("[AutoML] Challenger size : {}, info {} ",challenger.size(), challenger.getParameterConfigurationSpace().getParamFileName());
+							log.debug("Processing evaluation thread : {}, {} ",Thread.currentThread().getId(), challengerIndex);
+							ParameterConfiguration challenger = challengers.get(challengerIndex);
+							log.debug("[AutoML] Challenger size : {}, info {} ",challenger.size(), challenger.getParameterConfigurationSpace().getParamFileName());
 							challenger.lock();
-							challengeIncumbent(challenger);
+							intensificationScheduler.challengeStarted();
+							try {
+								challengeIncumbent(challenger);
+							} finally
+							{
+								intensificationScheduler.challengeFinished();
+							}
 							
 							timeUsed = (long)runHistory.getTotalRunCost() - initialTime;
 
@@ -790,20 +994,8 @@ public class AbstractAlgorithmFramework {
 				
 			});
 		}
-		taskExecutor.shutdown();
-		try {
-		  taskExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-		} catch (InterruptedException e) {
-		  	e.printStackTrace();
-		}catch(Throwable t){
-			t.printStackTrace();
-		}
-		try {
-			// force all threads to stop prevent some of them still running
-			taskExecutor.shutdownNow();
-		}catch(Throwable t){
-			t.printStackTrace();
-		}
+		intensificationScheduler.invokeAll(workers);
+		log.debug("Intensification finished, {} challenges completed so far, {} still active, {} queued", intensificationScheduler.getCompletedChallenges(), intensificationScheduler.getActiveChallenges(), intensificationScheduler.getQueueDepth());
 
 		
 //		ScheduledExecutorService executor = Executors.newScheduledThreadPool(4);
@@ -1018,6 +1210,10 @@ public class AbstractAlgorithmFramework {
 					} else
 					{
 						runConfig = getRunConfig(pisp, cutoffTime, challenger);
+						if(options.qualityRacing && runsToMake == 1)
+						{
+							runConfig.setQualityBound(computeQualityBound(challenger, pisp));
+						}
 					}
 					
 					runsToEval.add(runConfig);
@@ -1049,6 +1245,33 @@ public class AbstractAlgorithmFramework {
 		}
 	}
 	
+	/**
+	 * Computes the quality above which a single run of the challenger on the given pair loses the challenge outright.
+	 * <p>
+	 * This only holds for the challenger's first run, where the comparison in shouldContinueChallenge is against
+	 * the incumbent's cost on that instance alone.
+	 * 
+	 * @param challenger
+	 * @param pisp
+	 * @return the bound, or <code>Double.POSITIVE_INFINITY</code> if the run should not be raced
+	 */
+	private double computeQualityBound(ParameterConfiguration challenger, ProblemInstanceSeedPair pisp)
+	{
+		if(!options.scenarioConfig.getRunObjective().equals(RunObjective.QUALITY) || runHistory.getTotalNumRunsOfConfigExcludingRedundant(challenger) > 0)
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+		
+		Set<ProblemInstance> pis = Collections.singleton(pisp.getProblemInstance());
+		if(runHistory.getProblemInstancesRan(incumbent).containsAll(pis))
+		{
+			return runHistory.getEmpiricalCost(incumbent, pis, cutoffTime) + Math.pow(10, -6);
+		} else
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+	}
+	
 	/**
 	 * Checks whether we should continue the challenge or not.
 	 * 
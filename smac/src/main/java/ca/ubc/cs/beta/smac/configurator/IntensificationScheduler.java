@@ -0,0 +1,191 @@
+package ca.ubc.cs.beta.smac.configurator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Long lived pool of threads that challenges run on during intensification.
+ * <p>
+ * The configurator owns one of these for its whole lifetime, so worker threads are reused from one iteration to the next
+ * instead of being created and torn down every time intensification is called. It also keeps track of how many
+ * challenges are waiting and running, which is useful to see whether the cores are actually kept busy.
+ */
+public class IntensificationScheduler {
+
+	private static final Logger log = LoggerFactory.getLogger(IntensificationScheduler.class);
+
+	private final ThreadPoolExecutor executor;
+
+	private final int numberOfThreads;
+
+	private final AtomicInteger activeChallenges = new AtomicInteger(0);
+
+	private final AtomicLong completedChallenges = new AtomicLong(0);
+
+	/**
+	 * Creates a scheduler
+	 * @param numberOfThreads 	number of challenges that may run at the same time
+	 */
+	public IntensificationScheduler(int numberOfThreads)
+	{
+		if(numberOfThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of intensification threads must be positive, not: " + numberOfThreads);
+		}
+
+		this.numberOfThreads = numberOfThreads;
+
+		final AtomicInteger threadCount = new AtomicInteger(0);
+		this.executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "SMAC Intensification Worker " + threadCount.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		log.debug("Intensification will use {} threads", numberOfThreads);
+	}
+
+	/**
+	 * @return number of challenges that may run at the same time
+	 */
+	public int getNumberOfThreads()
+	{
+		return numberOfThreads;
+	}
+
+	/**
+	 * Runs every task on the pool and waits until all of them are done
+	 *
+	 * @param tasks 	tasks to run
+	 * @throws RuntimeException the first exception thrown by any task, after all of them have finished
+	 */
+	public void invokeAll(List<? extends Runnable> tasks)
+	{
+		awaitAll(submitAll(tasks));
+	}
+
+	/**
+	 * Starts every task on the pool without waiting for them
+	 *
+	 * @param tasks 	tasks to run
+	 * @return futures to pass to {@link #awaitAll(List)}
+	 */
+	public List<Future<?>> submitAll(List<? extends Runnable> tasks)
+	{
+		List<Future<?>> futures = new ArrayList<Future<?>>(tasks.size());
+		for(Runnable task : tasks)
+		{
+			futures.add(executor.submit(task));
+		}
+		return futures;
+	}
+
+	/**
+	 * Waits until all of the given tasks are done
+	 *
+	 * @param futures 	futures returned by {@link #submitAll(List)}
+	 * @throws RuntimeException the first exception thrown by any task, after all of them have finished
+	 */
+	public void awaitAll(List<Future<?>> futures)
+	{
+		RuntimeException failure = null;
+		for(Future<?> future : futures)
+		{
+			try {
+				future.get();
+			} catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				for(Future<?> f : futures)
+				{
+					f.cancel(true);
+				}
+				throw new IllegalStateException("Interrupted while waiting for intensification to finish", e);
+			} catch(ExecutionException e)
+			{
+				log.error("Intensification task failed", e.getCause());
+				if(failure == null)
+				{
+					failure = (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+				}
+			}
+		}
+
+		if(failure != null)
+		{
+			throw failure;
+		}
+	}
+
+	/**
+	 * Marks the start of a challenge, must be paired with a call to {@link #challengeFinished()}
+	 */
+	public void challengeStarted()
+	{
+		activeChallenges.incrementAndGet();
+	}
+
+	/**
+	 * Marks the end of a challenge
+	 */
+	public void challengeFinished()
+	{
+		activeChallenges.decrementAndGet();
+		completedChallenges.incrementAndGet();
+	}
+
+	/**
+	 * @return number of tasks waiting for a thread
+	 */
+	public int getQueueDepth()
+	{
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return number of challenges currently running
+	 */
+	public int getActiveChallenges()
+	{
+		return activeChallenges.get();
+	}
+
+	/**
+	 * @return number of challenges finished since the scheduler was created
+	 */
+	public long getCompletedChallenges()
+	{
+		return completedChallenges.get();
+	}
+
+	/**
+	 * Stops the worker threads, interrupting any challenge that is still running
+	 */
+	public void shutdown()
+	{
+		executor.shutdownNow();
+		try {
+			if(!executor.awaitTermination(10, TimeUnit.SECONDS))
+			{
+				log.warn("Intensification threads did not stop in time, {} challenge(s) still active", activeChallenges.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
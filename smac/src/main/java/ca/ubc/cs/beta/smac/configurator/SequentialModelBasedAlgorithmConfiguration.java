@@ -1,6 +1,7 @@
 package ca.ubc.cs.beta.smac.configurator;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -9,6 +10,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.commons.math3.distribution.ExponentialDistribution;
 import org.apache.commons.math3.random.MersenneTwister;
@@ -17,20 +22,22 @@ import org.slf4j.LoggerFactory;
 
 import ca.ubc.cs.beta.aeatk.acquisitionfunctions.AcquisitionFunction;
 import ca.ubc.cs.beta.aeatk.algorithmexecutionconfiguration.AlgorithmExecutionConfiguration;
-import ca.ubc.cs.beta.aeatk.algorithmrunresult.AlgorithmRunResult;
 import ca.ubc.cs.beta.aeatk.eventsystem.EventManager;
 import ca.ubc.cs.beta.aeatk.initialization.InitializationProcedure;
 import ca.ubc.cs.beta.aeatk.misc.associatedvalue.ParamWithEI;
 import ca.ubc.cs.beta.aeatk.misc.cputime.CPUTime;
+import ca.ubc.cs.beta.aeatk.misc.model.BatchMarginalPredictor;
 import ca.ubc.cs.beta.aeatk.misc.watch.AutoStartStopWatch;
 import ca.ubc.cs.beta.aeatk.misc.watch.StopWatch;
 import ca.ubc.cs.beta.aeatk.model.builder.AdaptiveCappingModelBuilder;
 import ca.ubc.cs.beta.aeatk.model.builder.BasicModelBuilder;
+import ca.ubc.cs.beta.aeatk.model.builder.IncrementalModelBuilder;
 import ca.ubc.cs.beta.aeatk.model.builder.ModelBuilder;
 import ca.ubc.cs.beta.aeatk.model.data.MaskCensoredDataAsUncensored;
 import ca.ubc.cs.beta.aeatk.model.data.MaskInactiveConditionalParametersWithDefaults;
 import ca.ubc.cs.beta.aeatk.model.data.PCAModelDataSanitizer;
 import ca.ubc.cs.beta.aeatk.model.data.SanitizedModelData;
+import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.NeighbourhoodCursor;
 import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfiguration;
 import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.ParameterConfigurationSpace;
 import ca.ubc.cs.beta.aeatk.parameterconfigurationspace.tracking.ParamConfigurationOriginTracker;
@@ -38,8 +45,9 @@ import ca.ubc.cs.beta.aeatk.probleminstance.ProblemInstance;
 import ca.ubc.cs.beta.aeatk.probleminstance.seedgenerator.InstanceSeedGenerator;
 import ca.ubc.cs.beta.aeatk.random.SeedableRandomPool;
 import ca.ubc.cs.beta.aeatk.random.SeedableRandomPoolConstants;
+import ca.ubc.cs.beta.aeatk.objectives.RunObjective;
+import ca.ubc.cs.beta.aeatk.runhistory.ConcurrentRunHistory;
 import ca.ubc.cs.beta.aeatk.runhistory.RunHistory;
-import ca.ubc.cs.beta.aeatk.runhistory.RunHistoryHelper;
 import ca.ubc.cs.beta.aeatk.runhistory.ThreadSafeRunHistory;
 import ca.ubc.cs.beta.aeatk.smac.SMACOptions;
 import ca.ubc.cs.beta.aeatk.state.StateFactory;
@@ -71,6 +79,21 @@ public class SequentialModelBasedAlgorithmConfiguration extends
 	 */
 	private SanitizedModelData sanitizedData;
 	
+	/**
+	 * Number of models built by refitting only some trees since the forest was last built from scratch
+	 */
+	private int incrementalBuildsSinceFullRebuild = 0;
+	
+	/**
+	 * Index of the first tree the next incremental build refits
+	 */
+	private int nextTreeToRefit = 0;
+	
+	/**
+	 * Instances that had been run when the current forest was built, trees are only refit while this does not change
+	 */
+	private int[] forestUsedInstanceIdxs;
+	
 	private final AcquisitionFunction ei;
 	
 	
@@ -80,6 +103,11 @@ public class SequentialModelBasedAlgorithmConfiguration extends
 
 	
 	private final ExponentialDistribution exp;
+	
+	/**
+	 * Pool the local searches for challengers run on, <code>null</code> if they run on the calling thread
+	 */
+	private final ForkJoinPool localSearchPool;
 
 	public SequentialModelBasedAlgorithmConfiguration(SMACOptions smacConfig, AlgorithmExecutionConfiguration execConfig, List<ProblemInstance> instances, TargetAlgorithmEvaluator algoEval, AcquisitionFunction ei, StateFactory sf, ParameterConfigurationSpace configSpace, InstanceSeedGenerator instanceSeedGen, ParameterConfiguration initialConfiguration, List<ParameterConfiguration> initialChallengers, EventManager eventManager, ThreadSafeRunHistory rh, SeedableRandomPool pool, CompositeTerminationCondition termCond, ParamConfigurationOriginTracker configTracker, InitializationProcedure initProc, RunHistory modelRH, CPUTime cpuTime) {
 				super(smacConfig,execConfig, instances, algoEval,sf, configSpace, instanceSeedGen, initialConfiguration, initialChallengers, eventManager, rh, pool, termCond, configTracker,initProc,cpuTime);
@@ -96,6 +124,9 @@ public class SequentialModelBasedAlgorithmConfiguration extends
 		this.modelRunHistory = modelRH;
 		MersenneTwister prng = new MersenneTwister(pool.getSeed(SeedableRandomPoolConstants.LCB_EXPONENTIAL_SAMPLING_SEED));
 		this.exp = new ExponentialDistribution(prng,1);
+		
+		int localSearchThreads = (smacConfig.localSearchThreads != null) ? smacConfig.localSearchThreads : Runtime.getRuntime().availableProcessors();
+		this.localSearchPool = (localSearchThreads > 1) ? new ForkJoinPool(localSearchThreads) : null;
 	}
 
 	
@@ -152,11 +183,40 @@ public class SequentialModelBasedAlgorithmConfiguration extends
 		
 		
 		
+		//=== In asynchronous mode runs keep arriving while we build, so everything below has to come from the same snapshot.
+		boolean readLocked = false;
+		if(runHistory instanceof ConcurrentRunHistory)
+		{
+			//=== A snapshot lets intensification keep appending while we read
+			runHistory = ((ConcurrentRunHistory) runHistory).snapshot();
+		} else if(runHistory instanceof ThreadSafeRunHistory)
+		{
+			((ThreadSafeRunHistory) runHistory).readLock();
+			readLocked = true;
+		}
+		
 		//=== The following two sets are required to be sorted by instance and paramConfig ID.
 		Set<ProblemInstance> all_instances = new LinkedHashSet<ProblemInstance>(instances);
-		Set<ParameterConfiguration> paramConfigs = runHistory.getUniqueParamConfigurations();
+		Set<ParameterConfiguration> paramConfigs;
+		Set<ProblemInstance> runInstances;
+		int[][] thetaInstIdxs;
+		double[] runResponseValues;
+		boolean[] censored;
+		try
+		{
+			paramConfigs = runHistory.getUniqueParamConfigurations();
+			runInstances = runHistory.getUniqueInstancesRan();
+			thetaInstIdxs = runHistory.getParameterConfigurationInstancesRanByIndexExcludingRedundant();
+			runResponseValues = runHistory.getRunResponseValuesExcludingRedundant();
+			censored = runHistory.getCensoredEarlyFlagsExcludingRedundant();
+		} finally
+		{
+			if(readLocked)
+			{
+				((ThreadSafeRunHistory) runHistory).releaseReadLock();
+			}
+		}
 		
-		Set<ProblemInstance> runInstances=runHistory.getUniqueInstancesRan();
 		ArrayList<Integer> runInstancesIdx = new ArrayList<Integer>(all_instances.size());
 		
 		//=== Get the instance feature matrix (X).
@@ -194,10 +254,6 @@ public class SequentialModelBasedAlgorithmConfiguration extends
 		}
 		
 		
-		List<AlgorithmRunResult> runs = runHistory.getAlgorithmRunsExcludingRedundant();
-		double[] runResponseValues = RunHistoryHelper.getRunResponseValues(runs, runHistory.getRunObjective());
-		boolean[] censored = RunHistoryHelper.getCensoredEarlyFlagForRuns(runs);
-		
 		if(smacConfig.mbOptions.maskCensoredDataAsKappaMax)
 		{
 			for(int j=0; j < runResponseValues.length; j++)
@@ -233,7 +289,8 @@ public class SequentialModelBasedAlgorithmConfiguration extends
 		}
 	
 		//=== Sanitize the data.
-		sanitizedData = new PCAModelDataSanitizer(instanceFeatureMatrix, thetaMatrix, numPCA, runResponseValues, logModel, runHistory.getParameterConfigurationInstancesRanByIndexExcludingRedundant(), censored, configSpace);
+		SanitizedModelData previousSanitizedData = sanitizedData;
+		sanitizedData = new PCAModelDataSanitizer(instanceFeatureMatrix, thetaMatrix, numPCA, runResponseValues, logModel, thetaInstIdxs, censored, configSpace);
 		
 		
 		if(smacConfig.mbOptions.maskCensoredDataAsUncensored)
@@ -251,24 +308,53 @@ public class SequentialModelBasedAlgorithmConfiguration extends
 		//=== Actually build the model.
 		ModelBuilder mb;
 		//TODO: always go through AdaptiveCappingModelBuilder
+		RandomForest previousForest = forest;
 		forest = null;
 		preparedForest = null;
+		int incrementalTrees = Math.min(smacConfig.randomForestOptions.incrementalTrees, smacConfig.randomForestOptions.numTrees);
 		if(options.adaptiveCapping)
 		{
 			mb = new AdaptiveCappingModelBuilder(sanitizedData, smacConfig.randomForestOptions, pool.getRandom("RANDOM_FOREST_BUILDING_PRNG"), smacConfig.mbOptions.imputationIterations, smacConfig.scenarioConfig.algoExecOptions.cutoffTime, smacConfig.scenarioConfig.getIntraInstanceObjective().getPenaltyFactor(), subsamplePercentage);
+		} else if(options.scenarioConfig.getRunObjective().equals(RunObjective.QUALITY) && hasCensoredResponses(sanitizedData))
+		{
+			//=== Runs raced against the incumbent only give a lower bound on their quality, so they are imputed like capped runs, without an upper bound
+			log.debug("Imputing the quality of runs that were raced against the incumbent");
+			mb = new AdaptiveCappingModelBuilder(sanitizedData, smacConfig.randomForestOptions, pool.getRandom("RANDOM_FOREST_BUILDING_PRNG"), smacConfig.mbOptions.imputationIterations, Double.POSITIVE_INFINITY, 1, subsamplePercentage);
+			incrementalBuildsSinceFullRebuild = 0;
+		} else if(incrementalTrees > 0 && previousForest != null && incrementalBuildsSinceFullRebuild + 1 < smacConfig.randomForestOptions.fullRebuildFrequency
+				&& Arrays.equals(forestUsedInstanceIdxs, usedInstanceIdxs) && IncrementalModelBuilder.canReuseTrees(previousSanitizedData, sanitizedData))
+		{
+			log.debug("Refitting {} trees starting at tree {}", incrementalTrees, nextTreeToRefit);
+			mb = new IncrementalModelBuilder(sanitizedData, smacConfig.randomForestOptions, subsamplePercentage, pool.getRandom("RANDOM_FOREST_BUILDING_PRNG"), previousForest, nextTreeToRefit, incrementalTrees);
+			nextTreeToRefit = (nextTreeToRefit + incrementalTrees) % smacConfig.randomForestOptions.numTrees;
+			incrementalBuildsSinceFullRebuild++;
 		} else
 		{
 			//mb = new HashCodeVerifyingModelBuilder(sanitizedData,smacConfig.randomForestOptions, runHistory);
 			mb = new BasicModelBuilder(sanitizedData, smacConfig.randomForestOptions,subsamplePercentage, pool.getRandom("RANDOM_FOREST_BUILDING_PRNG")); 
+			incrementalBuildsSinceFullRebuild = 0;
 		}
 		
 		 /*= */
 		forest = mb.getRandomForest();
 		preparedForest = mb.getPreparedRandomForest();
+		forestUsedInstanceIdxs = usedInstanceIdxs;
 	
 		log.debug("Random Forest Built");
 	}
 	
+	private static boolean hasCensoredResponses(SanitizedModelData sanitizedData)
+	{
+		for(boolean censored : sanitizedData.getCensoredResponses())
+		{
+			if(censored)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	//private int selectionCount = 0;
 	protected List<ParameterConfiguration> selectConfigurations()
 	{
@@ -418,13 +504,30 @@ public class SequentialModelBasedAlgorithmConfiguration extends
 		
 		Set<ParameterConfiguration> selectedByRandomStartPoint = new HashSet<>();
 		
+		//=== Searches only share their start points, each one gets its own random stream so the result doesn't depend on how they are scheduled
+		final double localSearchFmin = fmin;
+		final double localSearchStandardErrors = lcbStandardErrors;
+		Random localSearchSeeds = pool.getRandom("SMAC_EI_LOCAL_SEARCH_NEIGHBOURS");
+		List<Callable<ParamWithEI>> searches = new ArrayList<Callable<ParamWithEI>>(numberOfSearches);
 		for(int i=0; i < numberOfSearches; i++)
 		{
-			watch = new AutoStartStopWatch();
-			
-			
-			
-			ParamWithEI lsResult = localSearch(sortedParams.get(i), fmin, Math.pow(10, -5),lcbStandardErrors);
+			final ParamWithEI startEIC = sortedParams.get(i);
+			final Random configRandLS = pool.createRandom(localSearchSeeds.nextLong());
+			searches.add(new Callable<ParamWithEI>()
+			{
+				@Override
+				public ParamWithEI call()
+				{
+					return localSearch(startEIC, localSearchFmin, Math.pow(10, -5), localSearchStandardErrors, configRandLS);
+				}
+			});
+		}
+		
+		List<ParamWithEI> lsResults = runLocalSearches(searches);
+		
+		for(int i=0; i < numberOfSearches; i++)
+		{
+			ParamWithEI lsResult = lsResults.get(i);
 			
 
 			if(lsResult.getAssociatedValue() < min_neg)
@@ -445,9 +548,7 @@ public class SequentialModelBasedAlgorithmConfiguration extends
 			
 			bestResults.add(lsResult);
 			configPredMeanVarEIMap.put(lsResult.getValue(), val);
-			watch.stop();
-			Object[] args = {i+1,((double) watch.time()/1000.0),min_neg};
-			log.trace("LS {} took {} seconds and yielded neg log EI {}",args);
+			log.trace("LS {} yielded neg log EI {}", i+1, min_neg);
 			
 			if(randomParameterConfigurations.contains(sortedParams.get(i)))
 			{
@@ -475,11 +576,7 @@ public class SequentialModelBasedAlgorithmConfiguration extends
 		
 		Random configSpaceEIRandom = pool.getRandom("SMAC_RANDOM_EI_CONFIG_PRNG");
 		AutoStartStopWatch t = new AutoStartStopWatch();
-		List<ParameterConfiguration> randomConfigs = new ArrayList<ParameterConfiguration>(numberOfRandomConfigsInEI);
-		for(int i=0; i < numberOfRandomConfigsInEI; i++)
-		{
-			randomConfigs.add(configSpace.getRandomParameterConfiguration(configSpaceEIRandom));
-		} 
+		List<ParameterConfiguration> randomConfigs = configSpace.getRandomParameterConfigurations(numberOfRandomConfigsInEI, configSpaceEIRandom);
 		
 		if(randomConfigs.size() >  0)
 		{
@@ -586,20 +683,69 @@ public class SequentialModelBasedAlgorithmConfiguration extends
 	}
 	
 	
+	/**
+	 * Runs the local searches, on the local search pool if there is one
+	 * @param searches - The local searches to run
+	 * @return result of each search, in the same order as the searches
+	 */
+	private List<ParamWithEI> runLocalSearches(List<Callable<ParamWithEI>> searches)
+	{
+		List<ParamWithEI> results = new ArrayList<ParamWithEI>(searches.size());
+		if(localSearchPool == null || searches.size() <= 1)
+		{
+			for(Callable<ParamWithEI> search : searches)
+			{
+				try {
+					results.add(search.call());
+				} catch(RuntimeException e)
+				{
+					throw e;
+				} catch(Exception e)
+				{
+					throw new IllegalStateException("Local search failed", e);
+				}
+			}
+			return results;
+		}
+		
+		for(Future<ParamWithEI> future : localSearchPool.invokeAll(searches))
+		{
+			try {
+				results.add(future.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for local search", e);
+			} catch (ExecutionException e) {
+				if(e.getCause() instanceof RuntimeException)
+				{
+					throw (RuntimeException) e.getCause();
+				} else if(e.getCause() instanceof Error)
+				{
+					throw (Error) e.getCause();
+				}
+				throw new IllegalStateException("Local search failed", e.getCause());
+			}
+		}
+		return results;
+	}
+	
 	/**
 	 * Performs a local search starting from the specified start configuration  
 	 * @param eic - Parameter configuration coupled with it's expected improvement 
 	 * @param fmin_sample - The best performance (f_min) to beat
 	 * @param epsilon - Minimum value of improvement required before terminating
+	 * @param configRandLS - Random used only by this search, to generate and pick neighbours
 	 * @return best Param&EI Found
 	 */
-	private ParamWithEI localSearch(ParamWithEI startEIC, double fmin_sample, double epsilon, double lcbStandardErrors)
+	private ParamWithEI localSearch(ParamWithEI startEIC, double fmin_sample, double epsilon, double lcbStandardErrors, Random configRandLS)
 	{
 		ParamWithEI incumbentEIC = startEIC;
 		
 		int localSearchSteps = 0;
 		
-		Random configRandLS = pool.getRandom("SMAC_EI_LOCAL_SEARCH_NEIGHBOURS");
+		BatchMarginalPredictor predictor = newBatchMarginalPredictor();
+		NeighbourhoodCursor neighbourhood = configSpace.getNeighbourhoodCursor(options.scenarioConfig.algoExecOptions.paramFileDelegate.continuousNeighbours);
+		int[] minIdx = new int[0];
 		while(true)
 		{
 			localSearchSteps++;
@@ -613,17 +759,16 @@ public class SequentialModelBasedAlgorithmConfiguration extends
 			double currentMinEI = incumbentEIC.getAssociatedValue();
 			
 			//System.out.println("minEI: " + currentMinEI + " incumbent: " + c.hashCode());
-			double[][] cArray = {c.toValueArray()};
-			int LSHashCode = matlabHashCode(cArray);
-			
-			if(SELECT_CONFIGURATION_SYNC_DEBUGGING) log.trace("Local Search HashCode: {}", LSHashCode);
+			if(SELECT_CONFIGURATION_SYNC_DEBUGGING)
+			{
+				double[][] cArray = {c.toValueArray()};
+				log.trace("Local Search HashCode: {}", matlabHashCode(cArray));
+			}
 			
 			//=== Get neighbourhood of current options and compute EI for all of it.
-			List<ParameterConfiguration> neighbourhood = c.getNeighbourhood(configRandLS, options.scenarioConfig.algoExecOptions.paramFileDelegate.continuousNeighbours);
-			double[][] prediction = transpose(applyMarginalModel(neighbourhood));
-			double[] means = prediction[0];
-			double[] vars = prediction[1];
-			double[] eiVal = ei.computeAcquisitionFunctionValue(fmin_sample, means, vars,lcbStandardErrors); 
+			neighbourhood.reset(c, configRandLS);
+			predictor.predict(neighbourhood.getRows());
+			double[] eiVal = ei.computeAcquisitionFunctionValue(fmin_sample, predictor.getMeans(), predictor.getVariances(), lcbStandardErrors); 
 			
 			//=== Determine EI of best neighbour.
 			double min = eiVal[0];
@@ -642,34 +787,31 @@ public class SequentialModelBasedAlgorithmConfiguration extends
 			} else
 			{
 				//== Make list of best neighbours (best within epsilon).
-				List<Integer> minIdx = new ArrayList<Integer>(c.size());
+				if(minIdx.length < eiVal.length)
+				{
+					minIdx = new int[eiVal.length];
+				}
+				int numberOfMins = 0;
 				for(int i=0; i < eiVal.length; i++)
 				{
 					if(eiVal[i] <= min + epsilon)
 					{
 						//currentMinEI = eiVal[i];
-						minIdx.add(i);
+						minIdx[numberOfMins++] = i;
 					} 
 				}
 
 				//== Move to random element of the best neighbours.
-				if(minIdx.size() == 0)
+				if(numberOfMins == 0)
 				{
 					throw new IllegalStateException("AAAAAAH!");
 				}
-				int nextIdx = minIdx.get(configRandLS.nextInt(minIdx.size()));
-				ParameterConfiguration best = neighbourhood.get(nextIdx);
+				int nextIdx = minIdx[configRandLS.nextInt(numberOfMins)];
+				ParameterConfiguration best = neighbourhood.materialize(nextIdx);
 				incumbentEIC = new ParamWithEI(eiVal[nextIdx], best);
 				
 				//==== Matlab code always uses the min even if we didn't select it.
 				//incumbentEIC = new ParamWithEI(min, best);
-				
-				double[][] next = { best.toValueArray() };
-				double[][] predictions = transpose(applyMarginalModel(next));
-				double[] mean = predictions[0];
-				double[] var = predictions[1];
-				
-				eiVal = ei.computeAcquisitionFunctionValue(fmin_sample, mean, var,lcbStandardErrors);
 			}
 		}
 		
@@ -678,6 +820,21 @@ public class SequentialModelBasedAlgorithmConfiguration extends
 		return incumbentEIC;
 	}
 
+	/**
+	 * Creates a predictor for the current model, which reuses its buffers across calls and may only be used by one thread
+	 * @return predictor for the most recent forest
+	 */
+	protected BatchMarginalPredictor newBatchMarginalPredictor()
+	{
+		if(smacConfig.randomForestOptions.preprocessMarginal)
+		{
+			return new BatchMarginalPredictor(forest, preparedForest, null);
+		} else
+		{
+			return new BatchMarginalPredictor(forest, null, sanitizedData.getPCAFeatures());
+		}
+	}
+	
 	/**
 	 * Computes a marginal prediction across all instances for the configArrays.
 	 * @param configArrays
@@ -728,4 +885,19 @@ public class SequentialModelBasedAlgorithmConfiguration extends
 		return this.preparedForest;
 	}
 	
+	@Override
+	protected boolean isAsynchronous()
+	{
+		return smacConfig.asyncSMBO;
+	}
+	
+	@Override
+	protected void releaseResources()
+	{
+		if(localSearchPool != null)
+		{
+			localSearchPool.shutdownNow();
+		}
+	}
+	
 }